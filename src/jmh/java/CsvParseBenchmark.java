@@ -0,0 +1,109 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-row cost of decoding steps and weight rows with String.split and LocalDate.parse
+ * compared to {@link CsvRecordParser}. Both read the same in-memory file so only decoding is measured.
+ * Run with "./gradlew jmh -Pjmh"; every score is reported per row. Add "-prof gc" to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CsvParseBenchmark {
+  private static final int ROWS = 100_000;
+  private byte[] stepsFile;
+  private byte[] weightFile;
+
+  /**
+   * Builds steps and weight files with several rows per day, as the app writes them.
+   */
+  @Setup
+  public void setUp() {
+    StringBuilder steps = new StringBuilder("date,steps\n");
+    StringBuilder weights = new StringBuilder("date,weight,unit\n");
+    LocalDate date = LocalDate.of(2020, 1, 1);
+    for (int i = 0; i < ROWS; i++) {
+      String day = date.plusDays(i / 8).format(Constants.dateFormatter);
+      steps.append(day).append(',').append(500 + i % 9000).append('\n');
+      weights.append(String.format("%s,%.2f,%s", day, 60 + (i % 4000) / 100.0, "kg")).append('\n');
+    }
+    stepsFile = steps.toString().getBytes(StandardCharsets.UTF_8);
+    weightFile = weights.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public long stepsSplit() throws IOException {
+    long total = 0;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new ByteArrayInputStream(stepsFile), StandardCharsets.UTF_8))) {
+      reader.readLine(); // Skip header
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split(",");
+        Steps steps = new Steps(LocalDate.parse(parts[0], Constants.dateFormatter), Integer.parseInt(parts[1]));
+        total += steps.getSteps() + steps.getDate().getDayOfMonth();
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public long stepsParser() throws IOException {
+    long total = 0;
+    try (CsvRecordParser parser = new CsvRecordParser(new ByteArrayInputStream(stepsFile))) {
+      parser.next(); // Skip header
+      while (parser.next()) {
+        Steps steps = new Steps(parser.dateField(0), parser.intField(1));
+        total += steps.getSteps() + steps.getDate().getDayOfMonth();
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public double weightSplit() throws IOException {
+    double total = 0;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new ByteArrayInputStream(weightFile), StandardCharsets.UTF_8))) {
+      reader.readLine(); // Skip header
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split(",");
+        LocalDate date = LocalDate.parse(parts[0], Constants.dateFormatter);
+        total += new Weight(Double.parseDouble(parts[1]), parts[2]).getWeight() + date.getDayOfMonth();
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public double weightParser() throws IOException {
+    double total = 0;
+    try (CsvRecordParser parser = new CsvRecordParser(new ByteArrayInputStream(weightFile))) {
+      parser.next(); // Skip header
+      while (parser.next()) {
+        LocalDate date = parser.dateField(0);
+        total += new Weight(parser.doubleField(1), parser.fieldEquals(2, "kg") ? "kg" : "lb").getWeight()
+            + date.getDayOfMonth();
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,78 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-sample cost of ingesting heart rate and steps samples one at a time
+ * compared to a single batched append.
+ * Run with "./gradlew jmh -Pjmh"; every score is reported per sample.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IngestBenchmark {
+  private static final int BATCH_SIZE = 1000;
+  private DailyMetricsManager metricsManager;
+  private List<HeartRate> heartRates;
+  private List<Steps> steps;
+
+  /**
+   * Creates a fresh user folder for each iteration so the files don't grow without bound.
+   */
+  @Setup(Level.Iteration)
+  public void setUp() throws IOException {
+    Path directory = Files.createTempDirectory("ingest-benchmark");
+    metricsManager = new DailyMetricsManager(directory + "/", "bench");
+
+    heartRates = new ArrayList<>(BATCH_SIZE);
+    steps = new ArrayList<>(BATCH_SIZE);
+    LocalDate date = LocalDate.of(2025, 1, 1);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      heartRates.add(new HeartRate(i % 2 == 0 ? "Resting" : "Cycling",
+          date.plusDays(i / 1440), LocalTime.ofSecondOfDay((i % 1440) * 60L), 60 + i % 100));
+      steps.add(new Steps(date.plusDays(i), 1000 + i));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void heartRatesOneByOne() {
+    for (HeartRate heartRate : heartRates) {
+      metricsManager.addHeartRate(heartRate);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public boolean heartRatesBatched() {
+    return metricsManager.addHeartRates(heartRates);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void stepsOneByOne() {
+    for (Steps entry : steps) {
+      metricsManager.addSteps(entry);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public boolean stepsBatched() {
+    return metricsManager.addSteps(steps);
+  }
+}
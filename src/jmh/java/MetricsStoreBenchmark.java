@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the {@link MetricsStore} backends on the same workload: batched ingest of steps and
+ * heart rates, and range reads over a year of preloaded data.
+ * Run with "./gradlew jmh -Pjmh"; ingest scores are reported per sample, read scores per query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetricsStoreBenchmark {
+  private static final int BATCH_SIZE = 1000;
+  private static final int DAYS = 365;
+  private static final LocalDate START = LocalDate.of(2025, 1, 1);
+
+  @Param({MetricsStore.CSV, MetricsStore.BINARY, MetricsStore.SQL})
+  public String backend;
+
+  private MetricsStore loadedStore;
+  private MetricsStore ingestStore;
+  private List<HeartRate> heartRates;
+  private List<Steps> steps;
+
+  /**
+   * Preloads one store with a year of data for the read benchmarks.
+   */
+  @Setup(Level.Trial)
+  public void load() throws IOException {
+    Path directory = Files.createTempDirectory("store-benchmark");
+    loadedStore = MetricsStore.open(backend, directory + "/", "bench");
+
+    List<Steps> yearOfSteps = new ArrayList<>();
+    List<HeartRate> yearOfHeartRates = new ArrayList<>();
+    List<PeriodLog> periodLogs = new ArrayList<>();
+    for (int day = 0; day < DAYS; day++) {
+      LocalDate date = START.plusDays(day);
+      yearOfSteps.add(new Steps(date, 4000 + day));
+      yearOfSteps.add(new Steps(date, 2000 + day));
+      for (int hour = 0; hour < 24; hour++) {
+        yearOfHeartRates.add(new HeartRate(hour < 8 ? "Resting" : null, date, LocalTime.of(hour, 0), 60 + hour));
+      }
+      loadedStore.saveWeight(date, new Weight(70 + day % 5, "kg"));
+    }
+    for (int cycle = 0; cycle < DAYS / 28; cycle++) {
+      LocalDate start = START.plusDays(cycle * 28L);
+      periodLogs.add(new PeriodLog("Cramps", start, start.plusDays(4), "Medium"));
+    }
+    loadedStore.addSteps(yearOfSteps);
+    loadedStore.addHeartRates(yearOfHeartRates);
+    loadedStore.addPeriodLogs(periodLogs);
+  }
+
+  /**
+   * Creates a fresh store for each iteration of the ingest benchmarks so the files don't grow without bound.
+   */
+  @Setup(Level.Iteration)
+  public void setUp() throws IOException {
+    Path directory = Files.createTempDirectory("store-benchmark");
+    ingestStore = MetricsStore.open(backend, directory + "/", "bench");
+
+    heartRates = new ArrayList<>(BATCH_SIZE);
+    steps = new ArrayList<>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      heartRates.add(new HeartRate(i % 2 == 0 ? "Resting" : "Cycling",
+          START.plusDays(i / 1440), LocalTime.ofSecondOfDay((i % 1440) * 60L), 60 + i % 100));
+      steps.add(new Steps(START.plusDays(i), 1000 + i));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public boolean stepsBatched() {
+    return ingestStore.addSteps(steps);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public boolean heartRatesBatched() {
+    return ingestStore.addHeartRates(heartRates);
+  }
+
+  @Benchmark
+  public List<Steps> stepsForMonth() {
+    return loadedStore.getSteps(START.plusMonths(6), START.plusMonths(7).minusDays(1));
+  }
+
+  @Benchmark
+  public long stepsStreamed() {
+    try (Stream<Steps> stream = loadedStore.streamSteps(null, null)) {
+      return stream.mapToLong(Steps::getSteps).sum();
+    }
+  }
+
+  @Benchmark
+  public DailyStepTotals dailyStepTotals() {
+    return loadedStore.getDailyStepTotals(null, null);
+  }
+
+  @Benchmark
+  public List<HeartRate> heartRatesForWeek() {
+    return loadedStore.getHeartRates(START.plusDays(180), START.plusDays(186));
+  }
+
+  @Benchmark
+  public HeartRateSeries heartRateSeries() {
+    return loadedStore.getHeartRateSeries(null, null);
+  }
+
+  @Benchmark
+  public List<PeriodLog> periodLogsForQuarter() {
+    return loadedStore.getPeriodLogs(START.plusMonths(3), START.plusMonths(6).minusDays(1));
+  }
+
+  @Benchmark
+  public NavigableMap<LocalDate, Weight> weightsForYear() {
+    return loadedStore.getWeights(START, START.plusDays(DAYS - 1));
+  }
+}
@@ -17,6 +17,7 @@ import java.time.format.DateTimeParseException;
 public class AddMetricsPanel extends JPanel implements ActionListener {
 
   private MainFrame mainFrame;
+  private UserSession session;
   private String username;
 
   // Weight Components
@@ -50,12 +51,13 @@ public class AddMetricsPanel extends JPanel implements ActionListener {
    * It sets up the layout and adds all input sections and navigation buttons.
    *
    * @param mainFrame Reference to the main application frame.
-   * @param username The username of the logged-in user.
+   * @param session   The session of the logged-in user.
    * @throws IOException If there is an error reading user profile data.
    */
-  public AddMetricsPanel(MainFrame mainFrame, String username) throws IOException {
+  public AddMetricsPanel(MainFrame mainFrame, UserSession session) throws IOException {
     this.mainFrame = mainFrame;
-    this.username = username; // Store the username
+    this.session = session;
+    this.username = session.getUsername(); // Store the username
     // Use GridBagLayout to position components in a flexible grid.
     setLayout(new GridBagLayout());
     GridBagConstraints gbc = new GridBagConstraints();
@@ -64,7 +66,7 @@ public class AddMetricsPanel extends JPanel implements ActionListener {
     gbc.gridwidth = GridBagConstraints.REMAINDER;
     gbc.anchor = GridBagConstraints.NORTH;
     // Show user profile information (name and age) at the top
-    UserProfile userProfile = UserDataStorage.getUserProfile(username);
+    UserProfile userProfile = session.getProfile();
     if (userProfile != null) {
       JPanel profilePanel = createProfileHeading(userProfile);
       add(profilePanel, gbc);
@@ -330,7 +332,7 @@ public class AddMetricsPanel extends JPanel implements ActionListener {
           double weight = Double.parseDouble(weightField.getText());
           String unit = (String) weightUnitCombo.getSelectedItem();
           Weight weightObj = new Weight(weight, unit);
-          DailyMetricsManager metricsManager = new DailyMetricsManager(username);
+          MetricsStore metricsManager = MetricsStore.forUser(username);
           if (metricsManager.saveWeight(LocalDate.now(), weightObj)) {
             JOptionPane.showMessageDialog(this, "Weight saved.",
                 "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -354,7 +356,7 @@ public class AddMetricsPanel extends JPanel implements ActionListener {
         try {
           int steps = Integer.parseInt(stepsField.getText());
           Steps stepsObj = new Steps(LocalDate.now(), steps);
-          DailyMetricsManager metricsManager = new DailyMetricsManager(username);
+          MetricsStore metricsManager = MetricsStore.forUser(username);
           if (metricsManager.addSteps(stepsObj)) {
             JOptionPane.showMessageDialog(this, "Steps information updated successfully.",
                 "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -381,7 +383,7 @@ public class AddMetricsPanel extends JPanel implements ActionListener {
           String tag = heartRateTagField.getText();
           LocalTime time = LocalTime.parse(timeStr, DateTimeFormatter.ofPattern("HH:mm"));
           HeartRate hrObj = new HeartRate(tag, LocalDate.now(), time, heartRate);
-          DailyMetricsManager metricsManager = new DailyMetricsManager(username);
+          MetricsStore metricsManager = MetricsStore.forUser(username);
           if (metricsManager.addHeartRate(hrObj)) {
             JOptionPane.showMessageDialog(this, "Heart rate information saved successfully.",
                 "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -413,7 +415,7 @@ public class AddMetricsPanel extends JPanel implements ActionListener {
           String flowLevel = (String) flowLevelCombo.getSelectedItem();
           String tags = periodTagsField.getText();
           PeriodLog periodLog = new PeriodLog(tags, startDate, endDate, flowLevel);
-          DailyMetricsManager metricsManager = new DailyMetricsManager(username);
+          MetricsStore metricsManager = MetricsStore.forUser(username);
           if (metricsManager.addPeriodLog(periodLog)) {
             JOptionPane.showMessageDialog(this, "Period information saved successfully.",
                 "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -437,7 +439,7 @@ public class AddMetricsPanel extends JPanel implements ActionListener {
     } else if (e.getSource() == viewMetricsButton) {
       if (username != null) {
         try {
-          mainFrame.showViewMetricsScreen(username);
+          mainFrame.showViewMetricsScreen(session);
         } catch (IOException ex) {
           throw new RuntimeException(ex);
         }
@@ -0,0 +1,469 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Binary backend of {@link MetricsStore}: each metric type is kept in one append-only file of fixed-width
+ * records, which is a fraction of the size of the CSV files and is decoded without parsing text.
+ * Each file starts with a 4-byte magic header. Dates are epoch days (4 bytes), and tags and flow levels are
+ * ids (2 bytes, 0xFFFF for none) from per-user dictionaries (see {@link TagDictionary}).
+ * <ul>
+ *   <li>weights.bin: date, weight in the unit it was entered in (8-byte double), unit (1 byte, 0 for kg,
+ *   1 for lb); a later record for the same day supersedes earlier ones</li>
+ *   <li>steps.bin: date, steps (4 bytes)</li>
+ *   <li>heart_rate.seg: a {@link HeartRateSegment}</li>
+ *   <li>period_log.bin: start date, end date, flow level, tag</li>
+ * </ul>
+ * There are no indexes or rollups to keep up to date: every read is a sequential scan of one file,
+ * and records are appended through a {@link GroupCommitLog}. A record cut short by a crash is ignored.
+ * The files live in a "binary" folder inside the user's folder, so they never mix with the CSV backend's.
+ */
+public class BinaryMetricsStore implements MetricsStore {
+  private static final String FOLDER = "binary/";
+  private static final String WEIGHTS_FILE = "weights.bin";
+  private static final String STEPS_FILE = "steps.bin";
+  private static final String HEART_RATE_FILE = "heart_rate.seg";
+  private static final String PERIOD_LOG_FILE = "period_log.bin";
+  private static final String TAG_DICTIONARY_FILE = "tags.dict";
+  private static final String FLOW_LEVEL_DICTIONARY_FILE = "flow_levels.dict";
+  private static final byte[] WEIGHTS_MAGIC = {'W', 'G', 'T', '1'};
+  private static final byte[] STEPS_MAGIC = {'S', 'T', 'P', '1'};
+  private static final byte[] PERIOD_LOG_MAGIC = {'P', 'R', 'L', '1'};
+  private static final int HEADER_LENGTH = 4;
+  private static final int WEIGHT_RECORD_SIZE = Integer.BYTES + Double.BYTES + 1;
+  private static final int STEPS_RECORD_SIZE = 2 * Integer.BYTES;
+  private static final int PERIOD_LOG_RECORD_SIZE = 2 * Integer.BYTES + 2 * Short.BYTES;
+  private static final int NO_ID = 0xFFFF;
+  private final Path folder;
+  private final TagDictionary tagDictionary;
+  private final TagDictionary flowLevelDictionary;
+  private final HeartRateSegment heartRateSegment;
+
+  /**
+   * Constructs the binary store of a user whose folder lives in the given directory.
+   * Creates the store's folder and files if they don't exist.
+   *
+   * @param userDirectory The directory holding the user folders, ending with a separator.
+   * @param username      The username of the user.
+   */
+  public BinaryMetricsStore(String userDirectory, String username) {
+    this.folder = Paths.get(userDirectory + username + "/" + FOLDER);
+    this.tagDictionary = TagDictionary.forFile(folder.resolve(TAG_DICTIONARY_FILE));
+    this.flowLevelDictionary = TagDictionary.forFile(folder.resolve(FLOW_LEVEL_DICTIONARY_FILE));
+    this.heartRateSegment = new HeartRateSegment(folder.resolve(HEART_RATE_FILE), tagDictionary);
+    try {
+      Files.createDirectories(folder);
+      createIfNotExists(folder.resolve(WEIGHTS_FILE), WEIGHTS_MAGIC);
+      createIfNotExists(folder.resolve(STEPS_FILE), STEPS_MAGIC);
+      createIfNotExists(folder.resolve(PERIOD_LOG_FILE), PERIOD_LOG_MAGIC);
+      heartRateSegment.createIfNotExists();
+    } catch (IOException e) {
+      System.err.println("Error creating user folder: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean saveWeight(LocalDate date, Weight weight) {
+    ByteBuffer record = ByteBuffer.allocate(WEIGHT_RECORD_SIZE)
+        .putInt(Math.toIntExact(date.toEpochDay()))
+        .putDouble(weight.getWeightInUserUnits())
+        .put((byte) (weight.getUnit().equals("lb") ? 1 : 0));
+    try {
+      GroupCommitLog.forFile(folder.resolve(WEIGHTS_FILE)).append(record.array(), false);
+      return true;
+    } catch (IOException e) {
+      System.err.println("Error saving weight: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public NavigableMap<LocalDate, Weight> getWeights(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    return readWeights(from, to);
+  }
+
+  @Override
+  public Map<LocalDate, Weight> getAllWeights() {
+    return new HashMap<>(readWeights(null, null));
+  }
+
+  private NavigableMap<LocalDate, Weight> readWeights(LocalDate from, LocalDate to) {
+    NavigableMap<LocalDate, Weight> weights = new TreeMap<>();
+    try (Stream<Map.Entry<LocalDate, Weight>> records = streamRecords(folder.resolve(WEIGHTS_FILE), WEIGHTS_MAGIC,
+        WEIGHT_RECORD_SIZE, record -> {
+          LocalDate date = LocalDate.ofEpochDay(record.getInt());
+          double value = record.getDouble();
+          String unit = record.get() == 1 ? "lb" : "kg";
+          return isInRange(date, from, to) ? Map.entry(date, new Weight(value, unit)) : null;
+        })) {
+      // Records are read in the order they were saved, so the latest save of a day wins
+      records.forEach(record -> weights.put(record.getKey(), record.getValue()));
+    } catch (IOException | UncheckedIOException e) {
+      System.err.println("Error getting weights: " + e.getMessage());
+    }
+    return weights;
+  }
+
+  @Override
+  public boolean addSteps(Collection<Steps> stepsBatch, boolean sync) {
+    for (Steps steps : stepsBatch) {
+      if (steps == null || steps.getDate() == null) {
+        throw new IllegalArgumentException("Steps entry must have a date.");
+      }
+      steps.validateSteps(steps.getSteps());
+    }
+    if (stepsBatch.isEmpty()) {
+      return true;
+    }
+
+    ByteBuffer records = ByteBuffer.allocate(stepsBatch.size() * STEPS_RECORD_SIZE);
+    for (Steps steps : stepsBatch) {
+      records.putInt(Math.toIntExact(steps.getDate().toEpochDay())).putInt(steps.getSteps());
+    }
+    try {
+      GroupCommitLog.forFile(folder.resolve(STEPS_FILE)).append(records.array(), sync);
+      return true;
+    } catch (IOException e) {
+      System.err.println("Error adding steps: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public List<Steps> getSteps(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    try (Stream<Steps> steps = streamSteps(from, to)) {
+      return steps.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting steps: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  @Override
+  public Map<LocalDate, List<Steps>> getAllSteps() {
+    try (Stream<Steps> steps = streamSteps(null, null)) {
+      return steps.collect(Collectors.groupingBy(Steps::getDate));
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting all steps: " + e.getMessage());
+      return new HashMap<>();
+    }
+  }
+
+  @Override
+  public Stream<Steps> streamSteps(LocalDate from, LocalDate to) {
+    long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+    long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+    try {
+      return streamRecords(folder.resolve(STEPS_FILE), STEPS_MAGIC, STEPS_RECORD_SIZE, record -> {
+        int day = record.getInt();
+        int steps = record.getInt();
+        return day >= fromDay && day <= toDay ? new Steps(LocalDate.ofEpochDay(day), steps) : null;
+      });
+    } catch (IOException e) {
+      System.err.println("Error streaming steps: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  @Override
+  public boolean addHeartRates(Collection<HeartRate> heartRates, boolean sync) {
+    for (HeartRate heartRate : heartRates) {
+      if (heartRate == null || heartRate.getDate() == null || heartRate.getTime() == null) {
+        throw new IllegalArgumentException("Heart rate entry must have a date and time.");
+      }
+      heartRate.validateHeartRate(heartRate.getHeartRate());
+    }
+    if (heartRates.isEmpty()) {
+      return true;
+    }
+
+    try {
+      heartRateSegment.appendAll(heartRates, sync);
+      return true;
+    } catch (IOException e) {
+      System.err.println("Error adding heart rate: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public List<HeartRate> getHeartRates(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    try (Stream<HeartRate> heartRates = streamHeartRates(from, to)) {
+      return heartRates.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting heart rates: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  @Override
+  public Map<LocalDate, List<HeartRate>> getAllHeartRates() {
+    try (Stream<HeartRate> heartRates = streamHeartRates(null, null)) {
+      return heartRates.collect(Collectors.groupingBy(HeartRate::getDate));
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting all heart rates: " + e.getMessage());
+      return new HashMap<>();
+    }
+  }
+
+  @Override
+  public Stream<HeartRate> streamHeartRates(LocalDate from, LocalDate to) {
+    try {
+      return heartRateSegment.stream(from, to);
+    } catch (IOException e) {
+      System.err.println("Error streaming heart rates: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  /**
+   * Gets the heart rate samples between two dates (inclusive) as a compact, time-ordered series,
+   * decoded straight from the heart rate segment without creating a HeartRate object per sample.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The samples in time order.
+   * @throws IllegalArgumentException If the range ends before it starts.
+   */
+  @Override
+  public HeartRateSeries getHeartRateSeries(LocalDate from, LocalDate to) {
+    if (from != null && to != null && to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+    HeartRateSeries.Builder builder = new HeartRateSeries.Builder();
+
+    try {
+      heartRateSegment.readInto(builder, from, to, false);
+      return builder.build(tagDictionary.tags());
+    } catch (IOException e) {
+      System.err.println("Error getting heart rate series: " + e.getMessage());
+      return new HeartRateSeries.Builder().build(new String[0]);
+    }
+  }
+
+  @Override
+  public boolean addPeriodLogs(Collection<PeriodLog> periodLogs, boolean sync) {
+    for (PeriodLog periodLog : periodLogs) {
+      if (periodLog == null || periodLog.getDate() == null || periodLog.getEndDate() == null) {
+        throw new IllegalArgumentException("Period log must have a start and end date.");
+      }
+      if (periodLog.getEndDate().isBefore(periodLog.getDate())) {
+        throw new IllegalArgumentException("End date cannot be before start date.");
+      }
+    }
+    if (periodLogs.isEmpty()) {
+      return true;
+    }
+
+    try {
+      ByteBuffer records = ByteBuffer.allocate(periodLogs.size() * PERIOD_LOG_RECORD_SIZE);
+      for (PeriodLog periodLog : periodLogs) {
+        records.putInt(Math.toIntExact(periodLog.getDate().toEpochDay()))
+            .putInt(Math.toIntExact(periodLog.getEndDate().toEpochDay()))
+            .putShort((short) idFor(flowLevelDictionary, periodLog.getFlowLevel()))
+            .putShort((short) idFor(tagDictionary, periodLog.getTags()));
+      }
+      GroupCommitLog.forFile(folder.resolve(PERIOD_LOG_FILE)).append(records.array(), sync);
+      return true;
+    } catch (IOException e) {
+      System.err.println("Error adding period log: " + e.getMessage());
+      return false;
+    }
+  }
+
+  @Override
+  public List<PeriodLog> getPeriodLogs() {
+    try (Stream<PeriodLog> periodLogs = streamPeriodLogs(null, null)) {
+      return periodLogs.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting period logs: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  @Override
+  public List<PeriodLog> getPeriodLogs(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    List<PeriodLog> periodLogs;
+    try (Stream<PeriodLog> overlapping = streamPeriodLogs(from, to)) {
+      periodLogs = overlapping.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting period logs: " + e.getMessage());
+      return new ArrayList<>();
+    }
+    periodLogs.sort(Comparator.comparing(PeriodLog::getDate)); // Stable, so equal starts keep file order
+    return periodLogs;
+  }
+
+  @Override
+  public Stream<PeriodLog> streamPeriodLogs(LocalDate from, LocalDate to) {
+    long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+    long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+    try {
+      return streamRecords(folder.resolve(PERIOD_LOG_FILE), PERIOD_LOG_MAGIC, PERIOD_LOG_RECORD_SIZE, record -> {
+        int start = record.getInt();
+        int end = record.getInt();
+        int flowLevelId = record.getShort() & 0xFFFF;
+        int tagId = record.getShort() & 0xFFFF;
+        if (start > toDay || end < fromDay) {
+          return null;
+        }
+        return new PeriodLog(tagFor(tagDictionary, tagId), LocalDate.ofEpochDay(start), LocalDate.ofEpochDay(end),
+            tagFor(flowLevelDictionary, flowLevelId));
+      });
+    } catch (IOException e) {
+      System.err.println("Error streaming period logs: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  @Override
+  public List<String> getTags() {
+    try {
+      return Arrays.asList(tagDictionary.tags());
+    } catch (IOException e) {
+      System.err.println("Error getting tags: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  private static int idFor(TagDictionary dictionary, String value) throws IOException {
+    return value == null ? NO_ID : dictionary.idFor(value);
+  }
+
+  private static String tagFor(TagDictionary dictionary, int id) throws IOException {
+    return id == NO_ID ? null : dictionary.tagFor(id);
+  }
+
+  private static void createIfNotExists(Path file, byte[] magic) throws IOException {
+    MonthlyPartitions.createWithHeader(file, magic);
+  }
+
+  /**
+   * Streams the decoded records of a binary metric file, reading it lazily in large chunks.
+   * A partially written trailing record is ignored.
+   *
+   * @param file       The file to read.
+   * @param magic      The header the file must start with.
+   * @param recordSize The size of one record in bytes.
+   * @param decoder    Decodes the record at the buffer's position, returning null to skip it.
+   * @param <T>        The type of the decoded records.
+   * @return Stream of decoded records in file order, which closes the file when closed.
+   * @throws IOException If the file cannot be opened or has the wrong header.
+   */
+  private static <T> Stream<T> streamRecords(Path file, byte[] magic, int recordSize, RecordDecoder<T> decoder)
+      throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    long end;
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          break;
+        }
+      }
+      if (header.hasRemaining() || !Arrays.equals(header.array(), magic)) {
+        throw new IOException("Not a metrics file: " + file);
+      }
+      long size = channel.size();
+      end = size - (size - HEADER_LENGTH) % recordSize;
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    Spliterator<T> records = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+      private final ByteBuffer chunk = ByteBuffer.allocate(recordSize * 4096).limit(0);
+      private long position = HEADER_LENGTH;
+
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+          while (true) {
+            while (chunk.hasRemaining()) {
+              T record = decoder.decode(chunk);
+              if (record != null) {
+                action.accept(record);
+                return true;
+              }
+            }
+            if (position >= end) {
+              return false;
+            }
+            chunk.clear();
+            chunk.limit((int) Math.min(chunk.capacity(), end - position));
+            while (chunk.hasRemaining()) {
+              if (channel.read(chunk, position + chunk.position()) < 0) {
+                throw new IOException("Unexpected end of metrics file.");
+              }
+            }
+            position += chunk.limit();
+            chunk.flip();
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+
+    return StreamSupport.stream(records, false).onClose(() -> {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  private static void checkRange(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Date range must have a start and end date.");
+    }
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+  }
+
+  private static boolean isInRange(LocalDate date, LocalDate from, LocalDate to) {
+    return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+  }
+
+  /**
+   * Decodes one fixed-width record.
+   */
+  private interface RecordDecoder<T> {
+    /**
+     * Decodes the record at the buffer's position, advancing past it.
+     *
+     * @param record The buffer positioned at the record.
+     * @return The decoded record, or null to skip it.
+     * @throws IOException If a dictionary cannot be read.
+     */
+    T decode(ByteBuffer record) throws IOException;
+  }
+}
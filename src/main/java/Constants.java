@@ -5,6 +5,10 @@ public class Constants {
     * The file path where user data is stored.
     */
    public static final String USER_DATA_FILE = "src/main/resources/users.txt";
+   /**
+    * The directory holding the hash-sharded user data files, which replace the single user data file.
+    */
+   public static final String USER_SHARD_DIRECTORY = "src/main/resources/user_shards/";
 
    /**
     * The directory where individual user-related files will be stored.
@@ -22,6 +26,26 @@ public class Constants {
     * A static final DateTimeFormatter for formatting the time in "HH:mm:ss" pattern.
     */
    public static final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss");
+   /**
+    * The estimated heap size, in bytes, that cached user metrics may take up before the least recently
+    * used users are evicted. Can be overridden with the "metrics.cache.budgetBytes" system property.
+    */
+   public static final long METRICS_CACHE_BUDGET_BYTES = Long.getLong("metrics.cache.budgetBytes", 64L * 1024 * 1024);
+   /**
+    * The number of parsed user profiles kept in memory before the least recently used ones are evicted.
+    * Can be overridden with the "profile.cache.capacity" system property.
+    */
+   public static final int PROFILE_CACHE_CAPACITY = Integer.getInteger("profile.cache.capacity", 1024);
+   /**
+    * The number of per-file indexes and rollups kept loaded in memory before the least recently used ones
+    * are unloaded (see {@link ResidentIndexes}). Can be overridden with the "index.resident.capacity" system property.
+    */
+   public static final int RESIDENT_INDEXES_CAPACITY = Integer.getInteger("index.resident.capacity", 256);
+   /**
+    * The storage engine for user metrics, "csv", "binary" or "sql" (see {@link MetricsStore}).
+    * Can be overridden with the "metrics.store" system property.
+    */
+   public static final String METRICS_STORE = System.getProperty("metrics.store", MetricsStore.CSV);
 
    /**
     * Ref: <a href="https://www.baeldung.com/java-private-constructors">Reference</a>
@@ -0,0 +1,409 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Purpose-built reader for the comma-separated metric files.
+ * It scans records directly in a reusable byte buffer, so moving to the next record allocates nothing;
+ * fields are decoded on demand. Fixed-width "MM-dd-yyyy" dates and "HH:mm:ss" times are decoded by
+ * arithmetic, and decoded dates are shared through a small cache, since consecutive rows usually
+ * repeat the same date. Only {@link #stringField(int)} allocates per call.
+ * A parser is not thread-safe.
+ */
+public class CsvRecordParser implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_FIELDS = 16;
+  private static final int DATE_CACHE_SIZE = 1024; // Must be a power of two
+  private static final long[] POWERS_OF_TEN = {
+      1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+  };
+
+  private final InputStream in;
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private int limit;
+  private int position;
+  private boolean endOfInput;
+  private long bufferOffset;
+  private long recordOffset;
+  private final int[] fieldStarts = new int[MAX_FIELDS];
+  private final int[] fieldEnds = new int[MAX_FIELDS];
+  private int fieldCount;
+  private final int[] cachedDateKeys = new int[DATE_CACHE_SIZE];
+  private final LocalDate[] cachedDates = new LocalDate[DATE_CACHE_SIZE];
+
+  /**
+   * Constructs a parser reading from the given stream.
+   *
+   * @param in The stream to read. It is closed when the parser is closed.
+   */
+  public CsvRecordParser(InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * Opens a parser over a metric file, skipping its header line.
+   *
+   * @param file The file to read.
+   * @return A parser positioned before the first data record.
+   * @throws IOException If the file cannot be opened or read.
+   */
+  public static CsvRecordParser open(Path file) throws IOException {
+    CsvRecordParser parser = new CsvRecordParser(Files.newInputStream(file));
+    try {
+      parser.next(); // Skip header
+    } catch (IOException e) {
+      parser.close();
+      throw e;
+    }
+    return parser;
+  }
+
+  /**
+   * Advances to the next record. Blank lines are skipped.
+   *
+   * @return true if there is a record, false at the end of the input.
+   * @throws IOException If the input cannot be read.
+   */
+  public boolean next() throws IOException {
+    while (true) {
+      int lineEnd = findLineEnd();
+      if (lineEnd < 0) {
+        return false;
+      }
+      int start = position;
+      position = lineEnd < limit ? lineEnd + 1 : lineEnd; // Skip the '\n' if there is one
+      int end = lineEnd;
+      if (end > start && buffer[end - 1] == '\r') {
+        end--;
+      }
+      if (end > start) {
+        recordOffset = bufferOffset + start;
+        splitFields(start, end);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Returns the byte offset of the current record within the input.
+   *
+   * @return The offset of the current record.
+   */
+  public long recordOffset() {
+    return recordOffset;
+  }
+
+  /**
+   * Returns the number of fields in the current record.
+   *
+   * @return The field count.
+   */
+  public int fieldCount() {
+    return fieldCount;
+  }
+
+  /**
+   * Decodes a "MM-dd-yyyy" date field.
+   *
+   * @param field The index of the field.
+   * @return The date.
+   * @throws DateTimeParseException If the field is not a valid date.
+   */
+  public LocalDate dateField(int field) {
+    return parseCachedDate(buffer, fieldStarts[field], fieldEnds[field]);
+  }
+
+  /**
+   * Decodes a "HH:mm:ss" time field.
+   *
+   * @param field The index of the field.
+   * @return The time.
+   * @throws DateTimeParseException If the field is not a valid time.
+   */
+  public LocalTime timeField(int field) {
+    int start = fieldStarts[field];
+    if (fieldEnds[field] - start != 8 || buffer[start + 2] != ':' || buffer[start + 5] != ':') {
+      throw invalid("time", field);
+    }
+    try {
+      return LocalTime.of(twoDigits(buffer, start), twoDigits(buffer, start + 3), twoDigits(buffer, start + 6));
+    } catch (RuntimeException e) {
+      throw invalid("time", field);
+    }
+  }
+
+  /**
+   * Decodes an integer field.
+   *
+   * @param field The index of the field.
+   * @return The value.
+   * @throws NumberFormatException If the field is not a valid integer.
+   */
+  public int intField(int field) {
+    return parseInt(buffer, fieldStarts[field], fieldEnds[field]);
+  }
+
+  /**
+   * Decodes a decimal field such as "72.50".
+   *
+   * @param field The index of the field.
+   * @return The value, rounded exactly as {@link Double#parseDouble(String)} would.
+   * @throws NumberFormatException If the field is not a valid number.
+   */
+  public double doubleField(int field) {
+    return parseDouble(buffer, fieldStarts[field], fieldEnds[field]);
+  }
+
+  /**
+   * Returns a field as a new string.
+   *
+   * @param field The index of the field.
+   * @return The field's text.
+   */
+  public String stringField(int field) {
+    return new String(buffer, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Checks whether a field holds exactly the given ASCII text, without allocating.
+   *
+   * @param field The index of the field.
+   * @param text  The ASCII text to compare with.
+   * @return true if the field matches, false otherwise.
+   */
+  public boolean fieldEquals(int field, String text) {
+    int start = fieldStarts[field];
+    if (fieldEnds[field] - start != text.length()) {
+      return false;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (buffer[start + i] != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Closes the underlying stream.
+   *
+   * @throws IOException If the stream cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * Decodes an integer from ASCII digits with an optional leading minus sign.
+   *
+   * @param bytes The bytes holding the number.
+   * @param start The first byte of the number.
+   * @param end   One past the last byte of the number.
+   * @return The value.
+   * @throws NumberFormatException If the bytes are not a valid integer.
+   */
+  public static int parseInt(byte[] bytes, int start, int end) {
+    boolean negative = end > start && bytes[start] == '-';
+    int i = negative ? start + 1 : start;
+    if (i == end || end - i > 10) {
+      throw new NumberFormatException("Invalid number: " + new String(bytes, start, end - start, StandardCharsets.UTF_8));
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Invalid number: " + new String(bytes, start, end - start, StandardCharsets.UTF_8));
+      }
+      value = value * 10 + digit;
+    }
+    value = negative ? -value : value;
+    if (value != (int) value) {
+      throw new NumberFormatException("Number out of range: " + new String(bytes, start, end - start, StandardCharsets.UTF_8));
+    }
+    return (int) value;
+  }
+
+  /**
+   * Decodes a plain decimal number such as "72.50".
+   * Numbers with at most 9 fraction digits and 15 digits overall are decoded by arithmetic;
+   * anything else falls back to {@link Double#parseDouble(String)}.
+   *
+   * @param bytes The bytes holding the number.
+   * @param start The first byte of the number.
+   * @param end   One past the last byte of the number.
+   * @return The value.
+   * @throws NumberFormatException If the bytes are not a valid number.
+   */
+  public static double parseDouble(byte[] bytes, int start, int end) {
+    boolean negative = end > start && bytes[start] == '-';
+    int i = negative ? start + 1 : start;
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = -1;
+    for (; i < end; i++) {
+      byte b = bytes[i];
+      if (b == '.' && fractionDigits < 0) {
+        fractionDigits = 0;
+        continue;
+      }
+      int digit = b - '0';
+      if (digit < 0 || digit > 9 || digits == 15) {
+        // Exponents, very long numbers and malformed input take the slow path
+        return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+      }
+      mantissa = mantissa * 10 + digit;
+      digits++;
+      if (fractionDigits >= 0) {
+        fractionDigits++;
+      }
+    }
+    if (digits == 0 || fractionDigits > 9) {
+      return Double.parseDouble(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+    }
+    // With at most 15 digits the mantissa is below 2^53, so both operands are exact doubles and the single
+    // rounding of the division gives the same result as parseDouble
+    double value = fractionDigits > 0 ? (double) mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+    return negative ? -value : value;
+  }
+
+  /**
+   * Decodes a "MM-dd-yyyy" date.
+   *
+   * @param bytes The bytes holding the date.
+   * @param start The first byte of the date.
+   * @param end   One past the last byte of the date.
+   * @return The date.
+   * @throws DateTimeParseException If the bytes are not a valid date.
+   */
+  public static LocalDate parseDate(byte[] bytes, int start, int end) {
+    int key = dateKey(bytes, start, end);
+    return dateOf(key, bytes, start, end);
+  }
+
+  /**
+   * Decodes a "MM-dd-yyyy" date, reusing a cached instance for recently seen dates.
+   */
+  private LocalDate parseCachedDate(byte[] bytes, int start, int end) {
+    int key = dateKey(bytes, start, end);
+    int slot = (key ^ (key >>> 10)) & (DATE_CACHE_SIZE - 1);
+    LocalDate date = cachedDates[slot];
+    if (date == null || cachedDateKeys[slot] != key) {
+      date = dateOf(key, bytes, start, end);
+      cachedDates[slot] = date;
+      cachedDateKeys[slot] = key;
+    }
+    return date;
+  }
+
+  /**
+   * Checks the shape of a "MM-dd-yyyy" date and packs it into a yyyyMMdd integer.
+   */
+  private static int dateKey(byte[] bytes, int start, int end) {
+    if (end - start != 10 || bytes[start + 2] != '-' || bytes[start + 5] != '-') {
+      throw new DateTimeParseException("Invalid date", new String(bytes, start, end - start, StandardCharsets.UTF_8), 0);
+    }
+    int month = twoDigits(bytes, start);
+    int day = twoDigits(bytes, start + 3);
+    int century = twoDigits(bytes, start + 6);
+    int yearOfCentury = twoDigits(bytes, start + 8);
+    if (month < 0 || day < 0 || century < 0 || yearOfCentury < 0) {
+      throw new DateTimeParseException("Invalid date", new String(bytes, start, end - start, StandardCharsets.UTF_8), 0);
+    }
+    return (century * 100 + yearOfCentury) * 10000 + month * 100 + day;
+  }
+
+  private static LocalDate dateOf(int key, byte[] bytes, int start, int end) {
+    try {
+      return LocalDate.of(key / 10000, key / 100 % 100, key % 100);
+    } catch (RuntimeException e) {
+      throw new DateTimeParseException("Invalid date", new String(bytes, start, end - start, StandardCharsets.UTF_8), 0, e);
+    }
+  }
+
+  /**
+   * Decodes two ASCII digits.
+   *
+   * @return The value, or a negative number if either byte is not a digit.
+   */
+  private static int twoDigits(byte[] bytes, int start) {
+    int tens = bytes[start] - '0';
+    int ones = bytes[start + 1] - '0';
+    if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+      return -1;
+    }
+    return tens * 10 + ones;
+  }
+
+  private DateTimeParseException invalid(String what, int field) {
+    String text = stringField(field);
+    return new DateTimeParseException("Invalid " + what, text, 0);
+  }
+
+  /**
+   * Finds the end of the line starting at the current position, refilling the buffer as needed.
+   *
+   * @return The index of the terminating '\n' (or of the end of the last, unterminated line),
+   *     or -1 at the end of the input.
+   */
+  private int findLineEnd() throws IOException {
+    int scanFrom = position;
+    while (true) {
+      for (int i = scanFrom; i < limit; i++) {
+        if (buffer[i] == '\n') {
+          return i;
+        }
+      }
+      if (endOfInput) {
+        return position < limit ? limit : -1;
+      }
+      scanFrom = limit - position;
+      fill();
+    }
+  }
+
+  /**
+   * Moves the unread bytes to the front of the buffer and reads more input after them.
+   */
+  private void fill() throws IOException {
+    int remaining = limit - position;
+    if (remaining == buffer.length) {
+      byte[] larger = new byte[buffer.length * 2]; // A single line longer than the buffer
+      System.arraycopy(buffer, position, larger, 0, remaining);
+      buffer = larger;
+    } else {
+      System.arraycopy(buffer, position, buffer, 0, remaining);
+    }
+    bufferOffset += position;
+    position = 0;
+    limit = remaining;
+
+    int read = in.read(buffer, limit, buffer.length - limit);
+    if (read < 0) {
+      endOfInput = true;
+    } else {
+      limit += read;
+    }
+  }
+
+  private void splitFields(int start, int end) {
+    fieldCount = 0;
+    int fieldStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || buffer[i] == ',') {
+        if (fieldCount < MAX_FIELDS) {
+          fieldStarts[fieldCount] = fieldStart;
+          fieldEnds[fieldCount] = i;
+          fieldCount++;
+        }
+        fieldStart = i + 1;
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+import java.time.LocalDate;
+
+/**
+ * Cycle length statistics of a user's period logs. A cycle runs from the start of one period
+ * to the start of the next, so n logs with distinct start dates give n - 1 cycles.
+ */
+public class CycleStats {
+  private final int count;
+  private final int min;
+  private final int max;
+  private final long sum;
+  private final long sumOfSquares;
+  private final LocalDate lastStart;
+
+  /**
+   * Constructs cycle statistics.
+   *
+   * @param count        The number of cycles.
+   * @param min          The shortest cycle in days.
+   * @param max          The longest cycle in days.
+   * @param sum          The sum of the cycle lengths.
+   * @param sumOfSquares The sum of the squared cycle lengths.
+   * @param lastStart    The start date of the latest period, or null if there are no logs.
+   */
+  public CycleStats(int count, int min, int max, long sum, long sumOfSquares, LocalDate lastStart) {
+    this.count = count;
+    this.min = min;
+    this.max = max;
+    this.sum = sum;
+    this.sumOfSquares = sumOfSquares;
+    this.lastStart = lastStart;
+  }
+
+  /**
+   * Returns the number of cycles.
+   *
+   * @return The number of cycles.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the shortest cycle.
+   *
+   * @return The length in days, or 0 if there are no cycles.
+   */
+  public int getMin() {
+    return count == 0 ? 0 : min;
+  }
+
+  /**
+   * Returns the longest cycle.
+   *
+   * @return The length in days, or 0 if there are no cycles.
+   */
+  public int getMax() {
+    return count == 0 ? 0 : max;
+  }
+
+  /**
+   * Returns the average cycle length.
+   *
+   * @return The mean in days, or NaN if there are no cycles.
+   */
+  public double getAverage() {
+    return count == 0 ? Double.NaN : (double) sum / count;
+  }
+
+  /**
+   * Returns the population standard deviation of the cycle lengths.
+   *
+   * @return The standard deviation in days, or NaN if there are no cycles.
+   */
+  public double getStandardDeviation() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    double mean = (double) sum / count;
+    return Math.sqrt(Math.max(0, (double) sumOfSquares / count - mean * mean));
+  }
+
+  /**
+   * Returns the start date of the latest period.
+   *
+   * @return The date, or null if there are no logs.
+   */
+  public LocalDate getLastStart() {
+    return lastStart;
+  }
+
+  /**
+   * Predicts the start of the next period from the latest start and the average cycle length.
+   *
+   * @return The predicted date, or null if there are no cycles yet.
+   */
+  public LocalDate predictNextStart() {
+    return count == 0 ? null : lastStart.plusDays(Math.round(getAverage()));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Cycles: %d, Shortest: %d days, Longest: %d days, Average: %.1f days",
+        count, getMin(), getMax(), getAverage());
+  }
+}
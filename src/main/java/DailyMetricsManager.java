@@ -1,19 +1,47 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDate;
-import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Manages health tracking data files for a user.
  * Creates and maintains separate files for daily metrics, steps, heart rate, and period logs.
+ * Steps and heart rate samples are partitioned into one file per month (see {@link MonthlyPartitions});
+ * heart rate partitions are compact binary segments (see {@link HeartRateSegment}).
+ * Users from before partitioning keep their single steps.txt and heart_rate.seg files, which are still
+ * read alongside the partitions but no longer written to.
+ * Parsed metrics are shared between managers through the {@link MetricsCache}.
+ * This is the CSV backend of {@link MetricsStore}; its daily totals, statistics and tag queries are read
+ * from the rollups and indexes kept next to the data files.
  */
-public class DailyMetricsManager {
+public class DailyMetricsManager implements MetricsStore {
   private static final String DAILY_METRICS_FILE = "daily_metrics.txt";
   private static final String STEPS_FILE = "steps.txt";
   private static final String HEART_RATE_FILE = "heart_rate.txt";
+  private static final String HEART_RATE_SEGMENT_FILE = "heart_rate.seg";
+  private static final String TAG_DICTIONARY_FILE = "tags.dict";
   private static final String PERIOD_LOG_FILE = "period_log.txt";
+  private static final String DAILY_METRICS_INDEX_FILE = "daily_metrics.idx";
+  private static final String HEART_RATE_INDEX_FILE = "heart_rate.idx";
+  private static final String STEPS_DIRECTORY = "steps";
+  private static final String HEART_RATE_DIRECTORY = "heart_rate";
+  private static final String INDEX_EXTENSION = ".idx";
+  private static final String ROLLUP_EXTENSION = ".rollup";
+  private static final String TOTALS_EXTENSION = ".totals";
+  private static final String TAG_INDEX_EXTENSION = ".tags";
+  private static final byte[] STEPS_HEADER = ("date,steps" + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII);
   private final String userFolder;
+  private final TagDictionary tagDictionary;
+  private final MonthlyPartitions stepsPartitions;
+  private final MonthlyPartitions heartRatePartitions;
+  private final WeightLog weightLog;
+  private final MetricsCache cache = MetricsCache.shared();
 
 
   /**
@@ -23,8 +51,25 @@ public class DailyMetricsManager {
    * @param username The username of the user.
    */
   public DailyMetricsManager(String username) {
-    this.userFolder = Constants.USER_DIRECTORY + username + "/";
+    this(Constants.USER_DIRECTORY, username);
+  }
+
+  /**
+   * Constructs a new DailyMetricsManager for a user whose folder lives in the given directory.
+   * Used by tests and benchmarks to keep their files out of the real user directory.
+   *
+   * @param userDirectory The directory holding the user folders, ending with a separator.
+   * @param username      The username of the user.
+   */
+  DailyMetricsManager(String userDirectory, String username) {
+    this.userFolder = userDirectory + username + "/";
+    this.tagDictionary = TagDictionary.forFile(Paths.get(userFolder + TAG_DICTIONARY_FILE));
+    this.stepsPartitions = new MonthlyPartitions(Paths.get(userFolder + STEPS_DIRECTORY), ".csv", STEPS_HEADER);
+    this.heartRatePartitions = new MonthlyPartitions(Paths.get(userFolder + HEART_RATE_DIRECTORY), ".seg",
+        HeartRateSegment.header());
     createUserFolder();
+    this.weightLog = new WeightLog(Paths.get(userFolder + DAILY_METRICS_FILE),
+        Paths.get(userFolder + DAILY_METRICS_INDEX_FILE));
   }
 
   /**
@@ -36,14 +81,29 @@ public class DailyMetricsManager {
 
       // Create files if they don't exist
       createFileIfNotExists(DAILY_METRICS_FILE);
-      createFileIfNotExists(STEPS_FILE);
-      createFileIfNotExists(HEART_RATE_FILE);
       createFileIfNotExists(PERIOD_LOG_FILE);
+      migrateHeartRateFile();
     } catch (IOException e) {
       System.err.println("Error creating user folder: " + e.getMessage());
     }
   }
 
+  /**
+   * Migrates a legacy heart_rate.txt CSV file into a single binary heart rate segment,
+   * which is then read like any other pre-partitioning segment.
+   * The CSV file is kept with a ".migrated" suffix, and rows that could not be migrated with a ".rejected" suffix.
+   *
+   * @throws IOException If an I/O error occurs.
+   */
+  private void migrateHeartRateFile() throws IOException {
+    Path legacyFilePath = Paths.get(userFolder + HEART_RATE_FILE);
+    if (Files.exists(legacyFilePath)) {
+      heartRateSegmentFor(Paths.get(userFolder + HEART_RATE_SEGMENT_FILE)).migrateFrom(legacyFilePath);
+      // The old index pointed into the CSV file
+      Files.deleteIfExists(Paths.get(userFolder + HEART_RATE_INDEX_FILE));
+    }
+  }
+
   /**
    * Creates a file within the user's folder if it doesn't exist.
    *
@@ -61,12 +121,6 @@ public class DailyMetricsManager {
         case DAILY_METRICS_FILE:
           writer.write("date,weight,unit");
           break;
-        case STEPS_FILE:
-          writer.write("date,steps");
-          break;
-        case HEART_RATE_FILE:
-          writer.write("date,time,tag,heartRate");
-          break;
         case PERIOD_LOG_FILE:
           writer.write("startDate,endDate,flowLevel,tags");
           break;
@@ -78,45 +132,18 @@ public class DailyMetricsManager {
 
   /**
    * Saves or updates weight in the daily metrics file.
-   * Replaces the existing weight entry for the day if one exists.
+   * The new entry is appended and supersedes any earlier entry for the same day,
+   * so a save never rewrites the file (see {@link WeightLog}).
    *
    * @param date  The date of the weight entry.
    * @param weight The Weight object to save.
    * @return true if successful, false otherwise.
    */
+  @Override
   public boolean saveWeight(LocalDate date, Weight weight) {
     try {
-      // Read existing data
-      Path metricsFilePath = Paths.get(userFolder + DAILY_METRICS_FILE);
-      List<String> lines = Files.readAllLines(metricsFilePath);
-      boolean updated = false;
-
-      // Check for existing entry on this date
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
-
-        if (parts.length >= 1 && parts[0].equals(date.format(Constants.dateFormatter))) {
-          // Update existing entry
-          lines.set(i, String.format("%s,%.2f,%s",
-              date.format(Constants.dateFormatter),
-              weight.getWeightInUserUnits(),
-              weight.getUnit()));
-          updated = true;
-          break;
-        }
-      }
-
-      // Add new entry if not updated
-      if (!updated) {
-        lines.add(String.format("%s,%.2f,%s",
-            date.format(Constants.dateFormatter),
-            weight.getWeightInUserUnits(),
-            weight.getUnit()));
-      }
-
-      // Write back to file
-      Files.write(metricsFilePath, lines);
+      weightLog.append(date, weight);
+      cache.updateWeight(userFolder, date, weight);
       return true;
     } catch (IOException e) {
       System.err.println("Error saving weight: " + e.getMessage());
@@ -130,22 +157,15 @@ public class DailyMetricsManager {
    * @param date The date to get weight data for.
    * @return Optional containing Weight object if found, empty otherwise.
    */
+  @Override
   public Optional<Weight> getWeight(LocalDate date) {
-    try {
-      List<String> lines = Files.readAllLines(Paths.get(userFolder + DAILY_METRICS_FILE));
-
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
-
-        if (parts.length >= 3 && parts[0].equals(date.format(Constants.dateFormatter))) {
-          double weightValue = Double.parseDouble(parts[1]);
-          String unit = parts[2];
-          return Optional.of(new Weight(weightValue, unit));
-        }
-      }
+    NavigableMap<LocalDate, Weight> cached = cache.getWeights(userFolder, date, date);
+    if (cached != null) {
+      return Optional.ofNullable(cached.get(date));
+    }
 
-      return Optional.empty();
+    try {
+      return Optional.ofNullable(weightLog.latest(date));
     } catch (IOException e) {
       System.err.println("Error getting weight: " + e.getMessage());
       return Optional.empty();
@@ -153,21 +173,74 @@ public class DailyMetricsManager {
   }
 
   /**
-   * Adds a new steps entry to the steps file.
+   * Gets the weight entries between two dates (inclusive).
+   * Uses the date index to read only the rows in the range.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return Map with LocalDate keys and Weight values, in date order.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  @Override
+  public NavigableMap<LocalDate, Weight> getWeights(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    NavigableMap<LocalDate, Weight> cached = cache.getWeights(userFolder, from, to);
+    if (cached != null) {
+      return cached;
+    }
+
+    try {
+      return weightLog.readRange(from, to);
+    } catch (IOException e) {
+      System.err.println("Error getting weights: " + e.getMessage());
+      return new TreeMap<>();
+    }
+  }
+
+  /**
+   * Adds a batch of steps entries to the steps file with a single write.
+   * Concurrent batches for the same file are committed together (see {@link GroupCommitLog}).
    *
-   * @param steps The Steps object to save.
+   * @param stepsBatch The Steps objects to save, in order.
+   * @param sync       Whether the entries must be forced to disk before returning.
    * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
    */
-  public boolean addSteps(Steps steps) {
+  @Override
+  public boolean addSteps(Collection<Steps> stepsBatch, boolean sync) {
+    for (Steps steps : stepsBatch) {
+      if (steps == null || steps.getDate() == null) {
+        throw new IllegalArgumentException("Steps entry must have a date.");
+      }
+      steps.validateSteps(steps.getSteps());
+    }
+    if (stepsBatch.isEmpty()) {
+      return true;
+    }
+
     try {
-      // Append new entry
-      String entry = String.format("%s,%d",
-          steps.getDate().format(Constants.dateFormatter),
-          steps.getSteps());
-
-      Files.write(Paths.get(userFolder + STEPS_FILE),
-          Collections.singletonList(entry),
-          StandardOpenOption.APPEND);
+      for (Map.Entry<YearMonth, List<Steps>> month
+          : MonthlyPartitions.groupByMonth(stepsBatch, Steps::getDate).entrySet()) {
+        // Encode each month's entries into one buffer
+        List<Steps> monthSteps = month.getValue();
+        List<LocalDate> dates = new ArrayList<>(monthSteps.size());
+        long[] lengths = new long[monthSteps.size()];
+        RecordEncoder encoder = RecordEncoder.forCurrentThread();
+        for (Steps steps : monthSteps) {
+          int start = encoder.size();
+          encoder.date(steps.getDate()).comma().integer(steps.getSteps()).newLine();
+          lengths[dates.size()] = encoder.size() - start;
+          dates.add(steps.getDate());
+        }
+
+        Path partition = stepsPartitions.createIfNotExists(month.getKey());
+        long offset = GroupCommitLog.forFile(partition).append(encoder.buffer(), encoder.size(), sync);
+        stepsIndexFor(partition).recordAll(dates, offset, lengths);
+        stepsRollupFor(partition).refresh();
+        for (Steps steps : monthSteps) {
+          cache.addSteps(userFolder, steps);
+        }
+      }
       return true;
     } catch (IOException e) {
       System.err.println("Error adding steps: " + e.getMessage());
@@ -177,23 +250,63 @@ public class DailyMetricsManager {
 
   /**
    * Gets all steps entries for a specific date.
+   * Uses the date index of the date's partition to read only the rows for that date.
    *
    * @param date The date to get steps for.
    * @return List of Steps objects for the date.
    */
+  @Override
   public List<Steps> getSteps(LocalDate date) {
+    List<Steps> cached = cache.getSteps(userFolder, date, date);
+    if (cached != null) {
+      return cached;
+    }
+
     List<Steps> stepsList = new ArrayList<>();
 
     try {
-      List<String> lines = Files.readAllLines(Paths.get(userFolder + STEPS_FILE));
+      for (Path file : stepsFiles(date, date)) {
+        for (byte[] row : stepsIndexFor(file).readRecords(date)) {
+          Steps steps = decodeSteps(row);
+          if (steps != null) {
+            stepsList.add(steps);
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Error getting steps: " + e.getMessage());
+    }
+
+    return stepsList;
+  }
+
+  /**
+   * Gets all steps entries between two dates (inclusive).
+   * Only the partitions of the months in the range are opened, and their date indexes are used to read
+   * only the rows in the range, with a single read per partition that is in date order.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return List of Steps objects, by month and in the order they were added within a month.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  @Override
+  public List<Steps> getSteps(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    List<Steps> cached = cache.getSteps(userFolder, from, to);
+    if (cached != null) {
+      return cached;
+    }
 
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
+    List<Steps> stepsList = new ArrayList<>();
 
-        if (parts.length == 2 && parts[0].equals(date.format(Constants.dateFormatter))) {
-          int stepsCount = Integer.parseInt(parts[1]);
-          stepsList.add(new Steps(date, stepsCount));
+    try {
+      for (Path file : stepsFiles(from, to)) {
+        for (byte[] row : stepsIndexFor(file).readRecords(from, to)) {
+          Steps steps = decodeSteps(row);
+          if (steps != null) {
+            stepsList.add(steps);
+          }
         }
       }
     } catch (IOException e) {
@@ -204,23 +317,69 @@ public class DailyMetricsManager {
   }
 
   /**
-   * Adds a new heart rate entry to the heart rate file.
+   * Gets the steps totals of each day between two dates (inclusive) that has entries: the sum of the day's
+   * entries, their number and the largest single entry. The totals are kept up to date next to each steps
+   * file, so no entries are read unless the totals are missing or behind their file.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The daily totals, in date order.
+   * @throws IllegalArgumentException If the range ends before it starts.
+   */
+  @Override
+  public DailyStepTotals getDailyStepTotals(LocalDate from, LocalDate to) {
+    if (from != null && to != null && to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+    List<DailyStepTotals> parts = new ArrayList<>();
+
+    try {
+      for (Path file : stepsFiles(from, to)) {
+        parts.add(stepsRollupFor(file).totals(from, to));
+      }
+    } catch (IOException e) {
+      System.err.println("Error getting daily step totals: " + e.getMessage());
+    }
+
+    return DailyStepTotals.merge(parts);
+  }
+
+  /**
+   * Adds a batch of heart rate entries to the heart rate segments with a single write per month.
+   * Concurrent batches for the same segment are committed together (see {@link GroupCommitLog}).
    *
-   * @param heartRate The HeartRate object to save.
+   * @param heartRates The HeartRate objects to save, in order.
+   * @param sync       Whether the entries must be forced to disk before returning.
    * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
    */
-  public boolean addHeartRate(HeartRate heartRate) {
+  @Override
+  public boolean addHeartRates(Collection<HeartRate> heartRates, boolean sync) {
+    for (HeartRate heartRate : heartRates) {
+      if (heartRate == null || heartRate.getDate() == null || heartRate.getTime() == null) {
+        throw new IllegalArgumentException("Heart rate entry must have a date and time.");
+      }
+      heartRate.validateHeartRate(heartRate.getHeartRate());
+    }
+    if (heartRates.isEmpty()) {
+      return true;
+    }
+
     try {
-      // Append new entry
-      String entry = String.format("%s,%s,%s,%d",
-          heartRate.getDate().format(Constants.dateFormatter),
-          heartRate.getTime().format(Constants.timeFormatter),
-          heartRate.getTags(),
-          heartRate.getHeartRate());
-
-      Files.write(Paths.get(userFolder + HEART_RATE_FILE),
-          Collections.singletonList(entry),
-          StandardOpenOption.APPEND);
+      for (Map.Entry<YearMonth, List<HeartRate>> month
+          : MonthlyPartitions.groupByMonth(heartRates, HeartRate::getDate).entrySet()) {
+        List<HeartRate> monthHeartRates = month.getValue();
+        Path partition = heartRatePartitions.createIfNotExists(month.getKey());
+        long offset = heartRateSegmentFor(partition).appendAll(monthHeartRates, sync);
+        List<LocalDate> dates = new ArrayList<>(monthHeartRates.size());
+        for (HeartRate heartRate : monthHeartRates) {
+          dates.add(heartRate.getDate());
+          cache.addHeartRate(userFolder, heartRate);
+        }
+        heartRateIndexFor(partition).recordAll(dates, offset);
+        heartRateRollupFor(partition).refresh();
+        heartRateTagIndexFor(partition).refresh();
+      }
       return true;
     } catch (IOException e) {
       System.err.println("Error adding heart rate: " + e.getMessage());
@@ -230,25 +389,116 @@ public class DailyMetricsManager {
 
   /**
    * Gets all heart rate entries for a specific date.
+   * Uses the day index of the date's partition to read only the records for that date.
    *
    * @param date The date to get heart rate data for.
    * @return List of HeartRate objects for the date.
    */
+  @Override
   public List<HeartRate> getHeartRates(LocalDate date) {
+    List<HeartRate> cached = cache.getHeartRates(userFolder, date, date);
+    if (cached != null) {
+      return cached;
+    }
+
+    List<HeartRate> heartRates = new ArrayList<>();
+
+    try {
+      for (Path file : heartRateFiles(date, date)) {
+        heartRates.addAll(heartRateSegmentFor(file).readRuns(heartRateIndexFor(file).find(date, date)));
+      }
+    } catch (IOException e) {
+      System.err.println("Error getting heart rates: " + e.getMessage());
+    }
+
+    return heartRates;
+  }
+
+  /**
+   * Gets all heart rate entries between two dates (inclusive).
+   * Only the partitions of the months in the range are opened, and their day indexes locate the runs of
+   * records in the range; samples added in date order form a single run that is read in large chunks.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return List of HeartRate objects, by month and in the order they were added within a month.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  @Override
+  public List<HeartRate> getHeartRates(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    List<HeartRate> cached = cache.getHeartRates(userFolder, from, to);
+    if (cached != null) {
+      return cached;
+    }
+
     List<HeartRate> heartRates = new ArrayList<>();
 
     try {
-      List<String> lines = Files.readAllLines(Paths.get(userFolder + HEART_RATE_FILE));
+      for (Path file : heartRateFiles(from, to)) {
+        heartRates.addAll(heartRateSegmentFor(file).readRuns(heartRateIndexFor(file).find(from, to)));
+      }
+    } catch (IOException e) {
+      System.err.println("Error getting heart rates: " + e.getMessage());
+    }
+
+    return heartRates;
+  }
 
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
+  /**
+   * Gets the heart rate samples between two dates (inclusive) as a compact, time-ordered series.
+   * The samples are decoded straight from the heart rate segments into primitive arrays,
+   * without creating a HeartRate object per sample.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The samples in time order.
+   * @throws IllegalArgumentException If the range ends before it starts.
+   */
+  @Override
+  public HeartRateSeries getHeartRateSeries(LocalDate from, LocalDate to) {
+    if (from != null && to != null && to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+    HeartRateSeries.Builder builder = new HeartRateSeries.Builder();
+
+    try {
+      for (Path file : heartRateFiles(from, to)) {
+        heartRateSegmentFor(file).readInto(builder, from, to, heartRateIndexFor(file).isOrdered());
+      }
+      return builder.build(tagDictionary.tags());
+    } catch (IOException e) {
+      System.err.println("Error getting heart rate series: " + e.getMessage());
+      return new HeartRateSeries.Builder().build(new String[0]);
+    }
+  }
 
-        if (parts.length >= 4 && parts[0].equals(date.format(Constants.dateFormatter))) {
-          LocalTime time = LocalTime.parse(parts[1], Constants.timeFormatter);
-          String tags = parts[2];
-          int heartRateValue = Integer.parseInt(parts[3]);
-          heartRates.add(new HeartRate(tags, date, time, heartRateValue));
+  /**
+   * Gets the heart rate entries matching a tag query between two dates (inclusive).
+   * The tag index of each partition locates the runs of matching samples, so other samples are not read.
+   *
+   * @param query The tags to match.
+   * @param from  The first date to include, or null for no lower bound.
+   * @param to    The last date to include, or null for no upper bound.
+   * @return List of matching HeartRate objects, by month and in the order they were added within a month.
+   */
+  @Override
+  public List<HeartRate> getHeartRates(TagQuery query, LocalDate from, LocalDate to) {
+    List<HeartRate> heartRates = new ArrayList<>();
+
+    try {
+      int[] tagIds = tagIdsOf(query);
+      if (tagIds.length == 0) {
+        return heartRates;
+      }
+      for (Path file : heartRateFiles(from, to)) {
+        HeartRateSegment segment = heartRateSegmentFor(file);
+        for (byte[] run : heartRateTagIndexFor(file).readRuns(tagIds, query.isMatchAll(), from, to)) {
+          for (HeartRate heartRate : segment.decodeAll(run)) {
+            if (isInRange(heartRate.getDate(), from, to) && query.matches(heartRate.getTags())) {
+              heartRates.add(heartRate);
+            }
+          }
         }
       }
     } catch (IOException e) {
@@ -259,23 +509,82 @@ public class DailyMetricsManager {
   }
 
   /**
-   * Adds a new period log entry to the period log file.
+   * Gets heart rate statistics per tag between two dates (inclusive), rolled up by day, week or month.
+   *
+   * @param from   The first date to include, or null for no lower bound.
+   * @param to     The last date to include, or null for no upper bound.
+   * @param period The period to roll the statistics up by.
+   * @return For each tag (null for samples without one), the statistics keyed by the first day of each period.
+   */
+  @Override
+  public Map<String, NavigableMap<LocalDate, HeartRateStats>> getHeartRateStatsByTag(LocalDate from, LocalDate to,
+      HeartRateRollup.Period period) {
+    Map<String, NavigableMap<LocalDate, HeartRateStats>> stats = new HashMap<>();
+
+    try {
+      for (Path file : heartRateFiles(from, to)) {
+        for (Map.Entry<Integer, NavigableMap<LocalDate, HeartRateStats>> tag
+            : heartRateRollupFor(file).statsByTag(from, to, period).entrySet()) {
+          int tagId = tag.getKey();
+          NavigableMap<LocalDate, HeartRateStats> tagStats = stats.computeIfAbsent(
+              tagId == HeartRateRollup.NO_TAG ? null : tagDictionary.tagFor(tagId), name -> new TreeMap<>());
+          // A week can span two monthly partitions
+          tag.getValue().forEach((start, periodStats) -> tagStats.merge(start, periodStats, HeartRateStats::combine));
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Error getting heart rate statistics: " + e.getMessage());
+    }
+
+    return stats;
+  }
+
+  /**
+   * Adds a batch of period log entries to the period log file with a single write.
+   * Concurrent batches for the same file are committed together (see {@link GroupCommitLog}).
    *
-   * @param periodLog The PeriodLog object to save.
+   * @param periodLogs The PeriodLog objects to save, in order.
+   * @param sync       Whether the entries must be forced to disk before returning.
    * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
    */
-  public boolean addPeriodLog(PeriodLog periodLog) {
+  @Override
+  public boolean addPeriodLogs(Collection<PeriodLog> periodLogs, boolean sync) {
+    for (PeriodLog periodLog : periodLogs) {
+      if (periodLog == null || periodLog.getDate() == null || periodLog.getEndDate() == null) {
+        throw new IllegalArgumentException("Period log must have a start and end date.");
+      }
+      if (periodLog.getEndDate().isBefore(periodLog.getDate())) {
+        throw new IllegalArgumentException("End date cannot be before start date.");
+      }
+    }
+    if (periodLogs.isEmpty()) {
+      return true;
+    }
+
     try {
-      // Append new entry
-      String entry = String.format("%s,%s,%s,%s",
-          periodLog.getDate().format(Constants.dateFormatter),
-          periodLog.getEndDate().format(Constants.dateFormatter),
-          periodLog.getFlowLevel(),
-          periodLog.getTags());
-
-      Files.write(Paths.get(userFolder + PERIOD_LOG_FILE),
-          Collections.singletonList(entry),
-          StandardOpenOption.APPEND);
+      // Register the tags, so that entries read back share the dictionary's instances
+      for (PeriodLog periodLog : periodLogs) {
+        if (periodLog.getTags() != null) {
+          tagDictionary.idFor(periodLog.getTags());
+        }
+      }
+
+      // Encode the whole batch into one buffer
+      RecordEncoder encoder = RecordEncoder.forCurrentThread();
+      for (PeriodLog periodLog : periodLogs) {
+        encoder.date(periodLog.getDate()).comma()
+            .date(periodLog.getEndDate()).comma()
+            .text(periodLog.getFlowLevel()).comma()
+            .text(periodLog.getTags()).newLine();
+      }
+
+      GroupCommitLog.forFile(Paths.get(userFolder + PERIOD_LOG_FILE)).append(encoder.buffer(), encoder.size(), sync);
+      for (PeriodLog periodLog : periodLogs) {
+        cache.addPeriodLog(userFolder, periodLog);
+      }
+      periodLogTagIndex().refresh();
+      periodLogIndex().refresh();
       return true;
     } catch (IOException e) {
       System.err.println("Error adding period log: " + e.getMessage());
@@ -288,23 +597,92 @@ public class DailyMetricsManager {
    *
    * @return List of PeriodLog objects.
    */
+  @Override
   public List<PeriodLog> getPeriodLogs() {
+    List<PeriodLog> cached = cache.getPeriodLogs(userFolder);
+    if (cached != null) {
+      return cached;
+    }
+
     List<PeriodLog> periodLogs = new ArrayList<>();
+    long stamp = cache.writeStamp(userFolder);
+
+    try (CsvRecordParser parser = CsvRecordParser.open(Paths.get(userFolder + PERIOD_LOG_FILE))) {
+      while (parser.next()) {
+        PeriodLog periodLog = decodePeriodLog(parser);
+        if (periodLog != null) {
+          periodLogs.add(periodLog);
+        }
+      }
+      cache.putPeriodLogs(userFolder, periodLogs, stamp);
+    } catch (IOException e) {
+      System.err.println("Error getting period logs: " + e.getMessage());
+    }
 
+    return periodLogs;
+  }
+
+  /**
+   * Gets the period logs that overlap two dates (inclusive), using the interval index of the period log.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return List of PeriodLog objects, by start date.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  @Override
+  public List<PeriodLog> getPeriodLogs(LocalDate from, LocalDate to) {
+    checkRange(from, to);
     try {
-      List<String> lines = Files.readAllLines(Paths.get(userFolder + PERIOD_LOG_FILE));
+      return periodLogIndex().overlapping(from, to);
+    } catch (IOException e) {
+      System.err.println("Error getting period logs: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
 
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
+  /**
+   * Gets the cycle length statistics of all period logs, e.g. to predict the next period.
+   *
+   * @return The statistics.
+   */
+  @Override
+  public CycleStats getCycleStats() {
+    try {
+      return periodLogIndex().cycleStats();
+    } catch (IOException e) {
+      System.err.println("Error getting cycle statistics: " + e.getMessage());
+      return new CycleStats(0, 0, 0, 0, 0, null);
+    }
+  }
 
-        if (parts.length >= 4) {
-          LocalDate startDate = LocalDate.parse(parts[0], Constants.dateFormatter);
-          LocalDate endDate = LocalDate.parse(parts[1], Constants.dateFormatter);
-          String flowLevel = parts[2];
-          String tags = parts[3];
+  /**
+   * Gets the period logs matching a tag query that overlap two dates (inclusive).
+   * Only the rows the tag index points to are read.
+   *
+   * @param query The tags to match.
+   * @param from  The first date to include, or null for no lower bound.
+   * @param to    The last date to include, or null for no upper bound.
+   * @return List of matching PeriodLog objects, in the order they were added.
+   */
+  @Override
+  public List<PeriodLog> getPeriodLogs(TagQuery query, LocalDate from, LocalDate to) {
+    List<PeriodLog> periodLogs = new ArrayList<>();
 
-          periodLogs.add(new PeriodLog(tags, startDate, endDate, flowLevel));
+    try {
+      int[] tagIds = tagIdsOf(query);
+      if (tagIds.length == 0) {
+        return periodLogs;
+      }
+      for (byte[] run : periodLogTagIndex().readRuns(tagIds, query.isMatchAll(), from, to)) {
+        try (CsvRecordParser parser = new CsvRecordParser(new ByteArrayInputStream(run))) {
+          while (parser.next()) {
+            PeriodLog log = decodePeriodLog(parser);
+            if (log != null && (to == null || !log.getDate().isAfter(to))
+                && (from == null || !log.getEndDate().isBefore(from)) && query.matches(log.getTags())) {
+              periodLogs.add(log);
+            }
+          }
         }
       }
     } catch (IOException e) {
@@ -315,24 +693,18 @@ public class DailyMetricsManager {
   }
 
   /**
-   * Gets period logs for a specific month.
+   * Gets every tag the user has logged entries with.
    *
-   * @param year The year.
-   * @param month The month (1-12).
-   * @return List of PeriodLog objects for the specified month.
+   * @return The tags, in the order they were first used.
    */
-  public List<PeriodLog> getPeriodLogsByMonth(int year, int month) {
-    List<PeriodLog> allLogs = getPeriodLogs();
-    List<PeriodLog> filteredLogs = new ArrayList<>();
-
-    for (PeriodLog log : allLogs) {
-      LocalDate startDate = log.getDate();
-      if (startDate.getYear() == year && startDate.getMonthValue() == month) {
-        filteredLogs.add(log);
-      }
+  @Override
+  public List<String> getTags() {
+    try {
+      return Arrays.asList(tagDictionary.tags());
+    } catch (IOException e) {
+      System.err.println("Error getting tags: " + e.getMessage());
+      return new ArrayList<>();
     }
-
-    return filteredLogs;
   }
 
   /**
@@ -340,24 +712,19 @@ public class DailyMetricsManager {
    *
    * @return Map with LocalDate keys and Weight values.
    */
+  @Override
   public Map<LocalDate, Weight> getAllWeights() {
-    Map<LocalDate, Weight> weights = new HashMap<>();
-
-    try {
-      List<String> lines = Files.readAllLines(Paths.get(userFolder + DAILY_METRICS_FILE));
-
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
+    Map<LocalDate, Weight> weights = cache.getWeights(userFolder);
+    if (weights != null) {
+      return weights;
+    }
 
-        if (parts.length >= 3) {
-          LocalDate date = LocalDate.parse(parts[0], Constants.dateFormatter);
-          double weightValue = Double.parseDouble(parts[1]);
-          String unit = parts[2];
+    weights = new HashMap<>();
+    long stamp = cache.writeStamp(userFolder);
 
-          weights.put(date, new Weight(weightValue, unit));
-        }
-      }
+    try {
+      weights = weightLog.readAll();
+      cache.putWeights(userFolder, weights, stamp);
     } catch (IOException e) {
       System.err.println("Error getting all weights: " + e.getMessage());
     }
@@ -370,28 +737,32 @@ public class DailyMetricsManager {
    *
    * @return Map with LocalDate keys and Lists of Steps values.
    */
+  @Override
   public Map<LocalDate, List<Steps>> getAllSteps() {
-    Map<LocalDate, List<Steps>> allSteps = new HashMap<>();
-
-    try {
-      List<String> lines = Files.readAllLines(Paths.get(userFolder + STEPS_FILE));
-
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
-
-        if (parts.length >= 2) {
-          LocalDate date = LocalDate.parse(parts[0], Constants.dateFormatter);
-          int stepsCount = Integer.parseInt(parts[1]);
+    Map<LocalDate, List<Steps>> allSteps = cache.getSteps(userFolder);
+    if (allSteps != null) {
+      return allSteps;
+    }
 
-          Steps step = new Steps(date, stepsCount);
+    allSteps = new HashMap<>();
+    long stamp = cache.writeStamp(userFolder);
 
-          if (!allSteps.containsKey(date)) {
-            allSteps.put(date, new ArrayList<>());
+    try {
+      for (Path file : stepsFiles(null, null)) {
+        try (CsvRecordParser parser = CsvRecordParser.open(file)) {
+          while (parser.next()) {
+            Steps step = decodeSteps(parser);
+            if (step != null) {
+              LocalDate date = step.getDate();
+              if (!allSteps.containsKey(date)) {
+                allSteps.put(date, new ArrayList<>());
+              }
+              allSteps.get(date).add(step);
+            }
           }
-          allSteps.get(date).add(step);
         }
       }
+      cache.putSteps(userFolder, allSteps, stamp);
     } catch (IOException e) {
       System.err.println("Error getting all steps: " + e.getMessage());
     }
@@ -404,34 +775,327 @@ public class DailyMetricsManager {
    *
    * @return Map with LocalDate keys and Lists of HeartRate values.
    */
+  @Override
   public Map<LocalDate, List<HeartRate>> getAllHeartRates() {
-    Map<LocalDate, List<HeartRate>> allHeartRates = new HashMap<>();
-
-    try {
-      List<String> lines = Files.readAllLines(Paths.get(userFolder + HEART_RATE_FILE));
-
-      for (int i = 1; i < lines.size(); i++) { // Skip header
-        String line = lines.get(i);
-        String[] parts = line.split(",");
-
-        if (parts.length >= 4) {
-          LocalDate date = LocalDate.parse(parts[0], Constants.dateFormatter);
-          LocalTime time = LocalTime.parse(parts[1], Constants.timeFormatter);
-          String tags = parts[2];
-          int heartRateValue = Integer.parseInt(parts[3]);
+    Map<LocalDate, List<HeartRate>> allHeartRates = cache.getHeartRates(userFolder);
+    if (allHeartRates != null) {
+      return allHeartRates;
+    }
 
-          HeartRate heartRate = new HeartRate(tags, date, time, heartRateValue);
+    allHeartRates = new HashMap<>();
+    long stamp = cache.writeStamp(userFolder);
 
+    try {
+      for (Path file : heartRateFiles(null, null)) {
+        for (HeartRate heartRate : heartRateSegmentFor(file).readAll()) {
+          LocalDate date = heartRate.getDate();
           if (!allHeartRates.containsKey(date)) {
             allHeartRates.put(date, new ArrayList<>());
           }
           allHeartRates.get(date).add(heartRate);
         }
       }
+      cache.putHeartRates(userFolder, allHeartRates, stamp);
     } catch (IOException e) {
       System.err.println("Error getting all heart rates: " + e.getMessage());
     }
 
     return allHeartRates;
   }
-}
\ No newline at end of file
+
+  /**
+   * Streams steps entries between two dates (inclusive), reading the partitions of the months in the range
+   * lazily, one at a time, so that histories of any size are processed in constant memory.
+   * The stream holds a file open until it is closed, e.g. with try-with-resources.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return Stream of Steps objects, by month and in file order within a month.
+   */
+  @Override
+  public Stream<Steps> streamSteps(LocalDate from, LocalDate to) {
+    try {
+      return stepsFiles(from, to).stream()
+          .flatMap(file -> {
+            try {
+              return streamRecords(file, DailyMetricsManager::decodeSteps);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          })
+          .filter(steps -> isInRange(steps.getDate(), from, to));
+    } catch (IOException e) {
+      System.err.println("Error streaming steps: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  /**
+   * Streams heart rate entries between two dates (inclusive), reading the segments of the months in the
+   * range lazily, one at a time, so that histories of any size are processed in constant memory.
+   * The stream holds a file open until it is closed, e.g. with try-with-resources.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return Stream of HeartRate objects, by month and in the order they were added within a month.
+   */
+  @Override
+  public Stream<HeartRate> streamHeartRates(LocalDate from, LocalDate to) {
+    try {
+      return heartRateFiles(from, to).stream()
+          .flatMap(file -> {
+            try {
+              return heartRateSegmentFor(file).stream(from, to);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          });
+    } catch (IOException e) {
+      System.err.println("Error streaming heart rates: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  /**
+   * Streams the period logs that overlap two dates (inclusive), reading the period log file lazily.
+   * The stream holds the file open until it is closed, e.g. with try-with-resources.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return Stream of PeriodLog objects in file order.
+   */
+  @Override
+  public Stream<PeriodLog> streamPeriodLogs(LocalDate from, LocalDate to) {
+    try {
+      return streamRecords(Paths.get(userFolder + PERIOD_LOG_FILE), this::decodePeriodLog)
+          .filter(log -> (to == null || !log.getDate().isAfter(to))
+              && (from == null || !log.getEndDate().isBefore(from)));
+    } catch (IOException e) {
+      System.err.println("Error streaming period logs: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  /**
+   * Lists the steps files that may hold entries in a date range: the pre-partitioning steps file,
+   * if the user has one, followed by the monthly partitions that overlap the range.
+   *
+   * @param from The first date of the range, or null for no lower bound.
+   * @param to   The last date of the range, or null for no upper bound.
+   * @return The files to read, oldest data first.
+   * @throws IOException If the partitions cannot be listed.
+   */
+  private List<Path> stepsFiles(LocalDate from, LocalDate to) throws IOException {
+    return withLegacyFile(Paths.get(userFolder + STEPS_FILE), stepsPartitions.files(from, to));
+  }
+
+  /**
+   * Lists the heart rate segments that may hold entries in a date range: the pre-partitioning segment,
+   * if the user has one, followed by the monthly partitions that overlap the range.
+   *
+   * @param from The first date of the range, or null for no lower bound.
+   * @param to   The last date of the range, or null for no upper bound.
+   * @return The segments to read, oldest data first.
+   * @throws IOException If the partitions cannot be listed.
+   */
+  private List<Path> heartRateFiles(LocalDate from, LocalDate to) throws IOException {
+    return withLegacyFile(Paths.get(userFolder + HEART_RATE_SEGMENT_FILE), heartRatePartitions.files(from, to));
+  }
+
+  private static List<Path> withLegacyFile(Path legacyFile, List<Path> partitions) {
+    if (!Files.exists(legacyFile)) {
+      return partitions;
+    }
+    List<Path> files = new ArrayList<>(partitions.size() + 1);
+    files.add(legacyFile);
+    files.addAll(partitions);
+    return files;
+  }
+
+  private HeartRateSegment heartRateSegmentFor(Path file) {
+    return new HeartRateSegment(file, tagDictionary);
+  }
+
+  private static StepsRollup stepsRollupFor(Path file) {
+    return StepsRollup.forFile(file, siblingFileFor(file, TOTALS_EXTENSION));
+  }
+
+  private static HeartRateRollup heartRateRollupFor(Path file) {
+    return HeartRateRollup.forFile(file, siblingFileFor(file, ROLLUP_EXTENSION));
+  }
+
+  private static TagIndex heartRateTagIndexFor(Path file) {
+    return TagIndex.forFile(file, siblingFileFor(file, TAG_INDEX_EXTENSION), HeartRateSegment.TAG_ROW_FORMAT);
+  }
+
+  private TagIndex periodLogTagIndex() {
+    Path file = Paths.get(userFolder + PERIOD_LOG_FILE);
+    return TagIndex.forFile(file, siblingFileFor(file, TAG_INDEX_EXTENSION),
+        TagIndex.csvRowFormat(tagDictionary, 3, 0, 1));
+  }
+
+  private PeriodLogIndex periodLogIndex() {
+    return PeriodLogIndex.forFile(Paths.get(userFolder + PERIOD_LOG_FILE), this::decodePeriodLog);
+  }
+
+  /**
+   * Resolves the tags of a query to dictionary ids. Tags that were never logged match no entries,
+   * so they are dropped from an "any of" query and make an "all of" query match nothing.
+   *
+   * @param query The tag query.
+   * @return The ids to look up, or an empty array if nothing can match.
+   * @throws IOException If the tag dictionary cannot be read.
+   */
+  private int[] tagIdsOf(TagQuery query) throws IOException {
+    List<Integer> ids = new ArrayList<>();
+    for (String tag : query.getTags()) {
+      int id = tagDictionary.idOf(tag);
+      if (id >= 0) {
+        ids.add(id);
+      } else if (query.isMatchAll()) {
+        return new int[0];
+      }
+    }
+    return ids.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  private static DateOffsetIndex stepsIndexFor(Path file) {
+    return DateOffsetIndex.forFile(file, indexFileFor(file));
+  }
+
+  private static HeartRateDayIndex heartRateIndexFor(Path file) {
+    return HeartRateDayIndex.forFile(file, indexFileFor(file));
+  }
+
+  /**
+   * Returns the date index file of a data file: the same name with an ".idx" extension,
+   * e.g. "steps.idx" for "steps.txt" or "2026-10.idx" for "2026-10.seg".
+   */
+  private static Path indexFileFor(Path file) {
+    return siblingFileFor(file, INDEX_EXTENSION);
+  }
+
+  /**
+   * Returns the file next to a data file with the same name and another extension,
+   * e.g. "2026-10.rollup" for "2026-10.seg".
+   */
+  private static Path siblingFileFor(Path file, String extension) {
+    String name = file.getFileName().toString();
+    return file.resolveSibling(name.substring(0, name.lastIndexOf('.')) + extension);
+  }
+
+  /**
+   * Decodes a "date,steps" row read through the date index.
+   *
+   * @param row The row, possibly with its line terminator.
+   * @return The Steps object, or null if the row has no steps field.
+   */
+  private static Steps decodeSteps(byte[] row) {
+    int end = row.length;
+    while (end > 0 && (row[end - 1] == '\n' || row[end - 1] == '\r')) {
+      end--;
+    }
+    int comma = 0;
+    while (comma < end && row[comma] != ',') {
+      comma++;
+    }
+    if (comma == end) {
+      return null;
+    }
+    return new Steps(CsvRecordParser.parseDate(row, 0, comma), CsvRecordParser.parseInt(row, comma + 1, end));
+  }
+
+  /**
+   * Decodes a "date,steps" record.
+   *
+   * @param parser The parser positioned at the record.
+   * @return The Steps object, or null if the record has too few fields.
+   */
+  private static Steps decodeSteps(CsvRecordParser parser) {
+    if (parser.fieldCount() < 2) {
+      return null;
+    }
+    return new Steps(parser.dateField(0), parser.intField(1));
+  }
+
+  /**
+   * Decodes a "startDate,endDate,flowLevel,tags" record, sharing the tag dictionary's instance of the tag.
+   *
+   * @param parser The parser positioned at the record.
+   * @return The PeriodLog object, or null if the record has too few fields.
+   */
+  private PeriodLog decodePeriodLog(CsvRecordParser parser) {
+    if (parser.fieldCount() < 4) {
+      return null;
+    }
+    return new PeriodLog(tagDictionary.intern(parser.stringField(3)), parser.dateField(0), parser.dateField(1),
+        parser.stringField(2));
+  }
+
+  /**
+   * Streams the decoded records of a CSV metric file, reading it lazily.
+   *
+   * @param file    The file to read.
+   * @param decoder Decodes the current record, returning null to skip it.
+   * @param <T>     The type of the decoded records.
+   * @return Stream of decoded records in file order, which closes the file when closed.
+   * @throws IOException If the file cannot be opened.
+   */
+  private static <T> Stream<T> streamRecords(Path file, Function<CsvRecordParser, T> decoder) throws IOException {
+    CsvRecordParser parser = CsvRecordParser.open(file);
+    Spliterator<T> records = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+          while (parser.next()) {
+            T record = decoder.apply(parser);
+            if (record != null) {
+              action.accept(record);
+              return true;
+            }
+          }
+          return false;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+
+    return StreamSupport.stream(records, false).onClose(() -> {
+      try {
+        parser.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Validates the bounds of a date range query.
+   *
+   * @param from The first date of the range.
+   * @param to   The last date of the range.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  private static void checkRange(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Date range must have a start and end date.");
+    }
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+  }
+
+  /**
+   * Checks whether a date lies between two optional bounds (inclusive).
+   *
+   * @param date The date to check.
+   * @param from The lower bound, or null for none.
+   * @param to   The upper bound, or null for none.
+   * @return true if the date is in range, false otherwise.
+   */
+  private static boolean isInRange(LocalDate date, LocalDate from, LocalDate to) {
+    return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+  }
+}
@@ -0,0 +1,161 @@
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-day steps totals as parallel primitive arrays, one element per day that has entries, in date order.
+ * For each day it holds the sum of its entries, the number of entries and the largest single entry.
+ * The arrays are shared, not copied, and must not be modified.
+ */
+public class DailyStepTotals {
+  private static final DailyStepTotals EMPTY = new DailyStepTotals(new int[0], new int[0], new int[0], new int[0]);
+  private final int[] epochDays;
+  private final int[] totals;
+  private final int[] counts;
+  private final int[] maxima;
+
+  /**
+   * Constructs totals from parallel arrays.
+   *
+   * @param epochDays The days as {@link LocalDate#toEpochDay()} values, in increasing order.
+   * @param totals    The sum of each day's entries.
+   * @param counts    The number of entries of each day.
+   * @param maxima    The largest entry of each day.
+   * @throws IllegalArgumentException If the arrays differ in length.
+   */
+  public DailyStepTotals(int[] epochDays, int[] totals, int[] counts, int[] maxima) {
+    if (totals.length != epochDays.length || counts.length != epochDays.length || maxima.length != epochDays.length) {
+      throw new IllegalArgumentException("Daily steps totals arrays must have the same length.");
+    }
+    this.epochDays = epochDays;
+    this.totals = totals;
+    this.counts = counts;
+    this.maxima = maxima;
+  }
+
+  /**
+   * Returns totals without any days.
+   *
+   * @return The empty totals.
+   */
+  public static DailyStepTotals empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Merges totals covering different files into one, adding up days present in more than one of them.
+   *
+   * @param parts The totals to merge.
+   * @return The merged totals, in date order.
+   */
+  public static DailyStepTotals merge(List<DailyStepTotals> parts) {
+    if (parts.isEmpty()) {
+      return EMPTY;
+    }
+    if (parts.size() == 1) {
+      return parts.get(0);
+    }
+
+    // Monthly partitions don't overlap, so in the usual case the parts just follow one another
+    int size = 0;
+    int lastDay = Integer.MIN_VALUE;
+    boolean disjoint = true;
+    for (DailyStepTotals part : parts) {
+      if (part.size() > 0) {
+        disjoint &= part.epochDays[0] > lastDay;
+        lastDay = part.epochDays[part.size() - 1];
+        size += part.size();
+      }
+    }
+
+    if (disjoint) {
+      DailyStepTotals merged = new DailyStepTotals(new int[size], new int[size], new int[size], new int[size]);
+      int position = 0;
+      for (DailyStepTotals part : parts) {
+        System.arraycopy(part.epochDays, 0, merged.epochDays, position, part.size());
+        System.arraycopy(part.totals, 0, merged.totals, position, part.size());
+        System.arraycopy(part.counts, 0, merged.counts, position, part.size());
+        System.arraycopy(part.maxima, 0, merged.maxima, position, part.size());
+        position += part.size();
+      }
+      return merged;
+    }
+
+    Map<Integer, int[]> days = new TreeMap<>();
+    for (DailyStepTotals part : parts) {
+      for (int i = 0; i < part.size(); i++) {
+        int[] day = days.computeIfAbsent(part.epochDays[i], key -> new int[3]);
+        day[0] += part.totals[i];
+        day[1] += part.counts[i];
+        day[2] = Math.max(day[2], part.maxima[i]);
+      }
+    }
+    DailyStepTotals merged = new DailyStepTotals(new int[days.size()], new int[days.size()],
+        new int[days.size()], new int[days.size()]);
+    int position = 0;
+    for (Map.Entry<Integer, int[]> day : days.entrySet()) {
+      merged.epochDays[position] = day.getKey();
+      merged.totals[position] = day.getValue()[0];
+      merged.counts[position] = day.getValue()[1];
+      merged.maxima[position] = day.getValue()[2];
+      position++;
+    }
+    return merged;
+  }
+
+  /**
+   * Returns the number of days with entries.
+   *
+   * @return The number of days.
+   */
+  public int size() {
+    return epochDays.length;
+  }
+
+  /**
+   * Returns the date of a day.
+   *
+   * @param index The index of the day.
+   * @return The date.
+   */
+  public LocalDate getDate(int index) {
+    return LocalDate.ofEpochDay(epochDays[index]);
+  }
+
+  /**
+   * Returns the days as {@link LocalDate#toEpochDay()} values, in increasing order.
+   *
+   * @return The shared array of days.
+   */
+  public int[] getEpochDays() {
+    return epochDays;
+  }
+
+  /**
+   * Returns the sum of each day's entries.
+   *
+   * @return The shared array of totals.
+   */
+  public int[] getTotals() {
+    return totals;
+  }
+
+  /**
+   * Returns the number of entries of each day.
+   *
+   * @return The shared array of counts.
+   */
+  public int[] getCounts() {
+    return counts;
+  }
+
+  /**
+   * Returns the largest single entry of each day.
+   *
+   * @return The shared array of maxima.
+   */
+  public int[] getMaxima() {
+    return maxima;
+  }
+}
@@ -0,0 +1,621 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent sidecar index that maps each date to the byte ranges of its rows in a metric file.
+ * The index file starts with a 4-byte magic header followed by one fixed-width 16-byte entry per data row,
+ * in the same order as the data file: the row's epoch day (an int, {@link Integer#MIN_VALUE} for rows without
+ * a valid date), its offset (a long) and its length (an int), where the length covers the whole row
+ * (for CSV files, including the line terminator).
+ * Loading the index decodes the entries without parsing any text, and lookups binary-search them, so a
+ * single-day lookup seeks straight to the matching rows instead of reading and splitting the whole file.
+ * If the index is missing, has gaps, is written in an older format, or lags behind the data file, it is
+ * repaired from the data file.
+ * The index also tracks whether the rows were appended in date order; date ranges of such files are
+ * contiguous and are read with a few large reads.
+ * Only the most recently used indexes keep their entries in memory (see {@link ResidentIndexes}); the others
+ * are reloaded from the index file on their next use.
+ */
+public class DateOffsetIndex implements ResidentIndexes.Unloadable {
+  private static final byte[] MAGIC = {'D', 'O', 'I', '1'};
+  private static final int ENTRY_SIZE = 16;
+  private static final int UNDATED = Integer.MIN_VALUE;
+  /**
+   * The most bytes read at once when reading a contiguous range of rows.
+   */
+  private static final int MAX_SPAN_BYTES = 1 << 20;
+  private static final RowFormat CSV = new CsvRowFormat();
+  private static final Map<Path, DateOffsetIndex> INDEXES = new ConcurrentHashMap<>();
+  private final Path dataFile;
+  private final Path indexFile;
+  private final RowFormat format;
+  private int[] days = new int[16];
+  private long[] offsets = new long[16];
+  private int[] lengths = new int[16];
+  private int rows;
+  /**
+   * The dated rows sorted by day and then by position, each as (day << 32 | row); only built for files
+   * that are not in date order.
+   */
+  private long[] byDay;
+  private boolean ordered = true;
+  private long indexedLength;
+  private boolean loaded;
+
+  /**
+   * Constructs an index for a CSV data file whose rows start with a date column.
+   *
+   * @param dataFile  The CSV data file.
+   * @param indexFile The sidecar file the index is persisted in.
+   */
+  public DateOffsetIndex(Path dataFile, Path indexFile) {
+    this(dataFile, indexFile, CSV);
+  }
+
+  /**
+   * Constructs an index for a data file with the given row layout.
+   *
+   * @param dataFile  The data file.
+   * @param indexFile The sidecar file the index is persisted in.
+   * @param format    How rows are laid out in the data file.
+   */
+  public DateOffsetIndex(Path dataFile, Path indexFile, RowFormat format) {
+    this.dataFile = dataFile;
+    this.indexFile = indexFile;
+    this.format = format;
+  }
+
+  /**
+   * Returns the index of a CSV data file, shared by all callers in the process.
+   *
+   * @param dataFile  The CSV data file.
+   * @param indexFile The sidecar file the index is persisted in.
+   * @return The index for the data file.
+   */
+  public static DateOffsetIndex forFile(Path dataFile, Path indexFile) {
+    return forFile(dataFile, indexFile, CSV);
+  }
+
+  /**
+   * Returns the index of a data file, shared by all callers in the process.
+   * Sharing one instance per file keeps appends from different callers from invalidating each other's index.
+   *
+   * @param dataFile  The data file.
+   * @param indexFile The sidecar file the index is persisted in.
+   * @param format    How rows are laid out in the data file.
+   * @return The index for the data file.
+   */
+  public static DateOffsetIndex forFile(Path dataFile, Path indexFile, RowFormat format) {
+    return INDEXES.computeIfAbsent(dataFile.toAbsolutePath().normalize(),
+        path -> new DateOffsetIndex(dataFile, indexFile, format));
+  }
+
+  /**
+   * Records a row that has just been appended to the data file.
+   *
+   * @param date   The date of the row.
+   * @param offset The byte offset the row starts at.
+   * @param length The length of the row in bytes, including the line terminator.
+   * @throws IOException If the index file cannot be written.
+   */
+  public synchronized void record(LocalDate date, long offset, long length) throws IOException {
+    recordAll(Collections.singletonList(date), offset, new long[]{length});
+  }
+
+  /**
+   * Records a batch of contiguous rows that has just been appended to the data file.
+   * Rows the index already covers are not recorded again, and rows that do not start where the index ends
+   * are left for the next lookup to catch up from the data file, so the index file never gets duplicates or gaps.
+   *
+   * @param dates   The dates of the rows, in file order.
+   * @param offset  The byte offset the first row starts at.
+   * @param lengths The lengths of the rows in bytes, in file order.
+   * @throws IOException If the index file cannot be written.
+   */
+  public synchronized void recordAll(List<LocalDate> dates, long offset, long[] lengths) throws IOException {
+    List<Entry> entries = new ArrayList<>(dates.size());
+    long rowOffset = offset;
+    for (int i = 0; i < dates.size(); i++) {
+      entries.add(new Entry(dates.get(i), rowOffset, lengths[i]));
+      rowOffset += lengths[i];
+    }
+
+    if (!loaded) {
+      if (persistedLength() == offset) {
+        appendEntries(entries);
+      }
+      // Otherwise the rows are already covered, or the next lookup catches up from the data file
+      return;
+    }
+    if (rowOffset <= indexedLength) {
+      return; // A lookup already picked these rows up from the data file
+    }
+    if (offset != indexedLength) {
+      loaded = false; // Someone else appended in between; reload on next lookup
+      return;
+    }
+    appendEntries(entries);
+    for (Entry entry : entries) {
+      add(entry.date, entry.offset, entry.length);
+    }
+    indexedLength = rowOffset;
+  }
+
+  /**
+   * Reads the raw rows recorded for a date, without the line terminators.
+   *
+   * @param date The date to look up.
+   * @return The rows for the date in file order, or an empty list if there are none.
+   * @throws IOException If the data or index file cannot be read.
+   */
+  public synchronized List<String> readRows(LocalDate date) throws IOException {
+    List<byte[]> records = readRecords(date);
+    List<String> rows = new ArrayList<>(records.size());
+    for (byte[] record : records) {
+      String row = new String(record, StandardCharsets.UTF_8);
+      int end = row.length();
+      while (end > 0 && (row.charAt(end - 1) == '\n' || row.charAt(end - 1) == '\r')) {
+        end--;
+      }
+      rows.add(row.substring(0, end));
+    }
+    return rows;
+  }
+
+  /**
+   * Reads the raw bytes of the rows recorded for a date.
+   *
+   * @param date The date to look up.
+   * @return The rows for the date in file order, or an empty list if there are none.
+   * @throws IOException If the data or index file cannot be read.
+   */
+  public synchronized List<byte[]> readRecords(LocalDate date) throws IOException {
+    ensureLoaded();
+    int[] matches = find(date.toEpochDay(), date.toEpochDay());
+    if (matches.length == 0) {
+      return Collections.emptyList();
+    }
+
+    List<byte[]> records = new ArrayList<>(matches.length);
+    try (RandomAccessFile file = new RandomAccessFile(dataFile.toFile(), "r")) {
+      for (int row : matches) {
+        byte[] buffer = new byte[lengths[row]];
+        file.seek(offsets[row]);
+        file.readFully(buffer);
+        records.add(buffer);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Reads the raw bytes of the rows recorded for a range of dates.
+   * If the rows were appended in date order, the range is read in spans of up to 1 MiB.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return The rows in file order, or an empty list if there are none.
+   * @throws IOException If the data or index file cannot be read.
+   */
+  public synchronized List<byte[]> readRecords(LocalDate from, LocalDate to) throws IOException {
+    ensureLoaded();
+    if (to.isBefore(from)) {
+      return Collections.emptyList();
+    }
+    int[] matches = find(from.toEpochDay(), to.toEpochDay());
+    if (matches.length == 0) {
+      return Collections.emptyList();
+    }
+
+    List<byte[]> records = new ArrayList<>(matches.length);
+    try (RandomAccessFile file = new RandomAccessFile(dataFile.toFile(), "r")) {
+      if (ordered) {
+        // The rows of the range are contiguous, apart from any undated rows in between
+        int first = 0;
+        while (first < matches.length) {
+          long start = offsets[matches[first]];
+          int end = first + 1;
+          while (end < matches.length && offsets[matches[end]] + lengths[matches[end]] - start <= MAX_SPAN_BYTES) {
+            end++;
+          }
+          int last = matches[end - 1];
+          byte[] span = new byte[Math.toIntExact(offsets[last] + lengths[last] - start)];
+          file.seek(start);
+          file.readFully(span);
+          for (int i = first; i < end; i++) {
+            int spanOffset = (int) (offsets[matches[i]] - start);
+            records.add(Arrays.copyOfRange(span, spanOffset, spanOffset + lengths[matches[i]]));
+          }
+          first = end;
+        }
+      } else {
+        for (int row : matches) {
+          byte[] buffer = new byte[lengths[row]];
+          file.seek(offsets[row]);
+          file.readFully(buffer);
+          records.add(buffer);
+        }
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Returns whether every dated row was appended on or after the date of the row before it.
+   *
+   * @return true if the data file is in date order, false otherwise.
+   * @throws IOException If the data or index file cannot be read.
+   */
+  public synchronized boolean isOrdered() throws IOException {
+    ensureLoaded();
+    return ordered;
+  }
+
+  /**
+   * Discards the index file and rebuilds it from the data file.
+   *
+   * @throws IOException If either file cannot be accessed.
+   */
+  public synchronized void rebuild() throws IOException {
+    clear();
+    Files.write(indexFile, MAGIC);
+    indexedLength = format.headerLength(dataFile);
+    catchUp();
+    loaded = true;
+  }
+
+  /**
+   * Drops the in-memory entries; the next lookup reloads them from the index file.
+   */
+  @Override
+  public synchronized void unload() {
+    clear();
+    days = new int[16];
+    offsets = new long[16];
+    lengths = new int[16];
+    loaded = false;
+  }
+
+  /**
+   * Loads the index file into memory, repairing it if it does not match the data file.
+   * Once loaded, rows appended without being recorded are caught up, and a data file that
+   * shrank (e.g. was compacted) is re-indexed.
+   *
+   * @throws IOException If either file cannot be accessed.
+   */
+  private void ensureLoaded() throws IOException {
+    ResidentIndexes.shared().touch(this);
+    if (loaded) {
+      long size = Files.size(dataFile);
+      if (size < indexedLength) {
+        rebuild();
+      } else if (size > indexedLength) {
+        catchUp();
+      }
+      return;
+    }
+    clear();
+    indexedLength = format.headerLength(dataFile);
+
+    ByteBuffer buffer = ByteBuffer.wrap(Files.exists(indexFile) ? Files.readAllBytes(indexFile) : new byte[0]);
+    if (buffer.remaining() < MAGIC.length || (buffer.remaining() - MAGIC.length) % ENTRY_SIZE != 0
+        || !Arrays.equals(Arrays.copyOf(buffer.array(), MAGIC.length), MAGIC)) {
+      rebuild(); // Missing, torn, or written in an older format
+      return;
+    }
+    buffer.position(MAGIC.length);
+    while (buffer.hasRemaining()) {
+      int day = buffer.getInt();
+      long offset = buffer.getLong();
+      int length = buffer.getInt();
+      if (offset != indexedLength || length <= 0) {
+        // Gap or overlap: the index no longer describes the data file
+        rebuild();
+        return;
+      }
+      if (day != UNDATED) {
+        add(day, offset, length);
+      }
+      indexedLength = offset + length;
+    }
+
+    if (Files.size(dataFile) < indexedLength) {
+      rebuild();
+      return;
+    }
+    catchUp();
+    loaded = true;
+  }
+
+  /**
+   * Returns the length of the data file the index file covers, read from its last entry, without loading it.
+   *
+   * A missing index file covers just the header, so the first rows of a new data file start it.
+   *
+   * @return The offset just past the last indexed row, or -1 if the index file is unreadable.
+   * @throws IOException If either file cannot be read.
+   */
+  private long persistedLength() throws IOException {
+    if (!Files.exists(indexFile)) {
+      return format.headerLength(dataFile);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(indexFile.toFile(), "r")) {
+      long size = file.length();
+      byte[] magic = new byte[MAGIC.length];
+      if (size < MAGIC.length || (size - MAGIC.length) % ENTRY_SIZE != 0) {
+        return -1;
+      }
+      file.readFully(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+        return -1;
+      }
+      if (size == MAGIC.length) {
+        return format.headerLength(dataFile);
+      }
+      file.seek(size - ENTRY_SIZE);
+      file.readInt();
+      return file.readLong() + file.readInt();
+    }
+  }
+
+  /**
+   * Returns the dated rows between two days (inclusive), found by binary search.
+   *
+   * @param fromDay The first epoch day to include.
+   * @param toDay   The last epoch day to include.
+   * @return The positions of the matching rows, in file order.
+   */
+  private int[] find(long fromDay, long toDay) {
+    int count = 0;
+    int[] matches;
+    if (ordered) {
+      int low = 0;
+      int high = rows;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (days[middle] < fromDay) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      int end = low;
+      while (end < rows && days[end] <= toDay) {
+        end++;
+      }
+      matches = new int[end - low];
+      for (int row = low; row < end; row++) {
+        matches[count++] = row;
+      }
+      return matches;
+    }
+
+    if (byDay == null) {
+      byDay = new long[rows];
+      for (int row = 0; row < rows; row++) {
+        byDay[row] = (long) days[row] << 32 | row;
+      }
+      Arrays.sort(byDay);
+    }
+    int low = 0;
+    int high = rows;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (byDay[middle] >> 32 < fromDay) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    int end = low;
+    while (end < rows && byDay[end] >> 32 <= toDay) {
+      end++;
+    }
+    matches = new int[end - low];
+    for (int i = low; i < end; i++) {
+      matches[count++] = (int) byDay[i];
+    }
+    Arrays.sort(matches);
+    return matches;
+  }
+
+  /**
+   * Indexes any rows appended to the data file past the currently indexed length.
+   *
+   * @throws IOException If either file cannot be accessed.
+   */
+  private void catchUp() throws IOException {
+    if (Files.size(dataFile) <= indexedLength) {
+      return;
+    }
+
+    List<Entry> newEntries = new ArrayList<>();
+    // Rows without a valid date are still recorded so the index stays contiguous
+    indexedLength = format.scan(dataFile, indexedLength, (date, offset, length) -> {
+      newEntries.add(new Entry(date, offset, length));
+      add(date, offset, length);
+    });
+    appendEntries(newEntries);
+  }
+
+  /**
+   * Appends index entries to the index file, starting it with the magic header if it is empty.
+   *
+   * @param entries The entries to append.
+   * @throws IOException If the index file cannot be written.
+   */
+  private void appendEntries(List<Entry> entries) throws IOException {
+    if (entries.isEmpty()) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + entries.size() * ENTRY_SIZE);
+    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      if (channel.size() == 0) {
+        buffer.put(MAGIC);
+      }
+      for (Entry entry : entries) {
+        buffer.putInt(entry.date == null ? UNDATED : Math.toIntExact(entry.date.toEpochDay()))
+            .putLong(entry.offset).putInt(Math.toIntExact(entry.length));
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  private void add(LocalDate date, long offset, long length) {
+    if (date != null) {
+      add(Math.toIntExact(date.toEpochDay()), offset, Math.toIntExact(length));
+    }
+  }
+
+  private void add(int day, long offset, int length) {
+    if (rows == days.length) {
+      days = Arrays.copyOf(days, rows * 2);
+      offsets = Arrays.copyOf(offsets, rows * 2);
+      lengths = Arrays.copyOf(lengths, rows * 2);
+    }
+    if (rows > 0 && day < days[rows - 1]) {
+      ordered = false;
+    }
+    days[rows] = day;
+    offsets[rows] = offset;
+    lengths[rows] = length;
+    rows++;
+    byDay = null;
+  }
+
+  private void clear() {
+    rows = 0;
+    byDay = null;
+    ordered = true;
+  }
+
+  /**
+   * Describes how rows are laid out in a data file, so the index can be rebuilt from it.
+   */
+  public interface RowFormat {
+    /**
+     * Returns the length of the header that precedes the first row.
+     *
+     * @param dataFile The data file.
+     * @return The header length in bytes.
+     * @throws IOException If the data file cannot be read.
+     */
+    long headerLength(Path dataFile) throws IOException;
+
+    /**
+     * Reports every complete row of the data file starting at the given offset.
+     *
+     * @param dataFile The data file.
+     * @param from     The offset of the first row to report.
+     * @param visitor  Receives the date (or null if it has none), offset and length of each row.
+     * @return The offset just past the last complete row.
+     * @throws IOException If the data file cannot be read.
+     */
+    long scan(Path dataFile, long from, RowVisitor visitor) throws IOException;
+  }
+
+  /**
+   * Receives the rows found while scanning a data file.
+   */
+  public interface RowVisitor {
+    /**
+     * Called once per row, in file order.
+     *
+     * @param date   The date of the row, or null if it has no valid date.
+     * @param offset The byte offset of the row.
+     * @param length The length of the row in bytes.
+     */
+    void visit(LocalDate date, long offset, long length);
+  }
+
+  /**
+   * Text rows terminated by a newline, with the date in the first comma-separated column.
+   * The first line of the file is a header.
+   */
+  private static final class CsvRowFormat implements RowFormat {
+    @Override
+    public long headerLength(Path dataFile) throws IOException {
+      long length = 0;
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(dataFile))) {
+        int b;
+        while ((b = in.read()) != -1) {
+          length++;
+          if (b == '\n') {
+            return length;
+          }
+        }
+      }
+      return length;
+    }
+
+    @Override
+    public long scan(Path dataFile, long from, RowVisitor visitor) throws IOException {
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(dataFile))) {
+        in.skipNBytes(from);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long lineStart = from;
+        long position = from;
+        int b;
+        while ((b = in.read()) != -1) {
+          position++;
+          if (b != '\n') {
+            line.write(b);
+            continue;
+          }
+          visitor.visit(parseLeadingDate(line.toString(StandardCharsets.UTF_8)), lineStart, position - lineStart);
+          line.reset();
+          lineStart = position;
+        }
+        // A trailing row without a terminator is still being written; leave it for the next scan
+        return lineStart;
+      }
+    }
+
+    private static LocalDate parseLeadingDate(String line) {
+      int comma = line.indexOf(',');
+      if (comma < 0) {
+        return null;
+      }
+      try {
+        return LocalDate.parse(line.substring(0, comma), Constants.dateFormatter);
+      } catch (DateTimeParseException e) {
+        return null; // malformed row
+      }
+    }
+  }
+
+  /**
+   * A single index entry: the byte range of one data row.
+   */
+  private static final class Entry {
+    private final LocalDate date;
+    private final long offset;
+    private final long length;
+
+    private Entry(LocalDate date, long offset, long length) {
+      this.date = date;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
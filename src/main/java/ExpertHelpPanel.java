@@ -4,6 +4,12 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 import com.google.gson.JsonArray;
@@ -16,8 +22,8 @@ public class ExpertHelpPanel extends JPanel {
   private JButton submitButton;
   private JComboBox<String> topicSelector;
   private String apiKey= "";
-  private final String username;
-  private final DailyMetricsManager metricsManager;
+  private final UserSession session;
+  private final MetricsStore metricsManager;
 
   private static final String CONFIG_FILE = "config.properties";
   private static final String[] TOPICS = {
@@ -25,9 +31,9 @@ public class ExpertHelpPanel extends JPanel {
       "Period Health (Female)"
   };
 
-  public ExpertHelpPanel(String username) {
-    this.username = username;
-    this.metricsManager = new DailyMetricsManager(username);
+  public ExpertHelpPanel(UserSession session) {
+    this.session = session;
+    this.metricsManager = MetricsStore.forUser(session.getUsername());
 
     setLayout(new BorderLayout(10, 10));
     setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
@@ -176,6 +182,7 @@ public class ExpertHelpPanel extends JPanel {
     } else {// For general health, include summary of all data
       appendBasicHealthSummary(prompt);
     }
+    appendTaggedData(prompt, question);
 
     prompt.append("\nUser Question: ").append(question).append("\n\n");
     prompt.append("Provide helpful, evidence-based health advice. Include specific recommendations based on the data provided. Format your response in an easy-to-read way with headings and bullet points where appropriate.");
@@ -185,26 +192,32 @@ public class ExpertHelpPanel extends JPanel {
 
   private void appendHeartRateData(StringBuilder prompt) {
     prompt.append("HEART RATE DATA:\n");
-    var heartRates = metricsManager.getAllHeartRates();
+    // Stream so that only the entries we include are read from disk
+    List<HeartRate> heartRates;
+    try (Stream<HeartRate> stream = metricsManager.streamHeartRates(null, null)) {
+      heartRates = stream.limit(10).collect(Collectors.toList()); // Limit to 10 entries to keep prompt size reasonable
+    }
     if (heartRates.isEmpty()) {
       prompt.append("No heart rate data available.\n");
       return;
     }
 
-    int count = 0;
-    for (var entry : heartRates.entrySet()) {
-      for (HeartRate hr : entry.getValue()) {
-        prompt.append(hr.toString()).append("\n");
-        count++;
-        if (count >= 10) break; // Limit to 10 entries to keep prompt size reasonable
-      }
-      if (count >= 10) break;
+    // Monthly statistics come from the rollups, so they cover the whole history without reading every sample
+    Map<LocalDate, HeartRateStats> monthlyStats = metricsManager.getHeartRateStats(null, null,
+        HeartRateRollup.Period.MONTH);
+    for (Map.Entry<LocalDate, HeartRateStats> month : monthlyStats.entrySet()) {
+      prompt.append("Month: ").append(YearMonth.from(month.getKey()))
+          .append(", ").append(month.getValue())
+          .append("\n");
+    }
+    prompt.append("Sample entries:\n");
+    for (HeartRate hr : heartRates) {
+      prompt.append(hr.toString()).append("\n");
     }
   }
 
-  private void appendWeightData(StringBuilder prompt) {
+  private void appendWeightData(StringBuilder prompt, Map<LocalDate, Weight> weights) {
     prompt.append("WEIGHT DATA:\n");
-    var weights = metricsManager.getAllWeights();
     if (weights.isEmpty()) {
       prompt.append("No weight data available.\n");
       return;
@@ -220,20 +233,17 @@ public class ExpertHelpPanel extends JPanel {
 
   private void appendStepsData(StringBuilder prompt) {
     prompt.append("STEPS DATA:\n");
-    var stepsData = metricsManager.getAllSteps();
+    List<Steps> stepsData;
+    try (Stream<Steps> stream = metricsManager.streamSteps(null, null)) {
+      stepsData = stream.limit(10).collect(Collectors.toList());
+    }
     if (stepsData.isEmpty()) {
       prompt.append("No steps data available.\n");
       return;
     }
 
-    int count = 0;
-    for (var entry : stepsData.entrySet()) {
-      for (Steps steps : entry.getValue()) {
-        prompt.append(steps.toString()).append("\n");
-        count++;
-        if (count >= 10) break;
-      }
-      if (count >= 10) break;
+    for (Steps steps : stepsData) {
+      prompt.append(steps.toString()).append("\n");
     }
   }
 
@@ -248,28 +258,60 @@ public class ExpertHelpPanel extends JPanel {
     for (PeriodLog log : periodLogs) {
       prompt.append(log.toString()).append("\n");
     }
+
+    CycleStats cycleStats = metricsManager.getCycleStats();
+    if (cycleStats.getCount() > 0) {
+      prompt.append(cycleStats).append("\n");
+      prompt.append("Predicted next period: ")
+          .append(cycleStats.predictNextStart().format(Constants.dateFormatter)).append("\n");
+    }
   }
 
-  private void appendBasicHealthSummary(StringBuilder prompt) {
-    // Add basic user data
-    try {
-      UserProfile profile = UserDataStorage.getUserProfile(username);
-      if (profile != null) {
-        prompt.append("USER PROFILE:\n");
-        prompt.append("Gender: ").append(profile.getGender()).append("\n");
-        prompt.append("Age: ").append(profile.getAge()).append("\n");
+  private void appendTaggedData(StringBuilder prompt, String question) {
+    // Tags named in the question, e.g. "Cycling", get their own section read through the tag index
+    String lowerQuestion = question.toLowerCase();
+    for (String tag : metricsManager.getTags()) {
+      if (tag.isEmpty() || !lowerQuestion.contains(tag.toLowerCase())) {
+        continue;
+      }
+      TagQuery query = TagQuery.anyOf(tag);
+      List<HeartRate> heartRates = metricsManager.getHeartRates(query, null, null);
+      List<PeriodLog> periodLogs = metricsManager.getPeriodLogs(query, null, null);
+      if (heartRates.isEmpty() && periodLogs.isEmpty()) {
+        continue;
+      }
+
+      prompt.append("DATA TAGGED \"").append(tag).append("\":\n");
+      if (!heartRates.isEmpty()) {
+        HeartRateStats stats = new HeartRateStats();
+        for (HeartRate hr : heartRates) {
+          stats.add(hr.getHeartRate());
+        }
+        prompt.append("Heart rate: ").append(stats).append("\n");
+        for (HeartRate hr : heartRates.subList(Math.max(0, heartRates.size() - 10), heartRates.size())) {
+          prompt.append(hr.toString()).append("\n"); // The 10 most recently added entries
+        }
+      }
+      for (PeriodLog log : periodLogs) {
+        prompt.append(log.toString()).append("\n");
       }
-    } catch (Exception e) {
-      // Ignore profile errors
     }
+  }
+
+  private void appendBasicHealthSummary(StringBuilder prompt) {
+    // Add basic user data
+    UserProfile profile = session.getProfile();
+    prompt.append("USER PROFILE:\n");
+    prompt.append("Gender: ").append(profile.getGender()).append("\n");
+    prompt.append("Age: ").append(profile.getAge()).append("\n");
 
     // Add summary counts
     prompt.append("DATA SUMMARY:\n");
-    appendWeightData(prompt);
+    var weights = metricsManager.getAllWeights();
+    appendWeightData(prompt, weights);
     appendStepsData(prompt);
     appendHeartRateData(prompt);
     // Include most recent data points if available
-    var weights = metricsManager.getAllWeights();
     if (!weights.isEmpty()) {
       var lastWeight = weights.entrySet().stream().reduce((a, b) -> a.getKey().isAfter(b.getKey()) ? a : b).orElse(null);
       if (lastWeight != null) {
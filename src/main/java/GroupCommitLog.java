@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Appends encoded records to a file with group commit.
+ * Concurrent callers queue their buffers; whichever caller finds no write in progress becomes the leader,
+ * writes every queued buffer with a single write (and at most one fsync), and hands each caller
+ * back the offset its buffer landed at. The leader writes on behalf of the others, so the write does not go
+ * through an interruptible channel: an interrupted leader cannot fail its followers' appends. All appends to a file within the process go through one instance,
+ * so the offsets are exact.
+ * Once more than {@link #MAX_REGISTERED_LOGS} files have logs, idle logs are retired; an append to a retired
+ * log is handed on to the file's current log.
+ */
+public class GroupCommitLog {
+  /**
+   * The number of registered logs above which idle logs are retired.
+   */
+  public static final int MAX_REGISTERED_LOGS = 256;
+  private static final Map<Path, GroupCommitLog> LOGS = new ConcurrentHashMap<>();
+  private final Path file;
+  private final Object lock = new Object();
+  private List<Append> pending = new ArrayList<>();
+  private boolean writing;
+  private boolean retired;
+
+  private GroupCommitLog(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the group commit log for a file, shared by all callers in the process.
+   *
+   * @param file The file to append to. It must already exist.
+   * @return The group commit log for the file.
+   */
+  public static GroupCommitLog forFile(Path file) {
+    GroupCommitLog log = LOGS.computeIfAbsent(file.toAbsolutePath().normalize(), GroupCommitLog::new);
+    if (LOGS.size() > MAX_REGISTERED_LOGS) {
+      retireIdleLogs(log);
+    }
+    return log;
+  }
+
+  /**
+   * Returns the number of files that currently have a registered log.
+   *
+   * @return The number of registered logs.
+   */
+  public static int registeredCount() {
+    return LOGS.size();
+  }
+
+  /**
+   * Unregisters every log that has no write in progress and nothing queued.
+   * A retired log never writes again, so there is still at most one writer per file.
+   *
+   * @param keep A log to leave registered, e.g. the one about to be returned to a caller.
+   */
+  private static void retireIdleLogs(GroupCommitLog keep) {
+    for (GroupCommitLog log : LOGS.values()) {
+      if (log == keep) {
+        continue;
+      }
+      synchronized (log.lock) {
+        if (!log.writing && log.pending.isEmpty()) {
+          log.retired = true;
+          LOGS.remove(log.file, log);
+        }
+      }
+    }
+  }
+
+  /**
+   * Appends a buffer to the file, possibly together with buffers from other callers.
+   *
+   * @param data The bytes to append.
+   * @param sync Whether the data must be forced to the storage device before returning.
+   * @return The byte offset the data was written at.
+   * @throws IOException If the file cannot be written.
+   */
+  public long append(byte[] data, boolean sync) throws IOException {
+    return append(data, data.length, sync);
+  }
+
+  /**
+   * Appends the first bytes of a buffer to the file, possibly together with buffers from other callers.
+   * The buffer is not copied; it must not change until this method returns.
+   * A caller interrupted while queued gives up only if no leader has taken its buffer yet; otherwise it
+   * waits for the write and returns its outcome with the interrupt flag set.
+   *
+   * @param data   The buffer holding the bytes to append.
+   * @param length The number of bytes to append from the start of the buffer.
+   * @param sync   Whether the data must be forced to the storage device before returning.
+   * @return The byte offset the data was written at.
+   * @throws IOException If the file cannot be written, or the caller was interrupted before its buffer was taken.
+   */
+  public long append(byte[] data, int length, boolean sync) throws IOException {
+    Append append = new Append(data, length, sync);
+    List<Append> batch;
+
+    synchronized (lock) {
+      if (retired) {
+        batch = null;
+      } else {
+        pending.add(append);
+        boolean interrupted = false;
+        while (writing && !append.done) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            if (pending.remove(append)) {
+              Thread.currentThread().interrupt();
+              throw new IOException("Interrupted while waiting for group commit.", e);
+            }
+            // A leader has already taken our buffer, so it will be written; wait for the outcome
+            interrupted = true;
+          }
+        }
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+        if (append.done) {
+          return append.result();
+        }
+        // Become the leader and take everything queued so far, including our own append
+        writing = true;
+        batch = pending;
+        pending = new ArrayList<>();
+      }
+    }
+    if (batch == null) {
+      // Retired while idle; the file's current log takes over
+      return forFile(file).append(data, length, sync);
+    }
+
+    IOException failure = null;
+    try {
+      write(batch);
+    } catch (IOException e) {
+      failure = e;
+    }
+
+    synchronized (lock) {
+      for (Append queued : batch) {
+        queued.failure = failure;
+        queued.done = true;
+      }
+      writing = false;
+      lock.notifyAll();
+    }
+    return append.result();
+  }
+
+  /**
+   * Writes a batch of appends with one write and at most one fsync.
+   * If the write fails, the file is cut back to where the batch started, so no append is left half-written.
+   *
+   * @param batch The appends to write, in queue order.
+   * @throws IOException If the file cannot be written.
+   */
+  private void write(List<Append> batch) throws IOException {
+    boolean sync = false;
+    int total = 0;
+    for (Append append : batch) {
+      sync |= append.sync;
+      total = Math.addExact(total, append.length);
+    }
+    byte[] data = batch.get(0).data;
+    if (batch.size() > 1) {
+      data = new byte[total];
+      int position = 0;
+      for (Append append : batch) {
+        System.arraycopy(append.data, 0, data, position, append.length);
+        position += append.length;
+      }
+    }
+
+    if (!Files.exists(file)) {
+      throw new NoSuchFileException(file.toString()); // Appending must not create a file without its header
+    }
+    // Unlike a FileChannel, a RandomAccessFile is not closed when the writing thread is interrupted
+    try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+      long start = out.length();
+      long offset = start;
+      for (Append append : batch) {
+        append.offset = offset;
+        offset += append.length;
+      }
+      try {
+        out.seek(start);
+        out.write(data, 0, total);
+        if (sync) {
+          out.getFD().sync();
+        }
+      } catch (IOException e) {
+        out.setLength(start);
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * A single caller's pending append.
+   */
+  private static final class Append {
+    private final byte[] data;
+    private final int length;
+    private final boolean sync;
+    private long offset;
+    private boolean done;
+    private IOException failure;
+
+    private Append(byte[] data, int length, boolean sync) {
+      this.data = data;
+      this.length = length;
+      this.sync = sync;
+    }
+
+    private long result() throws IOException {
+      if (failure != null) {
+        throw new IOException("Group commit failed: " + failure.getMessage(), failure);
+      }
+      return offset;
+    }
+  }
+}
@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent sidecar index of the days in a {@link HeartRateSegment}, with one entry per run of consecutive
+ * records that have the same date: the day, the number of the run's first record and the run's record count.
+ * Samples are normally appended in time order, so a segment has one run per day and the index takes a few
+ * bytes per day however many samples each day holds.
+ * The index file starts with a 4-byte magic header followed by 12-byte entries (epoch day, first record and
+ * record count, each an int). When a run grows with later appends, its entry is rewritten in place.
+ * If the index is missing, unreadable or does not match the segment, it is rebuilt from the segment.
+ * Only the most recently used indexes stay loaded (see {@link ResidentIndexes}).
+ */
+public class HeartRateDayIndex implements ResidentIndexes.Unloadable {
+  private static final byte[] MAGIC = {'H', 'R', 'D', '1'};
+  private static final int ENTRY_SIZE = 12;
+  private static final long HEADER_LENGTH = HeartRateSegment.header().length;
+  private static final Map<Path, HeartRateDayIndex> INDEXES = new ConcurrentHashMap<>();
+  private final Path segmentFile;
+  private final Path indexFile;
+  private int[] days = new int[16];
+  private int[] firsts = new int[16];
+  private int[] counts = new int[16];
+  private int runs;
+  private int persistedRuns;
+  private int records;
+  private boolean ordered = true;
+  private boolean loaded;
+
+  /**
+   * Constructs an index for a heart rate segment.
+   *
+   * @param segmentFile The segment file.
+   * @param indexFile   The sidecar file the index is persisted in.
+   */
+  public HeartRateDayIndex(Path segmentFile, Path indexFile) {
+    this.segmentFile = segmentFile;
+    this.indexFile = indexFile;
+  }
+
+  /**
+   * Returns the index of a segment file, shared by all callers in the process.
+   *
+   * @param segmentFile The segment file.
+   * @param indexFile   The sidecar file the index is persisted in.
+   * @return The index for the segment file.
+   */
+  public static HeartRateDayIndex forFile(Path segmentFile, Path indexFile) {
+    return INDEXES.computeIfAbsent(segmentFile.toAbsolutePath().normalize(),
+        path -> new HeartRateDayIndex(segmentFile, indexFile));
+  }
+
+  /**
+   * Records a batch of samples that has just been appended to the segment.
+   *
+   * @param dates  The dates of the samples, in file order.
+   * @param offset The byte offset the first sample's record starts at.
+   * @throws IOException If the index file cannot be written.
+   */
+  public synchronized void recordAll(List<LocalDate> dates, long offset) throws IOException {
+    if (!loaded) {
+      return; // The next lookup catches up from the segment
+    }
+    long first = (offset - HEADER_LENGTH) / HeartRateSegment.RECORD_SIZE;
+    if (first + dates.size() <= records) {
+      return; // A lookup already picked these records up from the segment
+    }
+    if (first != records) {
+      loaded = false; // Someone else appended in between; reload on next lookup
+      return;
+    }
+    for (LocalDate date : dates) {
+      add(date.toEpochDay());
+    }
+    persist();
+  }
+
+  /**
+   * Finds the records of the samples between two dates (inclusive), merging runs that are adjacent in the segment.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return The {first record, record count} pairs of the matching runs, in file order.
+   * @throws IOException If the segment or index file cannot be read.
+   */
+  public synchronized List<long[]> find(LocalDate from, LocalDate to) throws IOException {
+    ensureLoaded();
+    long fromDay = from.toEpochDay();
+    long toDay = to.toEpochDay();
+
+    List<long[]> matches = new ArrayList<>();
+    if (ordered) {
+      // Runs are in date order, so the first match is found by binary search
+      int low = 0;
+      int high = runs;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (days[middle] < fromDay) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      for (int run = low; run < runs && days[run] <= toDay; run++) {
+        matches.add(new long[]{firsts[run], counts[run]});
+      }
+    } else {
+      for (int run = 0; run < runs; run++) {
+        if (days[run] >= fromDay && days[run] <= toDay) {
+          matches.add(new long[]{firsts[run], counts[run]});
+        }
+      }
+    }
+
+    List<long[]> merged = new ArrayList<>(matches.size());
+    for (long[] match : matches) {
+      long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+      if (last != null && last[0] + last[1] == match[0]) {
+        last[1] += match[1];
+      } else {
+        merged.add(match);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Returns whether every sample was appended on or after the date of the sample before it.
+   *
+   * @return true if the segment is in date order, false otherwise.
+   * @throws IOException If the segment or index file cannot be read.
+   */
+  public synchronized boolean isOrdered() throws IOException {
+    ensureLoaded();
+    return ordered;
+  }
+
+  /**
+   * Returns the number of runs in the index, i.e. the number of entries in the index file.
+   *
+   * @return The number of runs.
+   * @throws IOException If the segment or index file cannot be read.
+   */
+  public synchronized int runCount() throws IOException {
+    ensureLoaded();
+    return runs;
+  }
+
+  /**
+   * Discards the index file and rebuilds it from the segment.
+   *
+   * @throws IOException If either file cannot be accessed.
+   */
+  public synchronized void rebuild() throws IOException {
+    clear();
+    Files.write(indexFile, MAGIC);
+    catchUp();
+    loaded = true;
+  }
+
+  /**
+   * Drops the in-memory runs; the next lookup reloads them from the index file.
+   */
+  @Override
+  public synchronized void unload() {
+    clear();
+    days = new int[16];
+    firsts = new int[16];
+    counts = new int[16];
+    loaded = false;
+  }
+
+  /**
+   * Loads the index file into memory, rebuilding it if it does not match the segment.
+   * Once loaded, records appended without being recorded are caught up, and a segment that
+   * shrank is re-indexed.
+   *
+   * @throws IOException If either file cannot be accessed.
+   */
+  private void ensureLoaded() throws IOException {
+    ResidentIndexes.shared().touch(this);
+    if (loaded) {
+      long segmentRecords = segmentRecords();
+      if (segmentRecords < records) {
+        rebuild();
+      } else if (segmentRecords > records) {
+        catchUp();
+      }
+      return;
+    }
+    clear();
+
+    ByteBuffer buffer = ByteBuffer.wrap(Files.exists(indexFile) ? Files.readAllBytes(indexFile) : new byte[0]);
+    if (buffer.remaining() < MAGIC.length || (buffer.remaining() - MAGIC.length) % ENTRY_SIZE != 0
+        || !Arrays.equals(Arrays.copyOf(buffer.array(), MAGIC.length), MAGIC)) {
+      rebuild(); // Missing, torn, or written in an older format
+      return;
+    }
+    buffer.position(MAGIC.length);
+    while (buffer.hasRemaining()) {
+      int day = buffer.getInt();
+      int first = buffer.getInt();
+      int count = buffer.getInt();
+      if (first != records || count <= 0) {
+        // Gap or overlap: the index no longer describes the segment
+        rebuild();
+        return;
+      }
+      addRun(day, first, count);
+    }
+    persistedRuns = runs;
+
+    if (segmentRecords() < records) {
+      rebuild();
+      return;
+    }
+    catchUp();
+    loaded = true;
+  }
+
+  /**
+   * Indexes any records appended to the segment past the currently indexed ones.
+   *
+   * @throws IOException If either file cannot be accessed.
+   */
+  private void catchUp() throws IOException {
+    if (segmentRecords() <= records) {
+      return;
+    }
+    HeartRateSegment.ROW_FORMAT.scan(segmentFile, HEADER_LENGTH + (long) records * HeartRateSegment.RECORD_SIZE,
+        (date, offset, length) -> add(date.toEpochDay()));
+    persist();
+  }
+
+  private long segmentRecords() throws IOException {
+    return Math.max(0, Files.size(segmentFile) - HEADER_LENGTH) / HeartRateSegment.RECORD_SIZE;
+  }
+
+  /**
+   * Writes the runs that changed since the last write: the last persisted run, if it grew, and any new runs.
+   *
+   * @throws IOException If the index file cannot be written.
+   */
+  private void persist() throws IOException {
+    int firstDirty = Math.max(0, persistedRuns - 1);
+    if (firstDirty >= runs) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((runs - firstDirty) * ENTRY_SIZE);
+    for (int run = firstDirty; run < runs; run++) {
+      buffer.putInt(days[run]).putInt(firsts[run]).putInt(counts[run]);
+    }
+    buffer.flip();
+    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      long position = MAGIC.length + (long) firstDirty * ENTRY_SIZE;
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+    }
+    persistedRuns = runs;
+  }
+
+  private void add(long epochDay) {
+    int day = Math.toIntExact(epochDay);
+    if (runs > 0 && days[runs - 1] == day) {
+      counts[runs - 1]++;
+      records++;
+    } else {
+      addRun(day, records, 1);
+    }
+  }
+
+  private void addRun(int day, int first, int count) {
+    if (runs == days.length) {
+      days = Arrays.copyOf(days, runs * 2);
+      firsts = Arrays.copyOf(firsts, runs * 2);
+      counts = Arrays.copyOf(counts, runs * 2);
+    }
+    if (runs > 0 && day < days[runs - 1]) {
+      ordered = false;
+    }
+    days[runs] = day;
+    firsts[runs] = first;
+    counts[runs] = count;
+    runs++;
+    records = first + count;
+  }
+
+  private void clear() {
+    runs = 0;
+    persistedRuns = 0;
+    records = 0;
+    ordered = true;
+  }
+}
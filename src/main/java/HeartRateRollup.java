@@ -0,0 +1,250 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Daily heart rate statistics of a {@link HeartRateSegment}, per tag, persisted next to the segment.
+ * The rollup file starts with a "HRR1,length" line giving how many bytes of the segment it covers,
+ * followed by one "date,tagId,count,min,max,sum,sumOfSquares" row per day and tag id (0xFFFF for no tag).
+ * Samples appended to the segment since then are folded in by {@link #refresh()}, and the rollup is
+ * rebuilt from the segment if its file is missing or unreadable, or the segment shrank.
+ * Weekly and monthly statistics are combined from the daily ones when queried.
+ * Use {@link #forFile(Path, Path)} so that all users of a segment share one rollup.
+ * Only the most recently used rollups stay loaded (see {@link ResidentIndexes}).
+ */
+public class HeartRateRollup implements ResidentIndexes.Unloadable {
+  /**
+   * The tag id of samples without a tag.
+   */
+  public static final int NO_TAG = HeartRateSegment.NO_TAG;
+  private static final String MAGIC = "HRR1";
+  private static final int HEADER_LENGTH = HeartRateSegment.header().length;
+  private static final Map<Path, HeartRateRollup> ROLLUPS = new ConcurrentHashMap<>();
+  private final Path segmentFile;
+  private final Path rollupFile;
+  private final NavigableMap<LocalDate, Map<Integer, HeartRateStats>> days = new TreeMap<>();
+  private long coveredLength = HEADER_LENGTH;
+  private boolean loaded;
+
+  /**
+   * The periods statistics can be rolled up by. Weeks start on Monday.
+   */
+  public enum Period {
+    DAY, WEEK, MONTH;
+
+    /**
+     * Returns the first day of the period containing a date.
+     *
+     * @param date The date.
+     * @return The start of the period.
+     */
+    public LocalDate startOf(LocalDate date) {
+      switch (this) {
+        case WEEK:
+          return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        case MONTH:
+          return date.withDayOfMonth(1);
+        default:
+          return date;
+      }
+    }
+  }
+
+  /**
+   * Constructs a rollup of the given segment.
+   *
+   * @param segmentFile The heart rate segment file.
+   * @param rollupFile  The file the rollup is persisted in.
+   */
+  public HeartRateRollup(Path segmentFile, Path rollupFile) {
+    this.segmentFile = segmentFile;
+    this.rollupFile = rollupFile;
+  }
+
+  /**
+   * Returns the shared rollup of a segment, creating it on first use.
+   *
+   * @param segmentFile The heart rate segment file.
+   * @param rollupFile  The file the rollup is persisted in.
+   * @return The rollup of the segment.
+   */
+  public static HeartRateRollup forFile(Path segmentFile, Path rollupFile) {
+    return ROLLUPS.computeIfAbsent(segmentFile.toAbsolutePath().normalize(),
+        key -> new HeartRateRollup(segmentFile, rollupFile));
+  }
+
+  /**
+   * Folds the samples appended to the segment since the last refresh into the rollup and persists it.
+   * Does nothing if the segment hasn't grown.
+   *
+   * @throws IOException If the segment or the rollup file cannot be accessed.
+   */
+  public synchronized void refresh() throws IOException {
+    ResidentIndexes.shared().touch(this);
+    if (!loaded) {
+      load();
+      loaded = true;
+    }
+    long segmentLength;
+    try {
+      segmentLength = Files.size(segmentFile);
+    } catch (NoSuchFileException e) {
+      segmentLength = HEADER_LENGTH;
+    }
+    if (segmentLength < coveredLength) {
+      days.clear();
+      coveredLength = HEADER_LENGTH;
+    }
+    long end = coveredLength + (segmentLength - coveredLength) / HeartRateSegment.RECORD_SIZE
+        * HeartRateSegment.RECORD_SIZE; // A partially written trailing record is left for later
+    if (end == coveredLength) {
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(segmentFile, StandardOpenOption.READ)) {
+      ByteBuffer chunk = ByteBuffer.allocate(HeartRateSegment.RECORD_SIZE * 4096);
+      long position = coveredLength;
+      while (position < end) {
+        chunk.clear();
+        chunk.limit((int) Math.min(chunk.capacity(), end - position));
+        while (chunk.hasRemaining()) {
+          if (channel.read(chunk, position + chunk.position()) < 0) {
+            throw new IOException("Unexpected end of heart rate segment.");
+          }
+        }
+        position += chunk.limit();
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+          LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(chunk.getLong(), 86400L));
+          int tagId = chunk.getShort() & 0xFFFF;
+          int bpm = chunk.get() & 0xFF;
+          days.computeIfAbsent(date, day -> new HashMap<>())
+              .computeIfAbsent(tagId, tag -> new HeartRateStats()).add(bpm);
+        }
+      }
+    }
+    coveredLength = end;
+    save();
+  }
+
+  /**
+   * Returns the statistics between two dates (inclusive) per tag id and period.
+   * Periods overlapping either end of the range only cover the days inside it.
+   *
+   * @param from   The first date to include, or null for no lower bound.
+   * @param to     The last date to include, or null for no upper bound.
+   * @param period The period to roll the statistics up by.
+   * @return For each tag id, the statistics keyed by the first day of each period, in date order.
+   * @throws IOException If the segment or the rollup file cannot be accessed.
+   */
+  public synchronized Map<Integer, NavigableMap<LocalDate, HeartRateStats>> statsByTag(LocalDate from,
+      LocalDate to, Period period) throws IOException {
+    refresh();
+    NavigableMap<LocalDate, Map<Integer, HeartRateStats>> range = days;
+    if (from != null) {
+      range = range.tailMap(from, true);
+    }
+    if (to != null) {
+      range = range.headMap(to, true);
+    }
+
+    Map<Integer, NavigableMap<LocalDate, HeartRateStats>> result = new HashMap<>();
+    for (Map.Entry<LocalDate, Map<Integer, HeartRateStats>> day : range.entrySet()) {
+      LocalDate start = period.startOf(day.getKey());
+      for (Map.Entry<Integer, HeartRateStats> tag : day.getValue().entrySet()) {
+        result.computeIfAbsent(tag.getKey(), id -> new TreeMap<>())
+            .merge(start, tag.getValue().copy(), HeartRateStats::combine);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Discards the persisted rollup and rebuilds it from the segment.
+   *
+   * @throws IOException If the segment or the rollup file cannot be accessed.
+   */
+  public synchronized void rebuild() throws IOException {
+    days.clear();
+    coveredLength = HEADER_LENGTH;
+    loaded = true;
+    Files.deleteIfExists(rollupFile);
+    refresh();
+  }
+
+  /**
+   * Drops the in-memory daily statistics; the next refresh reloads them from the persisted file.
+   */
+  @Override
+  public synchronized void unload() {
+    days.clear();
+    coveredLength = HEADER_LENGTH;
+    loaded = false;
+  }
+
+  private void load() throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(rollupFile, StandardCharsets.UTF_8)) {
+      String[] header = reader.readLine().split(",");
+      if (!MAGIC.equals(header[0])) {
+        throw new IllegalArgumentException("Not a heart rate rollup file.");
+      }
+      long length = Long.parseLong(header[1]);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split(",");
+        days.computeIfAbsent(LocalDate.parse(fields[0], Constants.dateFormatter), day -> new HashMap<>())
+            .put(Integer.parseInt(fields[1]), new HeartRateStats(Long.parseLong(fields[2]),
+                Integer.parseInt(fields[3]), Integer.parseInt(fields[4]), Long.parseLong(fields[5]),
+                Long.parseLong(fields[6])));
+      }
+      coveredLength = length;
+    } catch (NoSuchFileException e) {
+      // Not built yet
+    } catch (RuntimeException e) {
+      // The rollup can always be rebuilt from the segment
+      System.err.println("Rebuilding unreadable heart rate rollup " + rollupFile);
+      days.clear();
+      coveredLength = HEADER_LENGTH;
+    }
+  }
+
+  private void save() throws IOException {
+    RecordEncoder encoder = RecordEncoder.forCurrentThread()
+        .text(MAGIC).comma().integer(coveredLength).newLine();
+    for (Map.Entry<LocalDate, Map<Integer, HeartRateStats>> day : days.entrySet()) {
+      for (Map.Entry<Integer, HeartRateStats> tag : day.getValue().entrySet()) {
+        HeartRateStats stats = tag.getValue();
+        encoder.date(day.getKey()).comma().integer(tag.getKey())
+            .comma().integer(stats.getCount())
+            .comma().integer(stats.getMin())
+            .comma().integer(stats.getMax())
+            .comma().integer(stats.getSum())
+            .comma().integer(stats.getSumOfSquares())
+            .newLine();
+      }
+    }
+
+    Path tempFile = Paths.get(rollupFile + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tempFile)) {
+      encoder.writeTo(out);
+    }
+    Files.move(tempFile, rollupFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
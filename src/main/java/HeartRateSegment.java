@@ -0,0 +1,496 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Append-only binary segment file holding a user's heart rate samples.
+ * The file starts with a 4-byte magic header followed by fixed-width 11-byte records:
+ * the sample's date and time as epoch seconds (8 bytes), the tag id from the user's
+ * {@link TagDictionary} (2 bytes, 0xFFFF for no tag) and the bpm (1 unsigned byte).
+ * Date and time are stored as wall-clock values, i.e. interpreted as UTC.
+ */
+public class HeartRateSegment {
+  /**
+   * The size of one heart rate record in bytes.
+   */
+  public static final int RECORD_SIZE = 11;
+  /**
+   * The tag id stored for samples without a tag.
+   */
+  public static final int NO_TAG = 0xFFFF;
+  private static final byte[] MAGIC = {'H', 'R', 'S', '1'};
+  private final Path file;
+  private final TagDictionary tagDictionary;
+
+  /**
+   * Row layout of the segment, reporting the date of every record, e.g. to rebuild a {@link HeartRateDayIndex}.
+   */
+  public static final DateOffsetIndex.RowFormat ROW_FORMAT = new DateOffsetIndex.RowFormat() {
+    @Override
+    public long headerLength(Path dataFile) {
+      return MAGIC.length;
+    }
+
+    @Override
+    public long scan(Path dataFile, long from, DateOffsetIndex.RowVisitor visitor) throws IOException {
+      long offset = from;
+      byte[] record = new byte[RECORD_SIZE];
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(dataFile))) {
+        in.skipNBytes(from);
+        while (in.readNBytes(record, 0, RECORD_SIZE) == RECORD_SIZE) {
+          long epochSecond = ByteBuffer.wrap(record).getLong();
+          visitor.visit(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).toLocalDate(),
+              offset, RECORD_SIZE);
+          offset += RECORD_SIZE;
+        }
+      }
+      // A partially written trailing record is ignored
+      return offset;
+    }
+  };
+
+  /**
+   * Row layout of the segment, for indexing records by tag with a {@link TagIndex}.
+   * Records without a tag are not reported.
+   */
+  public static final TagIndex.RowFormat TAG_ROW_FORMAT = new TagIndex.RowFormat() {
+    @Override
+    public long headerLength(Path dataFile) {
+      return MAGIC.length;
+    }
+
+    @Override
+    public long scan(Path dataFile, long from, TagIndex.RowVisitor visitor) throws IOException {
+      long offset = from;
+      byte[] record = new byte[RECORD_SIZE];
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(dataFile))) {
+        in.skipNBytes(from);
+        while (in.readNBytes(record, 0, RECORD_SIZE) == RECORD_SIZE) {
+          ByteBuffer buffer = ByteBuffer.wrap(record);
+          LocalDate date = LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC).toLocalDate();
+          int tagId = buffer.getShort() & 0xFFFF;
+          if (tagId != NO_TAG) {
+            visitor.visit(tagId, date, date, offset, RECORD_SIZE);
+          }
+          offset += RECORD_SIZE;
+        }
+      }
+      // A partially written trailing record is ignored
+      return offset;
+    }
+  };
+
+  /**
+   * Constructs a segment backed by the given file.
+   *
+   * @param file          The segment file.
+   * @param tagDictionary The dictionary used to encode tags.
+   */
+  public HeartRateSegment(Path file, TagDictionary tagDictionary) {
+    this.file = file;
+    this.tagDictionary = tagDictionary;
+  }
+
+  /**
+   * Returns the header every segment file starts with.
+   *
+   * @return A copy of the header bytes.
+   */
+  public static byte[] header() {
+    return MAGIC.clone();
+  }
+
+  /**
+   * Creates the segment file with its header if it doesn't exist.
+   *
+   * @throws IOException If the file cannot be created.
+   */
+  public void createIfNotExists() throws IOException {
+    MonthlyPartitions.createWithHeader(file, MAGIC);
+  }
+
+  /**
+   * Appends a heart rate sample to the end of the segment.
+   *
+   * @param heartRate The sample to append.
+   * @return The byte offset the record was written at.
+   * @throws IOException If the segment cannot be written.
+   */
+  public long append(HeartRate heartRate) throws IOException {
+    return appendAll(Collections.singletonList(heartRate), false);
+  }
+
+  /**
+   * Appends a batch of heart rate samples with a single write, as consecutive records.
+   *
+   * @param heartRates The samples to append, in order.
+   * @param sync       Whether the records must be forced to the storage device before returning.
+   * @return The byte offset the first record was written at.
+   * @throws IOException If the segment cannot be written.
+   */
+  public long appendAll(Collection<HeartRate> heartRates, boolean sync) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(heartRates.size() * RECORD_SIZE);
+    for (HeartRate heartRate : heartRates) {
+      encode(heartRate, buffer);
+    }
+    return GroupCommitLog.forFile(file).append(buffer.array(), sync);
+  }
+
+  /**
+   * Reads every heart rate sample in the segment, in the order they were appended.
+   *
+   * @return List of HeartRate objects.
+   * @throws IOException If the segment cannot be read.
+   */
+  public List<HeartRate> readAll() throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    checkHeader(buffer);
+
+    List<HeartRate> heartRates = new ArrayList<>(buffer.remaining() / RECORD_SIZE);
+    while (buffer.remaining() >= RECORD_SIZE) {
+      heartRates.add(decode(buffer));
+    }
+    return heartRates;
+  }
+
+  /**
+   * Reads the samples between two dates (inclusive) from a segment whose records are in date order,
+   * finding the first one by binary search over the fixed-width records.
+   * Use {@link HeartRateDayIndex#isOrdered()} to check the order first; records of an unordered segment
+   * may be missed.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return List of HeartRate objects in the order they were appended.
+   * @throws IOException If the segment cannot be read.
+   */
+  public List<HeartRate> readSortedRange(LocalDate from, LocalDate to) throws IOException {
+    List<HeartRate> heartRates = new ArrayList<>();
+    long fromDay = from.toEpochDay();
+    long toDay = to.toEpochDay();
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long count = (channel.size() - MAGIC.length) / RECORD_SIZE;
+
+      // Read forward from the first match in large chunks until the range ends
+      ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 4096);
+      long position = MAGIC.length + firstRecordFrom(channel, count, fromDay) * RECORD_SIZE;
+      long end = MAGIC.length + count * RECORD_SIZE;
+      while (position < end) {
+        chunk.clear();
+        chunk.limit((int) Math.min(chunk.capacity(), end - position));
+        readFully(channel, chunk, position);
+        position += chunk.limit();
+        chunk.flip();
+        while (chunk.remaining() >= RECORD_SIZE) {
+          if (epochDay(chunk.getLong(chunk.position())) > toDay) {
+            return heartRates;
+          }
+          heartRates.add(decode(chunk));
+        }
+      }
+    }
+    return heartRates;
+  }
+
+  /**
+   * Reads runs of consecutive records, as found by a {@link HeartRateDayIndex}, in large chunks.
+   *
+   * @param runs The {first record, record count} pairs of the runs to read.
+   * @return List of HeartRate objects, run by run.
+   * @throws IOException If the segment cannot be read.
+   */
+  public List<HeartRate> readRuns(List<long[]> runs) throws IOException {
+    List<HeartRate> heartRates = new ArrayList<>();
+    if (runs.isEmpty()) {
+      return heartRates;
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 4096);
+      for (long[] run : runs) {
+        long position = MAGIC.length + run[0] * RECORD_SIZE;
+        long end = position + run[1] * RECORD_SIZE;
+        while (position < end) {
+          chunk.clear();
+          chunk.limit((int) Math.min(chunk.capacity(), end - position));
+          readFully(channel, chunk, position);
+          position += chunk.limit();
+          chunk.flip();
+          while (chunk.remaining() >= RECORD_SIZE) {
+            heartRates.add(decode(chunk));
+          }
+        }
+      }
+    }
+    return heartRates;
+  }
+
+  /**
+   * Adds the samples between two dates (inclusive) to a series builder, without creating HeartRate objects.
+   * If the segment's records are in date order, the first one in the range is found by binary search
+   * and reading stops at the end of the range; otherwise the whole segment is scanned.
+   *
+   * @param builder The builder to add the samples to.
+   * @param from    The first date to include, or null for no lower bound.
+   * @param to      The last date to include, or null for no upper bound.
+   * @param ordered Whether the records are known to be in date order (see {@link HeartRateDayIndex#isOrdered()}).
+   * @throws IOException If the segment cannot be read.
+   */
+  public void readInto(HeartRateSeries.Builder builder, LocalDate from, LocalDate to, boolean ordered)
+      throws IOException {
+    long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+    long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long count = (channel.size() - MAGIC.length) / RECORD_SIZE;
+      long first = ordered && from != null ? firstRecordFrom(channel, count, fromDay) : 0;
+      ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 4096);
+      long position = MAGIC.length + first * RECORD_SIZE;
+      long end = MAGIC.length + count * RECORD_SIZE;
+      while (position < end) {
+        chunk.clear();
+        chunk.limit((int) Math.min(chunk.capacity(), end - position));
+        readFully(channel, chunk, position);
+        position += chunk.limit();
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+          long epochSecond = chunk.getLong();
+          int tagId = chunk.getShort() & 0xFFFF;
+          int bpm = chunk.get() & 0xFF;
+          long day = epochDay(epochSecond);
+          if (day > toDay && ordered) {
+            return;
+          }
+          if (day >= fromDay && day <= toDay) {
+            builder.add(epochSecond, bpm, tagId);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Streams the samples between two dates (inclusive), reading the segment lazily.
+   * Records outside the range are skipped without being decoded.
+   * The stream holds the file open until it is closed.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return Stream of HeartRate objects in the order they were appended.
+   * @throws IOException If the segment cannot be opened.
+   */
+  public Stream<HeartRate> stream(LocalDate from, LocalDate to) throws IOException {
+    long fromSecond = from == null ? Long.MIN_VALUE : from.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    long toSecond = to == null ? Long.MAX_VALUE : to.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) - 1;
+    InputStream in = new BufferedInputStream(Files.newInputStream(file));
+    try {
+      byte[] header = in.readNBytes(MAGIC.length);
+      checkHeader(ByteBuffer.wrap(header));
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+
+    Spliterator<HeartRate> records = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+      private final byte[] record = new byte[RECORD_SIZE];
+
+      @Override
+      public boolean tryAdvance(Consumer<? super HeartRate> action) {
+        try {
+          while (in.readNBytes(record, 0, RECORD_SIZE) == RECORD_SIZE) {
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long epochSecond = buffer.getLong(0);
+            if (epochSecond >= fromSecond && epochSecond <= toSecond) {
+              action.accept(decode(buffer));
+              return true;
+            }
+          }
+          return false;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+
+    return StreamSupport.stream(records, false).onClose(() -> {
+      try {
+        in.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Decodes a single record.
+   *
+   * @param record The record bytes.
+   * @return The decoded HeartRate object.
+   * @throws IOException If the tag dictionary cannot be read.
+   */
+  public HeartRate decode(byte[] record) throws IOException {
+    return decode(ByteBuffer.wrap(record));
+  }
+
+  /**
+   * Decodes consecutive records, as returned by a {@link TagIndex} over this segment.
+   *
+   * @param records The record bytes.
+   * @return The decoded HeartRate objects, in record order.
+   * @throws IOException If the tag dictionary cannot be read.
+   */
+  public List<HeartRate> decodeAll(byte[] records) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(records);
+    List<HeartRate> heartRates = new ArrayList<>(records.length / RECORD_SIZE);
+    while (buffer.remaining() >= RECORD_SIZE) {
+      heartRates.add(decode(buffer));
+    }
+    return heartRates;
+  }
+
+  /**
+   * Migrates a legacy "date,time,tag,heartRate" CSV file into this segment.
+   * The segment is written to a temporary file and moved into place before the CSV file is
+   * renamed with a ".migrated" suffix, so an interrupted migration never loses or duplicates samples.
+   * Rows that cannot be migrated are copied, below the CSV header, to a file with a ".rejected" suffix
+   * before the CSV file is renamed, and their count is reported.
+   *
+   * @param csvFile The legacy CSV file.
+   * @return The number of samples migrated.
+   * @throws IOException If either file cannot be accessed.
+   */
+  public int migrateFrom(Path csvFile) throws IOException {
+    int migrated = 0;
+    if (!Files.exists(file)) {
+      // Every CSV row is longer than a binary record, so the file size bounds the segment size
+      ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + (int) Files.size(csvFile));
+      buffer.put(MAGIC);
+      List<String> rejected = new ArrayList<>();
+
+      try (CsvRecordParser parser = CsvRecordParser.open(csvFile)) {
+        while (parser.next()) {
+          if (parser.fieldCount() < 4) {
+            rejected.add(rawRow(parser));
+            continue;
+          }
+          int position = buffer.position();
+          try {
+            encode(new HeartRate(parser.stringField(2), parser.dateField(0), parser.timeField(1),
+                parser.intField(3)), buffer);
+            migrated++;
+          } catch (RuntimeException e) {
+            buffer.position(position);
+            rejected.add(rawRow(parser));
+          }
+        }
+      }
+
+      if (!rejected.isEmpty()) {
+        Path rejectFile = Paths.get(csvFile + ".rejected");
+        rejected.add(0, "date,time,tag,heartRate");
+        Files.write(rejectFile, rejected, StandardCharsets.UTF_8);
+        System.err.println("Kept " + (rejected.size() - 1) + " unreadable heart rate rows in " + rejectFile);
+      }
+      Path tempFile = Paths.get(file + ".tmp");
+      Files.write(tempFile, Arrays.copyOf(buffer.array(), buffer.position()));
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    Files.move(csvFile, Paths.get(csvFile + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+    return migrated;
+  }
+
+  /**
+   * Rejoins the fields of the parser's current row.
+   */
+  private static String rawRow(CsvRecordParser parser) {
+    StringBuilder row = new StringBuilder();
+    for (int field = 0; field < parser.fieldCount(); field++) {
+      if (field > 0) {
+        row.append(',');
+      }
+      row.append(parser.stringField(field));
+    }
+    return row.toString();
+  }
+
+  private void encode(HeartRate heartRate, ByteBuffer buffer) throws IOException {
+    String tag = heartRate.getTags();
+    buffer.putLong(LocalDateTime.of(heartRate.getDate(), heartRate.getTime()).toEpochSecond(ZoneOffset.UTC));
+    buffer.putShort((short) (tag == null ? NO_TAG : tagDictionary.idFor(tag)));
+    buffer.put((byte) heartRate.getHeartRate());
+  }
+
+  private HeartRate decode(ByteBuffer buffer) throws IOException {
+    LocalDateTime dateTime = LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC);
+    int tagId = buffer.getShort() & 0xFFFF;
+    int bpm = buffer.get() & 0xFF;
+    String tag = tagId == NO_TAG ? null : tagDictionary.tagFor(tagId);
+    return new HeartRate(tag, dateTime.toLocalDate(), dateTime.toLocalTime(), bpm);
+  }
+
+  /**
+   * Finds the first record on or after a day in a segment whose records are in date order.
+   *
+   * @return The record number, or the record count if there is none.
+   */
+  private static long firstRecordFrom(FileChannel channel, long count, long fromDay) throws IOException {
+    ByteBuffer key = ByteBuffer.allocate(Long.BYTES);
+    long low = 0;
+    long high = count;
+    while (low < high) {
+      long middle = (low + high) >>> 1;
+      key.clear();
+      readFully(channel, key, MAGIC.length + middle * RECORD_SIZE);
+      if (epochDay(key.getLong(0)) < fromDay) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static long epochDay(long epochSecond) {
+    return Math.floorDiv(epochSecond, 86400L);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of heart rate segment.");
+      }
+    }
+  }
+
+  private static void checkHeader(ByteBuffer buffer) throws IOException {
+    for (byte b : MAGIC) {
+      if (!buffer.hasRemaining() || buffer.get() != b) {
+        throw new IOException("Not a heart rate segment file.");
+      }
+    }
+  }
+}
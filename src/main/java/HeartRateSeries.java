@@ -0,0 +1,262 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Heart rate samples in time order, held in parallel primitive arrays: epoch seconds ({@code long}),
+ * bpm ({@code short}) and tag id ({@code int}, {@link HeartRateSegment#NO_TAG} for no tag). That is 14 bytes
+ * per sample, against well over 100 for a {@link HeartRate} object and the map and list slots holding it.
+ * Date and time are wall-clock values stored as UTC, as in {@link HeartRateSegment}.
+ * A series is immutable; slices share the arrays of the series they were taken from.
+ * Use a {@link Builder} to create one.
+ */
+public class HeartRateSeries {
+  private final long[] epochSeconds;
+  private final short[] bpms;
+  private final int[] tagIds;
+  private final String[] tags;
+  private final int offset;
+  private final int size;
+
+  private HeartRateSeries(long[] epochSeconds, short[] bpms, int[] tagIds, String[] tags, int offset, int size) {
+    this.epochSeconds = epochSeconds;
+    this.bpms = bpms;
+    this.tagIds = tagIds;
+    this.tags = tags;
+    this.offset = offset;
+    this.size = size;
+  }
+
+  /**
+   * Returns the number of samples.
+   *
+   * @return The number of samples.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the time of a sample.
+   *
+   * @param index The index of the sample.
+   * @return The wall-clock date and time as seconds since the epoch in UTC.
+   */
+  public long epochSecond(int index) {
+    return epochSeconds[offset + checkIndex(index)];
+  }
+
+  /**
+   * Returns the heart rate of a sample.
+   *
+   * @param index The index of the sample.
+   * @return The heart rate in beats per minute.
+   */
+  public int bpm(int index) {
+    return bpms[offset + checkIndex(index)];
+  }
+
+  /**
+   * Returns the tag id of a sample.
+   *
+   * @param index The index of the sample.
+   * @return The id of the tag in the user's {@link TagDictionary}, or {@link HeartRateSegment#NO_TAG}.
+   */
+  public int tagId(int index) {
+    return tagIds[offset + checkIndex(index)];
+  }
+
+  /**
+   * Returns the tag of a sample.
+   *
+   * @param index The index of the sample.
+   * @return The tag, or null if the sample has none.
+   */
+  public String tag(int index) {
+    int tagId = tagId(index);
+    return tagId == HeartRateSegment.NO_TAG ? null : tags[tagId];
+  }
+
+  /**
+   * Returns the date and time of a sample.
+   *
+   * @param index The index of the sample.
+   * @return The wall-clock date and time.
+   */
+  public LocalDateTime dateTime(int index) {
+    return LocalDateTime.ofEpochSecond(epochSecond(index), 0, ZoneOffset.UTC);
+  }
+
+  /**
+   * Returns a sample as a HeartRate object, for code that needs one.
+   *
+   * @param index The index of the sample.
+   * @return The sample.
+   */
+  public HeartRate get(int index) {
+    LocalDateTime dateTime = dateTime(index);
+    return new HeartRate(tag(index), dateTime.toLocalDate(), dateTime.toLocalTime(), bpm(index));
+  }
+
+  /**
+   * Returns the samples taken between two times, without copying.
+   *
+   * @param fromSecond The first epoch second to include.
+   * @param toSecond   The first epoch second to exclude.
+   * @return A view of the samples in the range.
+   */
+  public HeartRateSeries slice(long fromSecond, long toSecond) {
+    int start = lowerBound(fromSecond);
+    int end = Math.max(start, lowerBound(toSecond));
+    return new HeartRateSeries(epochSeconds, bpms, tagIds, tags, start, end - start);
+  }
+
+  /**
+   * Returns the samples taken between two dates (inclusive), without copying.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return A view of the samples in the range.
+   */
+  public HeartRateSeries slice(LocalDate from, LocalDate to) {
+    return slice(from.atStartOfDay().toEpochSecond(ZoneOffset.UTC),
+        to.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC));
+  }
+
+  /**
+   * Computes the statistics of the samples, optionally of a single tag.
+   *
+   * @param tagId The tag id to include, or -1 for all samples.
+   * @return The statistics.
+   */
+  public HeartRateStats stats(int tagId) {
+    HeartRateStats stats = new HeartRateStats();
+    for (int i = offset; i < offset + size; i++) {
+      if (tagId < 0 || tagIds[i] == tagId) {
+        stats.add(bpms[i]);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Returns the index of the first sample taken at or after a time, within the whole arrays.
+   */
+  private int lowerBound(long epochSecond) {
+    int low = offset;
+    int high = offset + size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (epochSeconds[middle] < epochSecond) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+    }
+    return index;
+  }
+
+  /**
+   * Collects samples in any order into a {@link HeartRateSeries}.
+   */
+  public static class Builder {
+    private long[] epochSeconds = new long[1024];
+    private short[] bpms = new short[1024];
+    private int[] tagIds = new int[1024];
+    private int size;
+    private boolean ordered = true;
+
+    /**
+     * Adds a sample.
+     *
+     * @param epochSecond The wall-clock date and time as seconds since the epoch in UTC.
+     * @param bpm         The heart rate in beats per minute.
+     * @param tagId       The tag id, or {@link HeartRateSegment#NO_TAG}.
+     * @return This builder.
+     */
+    public Builder add(long epochSecond, int bpm, int tagId) {
+      if (size == epochSeconds.length) {
+        epochSeconds = Arrays.copyOf(epochSeconds, size * 2);
+        bpms = Arrays.copyOf(bpms, size * 2);
+        tagIds = Arrays.copyOf(tagIds, size * 2);
+      }
+      if (size > 0 && epochSecond < epochSeconds[size - 1]) {
+        ordered = false;
+      }
+      epochSeconds[size] = epochSecond;
+      bpms[size] = (short) bpm;
+      tagIds[size] = tagId;
+      size++;
+      return this;
+    }
+
+    /**
+     * Builds the series, sorting the samples by time if they were added out of order.
+     * Samples taken at the same time keep the order they were added in.
+     *
+     * @param tags The tags of the user's {@link TagDictionary}, indexed by id. Read them after the samples,
+     *             so that they include every tag the samples refer to.
+     * @return The series.
+     */
+    public HeartRateSeries build(String[] tags) {
+      if (!ordered) {
+        sort();
+      }
+      return new HeartRateSeries(Arrays.copyOf(epochSeconds, size), Arrays.copyOf(bpms, size),
+          Arrays.copyOf(tagIds, size), tags, 0, size);
+    }
+
+    private void sort() {
+      long min = Long.MAX_VALUE;
+      long max = Long.MIN_VALUE;
+      for (int i = 0; i < size; i++) {
+        min = Math.min(min, epochSeconds[i]);
+        max = Math.max(max, epochSeconds[i]);
+      }
+
+      int[] order = new int[size];
+      if (max - min < (1L << 32)) {
+        // Pack the time (relative to the earliest) above the index, so a primitive sort is a stable sort by time
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+          keys[i] = (epochSeconds[i] - min) << 31 | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < size; i++) {
+          order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        }
+      } else {
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+          boxed[i] = i;
+        }
+        Arrays.sort(boxed, Comparator.comparingLong(i -> epochSeconds[i]));
+        for (int i = 0; i < size; i++) {
+          order[i] = boxed[i];
+        }
+      }
+
+      long[] sortedSeconds = new long[size];
+      short[] sortedBpms = new short[size];
+      int[] sortedTagIds = new int[size];
+      for (int i = 0; i < size; i++) {
+        sortedSeconds[i] = epochSeconds[order[i]];
+        sortedBpms[i] = bpms[order[i]];
+        sortedTagIds[i] = tagIds[order[i]];
+      }
+      epochSeconds = sortedSeconds;
+      bpms = sortedBpms;
+      tagIds = sortedTagIds;
+      ordered = true;
+    }
+  }
+}
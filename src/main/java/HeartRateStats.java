@@ -0,0 +1,148 @@
+/**
+ * Summary statistics of a set of heart rate samples: their count, minimum, maximum, sum and sum of squares.
+ * Statistics of disjoint sets combine exactly, so daily statistics roll up into weekly and monthly ones
+ * without going back to the samples.
+ */
+public class HeartRateStats {
+  private long count;
+  private int min = Integer.MAX_VALUE;
+  private int max = Integer.MIN_VALUE;
+  private long sum;
+  private long sumOfSquares;
+
+  /**
+   * Constructs empty statistics.
+   */
+  public HeartRateStats() {
+  }
+
+  /**
+   * Constructs statistics from their stored values.
+   *
+   * @param count        The number of samples.
+   * @param min          The lowest heart rate.
+   * @param max          The highest heart rate.
+   * @param sum          The sum of the heart rates.
+   * @param sumOfSquares The sum of the squared heart rates.
+   * @throws IllegalArgumentException If the count is not positive.
+   */
+  public HeartRateStats(long count, int min, int max, long sum, long sumOfSquares) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Heart rate statistics must cover at least one sample.");
+    }
+    this.count = count;
+    this.min = min;
+    this.max = max;
+    this.sum = sum;
+    this.sumOfSquares = sumOfSquares;
+  }
+
+  /**
+   * Adds a sample to the statistics.
+   *
+   * @param heartRate The heart rate in beats per minute.
+   */
+  public void add(int heartRate) {
+    count++;
+    min = Math.min(min, heartRate);
+    max = Math.max(max, heartRate);
+    sum += heartRate;
+    sumOfSquares += (long) heartRate * heartRate;
+  }
+
+  /**
+   * Adds the samples summarised by other statistics to these.
+   *
+   * @param other The statistics to add.
+   * @return These statistics.
+   */
+  public HeartRateStats combine(HeartRateStats other) {
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+    sum += other.sum;
+    sumOfSquares += other.sumOfSquares;
+    return this;
+  }
+
+  /**
+   * Returns a copy of these statistics.
+   *
+   * @return The copy.
+   */
+  public HeartRateStats copy() {
+    return new HeartRateStats().combine(this);
+  }
+
+  /**
+   * Returns the number of samples.
+   *
+   * @return The number of samples.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the lowest heart rate.
+   *
+   * @return The heart rate in beats per minute.
+   */
+  public int getMin() {
+    return min;
+  }
+
+  /**
+   * Returns the highest heart rate.
+   *
+   * @return The heart rate in beats per minute.
+   */
+  public int getMax() {
+    return max;
+  }
+
+  /**
+   * Returns the sum of the heart rates.
+   *
+   * @return The sum in beats per minute.
+   */
+  public long getSum() {
+    return sum;
+  }
+
+  /**
+   * Returns the sum of the squared heart rates.
+   *
+   * @return The sum of squares.
+   */
+  public long getSumOfSquares() {
+    return sumOfSquares;
+  }
+
+  /**
+   * Returns the average heart rate.
+   *
+   * @return The mean in beats per minute, or NaN if there are no samples.
+   */
+  public double getAverage() {
+    return count == 0 ? Double.NaN : (double) sum / count;
+  }
+
+  /**
+   * Returns the population standard deviation of the heart rates.
+   *
+   * @return The standard deviation in beats per minute, or NaN if there are no samples.
+   */
+  public double getStandardDeviation() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    double mean = (double) sum / count;
+    return Math.sqrt(Math.max(0, (double) sumOfSquares / count - mean * mean));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Samples: %d, Min: %d, Max: %d, Average: %.1f", count, min, max, getAverage());
+  }
+}
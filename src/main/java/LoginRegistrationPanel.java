@@ -224,8 +224,9 @@ public class LoginRegistrationPanel extends JPanel implements ActionListener {
       }
 
       try {
-        if (UserDataStorage.authenticateUser(username, password)) {
-          mainFrame.showAddMetricsScreen(username);
+        UserSession session = UserDataStorage.login(username, password);
+        if (session != null) {
+          mainFrame.showAddMetricsScreen(session);
           clearLoginFields();
         } else {
           JOptionPane.showMessageDialog(this, "Invalid username or password.",
@@ -7,7 +7,7 @@ public class MainFrame extends JFrame {
   private CardLayout cardLayout;
   private JPanel mainPanel;
   private LoginRegistrationPanel loginRegisterPanel;
-  private String currentUser; // To keep track of the logged-in user
+  private UserSession currentSession; // To keep track of the logged-in user
 
   public MainFrame() throws IOException {
     setTitle("Health Tracker App");
@@ -27,10 +27,10 @@ public class MainFrame extends JFrame {
     cardLayout.show(mainPanel, "LOGIN_REGISTER"); // Start with the login/register screen
   }
 
-  public void showAddMetricsScreen(String username) throws IOException {
-    this.currentUser = username;
+  public void showAddMetricsScreen(UserSession session) throws IOException {
+    this.currentSession = session;
     // Create a new instance of AddMetricsPanel each time
-    AddMetricsPanel addMetricsPanel = new AddMetricsPanel(this, username);
+    AddMetricsPanel addMetricsPanel = new AddMetricsPanel(this, session);
 
     // Remove any existing "ADD_METRICS" panel
     Component[] components = mainPanel.getComponents();
@@ -47,15 +47,16 @@ public class MainFrame extends JFrame {
     mainPanel.repaint();
   }
 
-  public void showViewMetricsScreen(String username) throws IOException {
-    this.currentUser = username;
+  public void showViewMetricsScreen(UserSession session) throws IOException {
+    this.currentSession = session;
     // Create a new instance of ViewMetricsPanel each time
-    ViewMetricsPanel viewMetricsPanel = new ViewMetricsPanel(this, username);
+    ViewMetricsPanel viewMetricsPanel = new ViewMetricsPanel(this, session);
 
     // Remove any existing "VIEW_METRICS" panel
     Component[] components = mainPanel.getComponents();
     for (Component component : components) {
       if (component instanceof ViewMetricsPanel) {
+        ((ViewMetricsPanel) component).cancelLoading();
         mainPanel.remove(component);
       }
     }
@@ -72,7 +73,8 @@ public class MainFrame extends JFrame {
 
     // Switch to the login/register card
     cardLayout.show(mainPanel, "LOGIN_REGISTER");
-    currentUser = null; // Reset current user on logout
+    UserDataStorage.logout(currentSession);
+    currentSession = null; // Reset current user on logout
   }
 
   public static void main(String[] args) {
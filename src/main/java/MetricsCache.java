@@ -0,0 +1,382 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Shared, write-through cache of each user's parsed metrics.
+ * Each metric type is loaded into the cache the first time it is read in full, and kept in sync by the
+ * add/save methods of {@link DailyMetricsManager}. Whole users are evicted in least-recently-used order
+ * once the estimated size of all cached users exceeds the memory budget.
+ * Lookups of a day or a date range copy only the entries in the range, not the user's whole history.
+ */
+public class MetricsCache {
+  // Rough per-entry heap estimates, including the map/list slots that hold them
+  private static final long WEIGHT_ENTRY_BYTES = 120;
+  private static final long STEPS_ENTRY_BYTES = 100;
+  private static final long HEART_RATE_ENTRY_BYTES = 160;
+  private static final long PERIOD_LOG_ENTRY_BYTES = 200;
+
+  private static final int STAMP_STRIPES = 256;
+
+  private static final MetricsCache SHARED = new MetricsCache(Constants.METRICS_CACHE_BUDGET_BYTES);
+
+  private final long budgetBytes;
+  private final LinkedHashMap<String, UserMetrics> users = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes;
+  // Write stamps striped by user, so a write only discards concurrent loads of the same user (or a stripe mate)
+  private final long[] writeStamps = new long[STAMP_STRIPES];
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param budgetBytes The estimated heap size the cached users may take up.
+   */
+  public MetricsCache(long budgetBytes) {
+    this.budgetBytes = budgetBytes;
+  }
+
+  /**
+   * Returns the cache shared by all metrics managers.
+   *
+   * @return The shared cache.
+   */
+  public static MetricsCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns a stamp that changes whenever a user's cached data may have been written.
+   * Take it before reading from disk and pass it to the matching put method, so a load that raced
+   * with a write of the same user is not cached.
+   *
+   * @param user The user key.
+   * @return The user's current write stamp.
+   */
+  public synchronized long writeStamp(String user) {
+    return writeStamps[stripe(user)];
+  }
+
+  private static int stripe(String user) {
+    return Math.floorMod(user.hashCode(), STAMP_STRIPES);
+  }
+
+  private void bumpStamp(String user) {
+    writeStamps[stripe(user)]++;
+  }
+
+  /**
+   * Gets a user's cached weights.
+   *
+   * @param user The user key.
+   * @return A copy of the cached weights, or null if they are not cached.
+   */
+  public synchronized Map<LocalDate, Weight> getWeights(String user) {
+    UserMetrics metrics = users.get(user);
+    return metrics == null || metrics.weights == null ? null : new HashMap<>(metrics.weights);
+  }
+
+  /**
+   * Gets a user's cached weights between two dates (inclusive).
+   *
+   * @param user The user key.
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return A copy of the cached weights in the range, in date order, or null if they are not cached.
+   */
+  public synchronized NavigableMap<LocalDate, Weight> getWeights(String user, LocalDate from, LocalDate to) {
+    UserMetrics metrics = users.get(user);
+    return metrics == null || metrics.weights == null ? null
+        : new TreeMap<>(metrics.weights.subMap(from, true, to, true));
+  }
+
+  /**
+   * Caches a user's weights as loaded from disk.
+   *
+   * @param user    The user key.
+   * @param weights The weights.
+   * @param stamp   The write stamp taken before loading.
+   */
+  public synchronized void putWeights(String user, Map<LocalDate, Weight> weights, long stamp) {
+    if (stamp != writeStamps[stripe(user)]) {
+      return;
+    }
+    UserMetrics metrics = metricsFor(user);
+    if (metrics.weights == null) {
+      metrics.weights = new TreeMap<>(weights);
+      grow(metrics, weights.size() * WEIGHT_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Writes a saved weight through to the cache.
+   *
+   * @param user   The user key.
+   * @param date   The date of the weight entry.
+   * @param weight The saved weight.
+   */
+  public synchronized void updateWeight(String user, LocalDate date, Weight weight) {
+    bumpStamp(user);
+    UserMetrics metrics = users.get(user);
+    if (metrics != null && metrics.weights != null && metrics.weights.put(date, weight) == null) {
+      grow(metrics, WEIGHT_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Gets a user's cached steps.
+   *
+   * @param user The user key.
+   * @return A copy of the cached steps, or null if they are not cached.
+   */
+  public synchronized Map<LocalDate, List<Steps>> getSteps(String user) {
+    UserMetrics metrics = users.get(user);
+    return metrics == null || metrics.steps == null ? null : copyOf(metrics.steps);
+  }
+
+  /**
+   * Gets a user's cached steps between two dates (inclusive).
+   *
+   * @param user The user key.
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return The cached steps in the range, in date order, or null if they are not cached.
+   */
+  public synchronized List<Steps> getSteps(String user, LocalDate from, LocalDate to) {
+    UserMetrics metrics = users.get(user);
+    return metrics == null || metrics.steps == null ? null : flatten(metrics.steps, from, to);
+  }
+
+  /**
+   * Caches a user's steps as loaded from disk.
+   *
+   * @param user  The user key.
+   * @param steps The steps, grouped by date.
+   * @param stamp The write stamp taken before loading.
+   */
+  public synchronized void putSteps(String user, Map<LocalDate, List<Steps>> steps, long stamp) {
+    if (stamp != writeStamps[stripe(user)]) {
+      return;
+    }
+    UserMetrics metrics = metricsFor(user);
+    if (metrics.steps == null) {
+      metrics.steps = mutableCopyOf(steps);
+      grow(metrics, countEntries(steps) * STEPS_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Writes an added steps entry through to the cache.
+   *
+   * @param user  The user key.
+   * @param steps The added steps entry.
+   */
+  public synchronized void addSteps(String user, Steps steps) {
+    bumpStamp(user);
+    UserMetrics metrics = users.get(user);
+    if (metrics != null && metrics.steps != null) {
+      metrics.steps.computeIfAbsent(steps.getDate(), d -> new ArrayList<>()).add(steps);
+      grow(metrics, STEPS_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Gets a user's cached heart rates.
+   *
+   * @param user The user key.
+   * @return A copy of the cached heart rates, or null if they are not cached.
+   */
+  public synchronized Map<LocalDate, List<HeartRate>> getHeartRates(String user) {
+    UserMetrics metrics = users.get(user);
+    return metrics == null || metrics.heartRates == null ? null : copyOf(metrics.heartRates);
+  }
+
+  /**
+   * Gets a user's cached heart rates between two dates (inclusive).
+   *
+   * @param user The user key.
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return The cached heart rates in the range, in date order, or null if they are not cached.
+   */
+  public synchronized List<HeartRate> getHeartRates(String user, LocalDate from, LocalDate to) {
+    UserMetrics metrics = users.get(user);
+    return metrics == null || metrics.heartRates == null ? null : flatten(metrics.heartRates, from, to);
+  }
+
+  /**
+   * Caches a user's heart rates as loaded from disk.
+   *
+   * @param user       The user key.
+   * @param heartRates The heart rates, grouped by date.
+   * @param stamp      The write stamp taken before loading.
+   */
+  public synchronized void putHeartRates(String user, Map<LocalDate, List<HeartRate>> heartRates, long stamp) {
+    if (stamp != writeStamps[stripe(user)]) {
+      return;
+    }
+    UserMetrics metrics = metricsFor(user);
+    if (metrics.heartRates == null) {
+      metrics.heartRates = mutableCopyOf(heartRates);
+      grow(metrics, countEntries(heartRates) * HEART_RATE_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Writes an added heart rate entry through to the cache.
+   *
+   * @param user      The user key.
+   * @param heartRate The added heart rate entry.
+   */
+  public synchronized void addHeartRate(String user, HeartRate heartRate) {
+    bumpStamp(user);
+    UserMetrics metrics = users.get(user);
+    if (metrics != null && metrics.heartRates != null) {
+      metrics.heartRates.computeIfAbsent(heartRate.getDate(), d -> new ArrayList<>()).add(heartRate);
+      grow(metrics, HEART_RATE_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Gets a user's cached period logs.
+   *
+   * @param user The user key.
+   * @return A copy of the cached period logs, or null if they are not cached.
+   */
+  public synchronized List<PeriodLog> getPeriodLogs(String user) {
+    UserMetrics metrics = users.get(user);
+    return metrics == null || metrics.periodLogs == null ? null : new ArrayList<>(metrics.periodLogs);
+  }
+
+  /**
+   * Caches a user's period logs as loaded from disk.
+   *
+   * @param user       The user key.
+   * @param periodLogs The period logs.
+   * @param stamp      The write stamp taken before loading.
+   */
+  public synchronized void putPeriodLogs(String user, List<PeriodLog> periodLogs, long stamp) {
+    if (stamp != writeStamps[stripe(user)]) {
+      return;
+    }
+    UserMetrics metrics = metricsFor(user);
+    if (metrics.periodLogs == null) {
+      metrics.periodLogs = new ArrayList<>(periodLogs);
+      grow(metrics, periodLogs.size() * PERIOD_LOG_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Writes an added period log through to the cache.
+   *
+   * @param user      The user key.
+   * @param periodLog The added period log.
+   */
+  public synchronized void addPeriodLog(String user, PeriodLog periodLog) {
+    bumpStamp(user);
+    UserMetrics metrics = users.get(user);
+    if (metrics != null && metrics.periodLogs != null) {
+      metrics.periodLogs.add(periodLog);
+      grow(metrics, PERIOD_LOG_ENTRY_BYTES);
+    }
+  }
+
+  /**
+   * Drops everything cached for a user.
+   *
+   * @param user The user key.
+   */
+  public synchronized void invalidate(String user) {
+    bumpStamp(user);
+    UserMetrics metrics = users.remove(user);
+    if (metrics != null) {
+      totalBytes -= metrics.bytes;
+    }
+  }
+
+  /**
+   * Returns the estimated heap size of all cached users.
+   *
+   * @return The estimated size in bytes.
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Returns whether anything is cached for a user.
+   *
+   * @param user The user key.
+   * @return true if the user is cached, false otherwise.
+   */
+  public synchronized boolean isCached(String user) {
+    return users.containsKey(user);
+  }
+
+  private UserMetrics metricsFor(String user) {
+    return users.computeIfAbsent(user, u -> new UserMetrics());
+  }
+
+  /**
+   * Accounts for cache growth and evicts least recently used users until the cache fits its budget.
+   */
+  private void grow(UserMetrics metrics, long bytes) {
+    metrics.bytes += bytes;
+    totalBytes += bytes;
+
+    Iterator<UserMetrics> eldest = users.values().iterator();
+    while (totalBytes > budgetBytes && eldest.hasNext()) {
+      totalBytes -= eldest.next().bytes;
+      eldest.remove();
+    }
+  }
+
+  private static <T> long countEntries(Map<LocalDate, List<T>> entries) {
+    long count = 0;
+    for (List<T> list : entries.values()) {
+      count += list.size();
+    }
+    return count;
+  }
+
+  private static <T> Map<LocalDate, List<T>> copyOf(Map<LocalDate, List<T>> entries) {
+    Map<LocalDate, List<T>> copy = new HashMap<>();
+    for (Map.Entry<LocalDate, List<T>> entry : entries.entrySet()) {
+      copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+    }
+    return copy;
+  }
+
+  private static <T> List<T> flatten(NavigableMap<LocalDate, List<T>> entries, LocalDate from, LocalDate to) {
+    List<T> range = new ArrayList<>();
+    for (List<T> list : entries.subMap(from, true, to, true).values()) {
+      range.addAll(list);
+    }
+    return range;
+  }
+
+  private static <T> NavigableMap<LocalDate, List<T>> mutableCopyOf(Map<LocalDate, List<T>> entries) {
+    NavigableMap<LocalDate, List<T>> copy = new TreeMap<>();
+    for (Map.Entry<LocalDate, List<T>> entry : entries.entrySet()) {
+      copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    }
+    return copy;
+  }
+
+  /**
+   * Everything cached for one user. A null collection means that metric type is not loaded yet.
+   */
+  private static final class UserMetrics {
+    private NavigableMap<LocalDate, Weight> weights;
+    private NavigableMap<LocalDate, List<Steps>> steps;
+    private NavigableMap<LocalDate, List<HeartRate>> heartRates;
+    private List<PeriodLog> periodLogs;
+    private long bytes;
+  }
+}
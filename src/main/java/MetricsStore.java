@@ -0,0 +1,488 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage engine for one user's health metrics: weights, steps, heart rates and period logs.
+ * The screens only use this interface, so the engine can be chosen per deployment with the
+ * "metrics.store" system property (see {@link #forUser(String)}).
+ * Backends implement the methods that read and write entries; the aggregates (daily totals, statistics,
+ * series, tag queries) have defaults computed from the entry streams, which a backend overrides when it
+ * keeps them precomputed.
+ * All backends must pass the same conformance tests.
+ */
+public interface MetricsStore {
+  /**
+   * The backend keeping metrics in CSV files and binary heart rate segments (see {@link DailyMetricsManager}).
+   */
+  String CSV = "csv";
+  /**
+   * The backend keeping metrics in fixed-width binary record files (see {@link BinaryMetricsStore}).
+   */
+  String BINARY = "binary";
+  /**
+   * The backend keeping metrics in an embedded SQLite database (see {@link SqlMetricsStore}).
+   */
+  String SQL = "sql";
+
+  /**
+   * Opens the store of a user with the backend configured for this deployment.
+   *
+   * @param username The username of the user.
+   * @return The user's store.
+   * @throws IllegalArgumentException If the configured backend is unknown.
+   */
+  static MetricsStore forUser(String username) {
+    return open(Constants.METRICS_STORE, Constants.USER_DIRECTORY, username);
+  }
+
+  /**
+   * Opens the store of a user with the given backend.
+   *
+   * @param backend       The backend, {@link #CSV}, {@link #BINARY} or {@link #SQL}.
+   * @param userDirectory The directory holding the user folders, ending with a separator.
+   * @param username      The username of the user.
+   * @return The user's store.
+   * @throws IllegalArgumentException If the backend is unknown.
+   */
+  static MetricsStore open(String backend, String userDirectory, String username) {
+    switch (backend) {
+      case CSV:
+        return new DailyMetricsManager(userDirectory, username);
+      case BINARY:
+        return new BinaryMetricsStore(userDirectory, username);
+      case SQL:
+        return new SqlMetricsStore(userDirectory, username);
+      default:
+        throw new IllegalArgumentException("Unknown metrics store: " + backend);
+    }
+  }
+
+  /**
+   * Saves or updates the weight of a day.
+   *
+   * @param date   The date of the weight entry.
+   * @param weight The Weight object to save.
+   * @return true if successful, false otherwise.
+   */
+  boolean saveWeight(LocalDate date, Weight weight);
+
+  /**
+   * Gets the weight of a day.
+   *
+   * @param date The date to get weight data for.
+   * @return Optional containing Weight object if found, empty otherwise.
+   */
+  default Optional<Weight> getWeight(LocalDate date) {
+    return Optional.ofNullable(getWeights(date, date).get(date));
+  }
+
+  /**
+   * Gets the weight entries between two dates (inclusive).
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return Map with LocalDate keys and Weight values, in date order.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  NavigableMap<LocalDate, Weight> getWeights(LocalDate from, LocalDate to);
+
+  /**
+   * Gets all weight entries.
+   *
+   * @return Map with LocalDate keys and Weight values.
+   */
+  Map<LocalDate, Weight> getAllWeights();
+
+  /**
+   * Adds a steps entry.
+   *
+   * @param steps The Steps object to save.
+   * @return true if successful, false otherwise.
+   */
+  default boolean addSteps(Steps steps) {
+    return addSteps(Collections.singletonList(steps), false);
+  }
+
+  /**
+   * Adds a batch of steps entries.
+   *
+   * @param stepsBatch The Steps objects to save, in order.
+   * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
+   */
+  default boolean addSteps(Collection<Steps> stepsBatch) {
+    return addSteps(stepsBatch, false);
+  }
+
+  /**
+   * Adds a batch of steps entries.
+   *
+   * @param stepsBatch The Steps objects to save, in order.
+   * @param sync       Whether the entries must be forced to disk before returning.
+   * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
+   */
+  boolean addSteps(Collection<Steps> stepsBatch, boolean sync);
+
+  /**
+   * Gets all steps entries of a day.
+   *
+   * @param date The date to get steps for.
+   * @return List of Steps objects for the date.
+   */
+  default List<Steps> getSteps(LocalDate date) {
+    return getSteps(date, date);
+  }
+
+  /**
+   * Gets all steps entries between two dates (inclusive).
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return List of Steps objects.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  List<Steps> getSteps(LocalDate from, LocalDate to);
+
+  /**
+   * Gets all steps entries.
+   *
+   * @return Map with LocalDate keys and Lists of Steps values.
+   */
+  Map<LocalDate, List<Steps>> getAllSteps();
+
+  /**
+   * Streams steps entries between two dates (inclusive).
+   * The stream may hold a file open until it is closed, e.g. with try-with-resources.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return Stream of Steps objects.
+   */
+  Stream<Steps> streamSteps(LocalDate from, LocalDate to);
+
+  /**
+   * Gets the steps totals of each day between two dates (inclusive) that has entries: the sum of the day's
+   * entries, their number and the largest single entry.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The daily totals, in date order.
+   * @throws IllegalArgumentException If the range ends before it starts.
+   */
+  default DailyStepTotals getDailyStepTotals(LocalDate from, LocalDate to) {
+    checkOpenRange(from, to);
+    TreeMap<Long, int[]> days = new TreeMap<>(); // Total, count and maximum of each day
+    try (Stream<Steps> steps = streamSteps(from, to)) {
+      steps.forEach(entry -> {
+        int[] day = days.computeIfAbsent(entry.getDate().toEpochDay(), key -> new int[3]);
+        day[0] += entry.getSteps();
+        day[1]++;
+        day[2] = Math.max(day[2], entry.getSteps());
+      });
+    }
+
+    int[] epochDays = new int[days.size()];
+    int[] totals = new int[days.size()];
+    int[] counts = new int[days.size()];
+    int[] maxima = new int[days.size()];
+    int i = 0;
+    for (Map.Entry<Long, int[]> day : days.entrySet()) {
+      epochDays[i] = Math.toIntExact(day.getKey());
+      totals[i] = day.getValue()[0];
+      counts[i] = day.getValue()[1];
+      maxima[i] = day.getValue()[2];
+      i++;
+    }
+    return new DailyStepTotals(epochDays, totals, counts, maxima);
+  }
+
+  /**
+   * Adds a heart rate entry.
+   *
+   * @param heartRate The HeartRate object to save.
+   * @return true if successful, false otherwise.
+   */
+  default boolean addHeartRate(HeartRate heartRate) {
+    return addHeartRates(Collections.singletonList(heartRate), false);
+  }
+
+  /**
+   * Adds a batch of heart rate entries.
+   *
+   * @param heartRates The HeartRate objects to save, in order.
+   * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
+   */
+  default boolean addHeartRates(Collection<HeartRate> heartRates) {
+    return addHeartRates(heartRates, false);
+  }
+
+  /**
+   * Adds a batch of heart rate entries.
+   *
+   * @param heartRates The HeartRate objects to save, in order.
+   * @param sync       Whether the entries must be forced to disk before returning.
+   * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
+   */
+  boolean addHeartRates(Collection<HeartRate> heartRates, boolean sync);
+
+  /**
+   * Gets all heart rate entries of a day.
+   *
+   * @param date The date to get heart rate data for.
+   * @return List of HeartRate objects for the date.
+   */
+  default List<HeartRate> getHeartRates(LocalDate date) {
+    return getHeartRates(date, date);
+  }
+
+  /**
+   * Gets all heart rate entries between two dates (inclusive).
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return List of HeartRate objects.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  List<HeartRate> getHeartRates(LocalDate from, LocalDate to);
+
+  /**
+   * Gets all heart rate entries.
+   *
+   * @return Map with LocalDate keys and Lists of HeartRate values.
+   */
+  Map<LocalDate, List<HeartRate>> getAllHeartRates();
+
+  /**
+   * Streams heart rate entries between two dates (inclusive).
+   * The stream may hold a file open until it is closed, e.g. with try-with-resources.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return Stream of HeartRate objects.
+   */
+  Stream<HeartRate> streamHeartRates(LocalDate from, LocalDate to);
+
+  /**
+   * Gets the heart rate samples between two dates (inclusive) as a compact, time-ordered series.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The samples in time order.
+   * @throws IllegalArgumentException If the range ends before it starts.
+   */
+  default HeartRateSeries getHeartRateSeries(LocalDate from, LocalDate to) {
+    checkOpenRange(from, to);
+    HeartRateSeries.Builder builder = new HeartRateSeries.Builder();
+    Map<String, Integer> tagIds = new LinkedHashMap<>();
+    try (Stream<HeartRate> heartRates = streamHeartRates(from, to)) {
+      heartRates.forEach(heartRate -> {
+        String tag = heartRate.getTags();
+        int tagId = tag == null ? HeartRateSegment.NO_TAG : tagIds.computeIfAbsent(tag, key -> tagIds.size());
+        builder.add(LocalDateTime.of(heartRate.getDate(), heartRate.getTime()).toEpochSecond(ZoneOffset.UTC),
+            heartRate.getHeartRate(), tagId);
+      });
+    }
+    return builder.build(tagIds.keySet().toArray(new String[0]));
+  }
+
+  /**
+   * Gets the heart rate entries matching a tag query between two dates (inclusive).
+   *
+   * @param query The tags to match.
+   * @param from  The first date to include, or null for no lower bound.
+   * @param to    The last date to include, or null for no upper bound.
+   * @return List of matching HeartRate objects.
+   */
+  default List<HeartRate> getHeartRates(TagQuery query, LocalDate from, LocalDate to) {
+    try (Stream<HeartRate> heartRates = streamHeartRates(from, to)) {
+      return heartRates.filter(heartRate -> query.matches(heartRate.getTags())).collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Gets heart rate statistics between two dates (inclusive), rolled up by day, week or month.
+   *
+   * @param from   The first date to include, or null for no lower bound.
+   * @param to     The last date to include, or null for no upper bound.
+   * @param period The period to roll the statistics up by.
+   * @return The statistics of all samples keyed by the first day of each period, in date order.
+   */
+  default NavigableMap<LocalDate, HeartRateStats> getHeartRateStats(LocalDate from, LocalDate to,
+      HeartRateRollup.Period period) {
+    NavigableMap<LocalDate, HeartRateStats> stats = new TreeMap<>();
+    for (NavigableMap<LocalDate, HeartRateStats> tagStats : getHeartRateStatsByTag(from, to, period).values()) {
+      tagStats.forEach((start, periodStats) -> stats.merge(start, periodStats, HeartRateStats::combine));
+    }
+    return stats;
+  }
+
+  /**
+   * Gets heart rate statistics per tag between two dates (inclusive), rolled up by day, week or month.
+   *
+   * @param from   The first date to include, or null for no lower bound.
+   * @param to     The last date to include, or null for no upper bound.
+   * @param period The period to roll the statistics up by.
+   * @return For each tag (null for samples without one), the statistics keyed by the first day of each period.
+   */
+  default Map<String, NavigableMap<LocalDate, HeartRateStats>> getHeartRateStatsByTag(LocalDate from, LocalDate to,
+      HeartRateRollup.Period period) {
+    Map<String, NavigableMap<LocalDate, HeartRateStats>> stats = new HashMap<>();
+    try (Stream<HeartRate> heartRates = streamHeartRates(from, to)) {
+      heartRates.forEach(heartRate -> stats.computeIfAbsent(heartRate.getTags(), tag -> new TreeMap<>())
+          .computeIfAbsent(period.startOf(heartRate.getDate()), start -> new HeartRateStats())
+          .add(heartRate.getHeartRate()));
+    }
+    return stats;
+  }
+
+  /**
+   * Adds a period log entry.
+   *
+   * @param periodLog The PeriodLog object to save.
+   * @return true if successful, false otherwise.
+   */
+  default boolean addPeriodLog(PeriodLog periodLog) {
+    return addPeriodLogs(Collections.singletonList(periodLog), false);
+  }
+
+  /**
+   * Adds a batch of period log entries.
+   *
+   * @param periodLogs The PeriodLog objects to save, in order.
+   * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
+   */
+  default boolean addPeriodLogs(Collection<PeriodLog> periodLogs) {
+    return addPeriodLogs(periodLogs, false);
+  }
+
+  /**
+   * Adds a batch of period log entries.
+   *
+   * @param periodLogs The PeriodLog objects to save, in order.
+   * @param sync       Whether the entries must be forced to disk before returning.
+   * @return true if successful, false otherwise.
+   * @throws IllegalArgumentException If any entry in the batch is invalid; nothing is written then.
+   */
+  boolean addPeriodLogs(Collection<PeriodLog> periodLogs, boolean sync);
+
+  /**
+   * Gets all period log entries.
+   *
+   * @return List of PeriodLog objects, in the order they were added.
+   */
+  List<PeriodLog> getPeriodLogs();
+
+  /**
+   * Gets the period logs that overlap two dates (inclusive).
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return List of PeriodLog objects, by start date.
+   * @throws IllegalArgumentException If either date is null or the range ends before it starts.
+   */
+  List<PeriodLog> getPeriodLogs(LocalDate from, LocalDate to);
+
+  /**
+   * Gets period logs for a specific month, including periods that start before or end after it.
+   *
+   * @param year  The year.
+   * @param month The month (1-12).
+   * @return List of PeriodLog objects overlapping the specified month, by start date.
+   */
+  default List<PeriodLog> getPeriodLogsByMonth(int year, int month) {
+    YearMonth yearMonth = YearMonth.of(year, month);
+    return getPeriodLogs(yearMonth.atDay(1), yearMonth.atEndOfMonth());
+  }
+
+  /**
+   * Streams the period logs that overlap two dates (inclusive).
+   * The stream may hold a file open until it is closed, e.g. with try-with-resources.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return Stream of PeriodLog objects, in the order they were added.
+   */
+  Stream<PeriodLog> streamPeriodLogs(LocalDate from, LocalDate to);
+
+  /**
+   * Gets the period logs matching a tag query that overlap two dates (inclusive).
+   *
+   * @param query The tags to match.
+   * @param from  The first date to include, or null for no lower bound.
+   * @param to    The last date to include, or null for no upper bound.
+   * @return List of matching PeriodLog objects, in the order they were added.
+   */
+  default List<PeriodLog> getPeriodLogs(TagQuery query, LocalDate from, LocalDate to) {
+    try (Stream<PeriodLog> periodLogs = streamPeriodLogs(from, to)) {
+      return periodLogs.filter(log -> query.matches(log.getTags())).collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Gets the cycle length statistics of all period logs, e.g. to predict the next period.
+   *
+   * @return The statistics.
+   */
+  default CycleStats getCycleStats() {
+    List<PeriodLog> periodLogs = getPeriodLogs();
+    long[] starts = new long[periodLogs.size()];
+    for (int i = 0; i < starts.length; i++) {
+      starts[i] = periodLogs.get(i).getDate().toEpochDay();
+    }
+    Arrays.sort(starts);
+
+    int count = 0;
+    int min = Integer.MAX_VALUE;
+    int max = Integer.MIN_VALUE;
+    long sum = 0;
+    long sumOfSquares = 0;
+    for (int i = 1; i < starts.length; i++) {
+      if (starts[i] > starts[i - 1]) {
+        int days = (int) (starts[i] - starts[i - 1]);
+        count++;
+        min = Math.min(min, days);
+        max = Math.max(max, days);
+        sum += days;
+        sumOfSquares += (long) days * days;
+      }
+    }
+    return new CycleStats(count, min, max, sum, sumOfSquares,
+        starts.length == 0 ? null : LocalDate.ofEpochDay(starts[starts.length - 1]));
+  }
+
+  /**
+   * Gets every tag the user has logged entries with.
+   *
+   * @return The tags, in the order they were first used.
+   */
+  List<String> getTags();
+
+  /**
+   * Checks a date range whose bounds may be open.
+   *
+   * @throws IllegalArgumentException If the range ends before it starts.
+   */
+  private static void checkOpenRange(LocalDate from, LocalDate to) {
+    if (from != null && to != null && to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+  }
+}
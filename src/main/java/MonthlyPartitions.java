@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Names, creates and lists the monthly partition files of a metric.
+ * Each calendar month of data lives in its own file in the metric's directory, e.g. "heart_rate/2026-10.seg",
+ * so date-bounded reads only open the months they overlap, and a month's file stops growing once
+ * the month is over (unless entries are back-filled for it). Files are only ever appended to.
+ */
+public class MonthlyPartitions {
+  private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+  private final Path directory;
+  private final String extension;
+  private final byte[] header;
+  private final Set<YearMonth> created = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Constructs the partitions of a metric.
+   *
+   * @param directory The directory holding the partition files.
+   * @param extension The file name extension of the partition files, including the dot.
+   * @param header    The bytes every new partition file starts with.
+   */
+  public MonthlyPartitions(Path directory, String extension, byte[] header) {
+    this.directory = directory;
+    this.extension = extension;
+    this.header = header.clone();
+  }
+
+  /**
+   * Returns the partition file for a month, whether or not it exists.
+   *
+   * @param month The month.
+   * @return The path of the partition file.
+   */
+  public Path fileFor(YearMonth month) {
+    return directory.resolve(month.format(MONTH_FORMATTER) + extension);
+  }
+
+  /**
+   * Creates the partition file for a month, with its header, if it doesn't exist yet.
+   * Safe to call concurrently; see {@link #createWithHeader(Path, byte[])}.
+   *
+   * @param month The month.
+   * @return The path of the partition file.
+   * @throws IOException If the file cannot be created.
+   */
+  public Path createIfNotExists(YearMonth month) throws IOException {
+    Path file = fileFor(month);
+    if (!created.contains(month)) {
+      Files.createDirectories(file.getParent());
+      createWithHeader(file, header);
+      created.add(month);
+    }
+    return file;
+  }
+
+  /**
+   * Creates a file holding just a header, if it doesn't exist yet.
+   * The header is written to a temporary file which is then hard-linked into place, so the file appears
+   * with its header already complete: a concurrent caller can never append to it before the header is
+   * written, and an existing file is never replaced. Safe to call concurrently.
+   *
+   * @param file   The file to create.
+   * @param header The bytes the file starts with.
+   * @throws IOException If the file cannot be created.
+   */
+  public static void createWithHeader(Path file, byte[] header) throws IOException {
+    if (Files.exists(file)) {
+      return;
+    }
+    Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      Files.write(temp, header);
+      try {
+        Files.createLink(file, temp);
+      } catch (UnsupportedOperationException e) {
+        // No hard links on this file system; a move without replacing still never clobbers a file
+        Files.move(temp, file);
+      }
+    } catch (FileAlreadyExistsException e) {
+      // Created earlier, or by another caller just now
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Lists the existing partition files whose month overlaps a date range.
+   *
+   * @param from The first date of the range, or null for no lower bound.
+   * @param to   The last date of the range, or null for no upper bound.
+   * @return The partition files in month order.
+   * @throws IOException If the directory cannot be listed.
+   */
+  public List<Path> files(LocalDate from, LocalDate to) throws IOException {
+    YearMonth first = from == null ? null : YearMonth.from(from);
+    YearMonth last = to == null ? null : YearMonth.from(to);
+    Map<YearMonth, Path> files = new TreeMap<>();
+
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + extension)) {
+      for (Path entry : entries) {
+        String name = entry.getFileName().toString();
+        YearMonth month;
+        try {
+          month = YearMonth.parse(name.substring(0, name.length() - extension.length()), MONTH_FORMATTER);
+        } catch (DateTimeParseException e) {
+          continue; // Not a partition, e.g. a temporary file
+        }
+        if ((first == null || !month.isBefore(first)) && (last == null || !month.isAfter(last))) {
+          files.put(month, entry);
+        }
+      }
+    } catch (NoSuchFileException e) {
+      // Nothing has been written yet
+    }
+    return new ArrayList<>(files.values());
+  }
+
+  /**
+   * Splits entries by the month of their date, keeping their order within each month.
+   *
+   * @param entries The entries to split.
+   * @param dateOf  Returns the date of an entry.
+   * @param <T>     The type of the entries.
+   * @return The entries of each month, in month order.
+   */
+  public static <T> Map<YearMonth, List<T>> groupByMonth(Collection<T> entries, Function<T, LocalDate> dateOf) {
+    Map<YearMonth, List<T>> months = new TreeMap<>();
+    for (T entry : entries) {
+      months.computeIfAbsent(YearMonth.from(dateOf.apply(entry)), month -> new ArrayList<>()).add(entry);
+    }
+    return months;
+  }
+}
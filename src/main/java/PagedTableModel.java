@@ -0,0 +1,511 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A table model that reads its rows from a {@link MetricsStore} a page at a time, as the table shows them.
+ * It holds an index of how many rows each day has, read from the store's daily aggregates, and the
+ * {@link #MAX_CACHED_PAGES} most recently shown pages of {@link #PAGE_SIZE} rows, so its memory use does not
+ * grow with the number of rows. Rows are in date order, oldest or newest first, and can be limited to a
+ * date range; the range is passed to the store and the order only changes how rows map to the index.
+ * The index and the pages are read in background workers; a row shows as empty until its page has arrived.
+ *
+ * @param <T> The type of a row.
+ */
+public abstract class PagedTableModel<T> extends AbstractTableModel {
+  /**
+   * The number of rows read from the store at a time.
+   */
+  static final int PAGE_SIZE = 500;
+  private static final int MAX_CACHED_PAGES = 8;
+
+  private final String[] columnNames;
+  private final Map<Integer, List<T>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+      return size() > MAX_CACHED_PAGES;
+    }
+  };
+  private final Set<Integer> loadingPages = new HashSet<>();
+  private final List<SwingWorker<?, ?>> workers = new ArrayList<>();
+  private DayIndex index = DayIndex.EMPTY;
+  private volatile LocalDate from;
+  private volatile LocalDate to;
+  private boolean descending;
+
+  /**
+   * Constructs a model; its rows are read once {@link #reload()} is called.
+   *
+   * @param columnNames The names of the columns, the first being the date column.
+   */
+  protected PagedTableModel(String... columnNames) {
+    this.columnNames = columnNames;
+  }
+
+  /**
+   * Counts the rows of each day between two dates (inclusive). Runs on a background thread.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The number of rows of each day that has any, by date.
+   */
+  protected abstract NavigableMap<LocalDate, Integer> countRows(LocalDate from, LocalDate to);
+
+  /**
+   * Reads the rows of the days between two dates (inclusive), which all have rows according to
+   * {@link #countRows(LocalDate, LocalDate)}. Runs on a background thread.
+   *
+   * @param first The first day to read.
+   * @param last  The last day to read.
+   * @return The rows in date order, in a stable order within each day.
+   */
+  protected abstract List<T> readRows(LocalDate first, LocalDate last);
+
+  /**
+   * Returns the value of a row to show in a column.
+   *
+   * @param row    The row.
+   * @param column The column.
+   * @return The value to show.
+   */
+  protected abstract Object getColumnValue(T row, int column);
+
+  /**
+   * Limits the rows to a date range and reloads them.
+   *
+   * @param from The first date to show, or null for no lower bound.
+   * @param to   The last date to show, or null for no upper bound.
+   * @throws IllegalArgumentException If the range ends before it starts.
+   */
+  public void setDateRange(LocalDate from, LocalDate to) {
+    if (from != null && to != null && to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+    this.from = from;
+    this.to = to;
+    reload();
+  }
+
+  /**
+   * Returns the first date shown.
+   *
+   * @return The first date, or null for no lower bound.
+   */
+  public LocalDate getFrom() {
+    return from;
+  }
+
+  /**
+   * Returns the last date shown.
+   *
+   * @return The last date, or null for no upper bound.
+   */
+  public LocalDate getTo() {
+    return to;
+  }
+
+  /**
+   * Determines if the newest rows are shown first.
+   *
+   * @return true if the rows are in descending date order, false if ascending.
+   */
+  public boolean isDescending() {
+    return descending;
+  }
+
+  /**
+   * Sets the date order of the rows. The pages already read are kept, as only the row numbers change.
+   *
+   * @param descending true to show the newest rows first, false for the oldest first.
+   */
+  public void setDescending(boolean descending) {
+    if (this.descending != descending) {
+      this.descending = descending;
+      fireTableStructureChanged(); // The date column's name shows the order
+    }
+  }
+
+  /**
+   * Discards the rows read so far and reads the index again in the background.
+   */
+  public void reload() {
+    cancel();
+    pages.clear();
+    index = DayIndex.EMPTY;
+    fireTableDataChanged();
+
+    LocalDate from = this.from;
+    LocalDate to = this.to;
+    startWorker(new SwingWorker<DayIndex, Void>() {
+      @Override
+      protected DayIndex doInBackground() {
+        return readIndex(from, to);
+      }
+
+      @Override
+      protected void done() {
+        workers.remove(this);
+        if (isCancelled()) {
+          return;
+        }
+        try {
+          index = get();
+          fireTableDataChanged();
+        } catch (InterruptedException | ExecutionException e) {
+          System.err.println("Error loading rows: " + e.getCause());
+        }
+      }
+    });
+  }
+
+  /**
+   * Cancels reading the index and any pages still being read.
+   */
+  public void cancel() {
+    for (SwingWorker<?, ?> worker : workers) {
+      worker.cancel(false);
+    }
+    workers.clear();
+    loadingPages.clear();
+  }
+
+  /**
+   * Reads the index of the rows between two dates.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The index.
+   */
+  DayIndex readIndex(LocalDate from, LocalDate to) {
+    return DayIndex.of(countRows(from, to));
+  }
+
+  /**
+   * Reads one page of rows, in ascending date order.
+   *
+   * @param index The index of the rows.
+   * @param page  The number of the page, counting from 0.
+   * @return The rows of the page; fewer than expected if the store changed after the index was read.
+   */
+  List<T> readPage(DayIndex index, int page) {
+    int first = page * PAGE_SIZE;
+    int last = Math.min(index.size(), first + PAGE_SIZE) - 1;
+    int firstDay = index.dayOf(first);
+    int lastDay = index.dayOf(last);
+    List<T> rows = readRows(index.getDate(firstDay), index.getDate(lastDay));
+
+    int skip = Math.min(rows.size(), first - index.offsets[firstDay]);
+    int end = Math.min(rows.size(), skip + last - first + 1);
+    return new ArrayList<>(rows.subList(skip, end));
+  }
+
+  private void loadPage(int page) {
+    if (!loadingPages.add(page)) {
+      return;
+    }
+    DayIndex index = this.index;
+    startWorker(new SwingWorker<List<T>, Void>() {
+      @Override
+      protected List<T> doInBackground() {
+        return readPage(index, page);
+      }
+
+      @Override
+      protected void done() {
+        workers.remove(this);
+        if (isCancelled() || index != PagedTableModel.this.index) {
+          return;
+        }
+        loadingPages.remove(page);
+        try {
+          pages.put(page, get());
+          int first = page * PAGE_SIZE;
+          int last = Math.min(index.size(), first + PAGE_SIZE) - 1;
+          if (descending) {
+            fireTableRowsUpdated(index.size() - 1 - last, index.size() - 1 - first);
+          } else {
+            fireTableRowsUpdated(first, last);
+          }
+        } catch (InterruptedException | ExecutionException e) {
+          System.err.println("Error loading rows: " + e.getCause());
+        }
+      }
+    });
+  }
+
+  private void startWorker(SwingWorker<?, ?> worker) {
+    workers.add(worker);
+    worker.execute();
+  }
+
+  @Override
+  public int getRowCount() {
+    return index.size();
+  }
+
+  @Override
+  public int getColumnCount() {
+    return columnNames.length;
+  }
+
+  @Override
+  public String getColumnName(int column) {
+    if (column == 0) {
+      return columnNames[0] + (descending ? " \u25BC" : " \u25B2");
+    }
+    return columnNames[column];
+  }
+
+  @Override
+  public Object getValueAt(int rowIndex, int columnIndex) {
+    int row = descending ? index.size() - 1 - rowIndex : rowIndex;
+    List<T> page = pages.get(row / PAGE_SIZE);
+    if (page == null) {
+      loadPage(row / PAGE_SIZE);
+      return null;
+    }
+    return row % PAGE_SIZE < page.size() ? getColumnValue(page.get(row % PAGE_SIZE), columnIndex) : null;
+  }
+
+  /**
+   * Creates a model of a user's weights, one row per day.
+   *
+   * @param metricsManager The user's metrics.
+   * @return The model.
+   */
+  public static PagedTableModel<Map.Entry<LocalDate, Weight>> forWeights(MetricsStore metricsManager) {
+    return new PagedTableModel<>("Date", "Weight", "Unit") {
+      @Override
+      protected NavigableMap<LocalDate, Integer> countRows(LocalDate from, LocalDate to) {
+        // A day has at most one weight; open bounds become the widest range the store can be asked for
+        NavigableMap<LocalDate, Integer> counts = new TreeMap<>();
+        for (LocalDate date : metricsManager.getWeights(from == null ? LocalDate.MIN : from,
+            to == null ? LocalDate.MAX : to).keySet()) {
+          counts.put(date, 1);
+        }
+        return counts;
+      }
+
+      @Override
+      protected List<Map.Entry<LocalDate, Weight>> readRows(LocalDate first, LocalDate last) {
+        return new ArrayList<>(metricsManager.getWeights(first, last).entrySet());
+      }
+
+      @Override
+      protected Object getColumnValue(Map.Entry<LocalDate, Weight> row, int column) {
+        switch (column) {
+          case 0:
+            return row.getKey().format(Constants.dateFormatter);
+          case 1:
+            return row.getValue().getWeightInUserUnits();
+          default:
+            return row.getValue().getUnit();
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a model of a user's steps entries; the index is read from the daily steps totals.
+   *
+   * @param metricsManager The user's metrics.
+   * @return The model.
+   */
+  public static PagedTableModel<Steps> forSteps(MetricsStore metricsManager) {
+    return new PagedTableModel<>("Date", "Steps", "Distance (km)") {
+      @Override
+      protected NavigableMap<LocalDate, Integer> countRows(LocalDate from, LocalDate to) {
+        DailyStepTotals totals = metricsManager.getDailyStepTotals(from, to);
+        NavigableMap<LocalDate, Integer> counts = new TreeMap<>();
+        for (int i = 0; i < totals.size(); i++) {
+          counts.put(totals.getDate(i), totals.getCounts()[i]);
+        }
+        return counts;
+      }
+
+      @Override
+      protected List<Steps> readRows(LocalDate first, LocalDate last) {
+        List<Steps> steps = new ArrayList<>(metricsManager.getSteps(first, last));
+        steps.sort(Comparator.comparing(Steps::getDate));
+        return steps;
+      }
+
+      @Override
+      protected Object getColumnValue(Steps row, int column) {
+        switch (column) {
+          case 0:
+            return row.getDate().format(Constants.dateFormatter);
+          case 1:
+            return row.getSteps();
+          default:
+            return row.getDistanceInKm();
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a model of a user's heart rate samples; the index is read from the daily heart rate statistics.
+   *
+   * @param metricsManager The user's metrics.
+   * @return The model.
+   */
+  public static PagedTableModel<HeartRate> forHeartRates(MetricsStore metricsManager) {
+    return new PagedTableModel<>("Date", "Time", "Heart Rate", "Activity") {
+      @Override
+      protected NavigableMap<LocalDate, Integer> countRows(LocalDate from, LocalDate to) {
+        NavigableMap<LocalDate, Integer> counts = new TreeMap<>();
+        for (Map.Entry<LocalDate, HeartRateStats> day
+            : metricsManager.getHeartRateStats(from, to, HeartRateRollup.Period.DAY).entrySet()) {
+          counts.put(day.getKey(), Math.toIntExact(day.getValue().getCount()));
+        }
+        return counts;
+      }
+
+      @Override
+      protected List<HeartRate> readRows(LocalDate first, LocalDate last) {
+        List<HeartRate> heartRates = new ArrayList<>(metricsManager.getHeartRates(first, last));
+        heartRates.sort(Comparator.comparing(HeartRate::getDate).thenComparing(HeartRate::getTime));
+        return heartRates;
+      }
+
+      @Override
+      protected Object getColumnValue(HeartRate row, int column) {
+        switch (column) {
+          case 0:
+            return row.getDate().format(Constants.dateFormatter);
+          case 1:
+            return row.getTime().format(Constants.timeFormatter);
+          case 2:
+            return row.getHeartRate();
+          default:
+            return row.getTags();
+        }
+      }
+    };
+  }
+
+  /**
+   * Creates a model of a user's period logs, by start date. With a date range, it shows the periods that
+   * overlap it.
+   *
+   * @param metricsManager The user's metrics.
+   * @return The model.
+   */
+  public static PagedTableModel<PeriodLog> forPeriodLogs(MetricsStore metricsManager) {
+    return new PagedTableModel<>("Started On", "Ended On", "Duration (days)", "Flow Level") {
+      @Override
+      protected NavigableMap<LocalDate, Integer> countRows(LocalDate from, LocalDate to) {
+        try (Stream<PeriodLog> periodLogs = metricsManager.streamPeriodLogs(from, to)) {
+          return periodLogs.collect(Collectors.groupingBy(PeriodLog::getDate, TreeMap::new,
+              Collectors.reducing(0, periodLog -> 1, Integer::sum)));
+        }
+      }
+
+      @Override
+      protected List<PeriodLog> readRows(LocalDate first, LocalDate last) {
+        // Every log starting on the page's days overlaps them, so the store's interval query finds them
+        // without reading the logs of other pages; it returns them by start date
+        LocalDate from = getFrom();
+        LocalDate to = getTo();
+        return metricsManager.getPeriodLogs(first, last).stream()
+            .filter(periodLog -> !periodLog.getDate().isBefore(first) && !periodLog.getDate().isAfter(last))
+            .filter(periodLog -> (from == null || !periodLog.getEndDate().isBefore(from))
+                && (to == null || !periodLog.getDate().isAfter(to)))
+            .collect(Collectors.toList());
+      }
+
+      @Override
+      protected Object getColumnValue(PeriodLog row, int column) {
+        switch (column) {
+          case 0:
+            return row.getDate().format(Constants.dateFormatter);
+          case 1:
+            return row.getEndDate().format(Constants.dateFormatter);
+          case 2:
+            return ChronoUnit.DAYS.between(row.getDate(), row.getEndDate()) + 1;
+          default:
+            return row.getFlowLevel();
+        }
+      }
+    };
+  }
+
+  /**
+   * The days that have rows, in increasing order, with the number of the first row of each.
+   */
+  static final class DayIndex {
+    private static final DayIndex EMPTY = new DayIndex(new long[0], new int[] {0});
+    private final long[] epochDays;
+    private final int[] offsets;
+
+    private DayIndex(long[] epochDays, int[] offsets) {
+      this.epochDays = epochDays;
+      this.offsets = offsets;
+    }
+
+    /**
+     * Builds an index from the number of rows of each day; days without rows are left out.
+     *
+     * @param counts The number of rows of each day, by date.
+     * @return The index.
+     */
+    static DayIndex of(NavigableMap<LocalDate, Integer> counts) {
+      long[] epochDays = new long[counts.size()];
+      int[] offsets = new int[counts.size() + 1];
+      int days = 0;
+      for (Map.Entry<LocalDate, Integer> day : counts.entrySet()) {
+        if (day.getValue() > 0) {
+          epochDays[days] = day.getKey().toEpochDay();
+          offsets[days + 1] = offsets[days] + day.getValue();
+          days++;
+        }
+      }
+      return new DayIndex(Arrays.copyOf(epochDays, days), Arrays.copyOf(offsets, days + 1));
+    }
+
+    /**
+     * Returns the total number of rows.
+     *
+     * @return The number of rows.
+     */
+    int size() {
+      return offsets[epochDays.length];
+    }
+
+    /**
+     * Finds the day a row belongs to.
+     *
+     * @param row The number of the row, in ascending order.
+     * @return The position of its day in the index.
+     */
+    int dayOf(int row) {
+      int position = Arrays.binarySearch(offsets, 0, epochDays.length, row);
+      return position >= 0 ? position : -position - 2;
+    }
+
+    /**
+     * Returns a day of the index.
+     *
+     * @param position The position of the day.
+     * @return The date.
+     */
+    LocalDate getDate(int position) {
+      return LocalDate.ofEpochDay(epochDays[position]);
+    }
+  }
+}
@@ -0,0 +1,281 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * In-memory interval index over the period logs of a "startDate,endDate,flowLevel,tags" file.
+ * Logs are kept sorted by start date, with a tree of the latest end date under each node, so the logs
+ * overlapping a date range are found without looking at the logs that end before it or start after it.
+ * Cycle length statistics are kept up to date as logs are added. Logs appended to the file since the
+ * last query are read by {@link #refresh()}; the index is rebuilt if the file shrank.
+ * Use {@link #forFile(Path, Function)} so that all users of a period log file share one index.
+ * Only the most recently used indexes stay loaded (see {@link ResidentIndexes}); the others are read
+ * back from the file on their next query.
+ */
+public class PeriodLogIndex implements ResidentIndexes.Unloadable {
+  private static final Map<Path, PeriodLogIndex> INDEXES = new ConcurrentHashMap<>();
+  private final Path file;
+  private final Function<CsvRecordParser, PeriodLog> decoder;
+  private PeriodLog[] logs = new PeriodLog[16];
+  private long[] starts = new long[16];
+  private long[] ends = new long[16];
+  private long[] maxEnds = emptyTree(16); // Leaves at [capacity, 2 * capacity), node i covers 2i and 2i + 1
+  private int size;
+  private long coveredLength;
+  private int cycles;
+  private int minCycle = Integer.MAX_VALUE;
+  private int maxCycle = Integer.MIN_VALUE;
+  private long cycleSum;
+  private long cycleSumOfSquares;
+
+  /**
+   * Constructs an index of the given period log file.
+   *
+   * @param file    The period log file.
+   * @param decoder Decodes a record of the file, returning null to skip it.
+   */
+  public PeriodLogIndex(Path file, Function<CsvRecordParser, PeriodLog> decoder) {
+    this.file = file;
+    this.decoder = decoder;
+  }
+
+  /**
+   * Returns the shared index of a period log file, creating it on first use.
+   *
+   * @param file    The period log file.
+   * @param decoder Decodes a record of the file, returning null to skip it.
+   * @return The index of the file.
+   */
+  public static PeriodLogIndex forFile(Path file, Function<CsvRecordParser, PeriodLog> decoder) {
+    return INDEXES.computeIfAbsent(file.toAbsolutePath().normalize(), key -> new PeriodLogIndex(file, decoder));
+  }
+
+  /**
+   * Adds the logs appended to the file since the last refresh.
+   *
+   * @throws IOException If the file cannot be read.
+   */
+  public synchronized void refresh() throws IOException {
+    ResidentIndexes.shared().touch(this);
+    long fileLength;
+    try {
+      fileLength = Files.size(file);
+    } catch (NoSuchFileException e) {
+      fileLength = 0;
+    }
+    if (fileLength < coveredLength) {
+      clear();
+    }
+    if (fileLength == coveredLength) {
+      return;
+    }
+
+    byte[] tail = new byte[Math.toIntExact(fileLength - coveredLength)];
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.wrap(tail);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, coveredLength + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of period log file.");
+        }
+      }
+    }
+    int complete = tail.length;
+    while (complete > 0 && tail[complete - 1] != '\n') {
+      complete--; // A partially written row is left for later
+    }
+    if (complete == 0) {
+      return;
+    }
+
+    try (CsvRecordParser parser = new CsvRecordParser(new ByteArrayInputStream(tail, 0, complete))) {
+      if (coveredLength == 0) {
+        parser.next(); // Skip header
+      }
+      while (parser.next()) {
+        try {
+          PeriodLog log = decoder.apply(parser);
+          if (log != null) {
+            add(log);
+          }
+        } catch (RuntimeException e) {
+          System.err.println("Skipping unreadable period log row in " + file);
+        }
+      }
+    }
+    coveredLength += complete;
+  }
+
+  /**
+   * Finds the logs whose periods overlap two dates (inclusive).
+   *
+   * @param from The first date of the range, or null for no lower bound.
+   * @param to   The last date of the range, or null for no upper bound.
+   * @return The overlapping logs, by start date and in the order they were added for equal start dates.
+   * @throws IOException If the file cannot be read.
+   */
+  public synchronized List<PeriodLog> overlapping(LocalDate from, LocalDate to) throws IOException {
+    refresh();
+    List<PeriodLog> result = new ArrayList<>();
+    int count = to == null ? size : upperBound(to.toEpochDay());
+    collect(1, 0, capacity(), count, from == null ? Long.MIN_VALUE : from.toEpochDay(), result);
+    return result;
+  }
+
+  /**
+   * Returns the cycle length statistics of all logs.
+   *
+   * @return The statistics.
+   * @throws IOException If the file cannot be read.
+   */
+  public synchronized CycleStats cycleStats() throws IOException {
+    refresh();
+    return new CycleStats(cycles, minCycle, maxCycle, cycleSum, cycleSumOfSquares,
+        size == 0 ? null : LocalDate.ofEpochDay(starts[size - 1]));
+  }
+
+  /**
+   * Reports the logs among the first {@code count} whose periods end on or after a day,
+   * skipping every subtree that ends before it.
+   */
+  private void collect(int node, int low, int high, int count, long fromDay, List<PeriodLog> result) {
+    if (low >= count || maxEnds[node] < fromDay) {
+      return;
+    }
+    if (high - low == 1) {
+      result.add(logs[low]);
+      return;
+    }
+    int middle = (low + high) >>> 1;
+    collect(2 * node, low, middle, count, fromDay, result);
+    collect(2 * node + 1, middle, high, count, fromDay, result);
+  }
+
+  private void add(PeriodLog log) {
+    long start = log.getDate().toEpochDay();
+    long end = log.getEndDate().toEpochDay();
+    if (size == logs.length) {
+      logs = Arrays.copyOf(logs, size * 2);
+      starts = Arrays.copyOf(starts, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+
+    if (size == 0 || start >= starts[size - 1]) {
+      // Logs are normally added in date order, which only touches the path to the new leaf
+      if (size > 0 && start > starts[size - 1]) {
+        addCycle((int) (start - starts[size - 1]));
+      }
+      logs[size] = log;
+      starts[size] = start;
+      ends[size] = end;
+      size++;
+      if (size > capacity()) {
+        rebuildTree();
+      } else {
+        for (int node = capacity() + size - 1; node > 0 && maxEnds[node] < end; node >>>= 1) {
+          maxEnds[node] = end;
+        }
+      }
+      return;
+    }
+
+    // A log added out of order shifts the ones after it
+    int position = upperBound(start);
+    System.arraycopy(logs, position, logs, position + 1, size - position);
+    System.arraycopy(starts, position, starts, position + 1, size - position);
+    System.arraycopy(ends, position, ends, position + 1, size - position);
+    logs[position] = log;
+    starts[position] = start;
+    ends[position] = end;
+    size++;
+    rebuildTree();
+    recomputeCycles();
+  }
+
+  private void addCycle(int days) {
+    cycles++;
+    minCycle = Math.min(minCycle, days);
+    maxCycle = Math.max(maxCycle, days);
+    cycleSum += days;
+    cycleSumOfSquares += (long) days * days;
+  }
+
+  private void recomputeCycles() {
+    cycles = 0;
+    minCycle = Integer.MAX_VALUE;
+    maxCycle = Integer.MIN_VALUE;
+    cycleSum = 0;
+    cycleSumOfSquares = 0;
+    for (int i = 1; i < size; i++) {
+      if (starts[i] > starts[i - 1]) {
+        addCycle((int) (starts[i] - starts[i - 1]));
+      }
+    }
+  }
+
+  private void rebuildTree() {
+    int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+    maxEnds = emptyTree(capacity);
+    System.arraycopy(ends, 0, maxEnds, capacity, size);
+    for (int node = capacity - 1; node > 0; node--) {
+      maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+    }
+  }
+
+  /**
+   * Drops the logs from memory; the next refresh reads them back from the file.
+   */
+  @Override
+  public synchronized void unload() {
+    logs = new PeriodLog[16];
+    starts = new long[16];
+    ends = new long[16];
+    clear();
+  }
+
+  private void clear() {
+    Arrays.fill(logs, null);
+    size = 0;
+    maxEnds = emptyTree(16);
+    coveredLength = 0;
+    recomputeCycles();
+  }
+
+  private int capacity() {
+    return maxEnds.length / 2;
+  }
+
+  /**
+   * Returns the number of logs starting on or before a day.
+   */
+  private int upperBound(long day) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (starts[middle] <= day) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static long[] emptyTree(int capacity) {
+    long[] tree = new long[2 * capacity];
+    Arrays.fill(tree, Long.MIN_VALUE);
+    return tree;
+  }
+}
@@ -0,0 +1,105 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Shared cache of parsed user profiles, so that the screens of a logged-in user don't look up and
+ * decrypt the user's record again. Holds at most a fixed number of profiles, evicting the least recently
+ * used one when full. Profiles are never changed in place; {@link UserDataStorage} invalidates a user's
+ * profile when the user logs out or the stored record may have changed.
+ */
+public class ProfileCache {
+  private static final ProfileCache SHARED = new ProfileCache(Constants.PROFILE_CACHE_CAPACITY);
+
+  private final int capacity;
+  private final LinkedHashMap<String, UserProfile> profiles = new LinkedHashMap<>(16, 0.75f, true);
+  private long writeStamp;
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param capacity The maximum number of cached profiles.
+   * @throws IllegalArgumentException If the capacity is not positive.
+   */
+  public ProfileCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the cache shared by all user lookups.
+   *
+   * @return The shared cache.
+   */
+  public static ProfileCache shared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns a stamp that changes whenever a profile is invalidated.
+   * Take it before reading a profile from disk and pass it to {@link #put(String, UserProfile, long)},
+   * so a load that raced with an invalidation is not cached.
+   *
+   * @return The current write stamp.
+   */
+  public synchronized long writeStamp() {
+    return writeStamp;
+  }
+
+  /**
+   * Returns the cached profile of a user.
+   *
+   * @param username The username.
+   * @return The profile, or null if it is not cached.
+   */
+  public synchronized UserProfile get(String username) {
+    return profiles.get(username);
+  }
+
+  /**
+   * Caches the profile of a user, evicting the least recently used profile if the cache is full.
+   *
+   * @param username The username.
+   * @param profile  The profile read from disk.
+   * @param stamp    The write stamp taken before the profile was read.
+   */
+  public synchronized void put(String username, UserProfile profile, long stamp) {
+    if (stamp != writeStamp) {
+      return; // Invalidated while it was being read
+    }
+    profiles.put(username, profile);
+    Iterator<UserProfile> eldest = profiles.values().iterator();
+    while (profiles.size() > capacity) {
+      eldest.next();
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Drops the cached profile of a user.
+   *
+   * @param username The username.
+   */
+  public synchronized void invalidate(String username) {
+    writeStamp++;
+    profiles.remove(username);
+  }
+
+  /**
+   * Drops all cached profiles.
+   */
+  public synchronized void clear() {
+    writeStamp++;
+    profiles.clear();
+  }
+
+  /**
+   * Returns the number of cached profiles.
+   *
+   * @return The number of profiles.
+   */
+  public synchronized int size() {
+    return profiles.size();
+  }
+}
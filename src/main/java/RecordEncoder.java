@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reusable writer of comma-separated metric records.
+ * Dates, times, integers and fixed-precision decimals are written as ASCII straight into a growable byte
+ * buffer, producing the same bytes as the String.format and DateTimeFormatter calls the files were written
+ * with, without allocating per record. An encoder is confined to one thread; use {@link #forCurrentThread()}.
+ */
+public class RecordEncoder {
+  private static final int INITIAL_CAPACITY = 4 * 1024;
+  private static final int RETAINED_CAPACITY = 1024 * 1024; // Larger buffers are dropped on reset
+  private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+  private static final long[] POWERS_OF_TEN = {
+      1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+  };
+  private static final ThreadLocal<RecordEncoder> ENCODERS = ThreadLocal.withInitial(RecordEncoder::new);
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * Returns this thread's encoder, emptied and ready for use.
+   *
+   * @return The encoder for the current thread.
+   */
+  public static RecordEncoder forCurrentThread() {
+    RecordEncoder encoder = ENCODERS.get();
+    encoder.reset();
+    return encoder;
+  }
+
+  /**
+   * Discards everything written so far.
+   *
+   * @return This encoder.
+   */
+  public RecordEncoder reset() {
+    if (buffer.length > RETAINED_CAPACITY) {
+      buffer = new byte[INITIAL_CAPACITY];
+    }
+    size = 0;
+    return this;
+  }
+
+  /**
+   * Writes a date as "MM-dd-yyyy", like {@link Constants#dateFormatter}.
+   *
+   * @param date The date to write.
+   * @return This encoder.
+   */
+  public RecordEncoder date(LocalDate date) {
+    int year = date.getYear();
+    if (year < 1 || year > 9999) {
+      return text(date.format(Constants.dateFormatter)); // Signs and era years are rare enough to format
+    }
+    ensureCapacity(10);
+    twoDigits(date.getMonthValue());
+    buffer[size++] = '-';
+    twoDigits(date.getDayOfMonth());
+    buffer[size++] = '-';
+    twoDigits(year / 100);
+    twoDigits(year % 100);
+    return this;
+  }
+
+  /**
+   * Writes a time as "HH:mm:ss", like {@link Constants#timeFormatter}.
+   *
+   * @param time The time to write.
+   * @return This encoder.
+   */
+  public RecordEncoder time(LocalTime time) {
+    ensureCapacity(8);
+    twoDigits(time.getHour());
+    buffer[size++] = ':';
+    twoDigits(time.getMinute());
+    buffer[size++] = ':';
+    twoDigits(time.getSecond());
+    return this;
+  }
+
+  /**
+   * Writes an integer, like "%d".
+   *
+   * @param value The value to write.
+   * @return This encoder.
+   */
+  public RecordEncoder integer(long value) {
+    ensureCapacity(20);
+    if (value < 0) {
+      if (value == Long.MIN_VALUE) {
+        return text(Long.toString(value));
+      }
+      buffer[size++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    for (int i = size + digits - 1; i >= size; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    size += digits;
+    return this;
+  }
+
+  /**
+   * Writes a decimal with a fixed number of fraction digits, like "%.2f" for a scale of 2.
+   * Halves round up, as Formatter rounds them.
+   *
+   * @param value The value to write.
+   * @param scale The number of fraction digits, from 0 to 9.
+   * @return This encoder.
+   * @throws IllegalArgumentException If the scale is out of range.
+   */
+  public RecordEncoder fixed(double value, int scale) {
+    if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+      throw new IllegalArgumentException("Scale must be between 0 and " + (POWERS_OF_TEN.length - 1) + ".");
+    }
+    double magnitude = Math.abs(value);
+    double scaled = magnitude * POWERS_OF_TEN[scale];
+    double fraction = scaled - Math.floor(scaled);
+    // Formatter rounds the shortest decimal representation, not the exact binary value; the two only
+    // disagree next to a tie, so those values (and large or non-finite ones) take the formatter path
+    if (!(scaled < 1e9) || Math.abs(fraction - 0.5) < 1e-6) {
+      return text(String.format(Locale.ROOT, "%." + scale + "f", value));
+    }
+
+    long units = Math.round(scaled);
+    if (Math.copySign(1.0, value) < 0) {
+      ensureCapacity(1);
+      buffer[size++] = '-'; // Formatter keeps the sign of negative values, even when they round to zero
+    }
+    integer(units / POWERS_OF_TEN[scale]);
+    if (scale > 0) {
+      ensureCapacity(scale + 1);
+      buffer[size++] = '.';
+      long fractionUnits = units % POWERS_OF_TEN[scale];
+      for (int i = size + scale - 1; i >= size; i--) {
+        buffer[i] = (byte) ('0' + fractionUnits % 10);
+        fractionUnits /= 10;
+      }
+      size += scale;
+    }
+    return this;
+  }
+
+  /**
+   * Writes text as UTF-8, like "%s"; null is written as "null".
+   *
+   * @param text The text to write.
+   * @return This encoder.
+   */
+  public RecordEncoder text(String text) {
+    if (text == null) {
+      return bytes(NULL);
+    }
+    int length = text.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c >= 0x80) {
+        size -= i; // Undo the ASCII prefix and encode the whole string instead
+        return bytes(text.getBytes(StandardCharsets.UTF_8));
+      }
+      buffer[size++] = (byte) c;
+    }
+    return this;
+  }
+
+  /**
+   * Writes the field separator.
+   *
+   * @return This encoder.
+   */
+  public RecordEncoder comma() {
+    ensureCapacity(1);
+    buffer[size++] = ',';
+    return this;
+  }
+
+  /**
+   * Ends the current record with the platform line separator, as Files.write and println do.
+   *
+   * @return This encoder.
+   */
+  public RecordEncoder newLine() {
+    return bytes(LINE_SEPARATOR);
+  }
+
+  /**
+   * Returns the number of bytes written so far.
+   *
+   * @return The size in bytes.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the internal buffer. Only the first {@link #size()} bytes are valid, and only until
+   * the encoder is written to again.
+   *
+   * @return The internal buffer.
+   */
+  public byte[] buffer() {
+    return buffer;
+  }
+
+  /**
+   * Returns a copy of the bytes written so far.
+   *
+   * @return The encoded bytes.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, size);
+  }
+
+  /**
+   * Writes the bytes written so far to a stream.
+   *
+   * @param out The stream to write to.
+   * @throws IOException If the stream cannot be written.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(buffer, 0, size);
+  }
+
+  private RecordEncoder bytes(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, size, bytes.length);
+    size += bytes.length;
+    return this;
+  }
+
+  private void twoDigits(int value) {
+    buffer[size++] = (byte) ('0' + value / 10);
+    buffer[size++] = (byte) ('0' + value % 10);
+  }
+
+  private void ensureCapacity(int extra) {
+    if (size + extra > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+    }
+  }
+}
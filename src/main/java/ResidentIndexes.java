@@ -0,0 +1,91 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounds how many per-file indexes and rollups keep their contents in memory.
+ * The shared instances returned by e.g. {@link DateOffsetIndex#forFile(java.nio.file.Path, java.nio.file.Path)}
+ * stay registered for as long as the process runs, so every caller of a file keeps going through one
+ * instance, but only the most recently used ones stay loaded. The others are unloaded on a background
+ * thread and read back from their sidecar files the next time they are used.
+ * Unloading happens outside the caller's locks, so an index using this class may call
+ * {@link #touch(Unloadable)} while holding its own lock.
+ */
+public class ResidentIndexes {
+  private static final ExecutorService UNLOADER = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "index-unloader");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private static final ResidentIndexes SHARED = new ResidentIndexes(Constants.RESIDENT_INDEXES_CAPACITY, UNLOADER);
+  private final int capacity;
+  private final Executor unloader;
+  private final LinkedHashMap<Unloadable, Boolean> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * Something that can drop its in-memory contents and load them again on its next use.
+   */
+  public interface Unloadable {
+    /**
+     * Drops the in-memory contents. Must be safe to call at any time, from any thread.
+     */
+    void unload();
+  }
+
+  /**
+   * Constructs a resident set.
+   *
+   * @param capacity The number of loaded instances to keep.
+   * @param unloader Runs the unloading of evicted instances.
+   */
+  public ResidentIndexes(int capacity, Executor unloader) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+    this.capacity = capacity;
+    this.unloader = unloader;
+  }
+
+  /**
+   * Returns the resident set shared by all indexes and rollups in the process.
+   *
+   * @return The shared resident set.
+   */
+  public static ResidentIndexes shared() {
+    return SHARED;
+  }
+
+  /**
+   * Marks an instance as loaded and most recently used, unloading the least recently used
+   * instances beyond the capacity.
+   *
+   * @param index The instance that has just been loaded or used.
+   */
+  public void touch(Unloadable index) {
+    List<Unloadable> evicted = new ArrayList<>();
+    synchronized (this) {
+      resident.put(index, Boolean.TRUE);
+      Iterator<Unloadable> eldest = resident.keySet().iterator();
+      while (resident.size() > capacity) {
+        evicted.add(eldest.next());
+        eldest.remove();
+      }
+    }
+    for (Unloadable victim : evicted) {
+      unloader.execute(victim::unload);
+    }
+  }
+
+  /**
+   * Returns the number of instances currently considered loaded.
+   *
+   * @return The number of resident instances.
+   */
+  public synchronized int size() {
+    return resident.size();
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Reduces a time series to a fixed number of points for charting with the Largest-Triangle-Three-Buckets
+ * algorithm. The first and last points are always kept; every other point is taken from one of equally
+ * sized buckets, choosing the point that forms the largest triangle with the previously kept point and the
+ * average of the next bucket. This keeps peaks and troughs that plain averaging or striding would drop.
+ */
+public class SeriesDownsampler {
+
+  private SeriesDownsampler() {
+  }
+
+  /**
+   * Selects the points to keep from a series.
+   *
+   * @param x         The x values (e.g. epoch milliseconds), in increasing order.
+   * @param y         The y values.
+   * @param length    The number of points in the series; only the first length values of x and y are used.
+   * @param threshold The number of points to keep, at least 3.
+   * @return The indices of the kept points, in increasing order. All indices if the series is not longer
+   *     than the threshold.
+   * @throws IllegalArgumentException If the threshold is below 3 or the arrays are shorter than the length.
+   */
+  public static int[] largestTriangleThreeBuckets(long[] x, double[] y, int length, int threshold) {
+    if (threshold < 3) {
+      throw new IllegalArgumentException("At least 3 points must be kept.");
+    }
+    if (x.length < length || y.length < length) {
+      throw new IllegalArgumentException("Series arrays are shorter than the series.");
+    }
+    if (length <= threshold) {
+      int[] all = new int[length];
+      for (int i = 0; i < length; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+
+    int[] kept = new int[threshold];
+    int count = 0;
+    long origin = x[0]; // Relative x values keep epoch milliseconds exact as doubles
+    double bucketSize = (double) (length - 2) / (threshold - 2);
+    int previous = 0;
+    kept[count++] = previous;
+
+    for (int bucket = 0; bucket < threshold - 2; bucket++) {
+      // Average of the next bucket, or the last point for the final bucket
+      int nextStart = (int) ((bucket + 1) * bucketSize) + 1;
+      int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, length);
+      double averageX = 0;
+      double averageY = 0;
+      for (int i = nextStart; i < nextEnd; i++) {
+        averageX += x[i] - origin;
+        averageY += y[i];
+      }
+      averageX /= nextEnd - nextStart;
+      averageY /= nextEnd - nextStart;
+
+      int start = (int) (bucket * bucketSize) + 1;
+      int end = (int) ((bucket + 1) * bucketSize) + 1;
+      double previousX = x[previous] - origin;
+      double previousY = y[previous];
+      double largestArea = -1;
+      int largest = start;
+      for (int i = start; i < end; i++) {
+        // Twice the triangle's area; only the comparison matters
+        double area = Math.abs((previousX - averageX) * (y[i] - previousY)
+            - (previousX - (x[i] - origin)) * (averageY - previousY));
+        if (area > largestArea) {
+          largestArea = area;
+          largest = i;
+        }
+      }
+      kept[count++] = largest;
+      previous = largest;
+    }
+
+    kept[count] = length - 1;
+    return kept;
+  }
+}
@@ -0,0 +1,475 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Embedded SQL backend of {@link MetricsStore}: each user's metrics are kept in one SQLite database,
+ * accessed through JDBC, with a table per metric type and an index on the date column of each.
+ * <ul>
+ *   <li>weights: epoch day (primary key, so a later save of a day replaces the earlier one),
+ *   weight in the unit it was entered in, unit</li>
+ *   <li>steps: id, epoch day, step count</li>
+ *   <li>heart_rates: id, epoch day, second of day, tag, bpm</li>
+ *   <li>period_logs: id, start day, end day, flow level, tag</li>
+ *   <li>tags: id, tag; every tag used by a heart rate or period log, in the order first used</li>
+ * </ul>
+ * The ids are SQLite row ids, so ordering by them returns entries in the order they were added.
+ * Each batch is written in one transaction; the database runs in write-ahead logging mode, and only
+ * batches written with sync are forced to disk on commit.
+ * The database lives in a "sql" folder inside the user's folder, so it never mixes with the other backends' files.
+ */
+public class SqlMetricsStore implements MetricsStore {
+  private static final String FOLDER = "sql/";
+  private static final String DATABASE_FILE = "metrics.db";
+  private static final String[] SCHEMA = {
+      "CREATE TABLE IF NOT EXISTS weights (epoch_day INTEGER PRIMARY KEY, weight REAL NOT NULL, unit TEXT NOT NULL)",
+      "CREATE TABLE IF NOT EXISTS steps (id INTEGER PRIMARY KEY, epoch_day INTEGER NOT NULL,"
+          + " step_count INTEGER NOT NULL)",
+      "CREATE INDEX IF NOT EXISTS steps_by_day ON steps (epoch_day)",
+      "CREATE TABLE IF NOT EXISTS heart_rates (id INTEGER PRIMARY KEY, epoch_day INTEGER NOT NULL,"
+          + " second_of_day INTEGER NOT NULL, tag TEXT, bpm INTEGER NOT NULL)",
+      "CREATE INDEX IF NOT EXISTS heart_rates_by_day ON heart_rates (epoch_day)",
+      "CREATE TABLE IF NOT EXISTS period_logs (id INTEGER PRIMARY KEY, start_day INTEGER NOT NULL,"
+          + " end_day INTEGER NOT NULL, flow_level TEXT, tag TEXT)",
+      "CREATE INDEX IF NOT EXISTS period_logs_by_start ON period_logs (start_day)",
+      "CREATE TABLE IF NOT EXISTS tags (id INTEGER PRIMARY KEY, tag TEXT NOT NULL UNIQUE)"
+  };
+  private static final String INSERT_TAG = "INSERT OR IGNORE INTO tags (tag) VALUES (?)";
+  private final String url;
+
+  /**
+   * Constructs the SQL store of a user whose folder lives in the given directory.
+   * Creates the store's folder and database if they don't exist.
+   *
+   * @param userDirectory The directory holding the user folders, ending with a separator.
+   * @param username      The username of the user.
+   */
+  public SqlMetricsStore(String userDirectory, String username) {
+    Path folder = Paths.get(userDirectory + username + "/" + FOLDER);
+    this.url = "jdbc:sqlite:" + folder.resolve(DATABASE_FILE);
+    try {
+      Files.createDirectories(folder);
+      try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+        statement.execute("PRAGMA journal_mode = WAL");
+        for (String table : SCHEMA) {
+          statement.execute(table);
+        }
+      }
+    } catch (IOException | SQLException e) {
+      System.err.println("Error creating user database: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean saveWeight(LocalDate date, Weight weight) {
+    return update("saving weight", false, connection -> {
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT OR REPLACE INTO weights (epoch_day, weight, unit) VALUES (?, ?, ?)")) {
+        insert.setLong(1, date.toEpochDay());
+        insert.setDouble(2, weight.getWeightInUserUnits());
+        insert.setString(3, weight.getUnit());
+        insert.executeUpdate();
+      }
+    });
+  }
+
+  @Override
+  public NavigableMap<LocalDate, Weight> getWeights(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    return readWeights(from, to);
+  }
+
+  @Override
+  public Map<LocalDate, Weight> getAllWeights() {
+    return new HashMap<>(readWeights(null, null));
+  }
+
+  private NavigableMap<LocalDate, Weight> readWeights(LocalDate from, LocalDate to) {
+    NavigableMap<LocalDate, Weight> weights = new TreeMap<>();
+    try (Stream<Map.Entry<LocalDate, Weight>> rows = streamQuery(
+        "SELECT epoch_day, weight, unit FROM weights WHERE epoch_day BETWEEN ? AND ?", bounds(from, to),
+        row -> Map.entry(LocalDate.ofEpochDay(row.getLong(1)), new Weight(row.getDouble(2), row.getString(3))))) {
+      rows.forEach(row -> weights.put(row.getKey(), row.getValue()));
+    } catch (SQLException | UncheckedIOException e) {
+      System.err.println("Error getting weights: " + e.getMessage());
+    }
+    return weights;
+  }
+
+  @Override
+  public boolean addSteps(Collection<Steps> stepsBatch, boolean sync) {
+    for (Steps steps : stepsBatch) {
+      if (steps == null || steps.getDate() == null) {
+        throw new IllegalArgumentException("Steps entry must have a date.");
+      }
+      steps.validateSteps(steps.getSteps());
+    }
+    if (stepsBatch.isEmpty()) {
+      return true;
+    }
+
+    return update("adding steps", sync, connection -> {
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT INTO steps (epoch_day, step_count) VALUES (?, ?)")) {
+        for (Steps steps : stepsBatch) {
+          insert.setLong(1, steps.getDate().toEpochDay());
+          insert.setInt(2, steps.getSteps());
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+    });
+  }
+
+  @Override
+  public List<Steps> getSteps(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    try (Stream<Steps> steps = streamSteps(from, to)) {
+      return steps.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting steps: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  @Override
+  public Map<LocalDate, List<Steps>> getAllSteps() {
+    try (Stream<Steps> steps = streamSteps(null, null)) {
+      return steps.collect(Collectors.groupingBy(Steps::getDate));
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting all steps: " + e.getMessage());
+      return new HashMap<>();
+    }
+  }
+
+  @Override
+  public Stream<Steps> streamSteps(LocalDate from, LocalDate to) {
+    try {
+      return streamQuery("SELECT epoch_day, step_count FROM steps WHERE epoch_day BETWEEN ? AND ? ORDER BY id",
+          bounds(from, to), row -> new Steps(LocalDate.ofEpochDay(row.getLong(1)), row.getInt(2)));
+    } catch (SQLException e) {
+      System.err.println("Error streaming steps: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  @Override
+  public boolean addHeartRates(Collection<HeartRate> heartRates, boolean sync) {
+    for (HeartRate heartRate : heartRates) {
+      if (heartRate == null || heartRate.getDate() == null || heartRate.getTime() == null) {
+        throw new IllegalArgumentException("Heart rate entry must have a date and time.");
+      }
+      heartRate.validateHeartRate(heartRate.getHeartRate());
+    }
+    if (heartRates.isEmpty()) {
+      return true;
+    }
+
+    return update("adding heart rate", sync, connection -> {
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT INTO heart_rates (epoch_day, second_of_day, tag, bpm) VALUES (?, ?, ?, ?)");
+          PreparedStatement insertTag = connection.prepareStatement(INSERT_TAG)) {
+        for (HeartRate heartRate : heartRates) {
+          insert.setLong(1, heartRate.getDate().toEpochDay());
+          insert.setInt(2, heartRate.getTime().toSecondOfDay());
+          insert.setString(3, heartRate.getTags());
+          insert.setInt(4, heartRate.getHeartRate());
+          insert.addBatch();
+          addTag(insertTag, heartRate.getTags());
+        }
+        insertTag.executeBatch();
+        insert.executeBatch();
+      }
+    });
+  }
+
+  @Override
+  public List<HeartRate> getHeartRates(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    try (Stream<HeartRate> heartRates = streamHeartRates(from, to)) {
+      return heartRates.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting heart rates: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  @Override
+  public Map<LocalDate, List<HeartRate>> getAllHeartRates() {
+    try (Stream<HeartRate> heartRates = streamHeartRates(null, null)) {
+      return heartRates.collect(Collectors.groupingBy(HeartRate::getDate));
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting all heart rates: " + e.getMessage());
+      return new HashMap<>();
+    }
+  }
+
+  @Override
+  public Stream<HeartRate> streamHeartRates(LocalDate from, LocalDate to) {
+    try {
+      return streamQuery("SELECT epoch_day, second_of_day, tag, bpm FROM heart_rates"
+              + " WHERE epoch_day BETWEEN ? AND ? ORDER BY id", bounds(from, to),
+          row -> new HeartRate(row.getString(3), LocalDate.ofEpochDay(row.getLong(1)),
+              LocalTime.ofSecondOfDay(row.getInt(2)), row.getInt(4)));
+    } catch (SQLException e) {
+      System.err.println("Error streaming heart rates: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  @Override
+  public boolean addPeriodLogs(Collection<PeriodLog> periodLogs, boolean sync) {
+    for (PeriodLog periodLog : periodLogs) {
+      if (periodLog == null || periodLog.getDate() == null || periodLog.getEndDate() == null) {
+        throw new IllegalArgumentException("Period log must have a start and end date.");
+      }
+      if (periodLog.getEndDate().isBefore(periodLog.getDate())) {
+        throw new IllegalArgumentException("End date cannot be before start date.");
+      }
+    }
+    if (periodLogs.isEmpty()) {
+      return true;
+    }
+
+    return update("adding period log", sync, connection -> {
+      try (PreparedStatement insert = connection.prepareStatement(
+          "INSERT INTO period_logs (start_day, end_day, flow_level, tag) VALUES (?, ?, ?, ?)");
+          PreparedStatement insertTag = connection.prepareStatement(INSERT_TAG)) {
+        for (PeriodLog periodLog : periodLogs) {
+          insert.setLong(1, periodLog.getDate().toEpochDay());
+          insert.setLong(2, periodLog.getEndDate().toEpochDay());
+          insert.setString(3, periodLog.getFlowLevel());
+          insert.setString(4, periodLog.getTags());
+          insert.addBatch();
+          addTag(insertTag, periodLog.getTags());
+        }
+        insertTag.executeBatch();
+        insert.executeBatch();
+      }
+    });
+  }
+
+  @Override
+  public List<PeriodLog> getPeriodLogs() {
+    try (Stream<PeriodLog> periodLogs = streamPeriodLogs(null, null)) {
+      return periodLogs.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting period logs: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  @Override
+  public List<PeriodLog> getPeriodLogs(LocalDate from, LocalDate to) {
+    checkRange(from, to);
+    try (Stream<PeriodLog> periodLogs = streamPeriodLogs(from, to, "start_day, id")) {
+      return periodLogs.collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      System.err.println("Error getting period logs: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  @Override
+  public Stream<PeriodLog> streamPeriodLogs(LocalDate from, LocalDate to) {
+    return streamPeriodLogs(from, to, "id");
+  }
+
+  /**
+   * Streams the period logs that overlap two dates (inclusive).
+   *
+   * @param from  The first date to include, or null for no lower bound.
+   * @param to    The last date to include, or null for no upper bound.
+   * @param order The columns to order the logs by.
+   * @return Stream of PeriodLog objects, which closes its connection when closed.
+   */
+  private Stream<PeriodLog> streamPeriodLogs(LocalDate from, LocalDate to, String order) {
+    long[] bounds = bounds(from, to);
+    try {
+      return streamQuery("SELECT start_day, end_day, flow_level, tag FROM period_logs"
+              + " WHERE start_day <= ? AND end_day >= ? ORDER BY " + order, new long[]{bounds[1], bounds[0]},
+          row -> new PeriodLog(row.getString(4), LocalDate.ofEpochDay(row.getLong(1)),
+              LocalDate.ofEpochDay(row.getLong(2)), row.getString(3)));
+    } catch (SQLException e) {
+      System.err.println("Error streaming period logs: " + e.getMessage());
+      return Stream.empty();
+    }
+  }
+
+  @Override
+  public List<String> getTags() {
+    try (Stream<String> tags = streamQuery("SELECT tag FROM tags ORDER BY id", new long[0], row -> row.getString(1))) {
+      return tags.collect(Collectors.toList());
+    } catch (SQLException | UncheckedIOException e) {
+      System.err.println("Error getting tags: " + e.getMessage());
+      return new ArrayList<>();
+    }
+  }
+
+  private static void addTag(PreparedStatement insertTag, String tag) throws SQLException {
+    if (tag != null) {
+      insertTag.setString(1, tag);
+      insertTag.addBatch();
+    }
+  }
+
+  /**
+   * Opens a connection to the user's database.
+   *
+   * @return The connection, which the caller must close.
+   * @throws SQLException If the database cannot be opened.
+   */
+  private Connection connect() throws SQLException {
+    Connection connection = DriverManager.getConnection(url);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("PRAGMA busy_timeout = 5000"); // Wait for other writers instead of failing
+      statement.execute("PRAGMA synchronous = NORMAL");
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+    return connection;
+  }
+
+  /**
+   * Runs statements in one transaction.
+   *
+   * @param action What is being done, for the error message.
+   * @param sync   Whether the transaction must be forced to disk on commit.
+   * @param work   The statements to run.
+   * @return true if the transaction committed, false otherwise.
+   */
+  private boolean update(String action, boolean sync, SqlWork work) {
+    try (Connection connection = connect()) {
+      if (sync) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("PRAGMA synchronous = FULL");
+        }
+      }
+      connection.setAutoCommit(false);
+      work.run(connection);
+      connection.commit();
+      return true;
+    } catch (SQLException e) {
+      // Closing the connection rolls back the uncommitted transaction
+      System.err.println("Error " + action + ": " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Streams the rows of a query lazily, holding a connection open until the stream is closed.
+   *
+   * @param sql        The query.
+   * @param parameters The values of the query's parameters, in order.
+   * @param mapper     Maps the current row of the result set to an entry.
+   * @param <T>        The type of the entries.
+   * @return Stream of entries in the query's order, which closes the connection when closed.
+   * @throws SQLException If the query cannot be run.
+   */
+  private <T> Stream<T> streamQuery(String sql, long[] parameters, RowMapper<T> mapper) throws SQLException {
+    Connection connection = connect();
+    ResultSet rows;
+    try {
+      PreparedStatement query = connection.prepareStatement(sql);
+      for (int i = 0; i < parameters.length; i++) {
+        query.setLong(i + 1, parameters[i]);
+      }
+      rows = query.executeQuery();
+    } catch (SQLException e) {
+      connection.close();
+      throw e;
+    }
+
+    Spliterator<T> entries = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL) {
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+          if (!rows.next()) {
+            return false;
+          }
+          action.accept(mapper.map(rows));
+          return true;
+        } catch (SQLException e) {
+          throw unchecked(e);
+        }
+      }
+    };
+
+    return StreamSupport.stream(entries, false).onClose(() -> {
+      try {
+        connection.close(); // Also closes the statement and result set
+      } catch (SQLException e) {
+        throw unchecked(e);
+      }
+    });
+  }
+
+  private static UncheckedIOException unchecked(SQLException e) {
+    return new UncheckedIOException(new IOException(e.getMessage(), e));
+  }
+
+  private static long[] bounds(LocalDate from, LocalDate to) {
+    return new long[]{from == null ? Long.MIN_VALUE : from.toEpochDay(), to == null ? Long.MAX_VALUE : to.toEpochDay()};
+  }
+
+  private static void checkRange(LocalDate from, LocalDate to) {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("Date range must have a start and end date.");
+    }
+    if (to.isBefore(from)) {
+      throw new IllegalArgumentException("End date cannot be before start date.");
+    }
+  }
+
+  /**
+   * Statements run in one transaction.
+   */
+  private interface SqlWork {
+    /**
+     * Runs the statements.
+     *
+     * @param connection The connection, inside a transaction.
+     * @throws SQLException If a statement fails.
+     */
+    void run(Connection connection) throws SQLException;
+  }
+
+  /**
+   * Maps one row of a result set.
+   */
+  private interface RowMapper<T> {
+    /**
+     * Maps the current row.
+     *
+     * @param row The result set, positioned at the row.
+     * @return The entry for the row.
+     * @throws SQLException If a column cannot be read.
+     */
+    T map(ResultSet row) throws SQLException;
+  }
+}
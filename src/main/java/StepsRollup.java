@@ -0,0 +1,222 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Materialized per-day steps totals of a "date,steps" file, persisted next to it.
+ * The totals file starts with a "STR1,length" line giving how many bytes of the steps file it covers,
+ * followed by one "date,total,count,max" row per day. Rows appended to the steps file since then are
+ * folded in by {@link #refresh()}, and the totals are rebuilt from the steps file if their file is
+ * missing or unreadable, or the steps file shrank.
+ * Use {@link #forFile(Path, Path)} so that all users of a steps file share one rollup.
+ * Only the most recently used rollups stay loaded (see {@link ResidentIndexes}).
+ */
+public class StepsRollup implements ResidentIndexes.Unloadable {
+  private static final String MAGIC = "STR1";
+  private static final Map<Path, StepsRollup> ROLLUPS = new ConcurrentHashMap<>();
+  private final Path stepsFile;
+  private final Path totalsFile;
+  private final NavigableMap<LocalDate, int[]> days = new TreeMap<>(); // Total, count and max of each day
+  private long coveredLength;
+  private boolean loaded;
+
+  /**
+   * Constructs a rollup of the given steps file.
+   *
+   * @param stepsFile  The "date,steps" file.
+   * @param totalsFile The file the totals are persisted in.
+   */
+  public StepsRollup(Path stepsFile, Path totalsFile) {
+    this.stepsFile = stepsFile;
+    this.totalsFile = totalsFile;
+  }
+
+  /**
+   * Returns the shared rollup of a steps file, creating it on first use.
+   *
+   * @param stepsFile  The "date,steps" file.
+   * @param totalsFile The file the totals are persisted in.
+   * @return The rollup of the steps file.
+   */
+  public static StepsRollup forFile(Path stepsFile, Path totalsFile) {
+    return ROLLUPS.computeIfAbsent(stepsFile.toAbsolutePath().normalize(),
+        key -> new StepsRollup(stepsFile, totalsFile));
+  }
+
+  /**
+   * Folds the rows appended to the steps file since the last refresh into the totals and persists them.
+   * Does nothing if the steps file hasn't grown.
+   *
+   * @throws IOException If the steps file or the totals file cannot be accessed.
+   */
+  public synchronized void refresh() throws IOException {
+    ResidentIndexes.shared().touch(this);
+    if (!loaded) {
+      load();
+      loaded = true;
+    }
+    long fileLength;
+    try {
+      fileLength = Files.size(stepsFile);
+    } catch (NoSuchFileException e) {
+      fileLength = 0;
+    }
+    if (fileLength < coveredLength) {
+      days.clear();
+      coveredLength = 0;
+    }
+    if (fileLength == coveredLength) {
+      return;
+    }
+
+    byte[] tail = new byte[Math.toIntExact(fileLength - coveredLength)];
+    try (FileChannel channel = FileChannel.open(stepsFile, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.wrap(tail);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, coveredLength + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of steps file.");
+        }
+      }
+    }
+
+    int start = 0;
+    for (int i = 0; i < tail.length; i++) {
+      if (tail[i] != '\n') {
+        continue;
+      }
+      // The first line of the file is the header
+      if (coveredLength + start > 0) {
+        addRow(tail, start, i > start && tail[i - 1] == '\r' ? i - 1 : i);
+      }
+      start = i + 1;
+    }
+    if (start == 0) {
+      return; // A partially written row is left for later
+    }
+    coveredLength += start;
+    save();
+  }
+
+  /**
+   * Returns the totals of the days between two dates (inclusive) that have entries.
+   *
+   * @param from The first date to include, or null for no lower bound.
+   * @param to   The last date to include, or null for no upper bound.
+   * @return The daily totals, in date order.
+   * @throws IOException If the steps file or the totals file cannot be accessed.
+   */
+  public synchronized DailyStepTotals totals(LocalDate from, LocalDate to) throws IOException {
+    refresh();
+    NavigableMap<LocalDate, int[]> range = days;
+    if (from != null) {
+      range = range.tailMap(from, true);
+    }
+    if (to != null) {
+      range = range.headMap(to, true);
+    }
+    if (range.isEmpty()) {
+      return DailyStepTotals.empty();
+    }
+
+    int size = range.size();
+    int[] epochDays = new int[size];
+    int[] totals = new int[size];
+    int[] counts = new int[size];
+    int[] maxima = new int[size];
+    int i = 0;
+    for (Map.Entry<LocalDate, int[]> day : range.entrySet()) {
+      epochDays[i] = (int) day.getKey().toEpochDay();
+      totals[i] = day.getValue()[0];
+      counts[i] = day.getValue()[1];
+      maxima[i] = day.getValue()[2];
+      i++;
+    }
+    return new DailyStepTotals(epochDays, totals, counts, maxima);
+  }
+
+  private void addRow(byte[] bytes, int start, int end) {
+    int comma = start;
+    while (comma < end && bytes[comma] != ',') {
+      comma++;
+    }
+    if (comma == end) {
+      return; // Blank line or a row without steps
+    }
+    try {
+      LocalDate date = CsvRecordParser.parseDate(bytes, start, comma);
+      int steps = CsvRecordParser.parseInt(bytes, comma + 1, end);
+      int[] day = days.computeIfAbsent(date, key -> new int[3]);
+      day[0] += steps;
+      day[1]++;
+      day[2] = Math.max(day[2], steps);
+    } catch (RuntimeException e) {
+      System.err.println("Skipping unreadable steps row in " + stepsFile);
+    }
+  }
+
+  /**
+   * Drops the in-memory daily totals; the next refresh reloads them from the persisted file.
+   */
+  @Override
+  public synchronized void unload() {
+    days.clear();
+    coveredLength = 0;
+    loaded = false;
+  }
+
+  private void load() throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(totalsFile, StandardCharsets.UTF_8)) {
+      String[] header = reader.readLine().split(",");
+      if (!MAGIC.equals(header[0])) {
+        throw new IllegalArgumentException("Not a steps totals file.");
+      }
+      long length = Long.parseLong(header[1]);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split(",");
+        days.put(LocalDate.parse(fields[0], Constants.dateFormatter), new int[] {
+            Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), Integer.parseInt(fields[3])});
+      }
+      coveredLength = length;
+    } catch (NoSuchFileException e) {
+      // Not built yet
+    } catch (RuntimeException e) {
+      // The totals can always be rebuilt from the steps file
+      System.err.println("Rebuilding unreadable steps totals " + totalsFile);
+      days.clear();
+      coveredLength = 0;
+    }
+  }
+
+  private void save() throws IOException {
+    RecordEncoder encoder = RecordEncoder.forCurrentThread()
+        .text(MAGIC).comma().integer(coveredLength).newLine();
+    for (Map.Entry<LocalDate, int[]> day : days.entrySet()) {
+      int[] totals = day.getValue();
+      encoder.date(day.getKey()).comma().integer(totals[0])
+          .comma().integer(totals[1])
+          .comma().integer(totals[2])
+          .newLine();
+    }
+
+    Path tempFile = Paths.get(totalsFile + ".tmp");
+    try (OutputStream out = Files.newOutputStream(tempFile)) {
+      encoder.writeTo(out);
+    }
+    Files.move(tempFile, totalsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
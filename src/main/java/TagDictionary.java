@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-user dictionary that maps log entry tags (e.g. "Cycling", "Resting") to small integer ids.
+ * The dictionary file holds one tag per line; a tag's id is its line number, starting at 0.
+ * Ids are only ever appended, so an id stays valid for the lifetime of the file.
+ * New tags are appended while holding a lock on the file, after re-reading any lines other writers
+ * added, so concurrent writers in this and other processes never assign a tag two ids.
+ * Decoded entries share the dictionary's tag instances (see {@link #intern(String)}).
+ * Lookups of unknown tags re-read the file only if its size or modification time changed since it was
+ * last checked, and interning remembers the tags it did not find until the dictionary grows.
+ */
+public class TagDictionary {
+  /**
+   * The largest id the dictionary hands out, so ids fit in an unsigned short with room for a "no tag" marker.
+   */
+  public static final int MAX_ID = 0xFFFE;
+  private static final int MAX_INTERN_MISSES = 1024;
+  private static final Map<Path, TagDictionary> DICTIONARIES = new ConcurrentHashMap<>();
+  private static final Map<Path, Object> FILE_MONITORS = new ConcurrentHashMap<>();
+  private final Path file;
+  private final Object fileMonitor; // File locks are held per process, so writers in this one take turns first
+  private final List<String> tags = new ArrayList<>();
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final Set<String> internMisses = new HashSet<>();
+  private long loadedLength;
+  private long checkedSize = -1;
+  private FileTime checkedModified;
+
+  /**
+   * Constructs a dictionary persisted in the given file.
+   *
+   * @param file The dictionary file. It is created on the first new tag.
+   */
+  public TagDictionary(Path file) {
+    this.file = file;
+    this.fileMonitor = FILE_MONITORS.computeIfAbsent(file.toAbsolutePath().normalize(), key -> new Object());
+  }
+
+  /**
+   * Returns the shared dictionary persisted in a file, creating it on first use.
+   *
+   * @param file The dictionary file.
+   * @return The dictionary.
+   */
+  public static TagDictionary forFile(Path file) {
+    return DICTIONARIES.computeIfAbsent(file.toAbsolutePath().normalize(), key -> new TagDictionary(file));
+  }
+
+  /**
+   * Returns the id of a tag, adding the tag to the dictionary if it is new.
+   *
+   * @param tag The tag to look up.
+   * @return The id of the tag.
+   * @throws IOException If the dictionary file cannot be read or written.
+   * @throws IllegalArgumentException If the tag contains a line break.
+   */
+  public synchronized int idFor(String tag) throws IOException {
+    Integer id = ids.get(tag);
+    if (id != null) {
+      return id;
+    }
+    if (tag.indexOf('\n') >= 0 || tag.indexOf('\r') >= 0) {
+      throw new IllegalArgumentException("Tags cannot contain line breaks.");
+    }
+
+    synchronized (fileMonitor) {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+        FileLock lock = channel.lock();
+        try {
+          // Another writer may have added tags since we last looked
+          reload(channel);
+          id = ids.get(tag);
+          if (id != null) {
+            return id;
+          }
+
+          if (tags.size() > MAX_ID) {
+            throw new IllegalStateException("Too many distinct tags.");
+          }
+          // Writing at the end of the last complete line drops any partial line left by a crashed writer
+          ByteBuffer line = ByteBuffer.wrap((tag + "\n").getBytes(StandardCharsets.UTF_8));
+          long end = loadedLength + line.remaining();
+          while (line.hasRemaining()) {
+            channel.write(line, end - line.remaining());
+          }
+          channel.truncate(end);
+          channel.force(false); // Records may refer to the id as soon as it is returned
+          loadedLength = end;
+        } finally {
+          lock.release();
+        }
+      }
+    }
+    add(tag);
+    return tags.size() - 1;
+  }
+
+  /**
+   * Returns the id of a tag without adding it to the dictionary.
+   *
+   * @param tag The tag to look up.
+   * @return The id of the tag, or -1 if it is not in the dictionary.
+   * @throws IOException If the dictionary file cannot be read.
+   */
+  public synchronized int idOf(String tag) throws IOException {
+    Integer id = ids.get(tag);
+    if (id == null) {
+      reloadIfChanged();
+      id = ids.get(tag);
+    }
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Returns the tag with the given id.
+   *
+   * @param id The id of the tag.
+   * @return The tag.
+   * @throws IOException If the dictionary file cannot be read.
+   * @throws IllegalArgumentException If no tag has the given id.
+   */
+  public synchronized String tagFor(int id) throws IOException {
+    if (id >= tags.size()) {
+      reloadIfChanged();
+    }
+    if (id < 0 || id >= tags.size()) {
+      throw new IllegalArgumentException("Unknown tag id: " + id);
+    }
+    return tags.get(id);
+  }
+
+  /**
+   * Returns the dictionary's instance of a tag, so that decoded entries share one instance per tag
+   * instead of holding a copy each. Tags that aren't in the dictionary are returned as they are.
+   *
+   * @param tag The tag, or null.
+   * @return The canonical instance of the tag, or the tag itself.
+   */
+  public synchronized String intern(String tag) {
+    if (tag == null) {
+      return null;
+    }
+    Integer id = ids.get(tag);
+    if (id == null) {
+      if (internMisses.contains(tag)) {
+        return tag;
+      }
+      try {
+        reloadIfChanged();
+      } catch (IOException e) {
+        return tag; // Interning only saves memory, so the tag is still usable
+      }
+      id = ids.get(tag);
+      if (id == null) {
+        if (internMisses.size() >= MAX_INTERN_MISSES) {
+          internMisses.clear();
+        }
+        internMisses.add(tag);
+      }
+    }
+    return id == null ? tag : tags.get(id);
+  }
+
+  /**
+   * Returns all tags in the dictionary.
+   *
+   * @return The tags, indexed by id.
+   * @throws IOException If the dictionary file cannot be read.
+   */
+  public synchronized String[] tags() throws IOException {
+    reloadIfChanged();
+    return tags.toArray(new String[0]);
+  }
+
+  /**
+   * Reads any tags appended to the dictionary file, unless its size and modification time are the same as
+   * when it was last checked.
+   *
+   * @throws IOException If the dictionary file cannot be read.
+   */
+  private void reloadIfChanged() throws IOException {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (NoSuchFileException e) {
+      return; // No tags yet
+    }
+    if (attributes.size() == checkedSize && attributes.lastModifiedTime().equals(checkedModified)) {
+      return;
+    }
+    reload();
+    // Checked before reading, so a write in between is picked up by the next check
+    checkedSize = attributes.size();
+    checkedModified = attributes.lastModifiedTime();
+  }
+
+  /**
+   * Reads any tags appended to the dictionary file since it was last read.
+   *
+   * @throws IOException If the dictionary file cannot be read.
+   */
+  private void reload() throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      reload(channel);
+    } catch (NoSuchFileException e) {
+      // No tags yet
+    }
+  }
+
+  /**
+   * Reads the complete lines appended to the dictionary file since it was last read.
+   * A trailing line without a line break is still being written, or was left by a crashed writer.
+   */
+  private void reload(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size <= loadedLength) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size - loadedLength));
+    while (buffer.hasRemaining() && channel.read(buffer, loadedLength + buffer.position()) >= 0) {
+      // Keep reading until the buffer is full or the file ends
+    }
+
+    byte[] bytes = buffer.array();
+    int start = 0;
+    for (int i = 0; i < buffer.position(); i++) {
+      if (bytes[i] == '\n') {
+        int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+        add(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        start = i + 1;
+      }
+    }
+    loadedLength += start;
+  }
+
+  private void add(String tag) {
+    internMisses.clear();
+    ids.putIfAbsent(tag, tags.size()); // A tag written twice by an older version keeps its first id
+    tags.add(tag);
+  }
+}
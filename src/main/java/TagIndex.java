@@ -0,0 +1,432 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent inverted index from tag ids to the byte ranges of the rows carrying each tag in a metric file.
+ * Consecutive rows with the same tag form one run, so a posting list holds one entry per run rather than
+ * per row: the tag id, the first and last day of the run's rows, and the run's offset and length.
+ * The index file starts with a 4-byte magic header and the number of data file bytes the index covers,
+ * followed by fixed-width 24-byte run entries. Rows appended since then are indexed by {@link #refresh()};
+ * entries past the covered length, left by an interrupted refresh, are dropped, and the index is rebuilt
+ * if the data file shrank. Rows without a tag are not indexed.
+ * Use {@link #forFile(Path, Path, RowFormat)} so that all users of a data file share one index.
+ * Only the most recently used indexs stay loaded (see {@link ResidentIndexes}).
+ */
+public class TagIndex implements ResidentIndexes.Unloadable {
+  private static final byte[] MAGIC = {'T', 'G', 'I', '1'};
+  private static final int HEADER_LENGTH = MAGIC.length + Long.BYTES;
+  private static final int ENTRY_LENGTH = 3 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+  private static final Map<Path, TagIndex> INDEXES = new ConcurrentHashMap<>();
+  private final Path dataFile;
+  private final Path indexFile;
+  private final RowFormat format;
+  private final Map<Integer, Postings> postings = new HashMap<>();
+  private long coveredLength;
+  private long entryCount;
+  private boolean loaded;
+
+  /**
+   * Constructs an index for a data file with the given row layout.
+   *
+   * @param dataFile  The data file.
+   * @param indexFile The file the index is persisted in.
+   * @param format    How tagged rows are laid out in the data file.
+   */
+  public TagIndex(Path dataFile, Path indexFile, RowFormat format) {
+    this.dataFile = dataFile;
+    this.indexFile = indexFile;
+    this.format = format;
+  }
+
+  /**
+   * Returns the index of a data file, shared by all callers in the process.
+   *
+   * @param dataFile  The data file.
+   * @param indexFile The file the index is persisted in.
+   * @param format    How tagged rows are laid out in the data file.
+   * @return The index for the data file.
+   */
+  public static TagIndex forFile(Path dataFile, Path indexFile, RowFormat format) {
+    return INDEXES.computeIfAbsent(dataFile.toAbsolutePath().normalize(),
+        key -> new TagIndex(dataFile, indexFile, format));
+  }
+
+  /**
+   * Indexes the rows appended to the data file since the last refresh.
+   *
+   * @throws IOException If the data file or the index file cannot be accessed.
+   */
+  public synchronized void refresh() throws IOException {
+    ResidentIndexes.shared().touch(this);
+    if (!loaded) {
+      load();
+      loaded = true;
+    }
+    long dataLength;
+    try {
+      dataLength = Files.size(dataFile);
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    if (dataLength < coveredLength) {
+      postings.clear();
+      coveredLength = 0;
+      entryCount = 0;
+    }
+    if (coveredLength == 0) {
+      coveredLength = format.headerLength(dataFile);
+    }
+    if (dataLength == coveredLength) {
+      return;
+    }
+
+    // Collect the new rows into runs, then persist the runs before the new covered length
+    List<long[]> runs = new ArrayList<>();
+    long end = format.scan(dataFile, coveredLength, (tagId, firstDate, lastDate, offset, length) -> {
+      long firstDay = firstDate.toEpochDay();
+      long lastDay = lastDate.toEpochDay();
+      long[] last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+      if (last != null && last[0] == tagId && last[3] + last[4] == offset && last[4] + length <= Integer.MAX_VALUE) {
+        last[1] = Math.min(last[1], firstDay);
+        last[2] = Math.max(last[2], lastDay);
+        last[4] += length;
+      } else {
+        runs.add(new long[] {tagId, firstDay, lastDay, offset, length});
+      }
+    });
+    if (end == coveredLength) {
+      return;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(runs.size() * ENTRY_LENGTH);
+    for (long[] run : runs) {
+      buffer.putInt((int) run[0]).putInt((int) run[1]).putInt((int) run[2]).putLong(run[3]).putInt((int) run[4]);
+    }
+    buffer.flip();
+    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      long position = HEADER_LENGTH + entryCount * ENTRY_LENGTH;
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+      channel.truncate(position + buffer.limit());
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).putLong(end);
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+    }
+
+    for (long[] run : runs) {
+      add((int) run[0], (int) run[1], (int) run[2], run[3], (int) run[4]);
+    }
+    entryCount += runs.size();
+    coveredLength = end;
+  }
+
+  /**
+   * Finds the rows matching a tag query whose runs overlap a date range.
+   * Runs only partly inside the date range are returned whole, so callers filter the decoded rows by date.
+   *
+   * @param tagIds   The ids of the queried tags.
+   * @param matchAll Whether rows must carry all of the tags rather than any of them.
+   * @param from     The first date of the range, or null for no lower bound.
+   * @param to       The last date of the range, or null for no upper bound.
+   * @return The matching byte ranges as {offset, length} pairs, in file order and without overlaps.
+   * @throws IOException If the data file or the index file cannot be accessed.
+   */
+  public synchronized List<long[]> find(int[] tagIds, boolean matchAll, LocalDate from, LocalDate to)
+      throws IOException {
+    refresh();
+    long fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+    long toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+
+    List<long[]> result = null;
+    for (int tagId : Arrays.stream(tagIds).distinct().toArray()) {
+      List<long[]> ranges = new ArrayList<>();
+      Postings tagPostings = postings.get(tagId);
+      if (tagPostings != null) {
+        for (int i = 0; i < tagPostings.size; i++) {
+          if (tagPostings.lastDays[i] >= fromDay && tagPostings.firstDays[i] <= toDay) {
+            ranges.add(new long[] {tagPostings.offsets[i], tagPostings.offsets[i] + tagPostings.lengths[i]});
+          }
+        }
+      }
+      if (result == null) {
+        result = ranges;
+      } else if (matchAll) {
+        result = intersect(result, ranges);
+      } else {
+        result.addAll(ranges);
+      }
+    }
+    if (result == null) {
+      return new ArrayList<>();
+    }
+
+    // Merge into sorted {offset, length} pairs
+    result.sort(Comparator.comparingLong(range -> range[0]));
+    List<long[]> merged = new ArrayList<>();
+    for (long[] range : result) {
+      long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+      if (last != null && range[0] <= last[0] + last[1]) {
+        last[1] = Math.max(last[1], range[1] - last[0]);
+      } else {
+        merged.add(new long[] {range[0], range[1] - range[0]});
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Reads the rows matching a tag query whose runs overlap a date range.
+   *
+   * @param tagIds   The ids of the queried tags.
+   * @param matchAll Whether rows must carry all of the tags rather than any of them.
+   * @param from     The first date of the range, or null for no lower bound.
+   * @param to       The last date of the range, or null for no upper bound.
+   * @return The bytes of each matching run of consecutive rows, in file order.
+   * @throws IOException If the data file or the index file cannot be accessed.
+   */
+  public List<byte[]> readRuns(int[] tagIds, boolean matchAll, LocalDate from, LocalDate to) throws IOException {
+    List<long[]> ranges = find(tagIds, matchAll, from, to);
+    List<byte[]> runs = new ArrayList<>(ranges.size());
+    if (ranges.isEmpty()) {
+      return runs;
+    }
+    try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+      for (long[] range : ranges) {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(range[1]));
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, range[0] + buffer.position()) < 0) {
+            throw new IOException("Tag index points past the end of " + dataFile);
+          }
+        }
+        runs.add(buffer.array());
+      }
+    }
+    return runs;
+  }
+
+  private static List<long[]> intersect(List<long[]> a, List<long[]> b) {
+    a.sort(Comparator.comparingLong(range -> range[0]));
+    b.sort(Comparator.comparingLong(range -> range[0]));
+    List<long[]> result = new ArrayList<>();
+    int i = 0;
+    int j = 0;
+    while (i < a.size() && j < b.size()) {
+      long start = Math.max(a.get(i)[0], b.get(j)[0]);
+      long end = Math.min(a.get(i)[1], b.get(j)[1]);
+      if (start < end) {
+        result.add(new long[] {start, end});
+      }
+      if (a.get(i)[1] < b.get(j)[1]) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Drops the in-memory posting lists; the next refresh reloads them from the persisted file.
+   */
+  @Override
+  public synchronized void unload() {
+    postings.clear();
+    coveredLength = 0;
+    entryCount = 0;
+    loaded = false;
+  }
+
+  private void load() throws IOException {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(indexFile);
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (bytes.length < HEADER_LENGTH || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC)) {
+      System.err.println("Rebuilding unreadable tag index " + indexFile);
+      return;
+    }
+    long covered = buffer.getLong(MAGIC.length);
+    long end = 0;
+    buffer.position(HEADER_LENGTH);
+    while (buffer.remaining() >= ENTRY_LENGTH) {
+      int tagId = buffer.getInt();
+      int firstDay = buffer.getInt();
+      int lastDay = buffer.getInt();
+      long offset = buffer.getLong();
+      int length = buffer.getInt();
+      if (offset < end || length <= 0 || offset + length > covered) {
+        break; // Written by a refresh that didn't finish
+      }
+      add(tagId, firstDay, lastDay, offset, length);
+      end = offset + length;
+      entryCount++;
+    }
+    coveredLength = covered;
+  }
+
+  private void add(int tagId, int firstDay, int lastDay, long offset, int length) {
+    postings.computeIfAbsent(tagId, id -> new Postings()).add(firstDay, lastDay, offset, length);
+  }
+
+  /**
+   * The runs of one tag, in file order, as parallel arrays.
+   */
+  private static class Postings {
+    private int[] firstDays = new int[16];
+    private int[] lastDays = new int[16];
+    private long[] offsets = new long[16];
+    private int[] lengths = new int[16];
+    private int size;
+
+    private void add(int firstDay, int lastDay, long offset, int length) {
+      int last = size - 1;
+      if (last >= 0 && offsets[last] + lengths[last] == offset && (long) lengths[last] + length <= Integer.MAX_VALUE) {
+        // Continues the previous run, e.g. a session split across two refreshes
+        firstDays[last] = Math.min(firstDays[last], firstDay);
+        lastDays[last] = Math.max(lastDays[last], lastDay);
+        lengths[last] += length;
+        return;
+      }
+      if (size == offsets.length) {
+        firstDays = Arrays.copyOf(firstDays, size * 2);
+        lastDays = Arrays.copyOf(lastDays, size * 2);
+        offsets = Arrays.copyOf(offsets, size * 2);
+        lengths = Arrays.copyOf(lengths, size * 2);
+      }
+      firstDays[size] = firstDay;
+      lastDays[size] = lastDay;
+      offsets[size] = offset;
+      lengths[size] = length;
+      size++;
+    }
+  }
+
+  /**
+   * Describes how tagged rows are laid out in a data file, so the index can be built from it.
+   */
+  public interface RowFormat {
+    /**
+     * Returns the length of the header that precedes the first row.
+     *
+     * @param dataFile The data file.
+     * @return The header length in bytes.
+     * @throws IOException If the data file cannot be read.
+     */
+    long headerLength(Path dataFile) throws IOException;
+
+    /**
+     * Reports every complete tagged row of the data file starting at the given offset.
+     *
+     * @param dataFile The data file.
+     * @param from     The offset of the first row to report.
+     * @param visitor  Receives each tagged row.
+     * @return The offset just past the last complete row.
+     * @throws IOException If the data file cannot be read.
+     */
+    long scan(Path dataFile, long from, RowVisitor visitor) throws IOException;
+  }
+
+  /**
+   * Receives the tagged rows found while scanning a data file.
+   */
+  public interface RowVisitor {
+    /**
+     * Called once per tagged row, in file order.
+     *
+     * @param tagId     The tag id of the row.
+     * @param firstDate The first date the row covers.
+     * @param lastDate  The last date the row covers.
+     * @param offset    The byte offset of the row.
+     * @param length    The length of the row in bytes.
+     */
+    void visit(int tagId, LocalDate firstDate, LocalDate lastDate, long offset, long length);
+  }
+
+  /**
+   * Returns the layout of a CSV file whose first line is a header, with a tag column and one or two date
+   * columns. Tags are mapped to ids with the user's dictionary; rows with an empty or "null" tag are skipped.
+   *
+   * @param dictionary     The user's tag dictionary.
+   * @param tagField       The index of the tag column.
+   * @param firstDateField The index of the column holding the row's first date.
+   * @param lastDateField  The index of the column holding the row's last date, or the same as the first.
+   * @return The row format.
+   */
+  public static RowFormat csvRowFormat(TagDictionary dictionary, int tagField, int firstDateField,
+      int lastDateField) {
+    return new RowFormat() {
+      @Override
+      public long headerLength(Path dataFile) throws IOException {
+        long length = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(dataFile))) {
+          int b;
+          while ((b = in.read()) != -1) {
+            length++;
+            if (b == '\n') {
+              return length;
+            }
+          }
+        }
+        return length;
+      }
+
+      @Override
+      public long scan(Path dataFile, long from, RowVisitor visitor) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(dataFile))) {
+          in.skipNBytes(from);
+          ByteArrayOutputStream line = new ByteArrayOutputStream();
+          long lineStart = from;
+          long position = from;
+          int b;
+          while ((b = in.read()) != -1) {
+            position++;
+            if (b != '\n') {
+              line.write(b);
+              continue;
+            }
+            String[] fields = line.toString(StandardCharsets.UTF_8).trim().split(",", -1);
+            if (fields.length > Math.max(tagField, Math.max(firstDateField, lastDateField))) {
+              String tag = fields[tagField];
+              if (!tag.isEmpty() && !tag.equals("null")) {
+                try {
+                  visitor.visit(dictionary.idFor(tag), LocalDate.parse(fields[firstDateField], Constants.dateFormatter),
+                      LocalDate.parse(fields[lastDateField], Constants.dateFormatter), lineStart, position - lineStart);
+                } catch (DateTimeParseException e) {
+                  // Malformed row
+                }
+              }
+            }
+            line.reset();
+            lineStart = position;
+          }
+          // A trailing row without a terminator is still being written; leave it for the next scan
+          return lineStart;
+        }
+      }
+    };
+  }
+}
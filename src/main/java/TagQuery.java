@@ -0,0 +1,82 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A query for log entries by tag: entries with any of the given tags, or with all of them.
+ * Each heart rate sample and period log carries a single tag, so a query for all of two different
+ * tags matches nothing; combine tags with {@link #anyOf(String...)} instead.
+ */
+public class TagQuery {
+  private final Set<String> tags;
+  private final boolean matchAll;
+
+  private TagQuery(String[] tags, boolean matchAll) {
+    if (tags.length == 0) {
+      throw new IllegalArgumentException("A tag query needs at least one tag.");
+    }
+    for (String tag : tags) {
+      if (tag == null) {
+        throw new IllegalArgumentException("Tags in a query cannot be null.");
+      }
+    }
+    this.tags = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(tags)));
+    this.matchAll = matchAll;
+  }
+
+  /**
+   * Creates a query for entries with at least one of the given tags.
+   *
+   * @param tags The tags.
+   * @return The query.
+   * @throws IllegalArgumentException If no tags are given or a tag is null.
+   */
+  public static TagQuery anyOf(String... tags) {
+    return new TagQuery(tags, false);
+  }
+
+  /**
+   * Creates a query for entries with every one of the given tags.
+   *
+   * @param tags The tags.
+   * @return The query.
+   * @throws IllegalArgumentException If no tags are given or a tag is null.
+   */
+  public static TagQuery allOf(String... tags) {
+    return new TagQuery(tags, true);
+  }
+
+  /**
+   * Returns the tags of the query.
+   *
+   * @return The tags, in the order they were given.
+   */
+  public Set<String> getTags() {
+    return tags;
+  }
+
+  /**
+   * Returns whether entries must have all of the tags rather than any of them.
+   *
+   * @return true for an "all of" query, false for an "any of" query.
+   */
+  public boolean isMatchAll() {
+    return matchAll;
+  }
+
+  /**
+   * Checks whether an entry's tag matches the query.
+   *
+   * @param tag The entry's tag, or null if it has none.
+   * @return true if the entry matches.
+   */
+  public boolean matches(String tag) {
+    return tag != null && tags.contains(tag) && (!matchAll || tags.size() == 1);
+  }
+
+  @Override
+  public String toString() {
+    return (matchAll ? "allOf" : "anyOf") + tags;
+  }
+}
@@ -1,16 +1,26 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.time.Instant;
 import java.time.LocalDate;
-
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores user profiles as "name|username|gender|password|dateOfBirth" records, hash-sharded over several
+ * files (see {@link UserShards}). Users are looked up through a persistent {@link UserIndex} per file,
+ * so a lookup reads a single record, and a {@link UsernameBloomFilter} per file answers most checks for
+ * usernames that aren't taken. Users in the users file from before sharding are still found.
+ * Parsed profiles are kept in the shared {@link ProfileCache}, and {@link #login(String, String)} issues
+ * a {@link UserSession} carrying the profile, so the screens of a logged-in user don't read the users files.
+ */
 public class UserDataStorage {
-
+  private static final SecureRandom TOKENS = new SecureRandom();
+  private static final Map<String, UserSession> SESSIONS = new ConcurrentHashMap<>();
 
   /**
-   * Saves a new user's profile to the main users file.
+   * Saves a new user's profile to the users file of its shard.
    * Only saves if the username doesn't already exist.
    *
    * @param profile The UserProfile to save.
@@ -18,12 +28,6 @@ public class UserDataStorage {
    * @throws IOException If there's an issue writing to the file.
    */
   public static boolean saveUserProfile(UserProfile profile) throws IOException {
-    // Check if user already exists
-    if (isUserExists(profile.getUserName())) {
-      System.out.println("User already exists.");
-      return false;
-    }
-
     // Encrypt the password using XOR
     String encryptedPassword = xorEncrypt(profile.getPassword(), Constants.XOR_KEY);
 
@@ -35,38 +39,27 @@ public class UserDataStorage {
         encryptedPassword,
         profile.getDateOfBirth());
 
-    // Write to the users file
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(Constants.USER_DATA_FILE, true))) {
-      writer.write(line);
-      writer.newLine();
+    // Write to the users file, unless the user already exists
+    if (!userShards().add(profile.getUserName(), line)) {
+      System.out.println("User already exists.");
+      return false;
     }
 
+    ProfileCache.shared().invalidate(profile.getUserName());
     return true;
   }
 
   /**
    * Checks if a user with the given username already exists.
+   * Usernames that aren't taken are usually ruled out by the username filters alone;
+   * only probable matches are confirmed with the user indexes.
    *
    * @param username The username to check.
    * @return true if user exists, false otherwise.
    * @throws IOException If reading the file fails.
    */
   public static boolean isUserExists(String username) throws IOException {
-    File file = new File(Constants.USER_DATA_FILE);
-    if (!file.exists()) {
-      return false;
-    }
-
-    try (BufferedReader reader = new BufferedReader(new FileReader(Constants.USER_DATA_FILE))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        String[] parts = line.split("\\|");
-        if (parts.length >= 2 && parts[1].equals(username)) {
-          return true;
-        }
-      }
-    }
-    return false;
+    return userShards().exists(username);
   }
 
   /**
@@ -78,44 +71,103 @@ public class UserDataStorage {
    * @throws IOException If reading the file fails.
    */
   public static boolean authenticateUser(String username, String password) throws IOException {
-    try (BufferedReader reader = new BufferedReader(new FileReader(Constants.USER_DATA_FILE))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        String[] parts = line.split("\\|");
-        if (parts.length >= 4 && parts[1].equals(username)) {
-          String decryptedPassword = xorEncrypt(parts[3], Constants.XOR_KEY);
-          return decryptedPassword.equals(password);
-        }
+    UserProfile profile = getUserProfile(username);
+    return profile != null && profile.getPassword().equals(password);
+  }
+
+  /**
+   * Authenticates a user and starts a session carrying the user's profile.
+   *
+   * @param username The username to check.
+   * @param password The password to verify.
+   * @return The new session, or null if authentication failed.
+   * @throws IOException If reading the file fails.
+   */
+  public static UserSession login(String username, String password) throws IOException {
+    UserProfile profile = getUserProfile(username);
+    if (profile == null || !profile.getPassword().equals(password)) {
+      return null;
+    }
+    byte[] token = new byte[16];
+    TOKENS.nextBytes(token);
+    UserSession session = new UserSession(Base64.getUrlEncoder().withoutPadding().encodeToString(token),
+        profile, Instant.now());
+    SESSIONS.put(session.getToken(), session);
+    return session;
+  }
+
+  /**
+   * Returns the session with the given token.
+   *
+   * @param token The token of the session.
+   * @return The session, or null if there is no such session or it has ended.
+   */
+  public static UserSession getSession(String token) {
+    return token == null ? null : SESSIONS.get(token);
+  }
+
+  /**
+   * Ends a session. The user's cached profile is dropped once none of the user's sessions remain.
+   *
+   * @param session The session to end, or null.
+   */
+  public static void logout(UserSession session) {
+    if (session == null || SESSIONS.remove(session.getToken()) == null) {
+      return;
+    }
+    for (UserSession other : SESSIONS.values()) {
+      if (other.getUsername().equals(session.getUsername())) {
+        return;
       }
     }
-    return false;
+    ProfileCache.shared().invalidate(session.getUsername());
   }
 
   /**
-   * Retrieves a UserProfile from the file based on the username.
+   * Retrieves a UserProfile based on the username.
+   * The profile is parsed from the users file once and then served from the shared profile cache.
    *
    * @param username The username of the user to retrieve.
    * @return The UserProfile object, or null if not found.
    * @throws IOException If reading the file fails.
    */
   public static UserProfile getUserProfile(String username) throws IOException {
-    File file = new File(Constants.USER_DATA_FILE);
-    if (!file.exists()) {
+    ProfileCache cache = ProfileCache.shared();
+    UserProfile profile = cache.get(username);
+    if (profile != null) {
+      return profile;
+    }
+    long stamp = cache.writeStamp();
+    String record = userShards().lookup(username);
+    if (record == null) {
       return null;
     }
-
-    try (BufferedReader reader = new BufferedReader(new FileReader(Constants.USER_DATA_FILE))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        String[] parts = line.split("\\|");
-        if (parts.length >= 4 && parts[1].equals(username)) {
-          String decryptedPassword = xorEncrypt(parts[3], Constants.XOR_KEY);
-          LocalDate dob = LocalDate.parse(parts[4]);
-          return new UserProfile(parts[0], parts[1], decryptedPassword, Gender.valueOf(parts[2]), dob);
-        }
-      }
+    String[] parts = record.split("\\|");
+    if (parts.length < 5) {
+      return null;
     }
-    return null;
+    String decryptedPassword = xorEncrypt(parts[3], Constants.XOR_KEY);
+    LocalDate dob = LocalDate.parse(parts[4]);
+    profile = new UserProfile(parts[0], parts[1], decryptedPassword, Gender.valueOf(parts[2]), dob);
+    cache.put(username, profile, stamp);
+    return profile;
+  }
+
+  /**
+   * Redistributes all users over a new number of shard files, moving in the users from the users file
+   * from before sharding. Run this while the application is not running (see {@link UserShards#rebalance(int)}).
+   *
+   * @param shardCount The new number of shards.
+   * @throws IOException If a users file cannot be accessed.
+   * @throws IllegalArgumentException If the shard count is not positive.
+   */
+  public static void rebalanceUserShards(int shardCount) throws IOException {
+    userShards().rebalance(shardCount);
+    ProfileCache.shared().clear();
+  }
+
+  private static UserShards userShards() {
+    return UserShards.forDirectory(Paths.get(Constants.USER_SHARD_DIRECTORY), Paths.get(Constants.USER_DATA_FILE));
   }
 
   /**
@@ -140,6 +192,7 @@ public class UserDataStorage {
 
   /**
    * Determines if a user is female based on their profile.
+   * Screens of a logged-in user should use {@link UserSession#isFemale()} instead.
    *
    * @param username The username to check.
    * @return true if user is female, false otherwise or if user not found.
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent hash index from usernames to the byte offset of their record in the "name|username|..." users file,
+ * so a login reads one record instead of scanning every user.
+ * The index file starts with a 4-byte magic header and the number of users file bytes the index covers,
+ * followed by one entry per record: its offset (8 bytes), the length of the username (2 bytes) and the
+ * username in UTF-8. Records appended since then are indexed by {@link #refresh()}; entries past the
+ * covered length, left by an interrupted refresh, are dropped, and the index is rebuilt if the users
+ * file shrank. As with a scan of the file, the first record of a username wins.
+ * Use {@link #forFile(Path, Path)} so that all callers share one index.
+ */
+public class UserIndex {
+  private static final byte[] MAGIC = {'U', 'I', 'X', '1'};
+  private static final int HEADER_LENGTH = MAGIC.length + Long.BYTES;
+  private static final Map<Path, UserIndex> INDEXES = new ConcurrentHashMap<>();
+  private final Path usersFile;
+  private final Path indexFile;
+  private final Map<String, Long> offsets = new HashMap<>();
+  private long coveredLength;
+  private long indexLength = HEADER_LENGTH;
+  private boolean loaded;
+
+  /**
+   * Constructs an index of the given users file.
+   *
+   * @param usersFile The users file.
+   * @param indexFile The file the index is persisted in.
+   */
+  public UserIndex(Path usersFile, Path indexFile) {
+    this.usersFile = usersFile;
+    this.indexFile = indexFile;
+  }
+
+  /**
+   * Returns the shared index of a users file, creating it on first use.
+   *
+   * @param usersFile The users file.
+   * @param indexFile The file the index is persisted in.
+   * @return The index of the users file.
+   */
+  public static UserIndex forFile(Path usersFile, Path indexFile) {
+    return INDEXES.computeIfAbsent(usersFile.toAbsolutePath().normalize(),
+        key -> new UserIndex(usersFile, indexFile));
+  }
+
+  /**
+   * Indexes the records appended to the users file since the last refresh.
+   *
+   * @throws IOException If the users file or the index file cannot be accessed.
+   */
+  public synchronized void refresh() throws IOException {
+    if (!loaded) {
+      load();
+      loaded = true;
+    }
+    long fileLength;
+    try {
+      fileLength = Files.size(usersFile);
+    } catch (NoSuchFileException e) {
+      fileLength = 0;
+    }
+    if (fileLength < coveredLength) {
+      offsets.clear();
+      coveredLength = 0;
+      indexLength = HEADER_LENGTH;
+    }
+    if (fileLength == coveredLength) {
+      return;
+    }
+
+    byte[] tail = read(coveredLength, Math.toIntExact(fileLength - coveredLength));
+    ByteBuffer entries = ByteBuffer.allocate(64);
+    int start = 0;
+    for (int i = 0; i < tail.length; i++) {
+      if (tail[i] != '\n') {
+        continue;
+      }
+      String username = usernameOf(tail, start, i);
+      if (username != null && !offsets.containsKey(username)) {
+        byte[] name = username.getBytes(StandardCharsets.UTF_8);
+        if (entries.remaining() < Long.BYTES + Short.BYTES + name.length) {
+          entries = ByteBuffer.allocate(Math.max(entries.capacity() * 2, entries.position() + 64 + name.length))
+              .put(entries.flip());
+        }
+        entries.putLong(coveredLength + start).putShort((short) name.length).put(name);
+        offsets.put(username, coveredLength + start);
+      }
+      start = i + 1;
+    }
+    if (start == 0) {
+      return; // A partially written record is left for later
+    }
+
+    // Write the entries before the header that makes them valid
+    entries.flip();
+    try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      long position = indexLength;
+      while (entries.hasRemaining()) {
+        channel.write(entries, position + entries.position());
+      }
+      channel.truncate(position + entries.limit());
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).putLong(coveredLength + start);
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      indexLength = position + entries.limit();
+    }
+    coveredLength += start;
+  }
+
+  /**
+   * Checks whether the users file has a record for a username.
+   *
+   * @param username The username to look up.
+   * @return true if the user exists, false otherwise.
+   * @throws IOException If the users file or the index file cannot be accessed.
+   */
+  public synchronized boolean contains(String username) throws IOException {
+    refresh();
+    return offsets.containsKey(username);
+  }
+
+  /**
+   * Reads the record of a username.
+   *
+   * @param username The username to look up.
+   * @return The record without its line terminator, or null if the user doesn't exist.
+   * @throws IOException If the users file or the index file cannot be accessed.
+   */
+  public synchronized String lookup(String username) throws IOException {
+    refresh();
+    Long offset = offsets.get(username);
+    if (offset == null) {
+      return null;
+    }
+
+    // Records are short, so read a block and only read on if the line doesn't fit
+    int length = (int) Math.min(256, coveredLength - offset);
+    while (true) {
+      byte[] bytes = read(offset, length);
+      for (int i = 0; i < bytes.length; i++) {
+        if (bytes[i] == '\n') {
+          int end = i > 0 && bytes[i - 1] == '\r' ? i - 1 : i;
+          return new String(bytes, 0, end, StandardCharsets.UTF_8);
+        }
+      }
+      if (length == coveredLength - offset) {
+        return new String(bytes, StandardCharsets.UTF_8); // The file was rewritten under the index
+      }
+      length = (int) Math.min(length * 2L, coveredLength - offset);
+    }
+  }
+
+  /**
+   * Returns the username field of a record, or null if the record has too few fields.
+   */
+  static String usernameOf(byte[] bytes, int start, int end) {
+    int first = start;
+    while (first < end && bytes[first] != '|') {
+      first++;
+    }
+    if (first == end) {
+      return null;
+    }
+    int second = first + 1;
+    while (second < end && bytes[second] != '|') {
+      second++;
+    }
+    if (second == end && end > first + 1 && bytes[end - 1] == '\r') {
+      second--;
+    }
+    return second == first + 1 ? null : new String(bytes, first + 1, second - first - 1, StandardCharsets.UTF_8);
+  }
+
+  private byte[] read(long position, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    try (FileChannel channel = FileChannel.open(usersFile, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of users file.");
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private void load() throws IOException {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(indexFile);
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    if (bytes.length < HEADER_LENGTH || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC)) {
+      System.err.println("Rebuilding unreadable user index " + indexFile);
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    long covered = buffer.getLong(MAGIC.length);
+    long lastOffset = -1;
+    buffer.position(HEADER_LENGTH);
+    while (buffer.remaining() >= Long.BYTES + Short.BYTES) {
+      int entryStart = buffer.position();
+      long offset = buffer.getLong();
+      int nameLength = buffer.getShort() & 0xFFFF;
+      // Entries are written in file order, so anything else was written by a refresh that didn't finish
+      if (offset <= lastOffset || offset >= covered || nameLength == 0 || buffer.remaining() < nameLength) {
+        buffer.position(entryStart);
+        break;
+      }
+      byte[] name = new byte[nameLength];
+      buffer.get(name);
+      offsets.putIfAbsent(new String(name, StandardCharsets.UTF_8), offset);
+      lastOffset = offset;
+    }
+    coveredLength = covered;
+    indexLength = buffer.position();
+  }
+}
@@ -0,0 +1,70 @@
+import java.time.Instant;
+
+/**
+ * A logged-in user, issued by {@link UserDataStorage#login(String, String)}. Carries the user's profile
+ * as read at login, so the screens of the session never read the users files. The token identifies the
+ * session until {@link UserDataStorage#logout(UserSession)}.
+ */
+public class UserSession {
+  private final String token;
+  private final UserProfile profile;
+  private final Instant issuedAt;
+
+  /**
+   * Constructs a session.
+   *
+   * @param token    The random token identifying the session.
+   * @param profile  The profile of the logged-in user.
+   * @param issuedAt The time of the login.
+   */
+  public UserSession(String token, UserProfile profile, Instant issuedAt) {
+    this.token = token;
+    this.profile = profile;
+    this.issuedAt = issuedAt;
+  }
+
+  /**
+   * Returns the token identifying the session.
+   *
+   * @return The token.
+   */
+  public String getToken() {
+    return token;
+  }
+
+  /**
+   * Returns the profile of the logged-in user.
+   *
+   * @return The profile.
+   */
+  public UserProfile getProfile() {
+    return profile;
+  }
+
+  /**
+   * Returns the username of the logged-in user.
+   *
+   * @return The username.
+   */
+  public String getUsername() {
+    return profile.getUserName();
+  }
+
+  /**
+   * Returns the time of the login.
+   *
+   * @return The time the session was issued.
+   */
+  public Instant getIssuedAt() {
+    return issuedAt;
+  }
+
+  /**
+   * Determines if the logged-in user is female.
+   *
+   * @return true if the user is female, false otherwise.
+   */
+  public boolean isFemale() {
+    return profile.getGender() == Gender.FEMALE;
+  }
+}
@@ -0,0 +1,306 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * User records spread over hash-sharded "name|username|..." files, so that registrations of different
+ * users don't all append to one file. A username's shard is its hash modulo the shard count, which is kept
+ * in the directory's layout file. Each shard has its own append lock, {@link UserIndex} and
+ * {@link UsernameBloomFilter}. A registration checks for and adds its username under one of a fixed set of
+ * striped username locks, so registrations of the same username are serialized while others only wait for
+ * each other's appends. Records in the legacy single users file are still found, until
+ * {@link #rebalance(int)} moves them into the shards.
+ * Use {@link #forDirectory(Path, Path)} so that all callers share one store.
+ */
+public class UserShards {
+  /**
+   * The number of shards a new store is created with.
+   */
+  public static final int DEFAULT_SHARD_COUNT = 16;
+  private static final int USERNAME_LOCK_BITS = 6;
+  private static final String LAYOUT_FILE = "shards.txt";
+  private static final Map<Path, UserShards> STORES = new ConcurrentHashMap<>();
+  private final Path directory;
+  private final Path legacyFile;
+  private final Object[] usernameLocks = new Object[1 << USERNAME_LOCK_BITS];
+  private volatile Shard[] shards;
+  private volatile Shard legacy;
+  private volatile boolean legacyChecked;
+
+  /**
+   * Constructs a store in the given directory.
+   *
+   * @param directory  The directory holding the shard files. It is created on first use.
+   * @param legacyFile The users file from before sharding, read if it exists.
+   */
+  public UserShards(Path directory, Path legacyFile) {
+    this.directory = directory;
+    this.legacyFile = legacyFile;
+    for (int i = 0; i < usernameLocks.length; i++) {
+      usernameLocks[i] = new Object();
+    }
+  }
+
+  /**
+   * Returns the shared store in a directory, creating it on first use.
+   *
+   * @param directory  The directory holding the shard files.
+   * @param legacyFile The users file from before sharding, read if it exists.
+   * @return The store.
+   */
+  public static UserShards forDirectory(Path directory, Path legacyFile) {
+    return STORES.computeIfAbsent(directory.toAbsolutePath().normalize(), key -> new UserShards(directory, legacyFile));
+  }
+
+  /**
+   * Checks whether a user exists in its shard or in the legacy users file.
+   *
+   * @param username The username to check.
+   * @return true if the user exists, false otherwise.
+   * @throws IOException If a users file or its index cannot be accessed.
+   */
+  public boolean exists(String username) throws IOException {
+    Shard legacy = legacy();
+    return shardFor(username).contains(username) || legacy != null && legacy.contains(username);
+  }
+
+  /**
+   * Reads the record of a user from its shard or from the legacy users file.
+   *
+   * @param username The username to look up.
+   * @return The record without its line terminator, or null if the user doesn't exist.
+   * @throws IOException If a users file or its index cannot be accessed.
+   */
+  public String lookup(String username) throws IOException {
+    String record = shardFor(username).lookup(username);
+    Shard legacy = legacy();
+    return record != null || legacy == null ? record : legacy.lookup(username);
+  }
+
+  /**
+   * Appends a user's record to its shard, unless the user already exists.
+   * The check and the append are one atomic step for registrations of the same username, which share a
+   * username lock; the shard's append lock is only held while the record is written.
+   *
+   * @param username The username of the record.
+   * @param record   The record, without a line terminator.
+   * @return true if the record was added, false if the user already exists.
+   * @throws IOException If a users file or its index cannot be accessed.
+   */
+  public boolean add(String username, String record) throws IOException {
+    Shard shard = shardFor(username);
+    synchronized (usernameLock(username)) {
+      if (exists(username)) {
+        return false;
+      }
+      byte[] line = (record + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+      synchronized (shard) {
+        // One write per record, so records appended by other processes never interleave with it
+        Files.write(shard.file, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      }
+      shard.filter.refresh();
+      return true;
+    }
+  }
+
+  /**
+   * Returns the number of shards.
+   *
+   * @return The shard count.
+   * @throws IOException If the layout file cannot be read or created.
+   */
+  public int shardCount() throws IOException {
+    return shards().length;
+  }
+
+  /**
+   * Redistributes all users, including those in the legacy users file, over a new number of shards.
+   * The new shard files are written before the layout file is switched to them, and the old files are
+   * deleted afterwards; the legacy users file is renamed with a ".migrated" suffix. Run this offline:
+   * other processes using the store must be stopped, as they would keep using the old layout.
+   *
+   * @param shardCount The new number of shards.
+   * @throws IOException If a users file or the layout file cannot be accessed.
+   * @throws IllegalArgumentException If the shard count is not positive.
+   */
+  public synchronized void rebalance(int shardCount) throws IOException {
+    if (shardCount <= 0) {
+      throw new IllegalArgumentException("Shard count must be positive.");
+    }
+    Shard[] oldShards = shards();
+    boolean hasLegacy = Files.exists(legacyFile);
+    if (shardCount == oldShards.length && !hasLegacy) {
+      return;
+    }
+
+    // Collect every record by its new shard, legacy records first, so the first record of a username wins
+    ByteArrayOutputStream[] records = new ByteArrayOutputStream[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      records[i] = new ByteArrayOutputStream();
+    }
+    if (hasLegacy) {
+      distribute(legacyFile, records);
+    }
+    for (Shard shard : oldShards) {
+      distribute(shard.file, records);
+    }
+
+    Shard[] newShards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      newShards[i] = new Shard(shardFile(i, shardCount));
+      newShards[i].deleteSidecars(); // Left by an earlier, interrupted rebalance
+      Files.write(newShards[i].file, records[i].toByteArray());
+    }
+    writeLayout(shardCount);
+    shards = newShards;
+
+    if (shardCount != oldShards.length) {
+      for (Shard shard : oldShards) {
+        Files.deleteIfExists(shard.file);
+        shard.deleteSidecars();
+      }
+    }
+    if (hasLegacy) {
+      Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".migrated"),
+          StandardCopyOption.REPLACE_EXISTING);
+      new Shard(legacyFile).deleteSidecars();
+      legacy = null;
+      legacyChecked = true;
+    }
+  }
+
+  private void distribute(Path file, ByteArrayOutputStream[] records) throws IOException {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file);
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    int start = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      if (bytes[i] != '\n') {
+        continue;
+      }
+      String username = UserIndex.usernameOf(bytes, start, i);
+      if (username != null) {
+        records[shardOf(username, records.length)].write(bytes, start, i + 1 - start);
+      }
+      start = i + 1;
+    }
+  }
+
+  private Shard shardFor(String username) throws IOException {
+    Shard[] current = shards();
+    return current[shardOf(username, current.length)];
+  }
+
+  private Object usernameLock(String username) {
+    // Take the stripe from the top bits of the spread hash, so it isn't just the low bits the shard is chosen by
+    int hash = username.hashCode();
+    return usernameLocks[((hash ^ (hash >>> 16)) * 0x9E3779B9) >>> (Integer.SIZE - USERNAME_LOCK_BITS)];
+  }
+
+  private static int shardOf(String username, int shardCount) {
+    return Math.floorMod(username.hashCode(), shardCount); // String hash codes are the same in every JVM
+  }
+
+  /**
+   * Returns the legacy users file, or null if there is none. Stores created after sharding never get one,
+   * so it is only looked for once.
+   */
+  private Shard legacy() {
+    if (!legacyChecked) {
+      synchronized (this) {
+        if (!legacyChecked) {
+          legacy = Files.exists(legacyFile) ? new Shard(legacyFile) : null;
+          legacyChecked = true;
+        }
+      }
+    }
+    return legacy;
+  }
+
+  private Shard[] shards() throws IOException {
+    Shard[] current = shards;
+    if (current != null) {
+      return current;
+    }
+    synchronized (this) {
+      if (shards == null) {
+        int shardCount = readLayout();
+        Shard[] loaded = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+          loaded[i] = new Shard(shardFile(i, shardCount));
+        }
+        shards = loaded;
+      }
+      return shards;
+    }
+  }
+
+  private int readLayout() throws IOException {
+    Path layoutFile = directory.resolve(LAYOUT_FILE);
+    try {
+      return Integer.parseInt(new String(Files.readAllBytes(layoutFile), StandardCharsets.US_ASCII).trim());
+    } catch (NoSuchFileException e) {
+      writeLayout(DEFAULT_SHARD_COUNT);
+      return DEFAULT_SHARD_COUNT;
+    }
+  }
+
+  private void writeLayout(int shardCount) throws IOException {
+    Files.createDirectories(directory);
+    Path tempFile = directory.resolve(LAYOUT_FILE + ".tmp");
+    Files.write(tempFile, (shardCount + System.lineSeparator()).getBytes(StandardCharsets.US_ASCII));
+    Files.move(tempFile, directory.resolve(LAYOUT_FILE), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Returns the file of a shard. The name includes the shard count, so a rebalance never reuses the
+   * name of a file it is reading from.
+   */
+  private Path shardFile(int shard, int shardCount) {
+    return directory.resolve("shard-" + shard + "-of-" + shardCount + ".txt");
+  }
+
+  /**
+   * One users file with its index and filter, whose monitor is the lock appends to the file are made under.
+   */
+  private static final class Shard {
+    private final Path file;
+    private final UserIndex index;
+    private final UsernameBloomFilter filter;
+
+    private Shard(Path file) {
+      this.file = file;
+      this.index = new UserIndex(file, sidecar(".idx"));
+      this.filter = new UsernameBloomFilter(file, sidecar(".bloom"));
+    }
+
+    private boolean contains(String username) throws IOException {
+      return filter.mightContain(username) && index.contains(username);
+    }
+
+    private String lookup(String username) throws IOException {
+      return filter.mightContain(username) ? index.lookup(username) : null;
+    }
+
+    private void deleteSidecars() throws IOException {
+      Files.deleteIfExists(sidecar(".idx"));
+      Files.deleteIfExists(sidecar(".bloom"));
+    }
+
+    private Path sidecar(String extension) {
+      String name = file.getFileName().toString();
+      return file.resolveSibling(name.substring(0, name.lastIndexOf('.')) + extension);
+    }
+  }
+}
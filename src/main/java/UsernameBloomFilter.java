@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent Bloom filter over the usernames of a "name|username|..." users file, so that checking a
+ * username that isn't taken needs neither the users file nor the {@link UserIndex}.
+ * A miss is definite; a hit is only probable and must be confirmed with the index.
+ * The filter file starts with a 32-byte header (magic, covered length of the users file, capacity,
+ * username count and hash count), followed by the bit array as 64-bit words. Usernames appended to the
+ * users file since then are added by {@link #refresh()}, which writes back only the words that changed.
+ * Bits are only ever set, so a refresh interrupted before its header is written merely adds false positives.
+ * Once the filter holds more usernames than it was sized for, it is rebuilt from the users file at twice
+ * the size; it is also rebuilt if its file is missing or unreadable, or the users file shrank.
+ * Use {@link #forFile(Path, Path)} so that all callers share one filter.
+ */
+public class UsernameBloomFilter {
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+  private static final long INITIAL_CAPACITY = 1024;
+  private static final byte[] MAGIC = {'U', 'B', 'F', '1'};
+  private static final int HEADER_LENGTH = MAGIC.length + 3 * Long.BYTES + Integer.BYTES;
+  private static final Map<Path, UsernameBloomFilter> FILTERS = new ConcurrentHashMap<>();
+  private final Path usersFile;
+  private final Path filterFile;
+  private long[] words;
+  private int hashes;
+  private long capacity;
+  private long count;
+  private long coveredLength;
+  private boolean loaded;
+
+  /**
+   * Constructs a filter over the usernames of the given users file.
+   *
+   * @param usersFile  The users file.
+   * @param filterFile The file the filter is persisted in.
+   */
+  public UsernameBloomFilter(Path usersFile, Path filterFile) {
+    this.usersFile = usersFile;
+    this.filterFile = filterFile;
+    reset(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Returns the shared filter of a users file, creating it on first use.
+   *
+   * @param usersFile  The users file.
+   * @param filterFile The file the filter is persisted in.
+   * @return The filter of the users file.
+   */
+  public static UsernameBloomFilter forFile(Path usersFile, Path filterFile) {
+    return FILTERS.computeIfAbsent(usersFile.toAbsolutePath().normalize(),
+        key -> new UsernameBloomFilter(usersFile, filterFile));
+  }
+
+  /**
+   * Checks whether a username may be in the users file.
+   *
+   * @param username The username to check.
+   * @return false if the username is definitely not in the users file, true if it probably is.
+   * @throws IOException If the users file or the filter file cannot be accessed.
+   */
+  public synchronized boolean mightContain(String username) throws IOException {
+    refresh();
+    long[] hash = hash(username);
+    long bits = (long) words.length * Long.SIZE;
+    for (int i = 0; i < hashes; i++) {
+      long bit = Math.floorMod(hash[0] + i * hash[1], bits);
+      if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds the usernames appended to the users file since the last refresh.
+   *
+   * @throws IOException If the users file or the filter file cannot be accessed.
+   */
+  public synchronized void refresh() throws IOException {
+    if (!loaded) {
+      load();
+      loaded = true;
+    }
+    long fileLength;
+    try {
+      fileLength = Files.size(usersFile);
+    } catch (NoSuchFileException e) {
+      fileLength = 0;
+    }
+    if (fileLength < coveredLength) {
+      rebuild(INITIAL_CAPACITY);
+      return;
+    }
+    if (fileLength == coveredLength) {
+      return;
+    }
+
+    BitSet dirtyWords = new BitSet(words.length);
+    if (scan(coveredLength, fileLength, dirtyWords) < 0) {
+      return; // A partially written record is left for later
+    }
+    if (count > capacity) {
+      rebuild(Math.max(capacity * 2, count * 2));
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(filterFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      ByteBuffer word = ByteBuffer.allocate(Long.BYTES);
+      for (int i = dirtyWords.nextSetBit(0); i >= 0; i = dirtyWords.nextSetBit(i + 1)) {
+        word.clear();
+        word.putLong(words[i]).flip();
+        while (word.hasRemaining()) {
+          channel.write(word, HEADER_LENGTH + (long) i * Long.BYTES + word.position());
+        }
+      }
+      ByteBuffer header = header();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+    }
+  }
+
+  /**
+   * Adds the usernames of the complete records between two offsets of the users file.
+   *
+   * @return The number of bytes consumed, or -1 if there is no complete record yet.
+   */
+  private long scan(long from, long to, BitSet dirtyWords) throws IOException {
+    byte[] tail = new byte[Math.toIntExact(to - from)];
+    try (FileChannel channel = FileChannel.open(usersFile, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.wrap(tail);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, from + buffer.position()) < 0) {
+          throw new IOException("Unexpected end of users file.");
+        }
+      }
+    }
+
+    int start = 0;
+    for (int i = 0; i < tail.length; i++) {
+      if (tail[i] == '\n') {
+        String username = UserIndex.usernameOf(tail, start, i);
+        if (username != null) {
+          add(username, dirtyWords);
+        }
+        start = i + 1;
+      }
+    }
+    if (start == 0) {
+      return -1;
+    }
+    coveredLength = from + start;
+    return start;
+  }
+
+  private void add(String username, BitSet dirtyWords) {
+    long[] hash = hash(username);
+    long bits = (long) words.length * Long.SIZE;
+    for (int i = 0; i < hashes; i++) {
+      long bit = Math.floorMod(hash[0] + i * hash[1], bits);
+      int word = (int) (bit >>> 6);
+      words[word] |= 1L << bit;
+      if (dirtyWords != null) {
+        dirtyWords.set(word);
+      }
+    }
+    count++;
+  }
+
+  /**
+   * Rebuilds the filter from the whole users file and replaces the filter file.
+   */
+  private void rebuild(long newCapacity) throws IOException {
+    reset(newCapacity);
+    long fileLength;
+    try {
+      fileLength = Files.size(usersFile);
+    } catch (NoSuchFileException e) {
+      fileLength = 0;
+    }
+    if (fileLength > 0) {
+      scan(0, fileLength, null);
+    }
+    if (count > capacity) {
+      reset(count * 2);
+      scan(0, fileLength, null);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + words.length * Long.BYTES);
+    buffer.put(header());
+    for (long word : words) {
+      buffer.putLong(word);
+    }
+    Path tempFile = filterFile.resolveSibling(filterFile.getFileName() + ".tmp");
+    Files.write(tempFile, buffer.array());
+    Files.move(tempFile, filterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Empties the filter and sizes it for the given number of usernames.
+   */
+  private void reset(long newCapacity) {
+    double ln2 = Math.log(2);
+    long bits = (long) Math.ceil(-newCapacity * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2));
+    words = new long[Math.toIntExact((bits + Long.SIZE - 1) / Long.SIZE)];
+    hashes = Math.max(1, (int) Math.round((double) words.length * Long.SIZE / newCapacity * ln2));
+    capacity = newCapacity;
+    count = 0;
+    coveredLength = 0;
+  }
+
+  private ByteBuffer header() {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+        .put(MAGIC).putLong(coveredLength).putLong(capacity).putLong(count).putInt(hashes);
+    header.flip();
+    return header;
+  }
+
+  private void load() throws IOException {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(filterFile);
+    } catch (NoSuchFileException e) {
+      rebuild(INITIAL_CAPACITY);
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    byte[] magic = new byte[MAGIC.length];
+    if (bytes.length >= HEADER_LENGTH) {
+      buffer.get(magic);
+      long covered = buffer.getLong();
+      long storedCapacity = buffer.getLong();
+      long storedCount = buffer.getLong();
+      int storedHashes = buffer.getInt();
+      if (Arrays.equals(magic, MAGIC) && storedCapacity > 0) {
+        reset(storedCapacity);
+        if (storedHashes == hashes && buffer.remaining() == words.length * Long.BYTES) {
+          buffer.asLongBuffer().get(words);
+          count = storedCount;
+          coveredLength = covered;
+          return;
+        }
+      }
+    }
+    System.err.println("Rebuilding unreadable username filter " + filterFile);
+    rebuild(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Returns two independent 64-bit hashes of a username, combined as h1 + i * h2 for the i-th bit.
+   */
+  private static long[] hash(String username) {
+    long hash = 0xcbf29ce484222325L; // FNV-1a
+    for (byte b : username.getBytes(StandardCharsets.UTF_8)) {
+      hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+    }
+    long first = mix(hash);
+    long second = mix(first ^ 0x9E3779B97F4A7C15L) | 1;
+    return new long[] {first, second};
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    return value ^ (value >>> 33);
+  }
+}
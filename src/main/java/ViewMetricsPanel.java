@@ -1,70 +1,117 @@
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.time.ZoneOffset;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
 
 // JFreeChart imports
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.DateAxis;
+import org.jfree.chart.event.AxisChangeListener;
 import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.data.time.FixedMillisecond;
+import org.jfree.data.time.TimeSeries;
+import org.jfree.data.time.TimeSeriesCollection;
 
 public class ViewMetricsPanel extends JPanel {
+  private static final int POINTS_PER_PIXEL = 2;
+  private static final long MAX_RAW_CHART_SAMPLES = 200_000;
+  private static final int HEART_RATE_RELOAD_DELAY_MS = 250;
 
   private MainFrame mainFrame;
   private JTabbedPane tabbedPane;
+  private JTextField fromDateField;
+  private JTextField toDateField;
   private JPanel weightPanel;
-  private JTextArea weightTextArea;
+  private JTable weightTable;
   private JScrollPane weightScrollPane;
   private JPanel stepsPanel;
-  private JTextArea stepsTextArea;
+  private JTable stepsTable;
   private JScrollPane stepsScrollPane;
   private JPanel stepsChartPanel;
   private JPanel heartRatePanel;
-  private JTextArea heartRateTextArea;
+  private JTable heartRateTable;
   private JScrollPane heartRateScrollPane;
   private JPanel heartRateChartPanel; // Panel for heart rate chart
   private JPanel periodLogPanel;
-  private JTextArea periodLogTextArea;
+  private JTable periodLogTable;
   private JScrollPane periodLogScrollPane;
   private ExpertHelpPanel expertHelpPanel; // New panel for expert help
   private JButton backButton;
+  private UserSession session;
   private String username;
-
-  public ViewMetricsPanel(MainFrame mainFrame, String username) throws IOException {
+  private final List<SwingWorker<?, ?>> loaders = new ArrayList<>();
+  private final List<PagedTableModel<?>> tableModels = new ArrayList<>();
+  private SwingWorker<List<TimeSeries>, Void> heartRateChartLoader;
+  private Timer heartRateReloadTimer;
+  private DateAxis heartRateTimeAxis;
+  private AxisChangeListener heartRateAxisListener;
+
+  public ViewMetricsPanel(MainFrame mainFrame, UserSession session) throws IOException {
     this.mainFrame = mainFrame;
-    this.username = username;
+    this.session = session;
+    this.username = session.getUsername();
     setLayout(new BorderLayout());
 
+    // Date filter applied to every table
+    JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    filterPanel.add(new JLabel("From (YYYY-MM-DD):"));
+    fromDateField = new JTextField(10);
+    filterPanel.add(fromDateField);
+    filterPanel.add(new JLabel("To (YYYY-MM-DD):"));
+    toDateField = new JTextField(10);
+    filterPanel.add(toDateField);
+    JButton filterButton = new JButton("Filter");
+    filterButton.addActionListener(e -> applyDateRange());
+    filterPanel.add(filterButton);
+    JButton clearFilterButton = new JButton("Show All");
+    clearFilterButton.addActionListener(e -> {
+      fromDateField.setText("");
+      toDateField.setText("");
+      applyDateRange();
+    });
+    filterPanel.add(clearFilterButton);
+    add(filterPanel, BorderLayout.NORTH);
+
     tabbedPane = new JTabbedPane();
 
     // Weight Tab
     weightPanel = new JPanel(new BorderLayout());
-    weightTextArea = new JTextArea();
-    weightTextArea.setEditable(false);
-    weightScrollPane = new JScrollPane(weightTextArea);
+    weightTable = createTable();
+    weightScrollPane = new JScrollPane(weightTable);
     weightPanel.add(weightScrollPane, BorderLayout.CENTER);
     tabbedPane.addTab("Weight", weightPanel);
 
     // Steps Tab
-    // Steps Tab - with chart and text data
+    // Steps Tab - with chart and table
     stepsPanel = new JPanel(new BorderLayout());
 
     JSplitPane stepsSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
     stepsSplitPane.setResizeWeight(0.7); // Give more space to chart
 
     stepsChartPanel = new JPanel(new BorderLayout()); // New panel for steps chart
-    stepsTextArea = new JTextArea();
-    stepsTextArea.setEditable(false);
-    stepsScrollPane = new JScrollPane(stepsTextArea);
+    stepsTable = createTable();
+    stepsScrollPane = new JScrollPane(stepsTable);
 
     stepsSplitPane.setTopComponent(stepsChartPanel);
     stepsSplitPane.setBottomComponent(stepsScrollPane);
@@ -72,20 +119,19 @@ public class ViewMetricsPanel extends JPanel {
     stepsPanel.add(stepsSplitPane, BorderLayout.CENTER);
     tabbedPane.addTab("Steps", stepsPanel);
 
-    // Heart Rate Tab - with chart and text data
+    // Heart Rate Tab - with chart and table
     heartRatePanel = new JPanel(new BorderLayout());
 
-    // Create a split pane for text and chart
+    // Create a split pane for table and chart
     JSplitPane heartRateSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
     heartRateSplitPane.setResizeWeight(0.7); // Give more space to chart
 
     // Chart panel for heart rate visualization
     heartRateChartPanel = new JPanel(new BorderLayout());
 
-    // Text area for heart rate data
-    heartRateTextArea = new JTextArea();
-    heartRateTextArea.setEditable(false);
-    heartRateScrollPane = new JScrollPane(heartRateTextArea);
+    // Table for heart rate data
+    heartRateTable = createTable();
+    heartRateScrollPane = new JScrollPane(heartRateTable);
 
     heartRateSplitPane.setTopComponent(heartRateChartPanel);
     heartRateSplitPane.setBottomComponent(heartRateScrollPane);
@@ -94,18 +140,16 @@ public class ViewMetricsPanel extends JPanel {
     tabbedPane.addTab("Heart Rate", heartRatePanel);
 
     // Period Log Tab - only for female users
-    UserProfile userProfile = UserDataStorage.getUserProfile(username);
-    if (userProfile != null && userProfile.getGender() == Gender.FEMALE) {
+    if (session.isFemale()) {
       periodLogPanel = new JPanel(new BorderLayout());
-      periodLogTextArea = new JTextArea();
-      periodLogTextArea.setEditable(false);
-      periodLogScrollPane = new JScrollPane(periodLogTextArea);
+      periodLogTable = createTable();
+      periodLogScrollPane = new JScrollPane(periodLogTable);
       periodLogPanel.add(periodLogScrollPane, BorderLayout.CENTER);
       tabbedPane.addTab("Period Log", periodLogPanel);
     }
 
     // Expert Help Tab - new tab for AI assistance
-    expertHelpPanel = new ExpertHelpPanel(username);
+    expertHelpPanel = new ExpertHelpPanel(session);
     tabbedPane.addTab("Expert Help", expertHelpPanel);
 
     add(tabbedPane, BorderLayout.CENTER);
@@ -117,8 +161,9 @@ public class ViewMetricsPanel extends JPanel {
     backButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
+        cancelLoading();
         try {
-          mainFrame.showAddMetricsScreen(username);
+          mainFrame.showAddMetricsScreen(session);
         } catch (IOException ex) {
           throw new RuntimeException(ex);
         }
@@ -130,6 +175,7 @@ public class ViewMetricsPanel extends JPanel {
     logoutButton.addActionListener(new ActionListener() {
       @Override
       public void actionPerformed(ActionEvent e) {
+        cancelLoading();
         mainFrame.showLoginRegisterScreen();
       }
     });
@@ -137,7 +183,7 @@ public class ViewMetricsPanel extends JPanel {
 
     add(navigationPanel, BorderLayout.SOUTH);
 
-    // Load metrics data for the current user
+    // Load metrics data for the current user in the background; each tab fills in as its data arrives
     loadMetrics(username);
   }
 
@@ -147,82 +193,172 @@ public class ViewMetricsPanel extends JPanel {
       return;
     }
 
+    cancelLoading();
     this.username = username;
-    DailyMetricsManager metricsManager = new DailyMetricsManager(username);
-
-    // Load Weight Data
-    weightTextArea.setText("");
-    Map<LocalDate, Weight> weights = metricsManager.getAllWeights();
-    StringBuilder weightBuilder = new StringBuilder("--- Weight Log ---\n");
-    for (Map.Entry<LocalDate, Weight> entry : weights.entrySet()) {
-      weightBuilder.append("Date: ").append(entry.getKey().format(DateTimeFormatter.ISO_DATE))
-          .append(", Weight: ").append(entry.getValue().getWeightInUserUnits())
-          .append(" ").append(entry.getValue().getUnit()).append("\n");
+    MetricsStore metricsManager = MetricsStore.forUser(username);
+
+    // Each table reads only the rows it shows, a page at a time
+    weightTable.setModel(loadTable(PagedTableModel.forWeights(metricsManager)));
+    stepsTable.setModel(loadTable(PagedTableModel.forSteps(metricsManager)));
+    heartRateTable.setModel(loadTable(PagedTableModel.forHeartRates(metricsManager)));
+    if (periodLogTable != null) {
+      periodLogTable.setModel(loadTable(PagedTableModel.forPeriodLogs(metricsManager)));
     }
-    weightTextArea.setText(weightBuilder.toString());
-
-    // Load Steps Data
-    stepsTextArea.setText("");
-    Map<LocalDate, List<Steps>> allSteps = metricsManager.getAllSteps();
-    StringBuilder stepsBuilder = new StringBuilder("--- Steps Log ---\n");
-    for (Map.Entry<LocalDate, List<Steps>> entry : allSteps.entrySet()) {
-      for (Steps step : entry.getValue()) {
-        stepsBuilder.append(step.toString()).append("\n");
+
+    // The steps chart uses the materialized daily totals
+    startLoader(new SwingWorker<DefaultCategoryDataset, Void>() {
+      @Override
+      protected DefaultCategoryDataset doInBackground() {
+        return createStepsDataset(metricsManager.getDailyStepTotals(null, null));
+      }
+
+      @Override
+      protected void done() {
+        if (isCancelled()) {
+          return;
+        }
+        try {
+          createStepsChart(get());
+        } catch (InterruptedException | ExecutionException e) {
+          System.err.println("Error loading steps chart: " + e.getCause());
+        }
       }
+    });
+
+    // Create and set heart rate chart with enhanced visualization
+    createEnhancedHeartRateChart(metricsManager);
+  }
+
+  /**
+   * Cancels any loading still running in the background, e.g. when the user navigates away.
+   * Partial results already shown stay in place.
+   */
+  public void cancelLoading() {
+    for (SwingWorker<?, ?> loader : loaders) {
+      loader.cancel(false);
+    }
+    loaders.clear();
+    for (PagedTableModel<?> tableModel : tableModels) {
+      tableModel.cancel();
     }
-    createStepsChart(allSteps);
-    stepsTextArea.setText(stepsBuilder.toString());
+    tableModels.clear();
+    if (heartRateChartLoader != null) {
+      heartRateChartLoader.cancel(false);
+      heartRateChartLoader = null;
+    }
+    stopHeartRateReloads();
+  }
 
-    // Load Heart Rate Data
-    heartRateTextArea.setText("");
-    Map<LocalDate, List<HeartRate>> allHeartRates = metricsManager.getAllHeartRates();
-    StringBuilder heartRateBuilder = new StringBuilder("--- Heart Rate Log ---\n");
+  /**
+   * Stops the pending re-query of the heart rate chart and detaches it from the chart's time axis,
+   * so zooming or panning no longer starts loads.
+   */
+  private void stopHeartRateReloads() {
+    if (heartRateReloadTimer != null) {
+      heartRateReloadTimer.stop();
+      heartRateTimeAxis.removeChangeListener(heartRateAxisListener);
+      heartRateReloadTimer = null;
+      heartRateTimeAxis = null;
+      heartRateAxisListener = null;
+    }
+  }
 
-    // Create a TreeMap to ensure dates are sorted
-    TreeMap<LocalDate, List<HeartRate>> sortedHeartRates = new TreeMap<>(allHeartRates);
+  private void startLoader(SwingWorker<?, ?> loader) {
+    loaders.add(loader);
+    loader.execute();
+  }
 
-    for (Map.Entry<LocalDate, List<HeartRate>> entry : sortedHeartRates.entrySet()) {
-      for (HeartRate hr : entry.getValue()) {
-        heartRateBuilder.append(hr.toString()).append("\n");
-      }
+  private PagedTableModel<?> loadTable(PagedTableModel<?> tableModel) {
+    tableModels.add(tableModel);
+    try {
+      tableModel.setDateRange(parseDate(fromDateField), parseDate(toDateField));
+    } catch (DateTimeParseException | IllegalArgumentException e) {
+      tableModel.reload(); // An invalid filter is reported when it is applied
     }
-    heartRateTextArea.setText(heartRateBuilder.toString());
+    return tableModel;
+  }
 
-    // Create and set heart rate chart with enhanced visualization
-    createEnhancedHeartRateChart(sortedHeartRates);
-
-    // Load Period Log Data (if applicable)
-    if (periodLogTextArea != null) {
-      periodLogTextArea.setText("");
-      List<PeriodLog> periodLogs = metricsManager.getPeriodLogs();
-      StringBuilder periodLogBuilder = new StringBuilder("--- Period Log ---\n");
-      for (PeriodLog log : periodLogs) {
-        periodLogBuilder.append(log.toString()).append("\n");
+  /**
+   * Limits every table to the dates entered in the filter fields; an empty field leaves that end open.
+   */
+  private void applyDateRange() {
+    try {
+      LocalDate from = parseDate(fromDateField);
+      LocalDate to = parseDate(toDateField);
+      for (PagedTableModel<?> tableModel : tableModels) {
+        tableModel.setDateRange(from, to);
       }
-      periodLogTextArea.setText(periodLogBuilder.toString());
+    } catch (DateTimeParseException e) {
+      JOptionPane.showMessageDialog(this, "Invalid date format (YYYY-MM-DD).", "Error", JOptionPane.ERROR_MESSAGE);
+    } catch (IllegalArgumentException e) {
+      JOptionPane.showMessageDialog(this, e.getMessage(), "Input Error", JOptionPane.ERROR_MESSAGE);
     }
   }
 
-  private void createEnhancedHeartRateChart(Map<LocalDate, List<HeartRate>> heartRateData) {
-    DefaultCategoryDataset dataset = new DefaultCategoryDataset();
-    LocalTime startTime = LocalTime.of(8, 0);
-    for (Map.Entry<LocalDate, List<HeartRate>> entry : heartRateData.entrySet()) {
-      for (HeartRate hr : entry.getValue()) {
-        dataset.addValue(hr.getHeartRate(), hr.getTags(), hr.getDate());
+  private static LocalDate parseDate(JTextField field) {
+    String text = field.getText().trim();
+    return text.isEmpty() ? null : LocalDate.parse(text, DateTimeFormatter.ISO_DATE);
+  }
+
+  /**
+   * Creates a table for a {@link PagedTableModel}. Clicking the date column's header reverses the date order,
+   * which the model applies to its row numbers, so the table does no sorting of its own.
+   *
+   * @return The table.
+   */
+  private static JTable createTable() {
+    JTable table = new JTable();
+    table.setFillsViewportHeight(true);
+    table.getTableHeader().setReorderingAllowed(false);
+    table.getTableHeader().addMouseListener(new MouseAdapter() {
+      @Override
+      public void mouseClicked(MouseEvent e) {
+        int column = table.columnAtPoint(e.getPoint());
+        if (column >= 0 && table.convertColumnIndexToModel(column) == 0
+            && table.getModel() instanceof PagedTableModel) {
+          PagedTableModel<?> tableModel = (PagedTableModel<?>) table.getModel();
+          tableModel.setDescending(!tableModel.isDescending());
+        }
       }
-    }
-    JFreeChart chart = ChartFactory.createBarChart(
-        "Heart Rate per Tag per Day",  // chart title
-        "Date",                        // domain axis label
-        "BPM",                         // range axis label
+    });
+    return table;
+  }
+
+  private void createEnhancedHeartRateChart(MetricsStore metricsManager) {
+    TimeSeriesCollection dataset = new TimeSeriesCollection();
+    JFreeChart chart = ChartFactory.createTimeSeriesChart(
+        "Heart Rate per Tag",  // chart title
+        "Time",                // domain axis label
+        "BPM",                 // range axis label
         dataset
     );
+    // Sample times are wall-clock values stored as UTC, so show them in UTC
+    DateAxis timeAxis = (DateAxis) chart.getXYPlot().getDomainAxis();
+    timeAxis.setTimeZone(TimeZone.getTimeZone("UTC"));
+
     // Create chart panel with enhanced features
     ChartPanel chartPanel = new ChartPanel(chart);
     chartPanel.setPreferredSize(new Dimension(600, 400));
     chartPanel.setMouseWheelEnabled(true);
     chartPanel.setDomainZoomable(true);
     chartPanel.setRangeZoomable(true);
+    loadHeartRateSeries(metricsManager, dataset, null, null, chartPanel);
+
+    // Re-query the visible range at screen resolution once zooming or panning settles
+    stopHeartRateReloads();
+    Timer reloadTimer = new Timer(HEART_RATE_RELOAD_DELAY_MS, e -> {
+      if (timeAxis.isAutoRange()) {
+        loadHeartRateSeries(metricsManager, dataset, null, null, chartPanel);
+      } else {
+        loadHeartRateSeries(metricsManager, dataset, utcDate(timeAxis.getLowerBound()),
+            utcDate(timeAxis.getUpperBound()), chartPanel);
+      }
+    });
+    reloadTimer.setRepeats(false);
+    heartRateReloadTimer = reloadTimer;
+    heartRateTimeAxis = timeAxis;
+    heartRateAxisListener = event -> reloadTimer.restart();
+    timeAxis.addChangeListener(heartRateAxisListener);
 
     // Add chart to panel
     heartRateChartPanel.removeAll();
@@ -230,17 +366,136 @@ public class ViewMetricsPanel extends JPanel {
     heartRateChartPanel.revalidate();
   }
 
-  private void createStepsChart(Map<LocalDate, List<Steps>> stepsData) {
-    DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+  /**
+   * Fills the heart rate chart with one series per tag for a date range, reduced to about
+   * {@link #POINTS_PER_PIXEL} points per horizontal pixel. The raw samples are only read if the rollups
+   * show that there are few enough of them; otherwise the series plot the daily averages.
+   * The series are read in a background worker, which replaces any load of the chart still running.
+   *
+   * @param metricsManager The user's metrics.
+   * @param dataset        The chart's dataset.
+   * @param from           The first date to show, or null for no lower bound.
+   * @param to             The last date to show, or null for no upper bound.
+   * @param chartPanel     The panel the chart is drawn in.
+   */
+  private void loadHeartRateSeries(MetricsStore metricsManager, TimeSeriesCollection dataset,
+      LocalDate from, LocalDate to, ChartPanel chartPanel) {
+    int points = Math.max(3, Math.max(chartPanel.getWidth(), chartPanel.getPreferredSize().width) * POINTS_PER_PIXEL);
+    if (heartRateChartLoader != null) {
+      heartRateChartLoader.cancel(false);
+    }
+
+    heartRateChartLoader = new SwingWorker<List<TimeSeries>, Void>() {
+      @Override
+      protected List<TimeSeries> doInBackground() {
+        return readHeartRateSeries(metricsManager, from, to, points);
+      }
+
+      @Override
+      protected void done() {
+        if (isCancelled()) {
+          return;
+        }
+        try {
+          dataset.removeAllSeries();
+          for (TimeSeries timeSeries : get()) {
+            dataset.addSeries(timeSeries);
+          }
+        } catch (InterruptedException | ExecutionException e) {
+          System.err.println("Error loading heart rate chart: " + e.getCause());
+        }
+      }
+    };
+    heartRateChartLoader.execute();
+  }
+
+  /**
+   * Reads the series of the heart rate chart for a date range, downsampled to a number of points.
+   *
+   * @param metricsManager The user's metrics.
+   * @param from           The first date to show, or null for no lower bound.
+   * @param to             The last date to show, or null for no upper bound.
+   * @param points         The number of points to keep per series.
+   * @return One time series per tag, ordered by tag with the untagged samples first.
+   */
+  private static List<TimeSeries> readHeartRateSeries(MetricsStore metricsManager, LocalDate from, LocalDate to,
+      int points) {
+    Map<String, NavigableMap<LocalDate, HeartRateStats>> dailyStats =
+        metricsManager.getHeartRateStatsByTag(from, to, HeartRateRollup.Period.DAY);
+    long samples = 0;
+    for (NavigableMap<LocalDate, HeartRateStats> tagStats : dailyStats.values()) {
+      for (HeartRateStats stats : tagStats.values()) {
+        samples += stats.getCount();
+      }
+    }
 
-    for (Map.Entry<LocalDate, List<Steps>> entry : stepsData.entrySet()) {
-      int stepCount = 0;
-      for (Steps step : entry.getValue()) {
-        stepCount += step.getSteps();
+    Map<String, ChartSeries> seriesByTag = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+    if (samples <= MAX_RAW_CHART_SAMPLES) {
+      HeartRateSeries heartRates = metricsManager.getHeartRateSeries(from, to);
+      for (int i = 0; i < heartRates.size(); i++) {
+        seriesByTag.computeIfAbsent(heartRates.tag(i), tag -> new ChartSeries())
+            .add(heartRates.epochSecond(i) * 1000, heartRates.bpm(i));
       }
-      dataset.addValue(stepCount, "Steps", entry.getKey());
+    } else {
+      for (Map.Entry<String, NavigableMap<LocalDate, HeartRateStats>> tag : dailyStats.entrySet()) {
+        ChartSeries series = seriesByTag.computeIfAbsent(tag.getKey(), key -> new ChartSeries());
+        for (Map.Entry<LocalDate, HeartRateStats> day : tag.getValue().entrySet()) {
+          series.add(day.getKey().atTime(LocalTime.NOON).toInstant(ZoneOffset.UTC).toEpochMilli(),
+              day.getValue().getAverage());
+        }
+      }
+    }
+
+    List<TimeSeries> timeSeriesList = new ArrayList<>(seriesByTag.size());
+    for (Map.Entry<String, ChartSeries> tag : seriesByTag.entrySet()) {
+      ChartSeries series = tag.getValue();
+      TimeSeries timeSeries = new TimeSeries(tag.getKey() == null ? "Untagged" : tag.getKey());
+      long previous = Long.MIN_VALUE;
+      for (int i : SeriesDownsampler.largestTriangleThreeBuckets(series.millis, series.values, series.size, points)) {
+        if (series.millis[i] != previous) { // A time series holds one value per instant
+          timeSeries.add(new FixedMillisecond(series.millis[i]), series.values[i], false);
+          previous = series.millis[i];
+        }
+      }
+      timeSeriesList.add(timeSeries);
+    }
+    return timeSeriesList;
+  }
+
+  private static LocalDate utcDate(double epochMillis) {
+    return Instant.ofEpochMilli((long) epochMillis).atOffset(ZoneOffset.UTC).toLocalDate();
+  }
+
+  /**
+   * The points of one chart series in time order, as parallel arrays of epoch milliseconds and values.
+   */
+  private static class ChartSeries {
+    private long[] millis = new long[256];
+    private double[] values = new double[256];
+    private int size;
+
+    private void add(long time, double value) {
+      if (size == millis.length) {
+        millis = Arrays.copyOf(millis, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      millis[size] = time;
+      values[size] = value;
+      size++;
     }
+  }
+
+  private static DefaultCategoryDataset createStepsDataset(DailyStepTotals dailyStepTotals) {
+    DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+
+    int[] totals = dailyStepTotals.getTotals();
+    for (int i = 0; i < dailyStepTotals.size(); i++) {
+      dataset.addValue(totals[i], "Steps", dailyStepTotals.getDate(i));
+    }
+    return dataset;
+  }
 
+  private void createStepsChart(DefaultCategoryDataset dataset) {
     JFreeChart chart = ChartFactory.createBarChart(
         "Steps per Tag per Day",  // chart title
         "Date",                   // x-axis label
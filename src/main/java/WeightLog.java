@@ -0,0 +1,267 @@
+import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Log-structured store for daily weight entries in daily_metrics.txt.
+ * Every save appends a "date,weight,unit" row; the position of a row in the file is its version,
+ * so the last row for a date wins on read. When reads find that most rows have been superseded,
+ * the file is compacted in the background down to one row per date, in date order.
+ * Single days and date ranges are read through a {@link DateOffsetIndex}.
+ */
+public class WeightLog {
+  /**
+   * Files with fewer rows than this are never compacted.
+   */
+  private static final int COMPACTION_MIN_ROWS = 64;
+  private static final Map<Path, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+  private static final Set<Path> PENDING_COMPACTIONS = ConcurrentHashMap.newKeySet();
+  private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "weight-log-compactor");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final Path file;
+  private final Object lock;
+  private final DateOffsetIndex index;
+
+  /**
+   * Constructs a weight log backed by the given file, indexed in a sibling file with an ".idx" suffix.
+   *
+   * @param file The daily metrics file, including its header line.
+   */
+  public WeightLog(Path file) {
+    this(file, Paths.get(file + ".idx"));
+  }
+
+  /**
+   * Constructs a weight log backed by the given file.
+   *
+   * @param file      The daily metrics file, including its header line.
+   * @param indexFile The file the date index is persisted in.
+   */
+  public WeightLog(Path file, Path indexFile) {
+    this.file = file.toAbsolutePath().normalize();
+    this.lock = FILE_LOCKS.computeIfAbsent(this.file, p -> new Object());
+    this.index = DateOffsetIndex.forFile(this.file, indexFile);
+  }
+
+  /**
+   * Appends a new version of the weight entry for a date.
+   *
+   * @param date   The date of the weight entry.
+   * @param weight The Weight object to save.
+   * @throws IOException If the file cannot be written.
+   */
+  public void append(LocalDate date, Weight weight) throws IOException {
+    RecordEncoder encoder = RecordEncoder.forCurrentThread()
+        .date(date).comma()
+        .fixed(weight.getWeightInUserUnits(), 2).comma()
+        .text(weight.getUnit()).newLine();
+
+    synchronized (lock) {
+      try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+        encoder.writeTo(out);
+      }
+    }
+  }
+
+  /**
+   * Gets the latest weight entry for a date.
+   *
+   * @param date The date to look up.
+   * @return The latest Weight for the date, or null if there is none.
+   * @throws IOException If the file cannot be read.
+   */
+  public Weight latest(LocalDate date) throws IOException {
+    Weight latest = null;
+    for (byte[] row : index.readRecords(date)) {
+      Weight weight = decodeWeight(row, indexOf(row, ',', 0));
+      if (weight != null) {
+        latest = weight;
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Gets the latest weight entry for each date in a range.
+   *
+   * @param from The first date to include.
+   * @param to   The last date to include.
+   * @return Map with LocalDate keys and Weight values, in date order.
+   * @throws IOException If the file cannot be read.
+   */
+  public NavigableMap<LocalDate, Weight> readRange(LocalDate from, LocalDate to) throws IOException {
+    NavigableMap<LocalDate, Weight> weights = new TreeMap<>();
+    for (byte[] row : index.readRecords(from, to)) {
+      int comma = indexOf(row, ',', 0);
+      Weight weight = decodeWeight(row, comma);
+      if (weight != null) {
+        weights.put(CsvRecordParser.parseDate(row, 0, comma), weight);
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * Gets the latest weight entry for every date.
+   * Schedules a background compaction if most rows turn out to be superseded.
+   *
+   * @return Map with LocalDate keys and Weight values.
+   * @throws IOException If the file cannot be read.
+   */
+  public Map<LocalDate, Weight> readAll() throws IOException {
+    Map<LocalDate, Weight> weights = new HashMap<>();
+    int rows = 0;
+
+    try (CsvRecordParser parser = CsvRecordParser.open(file)) {
+      while (parser.next()) {
+        if (parser.fieldCount() >= 3) {
+          weights.put(parser.dateField(0), new Weight(parser.doubleField(1), unitField(parser)));
+          rows++;
+        }
+      }
+    }
+
+    if (rows >= COMPACTION_MIN_ROWS && (rows - weights.size()) * 2 > rows) {
+      scheduleCompaction();
+    }
+    return weights;
+  }
+
+  /**
+   * Decodes the weight and unit of a "date,weight,unit" row read through the index.
+   * Rows with fewer than three fields are skipped, as {@link #readAll()} does.
+   *
+   * @param row   The row, possibly with its line terminator.
+   * @param comma The position of the comma after the date, or -1 if there is none.
+   * @return The decoded weight, or null if the row has fewer than three fields.
+   */
+  private static Weight decodeWeight(byte[] row, int comma) {
+    int unitComma = comma < 0 ? -1 : indexOf(row, ',', comma + 1);
+    if (unitComma < 0) {
+      return null;
+    }
+    int end = row.length;
+    while (end > unitComma && (row[end - 1] == '\n' || row[end - 1] == '\r')) {
+      end--;
+    }
+    String unit = new String(row, unitComma + 1, end - unitComma - 1, StandardCharsets.UTF_8);
+    return new Weight(CsvRecordParser.parseDouble(row, comma + 1, unitComma), unit);
+  }
+
+  private static int indexOf(byte[] row, char c, int from) {
+    for (int i = from; i < row.length; i++) {
+      if (row[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Decodes the unit field of the current row, sharing the string instances of the usual units.
+   */
+  private static String unitField(CsvRecordParser parser) {
+    if (parser.fieldEquals(2, "kg")) {
+      return "kg";
+    }
+    if (parser.fieldEquals(2, "lb")) {
+      return "lb";
+    }
+    return parser.stringField(2);
+  }
+
+  /**
+   * Queues a compaction of this file on the background compactor, unless one is already queued.
+   */
+  public void scheduleCompaction() {
+    if (PENDING_COMPACTIONS.add(file)) {
+      COMPACTOR.execute(() -> {
+        try {
+          compact();
+        } catch (IOException | RuntimeException e) {
+          // The file is left as it was; a failed compaction must not take the compactor thread down
+          System.err.println("Error compacting weight log: " + e.getMessage());
+        } finally {
+          PENDING_COMPACTIONS.remove(file);
+        }
+      });
+    }
+  }
+
+  /**
+   * Rewrites the file with only the latest row for each date. Rows without a valid date are dropped.
+   * The bulk of the work happens on a snapshot without holding the lock; rows appended meanwhile
+   * are carried over under the lock just before the compacted file replaces the original.
+   *
+   * @throws IOException If the file cannot be read or written.
+   */
+  public void compact() throws IOException {
+    byte[] snapshot = Files.readAllBytes(file);
+    int snapshotLength = snapshot.length;
+    while (snapshotLength > 0 && snapshot[snapshotLength - 1] != '\n') {
+      snapshotLength--; // Leave a partially written row for the catch-up step
+    }
+
+    String header = "";
+    Map<LocalDate, String> latestRows = new TreeMap<>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new ByteArrayInputStream(snapshot, 0, snapshotLength), StandardCharsets.UTF_8))) {
+      String line = reader.readLine();
+      header = line == null ? "" : line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split(",");
+        if (parts.length < 3) {
+          continue;
+        }
+        try {
+          latestRows.put(LocalDate.parse(parts[0], Constants.dateFormatter), line);
+        } catch (DateTimeParseException e) {
+          System.err.println("Skipping unreadable weight row in " + file);
+        }
+      }
+    }
+
+    Path tempFile = Paths.get(file + ".compact");
+    StringBuilder compacted = new StringBuilder(header).append(System.lineSeparator());
+    for (String row : latestRows.values()) {
+      compacted.append(row).append(System.lineSeparator());
+    }
+    Files.write(tempFile, compacted.toString().getBytes(StandardCharsets.UTF_8));
+
+    synchronized (lock) {
+      try (RandomAccessFile original = new RandomAccessFile(file.toFile(), "r")) {
+        byte[] tail = new byte[(int) (original.length() - snapshotLength)];
+        original.seek(snapshotLength);
+        original.readFully(tail);
+        Files.write(tempFile, tail, StandardOpenOption.APPEND);
+      }
+      // Swap the file while lookups are locked out, so none reads old offsets from the new file
+      synchronized (index) {
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        index.rebuild();
+      }
+    }
+  }
+}
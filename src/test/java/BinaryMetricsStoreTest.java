@@ -0,0 +1,11 @@
+/**
+ * Runs the {@link MetricsStoreContractTest} conformance tests against the binary backend.
+ */
+
+public class BinaryMetricsStoreTest extends MetricsStoreContractTest {
+
+  @Override
+  protected String backend() {
+    return MetricsStore.BINARY;
+  }
+}
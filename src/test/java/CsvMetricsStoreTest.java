@@ -0,0 +1,11 @@
+/**
+ * Runs the {@link MetricsStoreContractTest} conformance tests against the csv backend.
+ */
+
+public class CsvMetricsStoreTest extends MetricsStoreContractTest {
+
+  @Override
+  protected String backend() {
+    return MetricsStore.CSV;
+  }
+}
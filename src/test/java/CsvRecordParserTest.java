@@ -0,0 +1,126 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link CsvRecordParser} class.
+ * Tests include field decoding, line endings, records spanning buffer refills and invalid input.
+ */
+
+public class CsvRecordParserTest {
+
+  private CsvRecordParser parserFor(String text) {
+    return new CsvRecordParser(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Tests decoding of the field types used by the metric files.
+   */
+
+  @Test
+  public void testDecodeFields() throws IOException {
+    try (CsvRecordParser parser = parserFor("04-16-2025,08:30:05,Resting,72.50,-12\n")) {
+      assertTrue(parser.next());
+      assertEquals(5, parser.fieldCount());
+      assertEquals(LocalDate.of(2025, 4, 16), parser.dateField(0));
+      assertEquals(LocalTime.of(8, 30, 5), parser.timeField(1));
+      assertEquals("Resting", parser.stringField(2));
+      assertTrue(parser.fieldEquals(2, "Resting"));
+      assertFalse(parser.fieldEquals(2, "Rest"));
+      assertEquals(72.5, parser.doubleField(3));
+      assertEquals(-12, parser.intField(4));
+      assertFalse(parser.next());
+    }
+  }
+
+  /**
+   * Tests that decimals decode to exactly the same double as Double.parseDouble.
+   */
+
+  @Test
+  public void testParseDoubleMatchesJdk() {
+    String[] values = {"0.1", "72.50", "154.32", "0.30", "99999.99", "1e3", "123456789012345678.5", "7",
+        "999999999999.999", "123456.789012345",
+        // 16 and 17 significant digits, which dividing a rounded mantissa would get wrong by one ulp
+        "95142426273599.37", "9474996.311614687", "955430966832521.1",
+        "695772244.02394195", "43089573965284.356", "23201156.912911275"};
+    for (String value : values) {
+      byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+      assertEquals(Double.parseDouble(value), CsvRecordParser.parseDouble(bytes, 0, bytes.length), value);
+    }
+    for (int hundredths = 0; hundredths < 100_000; hundredths++) {
+      String value = String.format("%d.%02d", hundredths / 100, hundredths % 100);
+      byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+      assertEquals(Double.parseDouble(value), CsvRecordParser.parseDouble(bytes, 0, bytes.length), value);
+    }
+  }
+
+  /**
+   * Tests that CRLF line endings, blank lines and a missing final newline are handled.
+   */
+
+  @Test
+  public void testLineEndings() throws IOException {
+    try (CsvRecordParser parser = parserFor("a,1\r\n\r\n\nb,2")) {
+      assertTrue(parser.next());
+      assertEquals("a", parser.stringField(0));
+      assertEquals(1, parser.intField(1));
+      assertTrue(parser.next());
+      assertEquals(8, parser.recordOffset());
+      assertEquals(2, parser.intField(1));
+      assertFalse(parser.next());
+    }
+  }
+
+  /**
+   * Tests that records are read correctly across buffer refills and that dates are shared.
+   */
+
+  @Test
+  public void testManyRecords() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) {
+      text.append("04-16-2025,").append(i).append('\n');
+    }
+
+    int count = 0;
+    LocalDate first = null;
+    try (CsvRecordParser parser = parserFor(text.toString())) {
+      while (parser.next()) {
+        assertEquals(count, parser.intField(1));
+        if (first == null) {
+          first = parser.dateField(0);
+        }
+        assertSame(first, parser.dateField(0));
+        count++;
+      }
+    }
+    assertEquals(20_000, count);
+  }
+
+  /**
+   * Tests that invalid fields are rejected.
+   */
+
+  @Test
+  public void testInvalidFields() throws IOException {
+    try (CsvRecordParser parser = parserFor("02-30-2025,12x,25:00:00,,abc\n")) {
+      assertTrue(parser.next());
+      assertThrows(DateTimeParseException.class, () -> parser.dateField(0));
+      assertThrows(NumberFormatException.class, () -> parser.intField(1));
+      assertThrows(DateTimeParseException.class, () -> parser.timeField(2));
+      assertThrows(NumberFormatException.class, () -> parser.intField(3));
+      assertThrows(NumberFormatException.class, () -> parser.doubleField(4));
+    }
+  }
+}
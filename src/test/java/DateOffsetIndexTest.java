@@ -0,0 +1,227 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link DateOffsetIndex} class.
+ * Tests include recorded appends, repairing a missing or stale index, lookups of unknown dates
+ * and date range reads of ordered and unordered files.
+ */
+
+public class DateOffsetIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Appends a row to the data file and records it in the index, as DailyMetricsManager does.
+   */
+  private void appendRow(Path dataFile, DateOffsetIndex index, LocalDate date, String row) throws IOException {
+    long offset = Files.size(dataFile);
+    Files.write(dataFile, (row + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    index.record(date, offset, Files.size(dataFile) - offset);
+  }
+
+  /**
+   * Tests that recorded rows are returned for their date only, in file order.
+   */
+
+  @Test
+  public void testRecordedRowsAreReadBack() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    Files.writeString(dataFile, "date,steps\n");
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, tempDir.resolve("steps.idx"));
+    LocalDate first = LocalDate.of(2025, 4, 16);
+    LocalDate second = LocalDate.of(2025, 4, 17);
+
+    appendRow(dataFile, index, first, "04-16-2025,1000");
+    appendRow(dataFile, index, second, "04-17-2025,2000");
+    appendRow(dataFile, index, first, "04-16-2025,3000");
+
+    assertEquals(List.of("04-16-2025,1000", "04-16-2025,3000"), index.readRows(first));
+    assertEquals(List.of("04-17-2025,2000"), index.readRows(second));
+  }
+
+  /**
+   * Tests that an index is rebuilt from a data file that existed before the index did.
+   */
+
+  @Test
+  public void testMissingIndexIsRebuilt() throws IOException {
+    Path dataFile = tempDir.resolve("heart_rate.txt");
+    Files.writeString(dataFile, "date,time,tag,heartRate\n"
+        + "04-16-2025,08:00:00,Resting,60\n"
+        + "04-17-2025,09:00:00,Cycling,140\n");
+    Path indexFile = tempDir.resolve("heart_rate.idx");
+
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, indexFile);
+
+    assertEquals(List.of("04-17-2025,09:00:00,Cycling,140"), index.readRows(LocalDate.of(2025, 4, 17)));
+    assertTrue(Files.exists(indexFile));
+  }
+
+  /**
+   * Tests that rows appended without updating the index are picked up on the next lookup.
+   */
+
+  @Test
+  public void testStaleIndexCatchesUp() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    Files.writeString(dataFile, "date,steps\n");
+    Path indexFile = tempDir.resolve("steps.idx");
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    appendRow(dataFile, new DateOffsetIndex(dataFile, indexFile), date, "04-16-2025,1000");
+
+    Files.write(dataFile, "04-16-2025,500\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    DateOffsetIndex reopened = new DateOffsetIndex(dataFile, indexFile);
+    assertEquals(List.of("04-16-2025,1000", "04-16-2025,500"), reopened.readRows(date));
+  }
+
+  /**
+   * Tests that a date without rows yields an empty list.
+   */
+
+  @Test
+  public void testUnknownDateIsEmpty() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    Files.writeString(dataFile, "date,steps\n04-16-2025,1000\n");
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, tempDir.resolve("steps.idx"));
+
+    assertTrue(index.readRows(LocalDate.of(2025, 1, 1)).isEmpty());
+  }
+
+  /**
+   * Tests that a date range of a file in date order is read back in file order.
+   */
+
+  @Test
+  public void testOrderedRange() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    Files.writeString(dataFile, "date,steps\n");
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, tempDir.resolve("steps.idx"));
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    for (int i = 0; i < 10; i++) {
+      appendRow(dataFile, index, date.plusDays(i / 2), "day" + i / 2 + "," + i);
+    }
+
+    assertTrue(index.isOrdered());
+    List<byte[]> records = index.readRecords(date.plusDays(1), date.plusDays(2));
+    assertEquals(4, records.size());
+    assertEquals("day1,2\n", new String(records.get(0), StandardCharsets.UTF_8));
+    assertEquals("day2,5\n", new String(records.get(3), StandardCharsets.UTF_8));
+    assertTrue(index.readRecords(date.plusDays(10), date.plusDays(20)).isEmpty());
+  }
+
+  /**
+   * Tests that a date range of a file with out-of-order rows is still complete and in file order.
+   */
+
+  @Test
+  public void testUnorderedRange() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    Files.writeString(dataFile, "date,steps\n");
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, tempDir.resolve("steps.idx"));
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    appendRow(dataFile, index, date.plusDays(2), "a");
+    appendRow(dataFile, index, date, "b");
+    appendRow(dataFile, index, date.plusDays(5), "c");
+    appendRow(dataFile, index, date.plusDays(1), "d");
+
+    assertFalse(index.isOrdered());
+    List<byte[]> records = index.readRecords(date, date.plusDays(2));
+    assertEquals(3, records.size());
+    assertEquals("a\n", new String(records.get(0), StandardCharsets.UTF_8));
+    assertEquals("b\n", new String(records.get(1), StandardCharsets.UTF_8));
+    assertEquals("d\n", new String(records.get(2), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Tests that a range spanning several megabytes is read back completely, and that an unloaded index
+   * reloads its ranges from the index file.
+   */
+
+  @Test
+  public void testLargeRangeAndUnload() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    LocalDate date = LocalDate.of(2025, 1, 1);
+    String padding = "x".repeat(1000);
+    StringBuilder contents = new StringBuilder("date,steps\n");
+    for (int i = 0; i < 3000; i++) {
+      contents.append(date.plusDays(i / 10).format(Constants.dateFormatter)).append(',').append(i)
+          .append(',').append(padding).append('\n');
+    }
+    Files.writeString(dataFile, contents);
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, tempDir.resolve("steps.idx"));
+
+    List<byte[]> records = index.readRecords(date, date.plusDays(299));
+    assertEquals(3000, records.size());
+    for (int i = 0; i < 3000; i += 499) {
+      assertTrue(new String(records.get(i), StandardCharsets.UTF_8).startsWith(
+          date.plusDays(i / 10).format(Constants.dateFormatter) + "," + i + ","));
+    }
+
+    index.unload();
+    List<String> rows = index.readRows(date.plusDays(150));
+    assertEquals(10, rows.size());
+    assertTrue(rows.get(0).startsWith(date.plusDays(150).format(Constants.dateFormatter) + ",1500,"));
+  }
+
+  /**
+   * Tests that rows recorded while the index is unloaded are appended only where the index file ends,
+   * so repeated or out-of-place records neither duplicate entries nor leave gaps.
+   */
+
+  @Test
+  public void testRecordWhileUnloaded() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    Files.writeString(dataFile, "date,steps\n");
+    Path indexFile = tempDir.resolve("steps.idx");
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, indexFile);
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    appendRow(dataFile, index, date, "04-16-2025,1000");
+    index.unload();
+
+    appendRow(dataFile, index, date, "04-16-2025,2000");
+    long indexSize = Files.size(indexFile);
+    index.record(date, 11, 16); // Already covered
+    assertEquals(indexSize, Files.size(indexFile));
+
+    Files.write(dataFile, "04-16-2025,3000\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    appendRow(dataFile, index, date, "04-16-2025,4000"); // Leaves the unrecorded row before it to the next lookup
+    assertEquals(indexSize, Files.size(indexFile));
+
+    assertEquals(List.of("04-16-2025,1000", "04-16-2025,2000", "04-16-2025,3000", "04-16-2025,4000"),
+        index.readRows(date));
+    DateOffsetIndex reopened = new DateOffsetIndex(dataFile, indexFile);
+    assertEquals(4, reopened.readRows(date).size());
+    assertEquals(indexSize + 32, Files.size(indexFile));
+  }
+
+  /**
+   * Tests that an index file in the older text format is rebuilt in the binary format.
+   */
+
+  @Test
+  public void testTextIndexIsRebuilt() throws IOException {
+    Path dataFile = tempDir.resolve("steps.txt");
+    Files.writeString(dataFile, "date,steps\n04-16-2025,1000\n-,x\n04-17-2025,2000\n");
+    Path indexFile = tempDir.resolve("steps.idx");
+    Files.writeString(indexFile, "04-16-2025,11,16\n-,27,4\n04-17-2025,31,16\n");
+
+    DateOffsetIndex index = new DateOffsetIndex(dataFile, indexFile);
+
+    assertEquals(List.of("04-17-2025,2000"), index.readRows(LocalDate.of(2025, 4, 17)));
+    assertEquals(4 + 3 * 16, Files.size(indexFile));
+  }
+}
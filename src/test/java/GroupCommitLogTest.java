@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link GroupCommitLog} class.
+ */
+
+public class GroupCommitLogTest {
+
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Tests that concurrent appends are all written, without interleaving, at the offsets they report.
+   */
+
+  @Test
+  public void testConcurrentAppends() throws Exception {
+    Path file = tempDir.resolve("steps.txt");
+    Files.writeString(file, "date,steps\n");
+    GroupCommitLog log = GroupCommitLog.forFile(file);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Long>> offsets = new ArrayList<>();
+
+    for (int i = 0; i < 400; i++) {
+      String row = String.format("04-16-2025,%05d\n", i);
+      boolean sync = i % 50 == 0;
+      offsets.add(executor.submit(() -> log.append(row.getBytes(StandardCharsets.UTF_8), sync)));
+    }
+    Set<Long> seen = new HashSet<>();
+    for (Future<Long> offset : offsets) {
+      assertTrue(seen.add(offset.get()));
+    }
+    executor.shutdown();
+
+    byte[] contents = Files.readAllBytes(file);
+    assertEquals(11 + 400 * 17, contents.length);
+    for (int i = 0; i < 400; i++) {
+      long offset = offsets.get(i).get();
+      assertEquals(String.format("04-16-2025,%05d\n", i), new String(contents, (int) offset, 17, StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Tests that idle logs are retired once too many files have logs, and that an append through
+   * a retired log still lands at the end of the file.
+   */
+
+  @Test
+  public void testIdleLogsAreRetired() throws Exception {
+    Path file = tempDir.resolve("steps.txt");
+    Files.writeString(file, "date,steps\n");
+    GroupCommitLog first = GroupCommitLog.forFile(file);
+    assertEquals(11, first.append("04-16-2025,1\n".getBytes(StandardCharsets.UTF_8), false));
+
+    for (int i = 0; i <= GroupCommitLog.MAX_REGISTERED_LOGS; i++) {
+      GroupCommitLog.forFile(tempDir.resolve("other" + i + ".txt"));
+    }
+    assertTrue(GroupCommitLog.registeredCount() <= GroupCommitLog.MAX_REGISTERED_LOGS);
+
+    assertEquals(24, first.append("04-16-2025,2\n".getBytes(StandardCharsets.UTF_8), false));
+    assertEquals(37, GroupCommitLog.forFile(file).append("04-16-2025,3\n".getBytes(StandardCharsets.UTF_8), false));
+    assertEquals("date,steps\n04-16-2025,1\n04-16-2025,2\n04-16-2025,3\n", Files.readString(file));
+  }
+
+  /**
+   * Tests that a caller whose interrupt flag is set can lead a batch without failing the appends of
+   * followers that were never interrupted, and that every append reported as written is in the file.
+   */
+
+  @Test
+  public void testInterruptedLeaderCarriesFollowers() throws Exception {
+    Path file = tempDir.resolve("heart_rate.txt");
+    Files.writeString(file, "date,bpm\n");
+    GroupCommitLog log = GroupCommitLog.forFile(file);
+    int threads = 6;
+    int appendsPerThread = 300;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Map<String, Long>>> results = new ArrayList<>();
+
+    for (int thread = 0; thread < threads; thread++) {
+      boolean interrupted = thread % 2 == 0;
+      int id = thread;
+      results.add(executor.submit(() -> {
+        Map<String, Long> written = new HashMap<>();
+        for (int i = 0; i < appendsPerThread; i++) {
+          String row = String.format("%d,%05d\n", id, i);
+          if (interrupted) {
+            Thread.currentThread().interrupt();
+          }
+          try {
+            written.put(row, log.append(row.getBytes(StandardCharsets.UTF_8), i % 25 == 0));
+          } catch (IOException e) {
+            if (!interrupted) {
+              throw e; // Only a caller that was itself interrupted may give up
+            }
+          }
+          Thread.interrupted();
+        }
+        return written;
+      }));
+    }
+    Map<String, Long> written = new HashMap<>();
+    try {
+      for (int thread = 0; thread < threads; thread++) {
+        Map<String, Long> rows = results.get(thread).get();
+        if (thread % 2 == 1) {
+          assertEquals(appendsPerThread, rows.size());
+        }
+        written.putAll(rows);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    byte[] contents = Files.readAllBytes(file);
+    assertEquals(9 + written.size() * 8, contents.length);
+    for (Map.Entry<String, Long> row : written.entrySet()) {
+      assertEquals(row.getKey(), new String(contents, row.getValue().intValue(), 8, StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link HeartRateDayIndex} class.
+ * Tests include one entry per day for time-ordered samples, back-filled days, and reloading or
+ * rebuilding the persisted index.
+ */
+
+public class HeartRateDayIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  private HeartRateSegment newSegment() throws IOException {
+    HeartRateSegment segment = new HeartRateSegment(tempDir.resolve("heart_rate.seg"),
+        new TagDictionary(tempDir.resolve("tags.dict")));
+    segment.createIfNotExists();
+    return segment;
+  }
+
+  private static List<HeartRate> day(LocalDate date, int samples) {
+    List<HeartRate> heartRates = new ArrayList<>();
+    for (int i = 0; i < samples; i++) {
+      heartRates.add(new HeartRate(null, date, LocalTime.ofSecondOfDay(i * 60L), 60 + i % 50));
+    }
+    return heartRates;
+  }
+
+  private static void append(HeartRateSegment segment, HeartRateDayIndex index, List<HeartRate> heartRates)
+      throws IOException {
+    long offset = segment.appendAll(heartRates, false);
+    index.recordAll(heartRates.stream().map(HeartRate::getDate).collect(Collectors.toList()), offset);
+  }
+
+  /**
+   * Tests that time-ordered samples take one 12-byte entry per day, however many samples a day has.
+   */
+
+  @Test
+  public void testOneEntryPerDay() throws IOException {
+    HeartRateSegment segment = newSegment();
+    Path indexFile = tempDir.resolve("heart_rate.idx");
+    HeartRateDayIndex index = new HeartRateDayIndex(tempDir.resolve("heart_rate.seg"), indexFile);
+    LocalDate date = LocalDate.of(2025, 4, 1);
+    assertEquals(0, index.runCount());
+
+    append(segment, index, day(date, 1000));
+    append(segment, index, day(date, 440)); // Extends the day's run in place
+    append(segment, index, day(date.plusDays(1), 1440));
+    append(segment, index, day(date.plusDays(2), 1440));
+
+    assertEquals(3, index.runCount());
+    assertEquals(4 + 3 * 12, Files.size(indexFile));
+    assertTrue(index.isOrdered());
+    List<long[]> runs = index.find(date.plusDays(1), date.plusDays(5));
+    assertEquals(1, runs.size()); // Adjacent days merge into one read
+    assertEquals(1440, runs.get(0)[0]);
+    assertEquals(2880, runs.get(0)[1]);
+    assertEquals(1440, segment.readRuns(index.find(date.plusDays(2), date.plusDays(2))).size());
+  }
+
+  /**
+   * Tests that a back-filled day is found wherever it was appended.
+   */
+
+  @Test
+  public void testBackFilledDay() throws IOException {
+    HeartRateSegment segment = newSegment();
+    HeartRateDayIndex index = new HeartRateDayIndex(tempDir.resolve("heart_rate.seg"), tempDir.resolve("hr.idx"));
+    LocalDate date = LocalDate.of(2025, 4, 10);
+    append(segment, index, day(date, 10));
+    append(segment, index, day(date.plusDays(1), 10));
+    append(segment, index, day(date, 5));
+
+    assertFalse(index.isOrdered());
+    List<HeartRate> heartRates = segment.readRuns(index.find(date, date));
+    assertEquals(15, heartRates.size());
+    assertEquals(LocalTime.of(0, 4), heartRates.get(14).getTime());
+    assertEquals(10, segment.readRuns(index.find(date.plusDays(1), date.plusDays(1))).size());
+  }
+
+  /**
+   * Tests that a persisted index is reloaded, caught up with unrecorded appends, and rebuilt when
+   * it does not match the segment.
+   */
+
+  @Test
+  public void testReloadAndRebuild() throws IOException {
+    HeartRateSegment segment = newSegment();
+    Path segmentFile = tempDir.resolve("heart_rate.seg");
+    Path indexFile = tempDir.resolve("heart_rate.idx");
+    LocalDate date = LocalDate.of(2025, 4, 10);
+    HeartRateDayIndex index = new HeartRateDayIndex(segmentFile, indexFile);
+    append(segment, index, day(date, 20));
+    segment.appendAll(day(date.plusDays(1), 20), false); // Not recorded
+
+    HeartRateDayIndex reopened = new HeartRateDayIndex(segmentFile, indexFile);
+    assertEquals(20, segment.readRuns(reopened.find(date.plusDays(1), date.plusDays(1))).size());
+    assertEquals(4 + 2 * 12, Files.size(indexFile));
+
+    Files.writeString(indexFile, "04-10-2025,4,11\n"); // An index in the old text format
+    HeartRateDayIndex rebuilt = new HeartRateDayIndex(segmentFile, indexFile);
+    assertEquals(2, rebuilt.runCount());
+    assertEquals(40, segment.readRuns(rebuilt.find(date, date.plusDays(1))).size());
+  }
+}
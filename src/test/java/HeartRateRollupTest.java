@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link HeartRateRollup} class.
+ * Tests include incremental updates, rolling up by week and month, and rebuilding from the segment.
+ */
+
+public class HeartRateRollupTest {
+
+  @TempDir
+  Path tempDir;
+
+  private HeartRateSegment newSegment() throws IOException {
+    HeartRateSegment segment = new HeartRateSegment(tempDir.resolve("2025-04.seg"),
+        new TagDictionary(tempDir.resolve("tags.dict")));
+    segment.createIfNotExists();
+    return segment;
+  }
+
+  private HeartRateRollup newRollup() {
+    return new HeartRateRollup(tempDir.resolve("2025-04.seg"), tempDir.resolve("2025-04.rollup"));
+  }
+
+  /**
+   * Tests that samples appended after a refresh are folded in, and that the persisted rollup is reused.
+   */
+
+  @Test
+  public void testIncrementalRefresh() throws IOException {
+    HeartRateSegment segment = newSegment();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    segment.append(new HeartRate("Cycling", date, LocalTime.of(7, 30), 150));
+    segment.append(new HeartRate("Cycling", date, LocalTime.of(7, 45), 170));
+    HeartRateRollup rollup = newRollup();
+    rollup.refresh();
+
+    segment.append(new HeartRate(null, date, LocalTime.of(12, 0), 60));
+    segment.append(new HeartRate("Cycling", date.plusDays(1), LocalTime.of(8, 0), 130));
+    Map<Integer, NavigableMap<LocalDate, HeartRateStats>> stats = rollup.statsByTag(null, null,
+        HeartRateRollup.Period.DAY);
+
+    HeartRateStats cycling = stats.get(0).get(date);
+    assertEquals(2, cycling.getCount());
+    assertEquals(150, cycling.getMin());
+    assertEquals(170, cycling.getMax());
+    assertEquals(160.0, cycling.getAverage());
+    assertEquals(10.0, cycling.getStandardDeviation(), 1e-9);
+    assertEquals(60, stats.get(HeartRateRollup.NO_TAG).get(date).getSum());
+    assertEquals(1, stats.get(0).get(date.plusDays(1)).getCount());
+
+    // A fresh rollup over the same files starts from the persisted statistics
+    assertTrue(Files.readString(tempDir.resolve("2025-04.rollup")).startsWith("HRR1,48"));
+    assertEquals(stats.get(0).get(date).getSumOfSquares(),
+        newRollup().statsByTag(date, date, HeartRateRollup.Period.DAY).get(0).get(date).getSumOfSquares());
+  }
+
+  /**
+   * Tests that daily statistics roll up into Monday-based weeks and calendar months.
+   */
+
+  @Test
+  public void testWeeklyAndMonthlyPeriods() throws IOException {
+    HeartRateSegment segment = newSegment();
+    for (int day = 1; day <= 30; day++) {
+      segment.append(new HeartRate("Resting", LocalDate.of(2025, 4, day), LocalTime.NOON, 40 + day));
+    }
+    HeartRateRollup rollup = newRollup();
+
+    NavigableMap<LocalDate, HeartRateStats> weeks = rollup.statsByTag(null, null, HeartRateRollup.Period.WEEK).get(0);
+    assertEquals(List.of(LocalDate.of(2025, 3, 31), LocalDate.of(2025, 4, 7), LocalDate.of(2025, 4, 14),
+        LocalDate.of(2025, 4, 21), LocalDate.of(2025, 4, 28)), List.copyOf(weeks.keySet()));
+    assertEquals(6, weeks.get(LocalDate.of(2025, 3, 31)).getCount());
+    assertEquals(47, weeks.get(LocalDate.of(2025, 4, 7)).getMin());
+
+    HeartRateStats month = rollup.statsByTag(LocalDate.of(2025, 4, 10), LocalDate.of(2025, 4, 19),
+        HeartRateRollup.Period.MONTH).get(0).get(LocalDate.of(2025, 4, 1));
+    assertEquals(10, month.getCount());
+    assertEquals(50, month.getMin());
+    assertEquals(59, month.getMax());
+  }
+
+  /**
+   * Tests that a damaged rollup file is rebuilt from the segment.
+   */
+
+  @Test
+  public void testRebuildFromSegment() throws IOException {
+    HeartRateSegment segment = newSegment();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    segment.append(new HeartRate(null, date, LocalTime.NOON, 72));
+    newRollup().refresh();
+
+    Files.writeString(tempDir.resolve("2025-04.rollup"), "HRR1,15\n04-16-2025,65535,oops\n");
+
+    HeartRateRollup rollup = newRollup();
+    assertEquals(1, rollup.statsByTag(null, null, HeartRateRollup.Period.DAY)
+        .get(HeartRateRollup.NO_TAG).get(date).getCount());
+    rollup.rebuild();
+    assertEquals(72, rollup.statsByTag(null, null, HeartRateRollup.Period.DAY)
+        .get(HeartRateRollup.NO_TAG).get(date).getMax());
+  }
+}
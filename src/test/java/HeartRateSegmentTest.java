@@ -0,0 +1,178 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link HeartRateSegment} class.
+ * Tests include round-tripping samples through the binary format and migrating legacy CSV files.
+ */
+
+public class HeartRateSegmentTest {
+
+  @TempDir
+  Path tempDir;
+
+  private HeartRateSegment newSegment() throws IOException {
+    HeartRateSegment segment = new HeartRateSegment(tempDir.resolve("heart_rate.seg"),
+        new TagDictionary(tempDir.resolve("tags.dict")));
+    segment.createIfNotExists();
+    return segment;
+  }
+
+  /**
+   * Tests that appended samples are read back unchanged and in order, with a shared tag stored once.
+   */
+
+  @Test
+  public void testAppendAndReadAll() throws IOException {
+    HeartRateSegment segment = newSegment();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    segment.append(new HeartRate("Cycling", date, LocalTime.of(7, 30, 15), 150));
+    segment.append(new HeartRate("Resting", date, LocalTime.of(12, 0), 62));
+    segment.append(new HeartRate("Cycling", date.plusDays(1), LocalTime.of(7, 45), 220));
+
+    List<HeartRate> heartRates = segment.readAll();
+
+    assertEquals(3, heartRates.size());
+    assertEquals("Date: 04-16-2025, Time: 07:30:15, Heart Rate: 150, Activity: Cycling", heartRates.get(0).toString());
+    assertEquals("Resting", heartRates.get(1).getTags());
+    assertEquals(220, heartRates.get(2).getHeartRate());
+    assertEquals(List.of("Cycling", "Resting"), Files.readAllLines(tempDir.resolve("tags.dict")));
+  }
+
+  /**
+   * Tests that a sample without tags keeps its null tag.
+   */
+
+  @Test
+  public void testNullTag() throws IOException {
+    HeartRateSegment segment = newSegment();
+    segment.append(new HeartRate(null, LocalDate.of(2025, 4, 16), LocalTime.of(9, 0), 80));
+
+    assertNull(segment.readAll().get(0).getTags());
+  }
+
+  /**
+   * Tests that a legacy CSV file is migrated without loss and kept as a backup.
+   */
+
+  @Test
+  public void testMigrateFromCsv() throws IOException {
+    Path csvFile = tempDir.resolve("heart_rate.txt");
+    Files.writeString(csvFile, "date,time,tag,heartRate\n"
+        + "04-16-2025,08:00:00,Resting,60\n"
+        + "04-17-2025,18:30:00,,140\n");
+    HeartRateSegment segment = new HeartRateSegment(tempDir.resolve("heart_rate.seg"),
+        new TagDictionary(tempDir.resolve("tags.dict")));
+
+    assertEquals(2, segment.migrateFrom(csvFile));
+
+    List<HeartRate> heartRates = segment.readAll();
+    assertEquals("Date: 04-16-2025, Time: 08:00:00, Heart Rate: 60, Activity: Resting", heartRates.get(0).toString());
+    assertEquals("", heartRates.get(1).getTags());
+    assertFalse(Files.exists(csvFile));
+    assertTrue(Files.exists(tempDir.resolve("heart_rate.txt.migrated")));
+  }
+
+  /**
+   * Tests that rows that cannot be migrated are kept in a reject file instead of being dropped.
+   */
+
+  @Test
+  public void testMigrateKeepsRejectedRows() throws IOException {
+    Path csvFile = tempDir.resolve("heart_rate.txt");
+    Files.writeString(csvFile, "date,time,tag,heartRate\n"
+        + "04-16-2025,08:00:00,Resting,60\n"
+        + "04-16-2025,25:00:00,Resting,61\n"
+        + "04-17-2025,18:30:00\n"
+        + "04-17-2025,18:45:00,Cycling,150\n");
+    HeartRateSegment segment = new HeartRateSegment(tempDir.resolve("heart_rate.seg"),
+        new TagDictionary(tempDir.resolve("tags.dict")));
+
+    assertEquals(2, segment.migrateFrom(csvFile));
+
+    assertEquals(2, segment.readAll().size());
+    assertEquals(List.of("date,time,tag,heartRate", "04-16-2025,25:00:00,Resting,61", "04-17-2025,18:30:00"),
+        Files.readAllLines(tempDir.resolve("heart_rate.txt.rejected")));
+    assertTrue(Files.exists(tempDir.resolve("heart_rate.txt.migrated")));
+  }
+
+  /**
+   * Tests that streaming a date range returns only the samples in that range, in order.
+   */
+
+  @Test
+  public void testStreamDateRange() throws IOException {
+    HeartRateSegment segment = newSegment();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    for (int day = 0; day < 5; day++) {
+      segment.append(new HeartRate("Walking", date.plusDays(day), LocalTime.of(23, 59, 59), 100 + day));
+    }
+
+    List<Integer> bpms;
+    try (Stream<HeartRate> stream = segment.stream(date.plusDays(1), date.plusDays(3))) {
+      bpms = stream.map(HeartRate::getHeartRate).collect(Collectors.toList());
+    }
+
+    assertEquals(List.of(101, 102, 103), bpms);
+  }
+
+  /**
+   * Tests that a range of an ordered segment is found by binary search, including its edges.
+   */
+
+  @Test
+  public void testReadSortedRange() throws IOException {
+    HeartRateSegment segment = newSegment();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    for (int day = 0; day < 30; day++) {
+      for (int hour = 0; hour < 24; hour += 6) {
+        segment.append(new HeartRate(null, date.plusDays(day), LocalTime.of(hour, 0), 60 + day));
+      }
+    }
+
+    List<HeartRate> range = segment.readSortedRange(date.plusDays(10), date.plusDays(12));
+    assertEquals(12, range.size());
+    assertEquals(date.plusDays(10), range.get(0).getDate());
+    assertEquals(LocalTime.of(18, 0), range.get(11).getTime());
+    assertEquals(72, range.get(11).getHeartRate());
+    assertEquals(120, segment.readSortedRange(date.minusDays(5), date.plusDays(40)).size());
+    assertTrue(segment.readSortedRange(date.plusDays(30), date.plusDays(40)).isEmpty());
+  }
+
+  /**
+   * Tests that samples are read into a series in time order, whether or not the segment is in date order.
+   */
+
+  @Test
+  public void testReadInto() throws IOException {
+    HeartRateSegment segment = newSegment();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    segment.append(new HeartRate("Cycling", date.plusDays(2), LocalTime.of(7, 0), 150));
+    segment.append(new HeartRate(null, date, LocalTime.of(9, 0), 60));
+    segment.append(new HeartRate("Resting", date.plusDays(1), LocalTime.of(8, 0), 55));
+    segment.append(new HeartRate("Cycling", date.plusDays(5), LocalTime.of(8, 0), 140));
+
+    HeartRateSeries.Builder builder = new HeartRateSeries.Builder();
+    segment.readInto(builder, date, date.plusDays(2), false);
+    HeartRateSeries series = builder.build(new String[] {"Cycling", "Resting"});
+
+    assertEquals(3, series.size());
+    assertNull(series.tag(0));
+    assertEquals("Resting", series.tag(1));
+    assertEquals(150, series.bpm(2));
+    assertEquals("Date: 04-18-2025, Time: 07:00:00, Heart Rate: 150, Activity: Cycling", series.get(2).toString());
+  }
+}
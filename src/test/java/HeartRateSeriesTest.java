@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link HeartRateSeries} class.
+ * Tests include sorting samples added out of order, slicing by time and statistics.
+ */
+
+public class HeartRateSeriesTest {
+
+  private static long epochSecond(LocalDateTime dateTime) {
+    return dateTime.toEpochSecond(ZoneOffset.UTC);
+  }
+
+  /**
+   * Tests that samples added out of order are sorted by time, keeping the order of samples taken together.
+   */
+
+  @Test
+  public void testBuildSortsByTime() {
+    LocalDateTime time = LocalDateTime.of(2025, 4, 16, 8, 0);
+    HeartRateSeries series = new HeartRateSeries.Builder()
+        .add(epochSecond(time.plusHours(2)), 90, 0)
+        .add(epochSecond(time), 60, HeartRateSegment.NO_TAG)
+        .add(epochSecond(time.plusHours(2)), 91, 1)
+        .add(epochSecond(time.plusHours(1)), 70, 0)
+        .build(new String[] {"Cycling", "Resting"});
+
+    assertEquals(4, series.size());
+    assertEquals(time, series.dateTime(0));
+    assertEquals(70, series.bpm(1));
+    assertEquals(90, series.bpm(2));
+    assertEquals("Resting", series.tag(3));
+    assertThrows(IndexOutOfBoundsException.class, () -> series.bpm(4));
+  }
+
+  /**
+   * Tests that slices share the samples of their series and can be sliced again.
+   */
+
+  @Test
+  public void testSliceAndStats() {
+    LocalDate date = LocalDate.of(2025, 4, 1);
+    HeartRateSeries.Builder builder = new HeartRateSeries.Builder();
+    for (int day = 0; day < 30; day++) {
+      for (int hour = 0; hour < 24; hour++) {
+        builder.add(epochSecond(date.plusDays(day).atTime(hour, 0)), 50 + hour, day % 2);
+      }
+    }
+    HeartRateSeries series = builder.build(new String[] {"Even", "Odd"});
+
+    HeartRateSeries week = series.slice(date.plusDays(7), date.plusDays(13));
+    assertEquals(7 * 24, week.size());
+    assertEquals(date.plusDays(7).atStartOfDay(), week.dateTime(0));
+
+    HeartRateSeries morning = week.slice(epochSecond(date.plusDays(8).atTime(6, 0)),
+        epochSecond(date.plusDays(8).atTime(12, 0)));
+    assertEquals(6, morning.size());
+    assertEquals(56, morning.bpm(0));
+    assertEquals("Even", morning.tag(0));
+    assertEquals(0, week.slice(date.plusDays(20), date.plusDays(25)).size());
+
+    HeartRateStats stats = week.stats(1);
+    assertEquals(4 * 24, stats.getCount());
+    assertEquals(50, stats.getMin());
+    assertEquals(73, stats.getMax());
+    assertEquals(7 * 24, week.stats(-1).getCount());
+  }
+}
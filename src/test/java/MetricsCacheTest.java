@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link MetricsCache} class.
+ * Tests include write-through updates, discarding racing loads, and LRU eviction under the budget.
+ */
+
+public class MetricsCacheTest {
+
+  private static Map<LocalDate, List<Steps>> stepsFor(LocalDate date, int... counts) {
+    List<Steps> list = new ArrayList<>();
+    for (int count : counts) {
+      list.add(new Steps(date, count));
+    }
+    Map<LocalDate, List<Steps>> steps = new HashMap<>();
+    steps.put(date, list);
+    return steps;
+  }
+
+  /**
+   * Tests that added entries show up in an already cached user.
+   */
+
+  @Test
+  public void testWriteThrough() {
+    MetricsCache cache = new MetricsCache(1024 * 1024);
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    cache.putSteps("alice", stepsFor(date, 1000), cache.writeStamp("alice"));
+
+    cache.addSteps("alice", new Steps(date, 2000));
+
+    assertEquals(2, cache.getSteps("alice").get(date).size());
+  }
+
+  /**
+   * Tests that a load which raced with a write is not cached.
+   */
+
+  @Test
+  public void testStaleLoadIsDiscarded() {
+    MetricsCache cache = new MetricsCache(1024 * 1024);
+    long stamp = cache.writeStamp("alice");
+    cache.updateWeight("alice", LocalDate.of(2025, 4, 16), new Weight(60, "kg"));
+
+    cache.putWeights("alice", new HashMap<>(), stamp);
+
+    assertNull(cache.getWeights("alice"));
+  }
+
+  /**
+   * Tests that a write only discards racing loads of the same user.
+   */
+
+  @Test
+  public void testWriteStampIsPerUser() {
+    MetricsCache cache = new MetricsCache(1024 * 1024);
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    long stamp = cache.writeStamp("bob");
+    cache.addSteps("alice", new Steps(date, 1000));
+
+    cache.putSteps("bob", stepsFor(date, 2000), stamp);
+
+    assertEquals(1, cache.getSteps("bob").get(date).size());
+  }
+
+  /**
+   * Tests that day and range lookups return only the entries in the range, in date order.
+   */
+
+  @Test
+  public void testRangeLookups() {
+    MetricsCache cache = new MetricsCache(1024 * 1024);
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    assertNull(cache.getSteps("alice", date, date));
+    Map<LocalDate, List<Steps>> steps = stepsFor(date.plusDays(2), 3000);
+    steps.putAll(stepsFor(date, 1000, 2000));
+    cache.putSteps("alice", steps, cache.writeStamp("alice"));
+    cache.putWeights("alice", Map.of(date, new Weight(60, "kg")), cache.writeStamp("alice"));
+
+    assertEquals(2, cache.getSteps("alice", date, date).size());
+    assertEquals(0, cache.getSteps("alice", date.plusDays(1), date.plusDays(1)).size());
+    assertEquals(3000, cache.getSteps("alice", date, date.plusDays(5)).get(2).getSteps());
+    assertEquals(1, cache.getWeights("alice", date.minusDays(1), date).size());
+    assertTrue(cache.getWeights("alice", date.plusDays(1), date.plusDays(1)).isEmpty());
+  }
+
+  /**
+   * Tests that the least recently used user is evicted once the budget is exceeded.
+   */
+
+  @Test
+  public void testLeastRecentlyUsedUserIsEvicted() {
+    MetricsCache cache = new MetricsCache(500);
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    cache.putSteps("alice", stepsFor(date, 1, 2), cache.writeStamp("alice"));
+    cache.putSteps("bob", stepsFor(date, 1, 2), cache.writeStamp("bob"));
+    cache.getSteps("alice"); // alice is now more recently used than bob
+
+    cache.putSteps("carol", stepsFor(date, 1, 2), cache.writeStamp("carol"));
+
+    assertTrue(cache.isCached("alice"));
+    assertFalse(cache.isCached("bob"));
+    assertTrue(cache.isCached("carol"));
+    assertTrue(cache.getTotalBytes() <= 500);
+  }
+}
@@ -0,0 +1,209 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Conformance tests every {@link MetricsStore} backend must pass; each backend has a subclass naming it.
+ * Tests include weights, steps, heart rates and period logs with their range, batch and aggregate queries,
+ * validation of batches and ranges, and reading the data back from a reopened store.
+ */
+
+public abstract class MetricsStoreContractTest {
+
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Returns the backend under test, as passed to {@link MetricsStore#open(String, String, String)}.
+   *
+   * @return The backend name.
+   */
+  protected abstract String backend();
+
+  private MetricsStore open() {
+    return MetricsStore.open(backend(), tempDir + "/", "user");
+  }
+
+  private static List<Integer> stepCounts(List<Steps> steps) {
+    return steps.stream().map(Steps::getSteps).collect(Collectors.toList());
+  }
+
+  /**
+   * Tests that a later save of a day's weight supersedes the earlier one and that units are kept.
+   */
+
+  @Test
+  public void testWeights() {
+    MetricsStore store = open();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    assertTrue(store.saveWeight(date, new Weight(70, "kg")));
+    assertTrue(store.saveWeight(date.plusDays(1), new Weight(150, "lb")));
+    assertTrue(store.saveWeight(date, new Weight(71.5, "kg")));
+
+    assertEquals(71.5, store.getWeight(date).get().getWeight(), 0.01);
+    assertFalse(store.getWeight(date.plusDays(2)).isPresent());
+    NavigableMap<LocalDate, Weight> weights = store.getWeights(date, date.plusDays(5));
+    assertEquals(Arrays.asList(date, date.plusDays(1)), List.copyOf(weights.keySet()));
+    assertEquals("lb", weights.get(date.plusDays(1)).getUnit());
+    assertEquals(68.0, weights.get(date.plusDays(1)).getWeight(), 0.1);
+    assertEquals(2, store.getAllWeights().size());
+  }
+
+  /**
+   * Tests steps batches across months with single-day, range, full and aggregate reads,
+   * and that an invalid batch is rejected without writing anything.
+   */
+
+  @Test
+  public void testSteps() {
+    MetricsStore store = open();
+    LocalDate date = LocalDate.of(2025, 4, 30);
+    assertTrue(store.addSteps(Arrays.asList(new Steps(date, 1000), new Steps(date, 2000),
+        new Steps(date.plusDays(1), 3000))));
+    assertTrue(store.addSteps(new Steps(date.plusDays(2), 4000)));
+    assertThrows(IllegalArgumentException.class,
+        () -> store.addSteps(Arrays.asList(new Steps(date, 5000), null)));
+
+    assertEquals(Arrays.asList(1000, 2000), stepCounts(store.getSteps(date)));
+    assertEquals(Arrays.asList(3000, 4000), stepCounts(store.getSteps(date.plusDays(1), date.plusDays(5))));
+    assertEquals(3, store.getAllSteps().size());
+    try (Stream<Steps> steps = store.streamSteps(null, date)) {
+      assertEquals(2, steps.count());
+    }
+
+    DailyStepTotals totals = store.getDailyStepTotals(null, date.plusDays(1));
+    assertEquals(2, totals.size());
+    assertEquals(date, totals.getDate(0));
+    assertEquals(3000, totals.getTotals()[0]);
+    assertEquals(2, totals.getCounts()[0]);
+    assertEquals(2000, totals.getMaxima()[0]);
+  }
+
+  /**
+   * Tests heart rate batches across months with range reads, series, tag queries and statistics.
+   */
+
+  @Test
+  public void testHeartRates() {
+    MetricsStore store = open();
+    LocalDate date = LocalDate.of(2025, 4, 30);
+    assertTrue(store.addHeartRates(Arrays.asList(
+        new HeartRate("Resting", date, LocalTime.of(8, 0), 60),
+        new HeartRate("Cycling", date, LocalTime.of(9, 0), 140),
+        new HeartRate(null, date.plusDays(1), LocalTime.of(7, 0), 70),
+        new HeartRate("Resting", date.plusDays(1), LocalTime.of(6, 0), 64))));
+
+    assertEquals(2, store.getHeartRates(date).size());
+    assertEquals(2, store.getHeartRates(date.plusDays(1), date.plusDays(1)).size());
+    assertEquals(4, store.getAllHeartRates().values().stream().mapToInt(List::size).sum());
+
+    HeartRateSeries series = store.getHeartRateSeries(null, null);
+    assertEquals(4, series.size());
+    assertEquals(60, series.bpm(0));
+    assertEquals("Cycling", series.tag(1));
+    assertEquals(64, series.bpm(2)); // In time order, not in the order added
+
+    assertEquals(Arrays.asList(60, 64), store.getHeartRates(TagQuery.anyOf("Resting"), null, null).stream()
+        .map(HeartRate::getHeartRate).collect(Collectors.toList()));
+    assertEquals(3, store.getHeartRates(TagQuery.anyOf("Resting", "Cycling", "Unknown"), null, null).size());
+    assertEquals(0, store.getHeartRates(TagQuery.allOf("Resting", "Cycling"), null, null).size());
+    assertTrue(store.getTags().containsAll(Arrays.asList("Resting", "Cycling")));
+
+    Map<String, NavigableMap<LocalDate, HeartRateStats>> byTag =
+        store.getHeartRateStatsByTag(null, null, HeartRateRollup.Period.DAY);
+    assertEquals(2, byTag.get("Resting").size());
+    assertEquals(1, byTag.get(null).get(date.plusDays(1)).getCount());
+    HeartRateStats month = store.getHeartRateStats(null, null, HeartRateRollup.Period.MONTH).get(date.withDayOfMonth(1));
+    assertEquals(2, month.getCount());
+    assertEquals(140, month.getMax());
+  }
+
+  /**
+   * Tests period logs with overlap queries, tag queries and cycle statistics,
+   * and that a log ending before it starts is rejected.
+   */
+
+  @Test
+  public void testPeriodLogs() {
+    MetricsStore store = open();
+    LocalDate start = LocalDate.of(2025, 1, 30);
+    assertTrue(store.addPeriodLogs(Arrays.asList(
+        new PeriodLog("Cramps", start.plusDays(28), start.plusDays(32), "Medium"),
+        new PeriodLog(null, start, start.plusDays(4), "Heavy"))));
+    assertTrue(store.addPeriodLog(new PeriodLog("Cramps", start.plusDays(58), start.plusDays(62), "Light")));
+    PeriodLog invalid = new PeriodLog(null, start, start, "Light");
+    invalid.setEndDate(start.minusDays(1));
+    assertThrows(IllegalArgumentException.class, () -> store.addPeriodLog(invalid));
+
+    List<PeriodLog> all = store.getPeriodLogs();
+    assertEquals(3, all.size());
+    assertEquals(start.plusDays(28), all.get(0).getDate()); // In the order added
+    assertEquals("Heavy", all.get(1).getFlowLevel());
+
+    List<PeriodLog> february = store.getPeriodLogsByMonth(2025, 2);
+    assertEquals(2, february.size());
+    assertEquals(start, february.get(0).getDate()); // By start date, including the period from January
+    assertEquals(1, store.getPeriodLogs(start.plusDays(60), start.plusDays(90)).size());
+
+    assertEquals(2, store.getPeriodLogs(TagQuery.anyOf("Cramps"), null, null).size());
+    assertEquals(1, store.getPeriodLogs(TagQuery.anyOf("Cramps"), null, start.plusDays(30)).size());
+
+    CycleStats cycleStats = store.getCycleStats();
+    assertEquals(2, cycleStats.getCount());
+    assertEquals(29.0, cycleStats.getAverage(), 0.001);
+    assertEquals(start.plusDays(87), cycleStats.predictNextStart());
+  }
+
+  /**
+   * Tests that range queries reject missing or inverted bounds.
+   */
+
+  @Test
+  public void testRangeValidation() {
+    MetricsStore store = open();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    assertThrows(IllegalArgumentException.class, () -> store.getWeights(null, date));
+    assertThrows(IllegalArgumentException.class, () -> store.getSteps(date, date.minusDays(1)));
+    assertThrows(IllegalArgumentException.class, () -> store.getHeartRates(date, null));
+    assertThrows(IllegalArgumentException.class, () -> store.getPeriodLogs(date, date.minusDays(1)));
+    assertThrows(IllegalArgumentException.class, () -> store.getDailyStepTotals(date, date.minusDays(1)));
+    assertThrows(IllegalArgumentException.class, () -> store.getHeartRateSeries(date, date.minusDays(1)));
+  }
+
+  /**
+   * Tests that a reopened store reads back everything written by an earlier one.
+   */
+
+  @Test
+  public void testReopen() {
+    MetricsStore store = open();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    store.saveWeight(date, new Weight(70, "kg"));
+    store.addSteps(new Steps(date, 1234));
+    store.addHeartRate(new HeartRate("Resting", date, LocalTime.NOON, 61));
+    store.addPeriodLog(new PeriodLog("Cramps", date, date.plusDays(3), "Light"));
+
+    MetricsStore reopened = open();
+    assertEquals(70, reopened.getWeight(date).get().getWeight(), 0.01);
+    assertEquals(Arrays.asList(1234), stepCounts(reopened.getSteps(date)));
+    assertEquals("Resting", reopened.getHeartRates(date).get(0).getTags());
+    assertEquals(LocalTime.NOON, reopened.getHeartRates(date).get(0).getTime());
+    PeriodLog periodLog = reopened.getPeriodLogs().get(0);
+    assertEquals(date.plusDays(3), periodLog.getEndDate());
+    assertEquals("Cramps", periodLog.getTags());
+    assertEquals("Light", periodLog.getFlowLevel());
+  }
+}
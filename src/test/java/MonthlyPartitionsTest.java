@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link MonthlyPartitions} class.
+ * Tests include partition creation, pruning by date range and splitting batches by month.
+ */
+
+public class MonthlyPartitionsTest {
+
+  @TempDir
+  Path tempDir;
+
+  private MonthlyPartitions newPartitions() {
+    return new MonthlyPartitions(tempDir.resolve("steps"), ".csv", "date,steps\n".getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Tests that a partition is created with its header once, and never truncated afterwards.
+   */
+
+  @Test
+  public void testCreateIfNotExists() throws IOException {
+    MonthlyPartitions partitions = newPartitions();
+    Path file = partitions.createIfNotExists(YearMonth.of(2026, 10));
+    assertEquals(tempDir.resolve("steps").resolve("2026-10.csv"), file);
+
+    Files.writeString(file, "10-17-2026,100\n", StandardOpenOption.APPEND);
+    newPartitions().createIfNotExists(YearMonth.of(2026, 10));
+
+    assertEquals("date,steps\n10-17-2026,100\n", Files.readString(file));
+  }
+
+  /**
+   * Tests that rows appended by callers racing to create a file are never overwritten by the header.
+   */
+
+  @Test
+  public void testConcurrentCreateKeepsAppendedRows() throws Exception {
+    for (int round = 0; round < 20; round++) {
+      Path file = tempDir.resolve("race-" + round + ".csv");
+      List<Thread> threads = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        String row = "row" + i + "\n";
+        threads.add(new Thread(() -> {
+          try {
+            MonthlyPartitions.createWithHeader(file, "date,steps\n".getBytes(StandardCharsets.UTF_8));
+            Files.writeString(file, row, StandardOpenOption.APPEND);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }));
+      }
+      threads.forEach(Thread::start);
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      String content = Files.readString(file);
+      assertTrue(content.startsWith("date,steps\n"));
+      assertEquals(5, content.split("\n").length);
+    }
+    try (Stream<Path> files = Files.list(tempDir)) {
+      assertEquals(20, files.count()); // No temporary files are left behind
+    }
+  }
+
+  /**
+   * Tests that only the partitions overlapping a range are listed, in month order.
+   */
+
+  @Test
+  public void testFilesArePruned() throws IOException {
+    MonthlyPartitions partitions = newPartitions();
+    assertTrue(partitions.files(null, null).isEmpty());
+    for (int month = 12; month >= 1; month--) {
+      partitions.createIfNotExists(YearMonth.of(2025, month));
+    }
+    Files.createFile(tempDir.resolve("steps").resolve("notes.csv"));
+
+    List<Path> files = partitions.files(LocalDate.of(2025, 3, 31), LocalDate.of(2025, 5, 1));
+    assertEquals(3, files.size());
+    assertEquals("2025-03.csv", files.get(0).getFileName().toString());
+    assertEquals("2025-05.csv", files.get(2).getFileName().toString());
+    assertEquals(12, partitions.files(null, null).size());
+    assertEquals(2, partitions.files(LocalDate.of(2025, 11, 15), null).size());
+  }
+
+  /**
+   * Tests that a batch is split by month, keeping the order within each month.
+   */
+
+  @Test
+  public void testGroupByMonth() {
+    List<LocalDate> dates = List.of(LocalDate.of(2025, 2, 3), LocalDate.of(2025, 1, 31),
+        LocalDate.of(2025, 2, 1), LocalDate.of(2025, 1, 2));
+
+    Map<YearMonth, List<LocalDate>> months = MonthlyPartitions.groupByMonth(dates, date -> date);
+
+    assertEquals(List.of(YearMonth.of(2025, 1), YearMonth.of(2025, 2)), List.copyOf(months.keySet()));
+    assertEquals(List.of(LocalDate.of(2025, 1, 31), LocalDate.of(2025, 1, 2)), months.get(YearMonth.of(2025, 1)));
+    assertEquals(List.of(LocalDate.of(2025, 2, 3), LocalDate.of(2025, 2, 1)), months.get(YearMonth.of(2025, 2)));
+  }
+}
@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link PagedTableModel} class.
+ * Tests include the day index built from daily aggregates, pages that start and end inside a day,
+ * and date ranges pushed down to the store.
+ */
+
+public class PagedTableModelTest {
+
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Tests that pages line up with the index when days hold more rows than a page.
+   */
+
+  @Test
+  public void testPages() {
+    MetricsStore store = MetricsStore.open(MetricsStore.CSV, tempDir + "/", "user");
+    LocalDate date = LocalDate.of(2025, 3, 1);
+    List<HeartRate> heartRates = new ArrayList<>();
+    for (int day = 0; day < 3; day++) {
+      for (int i = 0; i < 400; i++) {
+        heartRates.add(new HeartRate(null, date.plusDays(day), LocalTime.ofSecondOfDay(i * 60L), 60 + day));
+      }
+    }
+    store.addHeartRates(heartRates);
+
+    PagedTableModel<HeartRate> model = PagedTableModel.forHeartRates(store);
+    PagedTableModel.DayIndex index = model.readIndex(null, null);
+    assertEquals(1200, index.size());
+    assertEquals(0, index.dayOf(399));
+    assertEquals(1, index.dayOf(400));
+    assertEquals(2, index.dayOf(1199));
+
+    List<HeartRate> first = model.readPage(index, 0);
+    assertEquals(PagedTableModel.PAGE_SIZE, first.size());
+    assertEquals(LocalTime.of(0, 0), first.get(0).getTime());
+    assertEquals(date.plusDays(1), first.get(400).getDate());
+    List<HeartRate> last = model.readPage(index, 2);
+    assertEquals(200, last.size());
+    assertEquals(date.plusDays(2), last.get(0).getDate());
+    assertEquals(LocalTime.ofSecondOfDay(200 * 60L), last.get(0).getTime());
+
+    assertEquals(400, model.readIndex(date.plusDays(1), date.plusDays(1)).size());
+  }
+
+  /**
+   * Tests the steps and period log indexes, with a range that starts inside a period.
+   */
+
+  @Test
+  public void testRanges() {
+    MetricsStore store = MetricsStore.open(MetricsStore.CSV, tempDir + "/", "user");
+    LocalDate date = LocalDate.of(2025, 1, 30);
+    store.addSteps(Arrays.asList(new Steps(date, 1000), new Steps(date.plusDays(2), 2000),
+        new Steps(date, 3000)));
+    store.addPeriodLogs(Arrays.asList(new PeriodLog(null, date, date.plusDays(4), "Heavy"),
+        new PeriodLog(null, date.plusDays(28), date.plusDays(32), "Light")));
+
+    PagedTableModel<Steps> steps = PagedTableModel.forSteps(store);
+    PagedTableModel.DayIndex stepsIndex = steps.readIndex(null, null);
+    assertEquals(3, stepsIndex.size());
+    assertEquals(2000, steps.readPage(stepsIndex, 0).get(2).getSteps());
+    assertEquals(1, steps.readIndex(date.plusDays(1), null).size());
+
+    PagedTableModel<PeriodLog> periodLogs = PagedTableModel.forPeriodLogs(store);
+    periodLogs.setDateRange(date.plusDays(2), null);
+    PagedTableModel.DayIndex periodIndex = periodLogs.readIndex(date.plusDays(2), null);
+    assertEquals(2, periodIndex.size());
+    List<PeriodLog> page = periodLogs.readPage(periodIndex, 0);
+    assertEquals("Heavy", page.get(0).getFlowLevel());
+    assertEquals(date.plusDays(28), page.get(1).getDate());
+    assertEquals(0, periodLogs.readIndex(date.plusDays(5), date.plusDays(27)).size());
+  }
+
+  /**
+   * Tests the weights index with a range, and that a period log page leaves out logs that start
+   * between the page's days but don't overlap the range.
+   */
+
+  @Test
+  public void testWeightsAndOverlappingPeriods() {
+    MetricsStore store = MetricsStore.open(MetricsStore.CSV, tempDir + "/", "user");
+    LocalDate date = LocalDate.of(2025, 1, 1);
+    for (int day = 0; day < 3; day++) {
+      store.saveWeight(date.plusDays(day), new Weight(70 + day, "kg"));
+    }
+    store.addPeriodLogs(Arrays.asList(new PeriodLog(null, date, date.plusDays(9), "Heavy"),
+        new PeriodLog(null, date.plusDays(1), date.plusDays(2), "Light"),
+        new PeriodLog(null, date.plusDays(1), date.plusDays(7), "Medium")));
+
+    PagedTableModel<Map.Entry<LocalDate, Weight>> weights = PagedTableModel.forWeights(store);
+    assertEquals(3, weights.readIndex(null, null).size());
+    PagedTableModel.DayIndex weightIndex = weights.readIndex(date.plusDays(1), null);
+    assertEquals(2, weightIndex.size());
+    assertEquals(71, weights.readPage(weightIndex, 0).get(0).getValue().getWeight(), 0.01);
+
+    PagedTableModel<PeriodLog> periodLogs = PagedTableModel.forPeriodLogs(store);
+    periodLogs.setDateRange(date.plusDays(4), null);
+    PagedTableModel.DayIndex periodIndex = periodLogs.readIndex(date.plusDays(4), null);
+    assertEquals(2, periodIndex.size());
+    List<PeriodLog> page = periodLogs.readPage(periodIndex, 0);
+    assertEquals(2, page.size());
+    assertEquals("Heavy", page.get(0).getFlowLevel());
+    assertEquals("Medium", page.get(1).getFlowLevel());
+  }
+}
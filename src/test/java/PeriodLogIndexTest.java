@@ -0,0 +1,100 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link PeriodLogIndex} class.
+ * Tests include overlap queries, logs added out of order, and cycle length statistics.
+ */
+
+public class PeriodLogIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  private Path writeLog(String rows) throws IOException {
+    Path file = tempDir.resolve("period_log.txt");
+    Files.write(file, ("startDate,endDate,flowLevel,tags\n" + rows).getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private static PeriodLog decode(CsvRecordParser parser) {
+    return new PeriodLog(parser.stringField(3), parser.dateField(0), parser.dateField(1), parser.stringField(2));
+  }
+
+  /**
+   * Tests that a period spanning two months overlaps both, and that ranges between periods find nothing.
+   */
+
+  @Test
+  public void testOverlapping() throws IOException {
+    StringBuilder rows = new StringBuilder();
+    LocalDate start = LocalDate.of(2024, 1, 30);
+    for (int i = 0; i < 40; i++) {
+      LocalDate cycleStart = start.plusDays(28L * i);
+      rows.append(cycleStart.format(Constants.dateFormatter)).append(',')
+          .append(cycleStart.plusDays(5).format(Constants.dateFormatter)).append(",Medium,null\n");
+    }
+    PeriodLogIndex index = new PeriodLogIndex(writeLog(rows.toString()), PeriodLogIndexTest::decode);
+
+    List<PeriodLog> february = index.overlapping(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29));
+    assertEquals(2, february.size());
+    assertEquals(LocalDate.of(2024, 1, 30), february.get(0).getDate());
+    assertEquals(LocalDate.of(2024, 2, 27), february.get(1).getDate());
+    assertTrue(index.overlapping(LocalDate.of(2024, 2, 5), LocalDate.of(2024, 2, 26)).isEmpty());
+    assertEquals(40, index.overlapping(null, null).size());
+    assertEquals(1, index.overlapping(null, LocalDate.of(2024, 1, 30)).size());
+  }
+
+  /**
+   * Tests that appended logs are picked up, including ones that start before earlier logs.
+   */
+
+  @Test
+  public void testAppendOutOfOrder() throws IOException {
+    Path file = writeLog("03-01-2025,03-05-2025,Light,null\n");
+    PeriodLogIndex index = new PeriodLogIndex(file, PeriodLogIndexTest::decode);
+    assertEquals(0, index.cycleStats().getCount());
+    assertNull(index.cycleStats().predictNextStart());
+
+    Files.write(file, ("03-29-2025,04-02-2025,Heavy,null\n01-03-2025,01-08-2025,Light,null\n02-01-2025,")
+        .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    List<PeriodLog> logs = index.overlapping(null, null);
+    assertEquals(3, logs.size());
+    assertEquals(LocalDate.of(2025, 1, 3), logs.get(0).getDate());
+    assertEquals(1, index.overlapping(LocalDate.of(2025, 1, 8), LocalDate.of(2025, 2, 28)).size());
+
+    Files.write(file, "02-05-2025,Medium,null\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertEquals(2, index.overlapping(LocalDate.of(2025, 1, 8), LocalDate.of(2025, 2, 28)).size());
+  }
+
+  /**
+   * Tests the cycle length statistics and the predicted start of the next period.
+   */
+
+  @Test
+  public void testCycleStats() throws IOException {
+    PeriodLogIndex index = new PeriodLogIndex(writeLog("01-01-2025,01-05-2025,Light,null\n"
+        + "01-27-2025,01-31-2025,Light,null\n"
+        + "02-26-2025,03-02-2025,Light,null\n"
+        + "02-26-2025,02-27-2025,Light,Cramps\n"), PeriodLogIndexTest::decode);
+
+    CycleStats stats = index.cycleStats();
+    assertEquals(2, stats.getCount());
+    assertEquals(26, stats.getMin());
+    assertEquals(30, stats.getMax());
+    assertEquals(28.0, stats.getAverage());
+    assertEquals(2.0, stats.getStandardDeviation(), 1e-9);
+    assertEquals(LocalDate.of(2025, 3, 26), stats.predictNextStart());
+  }
+}
@@ -0,0 +1,57 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link ProfileCache} class.
+ * Tests include LRU eviction at capacity and discarding loads that raced with an invalidation.
+ */
+
+public class ProfileCacheTest {
+
+  private static UserProfile profile(String username) {
+    return new UserProfile("Name", username, "pw", Gender.FEMALE, LocalDate.of(1990, 1, 1));
+  }
+
+  /**
+   * Tests that the least recently used profile is evicted once the cache is full.
+   */
+
+  @Test
+  public void testEviction() {
+    ProfileCache cache = new ProfileCache(2);
+    UserProfile alice = profile("alice");
+    cache.put("alice", alice, cache.writeStamp());
+    cache.put("bob", profile("bob"), cache.writeStamp());
+    assertSame(alice, cache.get("alice")); // Makes bob the least recently used
+
+    cache.put("carol", profile("carol"), cache.writeStamp());
+    assertEquals(2, cache.size());
+    assertSame(alice, cache.get("alice"));
+    assertNull(cache.get("bob"));
+  }
+
+  /**
+   * Tests that invalidation drops a profile and that a profile read before it is not cached.
+   */
+
+  @Test
+  public void testInvalidation() {
+    ProfileCache cache = new ProfileCache(4);
+    cache.put("alice", profile("alice"), cache.writeStamp());
+    long stamp = cache.writeStamp();
+    cache.invalidate("alice");
+    assertNull(cache.get("alice"));
+
+    cache.put("alice", profile("alice"), stamp);
+    assertNull(cache.get("alice"));
+    cache.put("alice", profile("alice"), cache.writeStamp());
+    assertEquals(1, cache.size());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+  }
+}
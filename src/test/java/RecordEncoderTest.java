@@ -0,0 +1,92 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link RecordEncoder} class.
+ * Tests check that encoded records match the String.format output the files were written with.
+ */
+
+public class RecordEncoderTest {
+
+  private String encoded(RecordEncoder encoder) {
+    return new String(encoder.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Tests that steps and period log records match the previous String.format output.
+   */
+
+  @Test
+  public void testRecordsMatchFormat() {
+    LocalDate date = LocalDate.of(2025, 4, 6);
+    String steps = String.format("%s,%d", date.format(Constants.dateFormatter), 12345) + System.lineSeparator();
+    assertEquals(steps, encoded(RecordEncoder.forCurrentThread().date(date).comma().integer(12345).newLine()));
+
+    String periodLog = String.format("%s,%s,%s,%s", date.format(Constants.dateFormatter),
+        date.plusDays(4).format(Constants.dateFormatter), "Heavy", null) + System.lineSeparator();
+    assertEquals(periodLog, encoded(RecordEncoder.forCurrentThread()
+        .date(date).comma().date(date.plusDays(4)).comma().text("Heavy").comma().text(null).newLine()));
+  }
+
+  /**
+   * Tests dates across the whole four-digit year range and times across a day.
+   */
+
+  @Test
+  public void testDatesAndTimes() {
+    for (LocalDate date = LocalDate.of(1, 1, 1); date.getYear() < 10000; date = date.plusDays(97)) {
+      assertEquals(date.format(Constants.dateFormatter), encoded(RecordEncoder.forCurrentThread().date(date)));
+    }
+    LocalDate farFuture = LocalDate.of(12345, 6, 7);
+    assertEquals(farFuture.format(Constants.dateFormatter), encoded(RecordEncoder.forCurrentThread().date(farFuture)));
+
+    for (int second = 0; second < 86400; second += 61) {
+      LocalTime time = LocalTime.ofSecondOfDay(second);
+      assertEquals(time.format(Constants.timeFormatter), encoded(RecordEncoder.forCurrentThread().time(time)));
+    }
+  }
+
+  /**
+   * Tests that fixed-precision decimals round exactly like "%.2f", including halfway cases.
+   */
+
+  @Test
+  public void testFixedMatchesFormat() {
+    double[] values = {0, -0.0, 0.005, 0.125, 1.005, 2.675, 72.5, -0.001, -1.5, 999.995, 1e12, Double.NaN};
+    for (double value : values) {
+      assertEquals(String.format(Locale.ROOT, "%.2f", value),
+          encoded(RecordEncoder.forCurrentThread().fixed(value, 2)));
+    }
+
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      double kilograms = random.nextInt(30_000) / 100.0;
+      double pounds = kilograms / 0.45359237;
+      assertEquals(String.format(Locale.ROOT, "%.2f", kilograms),
+          encoded(RecordEncoder.forCurrentThread().fixed(kilograms, 2)));
+      assertEquals(String.format(Locale.ROOT, "%.2f", pounds),
+          encoded(RecordEncoder.forCurrentThread().fixed(pounds, 2)));
+    }
+    assertThrows(IllegalArgumentException.class, () -> RecordEncoder.forCurrentThread().fixed(1, 10));
+  }
+
+  /**
+   * Tests integers and non-ASCII text.
+   */
+
+  @Test
+  public void testIntegersAndText() {
+    long[] values = {0, 7, -7, 10, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long value : values) {
+      assertEquals(Long.toString(value), encoded(RecordEncoder.forCurrentThread().integer(value)));
+    }
+    assertEquals("a,Krämpfe", encoded(RecordEncoder.forCurrentThread().text("a").comma().text("Krämpfe")));
+  }
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link ResidentIndexes} class.
+ */
+
+public class ResidentIndexesTest {
+
+  /**
+   * Tests that the least recently used instances beyond the capacity are unloaded, and that using an
+   * instance again keeps it loaded.
+   */
+
+  @Test
+  public void testLeastRecentlyUsedAreUnloaded() {
+    List<String> unloaded = new ArrayList<>();
+    ResidentIndexes resident = new ResidentIndexes(2, Runnable::run);
+    ResidentIndexes.Unloadable a = () -> unloaded.add("a");
+    ResidentIndexes.Unloadable b = () -> unloaded.add("b");
+    ResidentIndexes.Unloadable c = () -> unloaded.add("c");
+
+    resident.touch(a);
+    resident.touch(b);
+    resident.touch(a);
+    resident.touch(c);
+    assertEquals(List.of("b"), unloaded);
+    assertEquals(2, resident.size());
+
+    resident.touch(b);
+    assertEquals(List.of("b", "a"), unloaded);
+    assertEquals(2, resident.size());
+  }
+
+  /**
+   * Tests that a capacity below one is rejected.
+   */
+
+  @Test
+  public void testInvalidCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new ResidentIndexes(0, Runnable::run));
+  }
+}
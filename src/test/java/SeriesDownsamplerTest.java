@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the {@link SeriesDownsampler} class.
+ * Tests check the number of kept points, that the ends and extremes are kept, and short series.
+ */
+
+public class SeriesDownsamplerTest {
+
+  /**
+   * Tests that a long series is reduced to the threshold, keeping its first and last points and its spikes.
+   */
+
+  @Test
+  public void testKeepsEndsAndSpikes() {
+    int length = 100_000;
+    long[] x = new long[length];
+    double[] y = new double[length];
+    for (int i = 0; i < length; i++) {
+      x[i] = 1_700_000_000_000L + i * 60_000L; // One sample per minute
+      y[i] = 60 + (i % 7);
+    }
+    y[12_345] = 190;
+    y[87_654] = 35;
+
+    int[] kept = SeriesDownsampler.largestTriangleThreeBuckets(x, y, length, 1200);
+
+    assertEquals(1200, kept.length);
+    assertEquals(0, kept[0]);
+    assertEquals(length - 1, kept[kept.length - 1]);
+    for (int i = 1; i < kept.length; i++) {
+      assertTrue(kept[i] > kept[i - 1]);
+    }
+    boolean spike = false;
+    boolean dip = false;
+    for (int i : kept) {
+      spike |= i == 12_345;
+      dip |= i == 87_654;
+    }
+    assertTrue(spike);
+    assertTrue(dip);
+  }
+
+  /**
+   * Tests that series no longer than the threshold are kept whole, and that too small thresholds are rejected.
+   */
+
+  @Test
+  public void testShortSeries() {
+    long[] x = {1, 2, 3, 4, 5};
+    double[] y = {5, 4, 3, 2, 1};
+    assertArrayEquals(new int[] {0, 1, 2, 3}, SeriesDownsampler.largestTriangleThreeBuckets(x, y, 4, 4));
+    assertArrayEquals(new int[0], SeriesDownsampler.largestTriangleThreeBuckets(x, y, 0, 3));
+    assertEquals(3, SeriesDownsampler.largestTriangleThreeBuckets(x, y, 5, 3).length);
+    assertThrows(IllegalArgumentException.class, () -> SeriesDownsampler.largestTriangleThreeBuckets(x, y, 5, 2));
+    assertThrows(IllegalArgumentException.class, () -> SeriesDownsampler.largestTriangleThreeBuckets(x, y, 6, 3));
+  }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the {@link MetricsStoreContractTest} conformance tests against the SQL backend.
+ * Also tests synced batches, writes while a read stream holds its connection, and concurrent writers.
+ */
+
+public class SqlMetricsStoreTest extends MetricsStoreContractTest {
+
+  @Override
+  protected String backend() {
+    return MetricsStore.SQL;
+  }
+
+  private MetricsStore openSql() {
+    return MetricsStore.open(MetricsStore.SQL, tempDir + "/", "user");
+  }
+
+  /**
+   * Tests that a synced batch is read back, and that a batch written while a stream is still open is
+   * committed and seen by the next stream but not by the open one.
+   */
+
+  @Test
+  public void testSyncedBatchAndOpenStream() {
+    MetricsStore store = openSql();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    assertTrue(store.addSteps(Arrays.asList(new Steps(date, 1000), new Steps(date, 2000)), true));
+
+    try (Stream<Steps> steps = store.streamSteps(null, null)) {
+      Iterator<Steps> iterator = steps.iterator();
+      assertEquals(1000, iterator.next().getSteps());
+      assertTrue(store.addSteps(Arrays.asList(new Steps(date.plusDays(1), 3000)), false));
+      assertEquals(2000, iterator.next().getSteps());
+      assertFalse(iterator.hasNext());
+    }
+    assertEquals(3, store.getSteps(date, date.plusDays(1)).size());
+
+    // Every call opens and closes its own connection, so many in a row must not run out of anything
+    for (int i = 0; i < 200; i++) {
+      try (Stream<Steps> steps = store.streamSteps(date, date)) {
+        assertEquals(2, steps.count());
+      }
+    }
+  }
+
+  /**
+   * Tests that batches written by concurrent threads through separate stores all commit.
+   */
+
+  @Test
+  public void testConcurrentBatches() throws Exception {
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      int steps = 100 + i;
+      boolean sync = i % 10 == 0;
+      results.add(executor.submit(() -> openSql().addSteps(Arrays.asList(new Steps(date, steps),
+          new Steps(date, steps)), sync)));
+    }
+    try {
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(80, openSql().getSteps(date, date).size());
+  }
+}
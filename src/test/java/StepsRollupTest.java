@@ -0,0 +1,94 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link StepsRollup} and {@link DailyStepTotals} classes.
+ * Tests include incremental updates, partially written rows, rebuilding and merging totals of several files.
+ */
+
+public class StepsRollupTest {
+
+  @TempDir
+  Path tempDir;
+
+  private StepsRollup newRollup() {
+    return new StepsRollup(tempDir.resolve("2025-04.csv"), tempDir.resolve("2025-04.totals"));
+  }
+
+  private void append(String rows) throws IOException {
+    Files.writeString(tempDir.resolve("2025-04.csv"), rows, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Tests that rows appended after a refresh are folded in, leaving a partially written row for later.
+   */
+
+  @Test
+  public void testIncrementalRefresh() throws IOException {
+    append("date,steps\n04-16-2025,1000\n04-16-2025,3000\r\n04-18-2025,500\n");
+    StepsRollup rollup = newRollup();
+    rollup.refresh();
+
+    append("04-16-2025,2000\n04-20-2025,7");
+    DailyStepTotals totals = rollup.totals(null, null);
+
+    assertArrayEquals(new int[] {6000, 500}, totals.getTotals());
+    assertArrayEquals(new int[] {3, 1}, totals.getCounts());
+    assertArrayEquals(new int[] {3000, 500}, totals.getMaxima());
+    assertEquals(LocalDate.of(2025, 4, 18), totals.getDate(1));
+
+    append("7\n");
+    assertEquals(77, rollup.totals(LocalDate.of(2025, 4, 17), null).getTotals()[1]);
+    assertEquals(1, rollup.totals(LocalDate.of(2025, 4, 17), LocalDate.of(2025, 4, 19)).size());
+  }
+
+  /**
+   * Tests that persisted totals are reused, and rebuilt when the steps file was replaced by a shorter one.
+   */
+
+  @Test
+  public void testPersistAndRebuild() throws IOException {
+    append("date,steps\n04-16-2025,1000\n04-17-2025,2000\n");
+    newRollup().refresh();
+    assertTrue(Files.readString(tempDir.resolve("2025-04.totals")).startsWith("STR1,"));
+    assertEquals(2, newRollup().totals(null, null).size());
+
+    Files.writeString(tempDir.resolve("2025-04.csv"), "date,steps\n04-17-2025,5\n");
+    DailyStepTotals totals = newRollup().totals(null, null);
+    assertArrayEquals(new int[] {(int) LocalDate.of(2025, 4, 17).toEpochDay()}, totals.getEpochDays());
+    assertArrayEquals(new int[] {5}, totals.getTotals());
+  }
+
+  /**
+   * Tests that merging totals adds up days present in more than one file and keeps date order.
+   */
+
+  @Test
+  public void testMergeOverlappingTotals() {
+    int day = (int) LocalDate.of(2025, 1, 5).toEpochDay();
+    DailyStepTotals legacy = new DailyStepTotals(new int[] {day, day + 40}, new int[] {100, 200},
+        new int[] {1, 1}, new int[] {100, 200});
+    DailyStepTotals january = new DailyStepTotals(new int[] {day, day + 1}, new int[] {50, 60},
+        new int[] {1, 2}, new int[] {50, 40});
+    DailyStepTotals february = new DailyStepTotals(new int[] {day + 40}, new int[] {5},
+        new int[] {1}, new int[] {5});
+
+    DailyStepTotals merged = DailyStepTotals.merge(List.of(legacy, january, february));
+
+    assertArrayEquals(new int[] {day, day + 1, day + 40}, merged.getEpochDays());
+    assertArrayEquals(new int[] {150, 60, 205}, merged.getTotals());
+    assertArrayEquals(new int[] {2, 2, 2}, merged.getCounts());
+    assertArrayEquals(new int[] {100, 40, 200}, merged.getMaxima());
+    assertEquals(3, DailyStepTotals.merge(List.of(january, february)).size());
+  }
+}
@@ -0,0 +1,119 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link TagDictionary} class.
+ * Tests include concurrent writers, recovery from a partially written line, interning and lookups of
+ * tags added by other writers.
+ */
+
+public class TagDictionaryTest {
+
+  @TempDir
+  Path tempDir;
+
+  /**
+   * Tests that writers using separate dictionaries over the same file agree on every tag's id.
+   */
+
+  @Test
+  public void testConcurrentWritersAgree() throws Exception {
+    Path file = tempDir.resolve("tags.dict");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<int[]>> results = new ArrayList<>();
+    try {
+      for (int writer = 0; writer < 4; writer++) {
+        results.add(executor.submit(() -> {
+          TagDictionary dictionary = new TagDictionary(file);
+          int[] ids = new int[50];
+          for (int tag = 0; tag < ids.length; tag++) {
+            ids[tag] = dictionary.idFor("Tag " + tag);
+          }
+          return ids;
+        }));
+      }
+      int[] expected = results.get(0).get();
+      for (Future<int[]> result : results) {
+        int[] ids = result.get();
+        for (int tag = 0; tag < ids.length; tag++) {
+          assertEquals(expected[tag], ids[tag]);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(50, Files.readAllLines(file).size());
+    assertEquals("Tag 7", new TagDictionary(file).tagFor(new TagDictionary(file).idOf("Tag 7")));
+  }
+
+  /**
+   * Tests that a line left unfinished by a crashed writer is ignored and then overwritten.
+   */
+
+  @Test
+  public void testPartialLineIsReplaced() throws IOException {
+    Path file = tempDir.resolve("tags.dict");
+    Files.writeString(file, "Cycling\r\nResting\nRun");
+
+    TagDictionary dictionary = new TagDictionary(file);
+    assertEquals(-1, dictionary.idOf("Run"));
+    assertEquals(1, dictionary.idOf("Resting"));
+    assertEquals(2, dictionary.idFor("Walking"));
+
+    assertEquals("Cycling\r\nResting\nWalking\n", Files.readString(file));
+    assertThrows(IllegalArgumentException.class, () -> dictionary.idFor("Two\nLines"));
+  }
+
+  /**
+   * Tests that interning returns the dictionary's instance of known tags and leaves other tags as they are.
+   */
+
+  @Test
+  public void testIntern() throws IOException {
+    TagDictionary dictionary = new TagDictionary(tempDir.resolve("tags.dict"));
+    int id = dictionary.idFor("Cycling");
+
+    String parsed = new String("Cycling");
+    assertSame(dictionary.tagFor(id), dictionary.intern(parsed));
+    String unknown = new String("Resting");
+    assertSame(unknown, dictionary.intern(unknown));
+    assertNull(dictionary.intern(null));
+  }
+
+  /**
+   * Tests that lookups still see tags added through another dictionary over the same file,
+   * including a tag that an earlier lookup or intern did not find.
+   */
+
+  @Test
+  public void testMissesSeeOtherWriters() throws IOException {
+    Path file = tempDir.resolve("tags.dict");
+    TagDictionary reader = new TagDictionary(file);
+    TagDictionary writer = new TagDictionary(file);
+    writer.idFor("Cycling");
+
+    assertEquals(-1, reader.idOf("Resting"));
+    String unknown = new String("Resting");
+    assertSame(unknown, reader.intern(unknown));
+    assertSame(unknown, reader.intern(unknown)); // Remembered as a miss
+
+    assertEquals(1, writer.idFor("Resting"));
+    assertEquals(1, reader.idOf("Resting"));
+    assertSame(reader.tagFor(1), reader.intern(new String("Resting")));
+    assertEquals(2, reader.tags().length);
+  }
+}
@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link TagIndex} class.
+ * Tests include "any of" and "all of" queries with date ranges, reloading the index, and CSV rows.
+ */
+
+public class TagIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  private HeartRateSegment newSegment(TagDictionary dictionary) throws IOException {
+    HeartRateSegment segment = new HeartRateSegment(tempDir.resolve("2025-04.seg"), dictionary);
+    segment.createIfNotExists();
+    return segment;
+  }
+
+  private TagIndex newIndex() {
+    return new TagIndex(tempDir.resolve("2025-04.seg"), tempDir.resolve("2025-04.tags"),
+        HeartRateSegment.TAG_ROW_FORMAT);
+  }
+
+  /**
+   * Tests that consecutive samples with a tag form one run, and that queries combine tags and dates.
+   */
+
+  @Test
+  public void testQueries() throws IOException {
+    TagDictionary dictionary = new TagDictionary(tempDir.resolve("tags.dict"));
+    HeartRateSegment segment = newSegment(dictionary);
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    segment.appendAll(Arrays.asList(
+        new HeartRate("Cycling", date, LocalTime.of(7, 0), 140),
+        new HeartRate("Cycling", date, LocalTime.of(7, 1), 150),
+        new HeartRate(null, date, LocalTime.of(12, 0), 60),
+        new HeartRate("Running", date.plusDays(1), LocalTime.of(6, 0), 160),
+        new HeartRate("Cycling", date.plusDays(2), LocalTime.of(7, 0), 145)), false);
+    int cycling = dictionary.idOf("Cycling");
+    int running = dictionary.idOf("Running");
+    TagIndex index = newIndex();
+
+    List<long[]> ranges = index.find(new int[] {cycling}, false, null, null);
+    assertEquals(2, ranges.size());
+    assertArrayEquals(new long[] {4, 2 * HeartRateSegment.RECORD_SIZE}, ranges.get(0));
+    assertEquals(1, index.find(new int[] {cycling}, false, date.plusDays(1), null).size());
+
+    List<byte[]> runs = index.readRuns(new int[] {cycling, running}, false, null, date.plusDays(1));
+    assertEquals(2, runs.size());
+    assertEquals(2, segment.decodeAll(runs.get(0)).size());
+    assertEquals("Running", segment.decodeAll(runs.get(1)).get(0).getTags());
+
+    assertEquals(2, index.find(new int[] {cycling, cycling}, true, null, null).size());
+    assertTrue(index.find(new int[] {cycling, running}, true, null, null).isEmpty());
+  }
+
+  /**
+   * Tests that a persisted index is reloaded and extended, dropping entries past its covered length.
+   */
+
+  @Test
+  public void testReloadAndExtend() throws IOException {
+    TagDictionary dictionary = new TagDictionary(tempDir.resolve("tags.dict"));
+    HeartRateSegment segment = newSegment(dictionary);
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    segment.append(new HeartRate("Cycling", date, LocalTime.of(7, 0), 140));
+    newIndex().refresh();
+
+    // An entry written by a refresh that didn't get to update the header
+    Files.write(tempDir.resolve("2025-04.tags"), new byte[24], StandardOpenOption.APPEND);
+    segment.append(new HeartRate("Cycling", date, LocalTime.of(7, 1), 150));
+    segment.append(new HeartRate("Running", date, LocalTime.of(8, 0), 160));
+
+    TagIndex index = newIndex();
+    List<long[]> ranges = index.find(new int[] {dictionary.idOf("Cycling")}, false, null, null);
+    assertEquals(1, ranges.size());
+    assertEquals(2 * HeartRateSegment.RECORD_SIZE, ranges.get(0)[1]);
+    assertEquals(12 + 3 * 24, Files.size(tempDir.resolve("2025-04.tags")));
+    assertEquals(1, newIndex().find(new int[] {dictionary.idOf("Running")}, false, date, date).size());
+  }
+
+  /**
+   * Tests indexing CSV rows that span two dates, skipping untagged rows and a trailing partial row.
+   */
+
+  @Test
+  public void testCsvRows() throws IOException {
+    TagDictionary dictionary = new TagDictionary(tempDir.resolve("tags.dict"));
+    Path file = tempDir.resolve("period_log.txt");
+    Files.write(file, ("startDate,endDate,flowLevel,tags\n"
+        + "03-01-2025,03-05-2025,Medium,Cramps\n"
+        + "04-01-2025,04-04-2025,Light,null\n"
+        + "04-28-2025,05-02-2025,Heavy,Cramps\n"
+        + "05-30-2025,06-01-2025,Light,Cra").getBytes(StandardCharsets.UTF_8));
+    TagIndex index = new TagIndex(file, tempDir.resolve("period_log.tags"),
+        TagIndex.csvRowFormat(dictionary, 3, 0, 1));
+
+    int cramps = dictionary.idFor("Cramps");
+    List<byte[]> runs = index.readRuns(new int[] {cramps}, false, LocalDate.of(2025, 5, 1), null);
+    assertEquals(1, runs.size());
+    assertEquals("04-28-2025,05-02-2025,Heavy,Cramps\n", new String(runs.get(0), StandardCharsets.UTF_8));
+    assertEquals(2, index.find(new int[] {cramps}, false, null, null).size());
+
+    // The completed row continues the run of the row before it
+    Files.write(file, "mps\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    List<long[]> ranges = index.find(new int[] {cramps}, false, LocalDate.of(2025, 6, 1), null);
+    assertEquals(1, ranges.size());
+    assertEquals(2, new String(index.readRuns(new int[] {cramps}, false, LocalDate.of(2025, 6, 1), null).get(0),
+        StandardCharsets.UTF_8).split("\n").length);
+  }
+}
@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link UserIndex} class.
+ * Tests include lookups, records appended after the index was built, and reloading a persisted index.
+ */
+
+public class UserIndexTest {
+
+  @TempDir
+  Path tempDir;
+
+  private void append(Path file, String records) throws IOException {
+    Files.write(file, records.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Tests that records are found by username, and that the first record of a username wins.
+   */
+
+  @Test
+  public void testLookup() throws IOException {
+    Path users = tempDir.resolve("users.txt");
+    StringBuilder records = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      records.append("User ").append(i).append("|user").append(i).append("|FEMALE|pw|1990-01-01\n");
+    }
+    records.append("Impostor|user7|MALE|pw|1990-01-01\n");
+    records.append(String.format("%s|long|MALE|%0500d|1990-01-01%n", "Long", 0));
+    append(users, records.toString());
+    UserIndex index = new UserIndex(users, tempDir.resolve("users.idx"));
+
+    assertEquals("User 7|user7|FEMALE|pw|1990-01-01", index.lookup("user7"));
+    assertEquals("User 999|user999|FEMALE|pw|1990-01-01", index.lookup("user999"));
+    assertTrue(index.lookup("long").endsWith("|1990-01-01"));
+    assertNull(index.lookup("nobody"));
+    assertFalse(index.contains("user1000"));
+  }
+
+  /**
+   * Tests that records appended after the index was built are found, but partially written ones are not.
+   */
+
+  @Test
+  public void testAppendedRecords() throws IOException {
+    Path users = tempDir.resolve("users.txt");
+    append(users, "Alice|alice|FEMALE|pw|1990-01-01\n");
+    UserIndex index = new UserIndex(users, tempDir.resolve("users.idx"));
+    assertTrue(index.contains("alice"));
+
+    append(users, "Bob|bob|MALE|pw|1991-02-02\nCarol|car");
+    assertTrue(index.contains("bob"));
+    assertFalse(index.contains("car"));
+    append(users, "ol|FEMALE|pw|1992-03-03\n");
+    assertEquals("Carol|carol|FEMALE|pw|1992-03-03", index.lookup("carol"));
+  }
+
+  /**
+   * Tests that a persisted index is reloaded, ignoring an entry left by an interrupted refresh,
+   * and rebuilt if the users file shrank.
+   */
+
+  @Test
+  public void testReload() throws IOException {
+    Path users = tempDir.resolve("users.txt");
+    Path indexFile = tempDir.resolve("users.idx");
+    append(users, "Alice|alice|FEMALE|pw|1990-01-01\n");
+    new UserIndex(users, indexFile).refresh();
+    append(indexFile, "\0\0\0\0\0\0\0\0\0\5ghost");
+
+    append(users, "Bob|bob|MALE|pw|1991-02-02\n");
+    UserIndex index = new UserIndex(users, indexFile);
+    assertEquals("Bob|bob|MALE|pw|1991-02-02", index.lookup("bob"));
+    assertFalse(index.contains("ghost"));
+    assertEquals("Alice|alice|FEMALE|pw|1990-01-01", new UserIndex(users, indexFile).lookup("alice"));
+
+    Files.write(users, "Dave|dave|MALE|pw|1980-04-04\n".getBytes(StandardCharsets.UTF_8));
+    UserIndex rebuilt = new UserIndex(users, indexFile);
+    assertTrue(rebuilt.contains("dave"));
+    assertFalse(rebuilt.contains("alice"));
+  }
+}
@@ -0,0 +1,170 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link UserShards} class.
+ * Tests include reading the legacy users file, concurrent registrations, a registration stress test,
+ * and rebalancing.
+ */
+
+public class UserShardsTest {
+
+  @TempDir
+  Path tempDir;
+
+  private static String record(String username) {
+    return "Name|" + username + "|FEMALE|pw|1990-01-01";
+  }
+
+  /**
+   * Tests that users are added to shards, that users in the legacy file are found and can't be added again.
+   */
+
+  @Test
+  public void testAddAndLegacy() throws IOException {
+    Path legacyFile = tempDir.resolve("users.txt");
+    Files.write(legacyFile, (record("alice") + "\n").getBytes(StandardCharsets.UTF_8));
+    UserShards store = new UserShards(tempDir.resolve("shards"), legacyFile);
+
+    assertEquals(UserShards.DEFAULT_SHARD_COUNT, store.shardCount());
+    assertTrue(store.exists("alice"));
+    assertFalse(store.add("alice", record("alice")));
+    assertTrue(store.add("bob", record("bob")));
+    assertFalse(store.add("bob", record("bob")));
+    assertEquals(record("bob"), store.lookup("bob"));
+    assertEquals(record("alice"), store.lookup("alice"));
+    assertNull(store.lookup("carol"));
+  }
+
+  /**
+   * Tests that concurrent registrations of the same usernames add each user exactly once.
+   */
+
+  @Test
+  public void testConcurrentAdds() throws Exception {
+    UserShards store = new UserShards(tempDir.resolve("shards"), tempDir.resolve("users.txt"));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        results.add(executor.submit(() -> {
+          int added = 0;
+          for (int i = 0; i < 500; i++) {
+            if (store.add("user" + i, record("user" + i))) {
+              added++;
+            }
+          }
+          return added;
+        }));
+      }
+      int added = 0;
+      for (Future<Integer> result : results) {
+        added += result.get();
+      }
+      assertEquals(500, added);
+    } finally {
+      executor.shutdown();
+    }
+    for (int i = 0; i < 500; i++) {
+      assertEquals(record("user" + i), store.lookup("user" + i));
+    }
+  }
+
+  /**
+   * Tests that thousands of users registered in parallel, each by several threads at once, are stored
+   * exactly once.
+   */
+
+  @Test
+  public void testRegistrationStress() throws Exception {
+    int users = 4000;
+    int threads = 8;
+    Path directory = tempDir.resolve("parallel");
+    UserShards store = new UserShards(directory, tempDir.resolve("users.txt"));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        int first = thread * users / threads;
+        results.add(executor.submit(() -> {
+          // Every thread tries every user, starting at a different one, so each username is contended
+          int added = 0;
+          for (int i = 0; i < users; i++) {
+            String username = "user" + (first + i) % users;
+            if (store.add(username, record(username))) {
+              added++;
+            }
+          }
+          return added;
+        }));
+      }
+      int added = 0;
+      for (Future<Integer> result : results) {
+        added += result.get();
+      }
+      assertEquals(users, added);
+    } finally {
+      executor.shutdown();
+    }
+
+    List<String> records = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".txt"))::iterator) {
+        if (!file.getFileName().toString().equals("shards.txt")) {
+          records.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+      }
+    }
+    Set<String> distinct = new HashSet<>(records);
+    assertEquals(users, records.size());
+    assertEquals(users, distinct.size());
+  }
+
+  /**
+   * Tests that rebalancing moves every user, including legacy ones, to the new shards and retires the old files.
+   */
+
+  @Test
+  public void testRebalance() throws IOException {
+    Path legacyFile = tempDir.resolve("users.txt");
+    Files.write(legacyFile, (record("alice") + "\n").getBytes(StandardCharsets.UTF_8));
+    Path directory = tempDir.resolve("shards");
+    UserShards store = new UserShards(directory, legacyFile);
+    for (int i = 0; i < 200; i++) {
+      store.add("user" + i, record("user" + i));
+    }
+
+    store.rebalance(5);
+    assertEquals(5, store.shardCount());
+    assertFalse(Files.exists(legacyFile));
+    assertTrue(Files.exists(tempDir.resolve("users.txt.migrated")));
+    assertFalse(Files.exists(directory.resolve("shard-0-of-16.txt")));
+
+    // A fresh store reads the new layout, as after a restart
+    UserShards reopened = new UserShards(directory, legacyFile);
+    assertEquals(5, reopened.shardCount());
+    assertEquals(record("alice"), reopened.lookup("alice"));
+    for (int i = 0; i < 200; i++) {
+      assertTrue(reopened.exists("user" + i));
+    }
+    assertTrue(reopened.add("bob", record("bob")));
+    assertFalse(store.add("bob", record("bob")));
+  }
+}
@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link UsernameBloomFilter} class.
+ * Tests include the absence of false negatives as the filter grows, its false positive rate,
+ * and reloading the persisted filter.
+ */
+
+public class UsernameBloomFilterTest {
+
+  @TempDir
+  Path tempDir;
+
+  private void append(Path file, String records) throws IOException {
+    Files.write(file, records.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Tests that every added username is found while the filter grows past its capacity,
+   * and that few other usernames are.
+   */
+
+  @Test
+  public void testGrowth() throws IOException {
+    Path users = tempDir.resolve("users.txt");
+    UsernameBloomFilter filter = new UsernameBloomFilter(users, tempDir.resolve("users.bloom"));
+    for (int batch = 0; batch < 10; batch++) {
+      StringBuilder records = new StringBuilder();
+      for (int i = batch * 1000; i < (batch + 1) * 1000; i++) {
+        records.append("User|user").append(i).append("|FEMALE|pw|1990-01-01\n");
+      }
+      append(users, records.toString());
+      filter.refresh();
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      assertTrue(filter.mightContain("user" + i));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 10_000; i++) {
+      if (filter.mightContain("other" + i)) {
+        falsePositives++;
+      }
+    }
+    assertTrue(falsePositives < 300, "False positives: " + falsePositives);
+  }
+
+  /**
+   * Tests that a persisted filter is reloaded and extended, and rebuilt if its file is damaged.
+   */
+
+  @Test
+  public void testReload() throws IOException {
+    Path users = tempDir.resolve("users.txt");
+    Path filterFile = tempDir.resolve("users.bloom");
+    append(users, "Alice|alice|FEMALE|pw|1990-01-01\n");
+    assertFalse(new UsernameBloomFilter(users, filterFile).mightContain("bob"));
+
+    append(users, "Bob|bob|MALE|pw|1991-02-02\nCarol|car");
+    UsernameBloomFilter filter = new UsernameBloomFilter(users, filterFile);
+    assertTrue(filter.mightContain("alice"));
+    assertTrue(filter.mightContain("bob"));
+    assertFalse(filter.mightContain("car"));
+
+    Files.write(filterFile, new byte[] {'U', 'B'});
+    UsernameBloomFilter rebuilt = new UsernameBloomFilter(users, filterFile);
+    assertTrue(rebuilt.mightContain("alice"));
+    assertTrue(rebuilt.mightContain("bob"));
+  }
+}
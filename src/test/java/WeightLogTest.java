@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the {@link WeightLog} class.
+ * Tests include last-write-wins reads and compaction of superseded entries.
+ */
+
+public class WeightLogTest {
+
+  @TempDir
+  Path tempDir;
+
+  private WeightLog newLog() throws IOException {
+    Path file = tempDir.resolve("daily_metrics.txt");
+    Files.writeString(file, "date,weight,unit" + System.lineSeparator());
+    return new WeightLog(file);
+  }
+
+  /**
+   * Tests that a later save for the same day replaces the earlier one on read.
+   */
+
+  @Test
+  public void testLastWriteWins() throws IOException {
+    WeightLog log = newLog();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    log.append(date, new Weight(60.0, "kg"));
+    log.append(date.plusDays(1), new Weight(61.0, "kg"));
+    log.append(date, new Weight(59.5, "kg"));
+
+    assertEquals(59.5, log.latest(date).getWeight(), 0.001);
+    assertEquals(2, log.readAll().size());
+  }
+
+  /**
+   * Tests that compaction keeps only the latest entry per day, in date order.
+   */
+
+  @Test
+  public void testCompaction() throws IOException {
+    WeightLog log = newLog();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    for (int i = 0; i < 10; i++) {
+      log.append(date.plusDays(1), new Weight(70.0 + i, "kg"));
+      log.append(date, new Weight(60.0 + i, "kg"));
+    }
+
+    log.compact();
+
+    assertEquals(3, Files.readAllLines(tempDir.resolve("daily_metrics.txt")).size());
+    Map<LocalDate, Weight> weights = log.readAll();
+    assertEquals(69.0, weights.get(date).getWeight(), 0.001);
+    assertEquals(79.0, weights.get(date.plusDays(1)).getWeight(), 0.001);
+  }
+
+  /**
+   * Tests that range and single-day reads see the latest entries, also after compaction.
+   */
+
+  @Test
+  public void testReadRangeAfterCompaction() throws IOException {
+    WeightLog log = newLog();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    for (int i = 0; i < 40; i++) {
+      log.append(date.plusDays(i % 4), new Weight(60.0 + i, "kg"));
+    }
+
+    Map<LocalDate, Weight> range = log.readRange(date.plusDays(1), date.plusDays(2));
+    assertEquals(2, range.size());
+    assertEquals(97.0, range.get(date.plusDays(1)).getWeight(), 0.001);
+
+    log.compact();
+    log.append(date, new Weight(55.5, "kg"));
+
+    assertEquals(55.5, log.latest(date).getWeight(), 0.001);
+    assertEquals(98.0, log.latest(date.plusDays(2)).getWeight(), 0.001);
+    assertEquals(4, log.readRange(date, date.plusDays(10)).size());
+  }
+
+  /**
+   * Tests that compaction drops a row with a malformed date and keeps the others.
+   */
+
+  @Test
+  public void testCompactionSkipsMalformedRows() throws IOException {
+    WeightLog log = newLog();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    log.append(date, new Weight(60.0, "kg"));
+    Files.writeString(tempDir.resolve("daily_metrics.txt"), "2025/04/17,61.0,kg" + System.lineSeparator(),
+        StandardOpenOption.APPEND);
+    log.append(date.plusDays(1), new Weight(62.0, "kg"));
+
+    log.compact();
+
+    assertEquals(3, Files.readAllLines(tempDir.resolve("daily_metrics.txt")).size());
+    assertEquals(60.0, log.latest(date).getWeight(), 0.001);
+    assertEquals(62.0, log.latest(date.plusDays(1)).getWeight(), 0.001);
+  }
+
+  /**
+   * Tests that rows with fewer than three fields are skipped by single-day and range reads, as they are by readAll.
+   */
+
+  @Test
+  public void testShortRowsAreSkipped() throws IOException {
+    WeightLog log = newLog();
+    LocalDate date = LocalDate.of(2025, 4, 16);
+    log.append(date, new Weight(60.0, "kg"));
+    Files.writeString(tempDir.resolve("daily_metrics.txt"), date.format(Constants.dateFormatter) + ",61.0"
+        + System.lineSeparator() + date.plusDays(1).format(Constants.dateFormatter) + System.lineSeparator(),
+        StandardOpenOption.APPEND);
+
+    assertEquals(60.0, log.latest(date).getWeight(), 0.001);
+    assertNull(log.latest(date.plusDays(1)));
+    Map<LocalDate, Weight> weights = log.readRange(date, date.plusDays(1));
+    assertEquals(1, weights.size());
+    assertEquals(60.0, weights.get(date).getWeight(), 0.001);
+    assertEquals(weights.keySet(), log.readAll().keySet());
+  }
+}